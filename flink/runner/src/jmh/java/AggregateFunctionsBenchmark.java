@@ -0,0 +1,94 @@
+package com.chainbase.udf.math;
+
+import com.chainbase.udf.UdfFixtures;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * {@link SumStringNum}, {@link CountDistinct} and {@link ApproxCountDistinct} accumulating a group
+ * of token amounts and addresses, then emitting the result, as a window does. Throughput is in
+ * rows per second. Run with
+ * {@code mvn -Pjmh test-compile exec:exec -Djmh.args="AggregateFunctions -prof gc"}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AggregateFunctionsBenchmark {
+
+  private static final int GROUP_SIZE = 1000;
+
+  /**
+   * Distinct values among the rows of a group.
+   */
+  @Param({"100", "1000"})
+  private int cardinality;
+
+  private final SumStringNum sumStringNum = new SumStringNum();
+
+  private final CountDistinct countDistinct = new CountDistinct();
+
+  private final ApproxCountDistinct approxCountDistinct = new ApproxCountDistinct();
+
+  private String[] amounts;
+
+  private String[] addresses;
+
+  @Setup
+  public void setup() {
+    UdfFixtures fixtures = new UdfFixtures(42);
+    String[] distinct = new String[cardinality];
+    for (int idx = 0; idx < cardinality; idx++) {
+      distinct[idx] = fixtures.address();
+    }
+    amounts = new String[GROUP_SIZE];
+    addresses = new String[GROUP_SIZE];
+    for (int idx = 0; idx < GROUP_SIZE; idx++) {
+      amounts[idx] = fixtures.amount();
+      addresses[idx] = distinct[idx % cardinality];
+    }
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(GROUP_SIZE)
+  public String sumStringNum() {
+    SumStringNum.SumAccumulator accumulator = sumStringNum.createAccumulator();
+    for (String amount : amounts) {
+      sumStringNum.accumulate(accumulator, amount);
+    }
+    return sumStringNum.getValue(accumulator);
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(GROUP_SIZE)
+  public Long countDistinct() throws Exception {
+    CountDistinct.CountAccumulator accumulator = countDistinct.createAccumulator();
+    for (String address : addresses) {
+      countDistinct.accumulate(accumulator, address);
+    }
+    return countDistinct.getValue(accumulator);
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(GROUP_SIZE)
+  public Long approxCountDistinct() {
+    ApproxCountDistinct.SketchAccumulator accumulator = approxCountDistinct.createAccumulator();
+    for (String address : addresses) {
+      approxCountDistinct.accumulate(accumulator, address);
+    }
+    return approxCountDistinct.getValue(accumulator);
+  }
+}
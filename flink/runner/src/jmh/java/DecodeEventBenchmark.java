@@ -0,0 +1,59 @@
+package com.chainbase.udf;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * {@link DecodeEvent} over ERC20 Transfer and Uniswap V2 Swap logs, the decoder being compiled
+ * once as in a running job. Run with
+ * {@code mvn -Pjmh test-compile exec:exec -Djmh.args="DecodeEvent -prof gc"}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DecodeEventBenchmark {
+
+  private static final int ROWS = 1024;
+
+  @Param({"transfer", "swap"})
+  private String event;
+
+  private DecodeEvent decodeEvent;
+
+  private String abi;
+
+  private String[][] logs;
+
+  private int next;
+
+  @Setup
+  public void setup() throws Exception {
+    decodeEvent = new DecodeEvent();
+    decodeEvent.open(null);
+    UdfFixtures fixtures = new UdfFixtures(42);
+    abi = "swap".equals(event) ? UdfFixtures.SWAP_ABI : UdfFixtures.TRANSFER_ABI;
+    logs = new String[ROWS][];
+    for (int idx = 0; idx < ROWS; idx++) {
+      logs[idx] = "swap".equals(event) ? fixtures.swapLog() : fixtures.transferLog();
+    }
+  }
+
+  @Benchmark
+  public String decode() {
+    String[] log = logs[next++ & (ROWS - 1)];
+    return decodeEvent.eval(abi, log[0], log[1], log[2], log[3], log[4]);
+  }
+}
@@ -0,0 +1,66 @@
+package com.chainbase.udf;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * {@link DecodeFunction} over ERC20 transfer traces and Uniswap V3 router multicalls, whose
+ * inputs of several kilobytes are the largest of the common traces. Run with
+ * {@code mvn -Pjmh test-compile exec:exec -Djmh.args="DecodeFunction -prof gc"}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DecodeFunctionBenchmark {
+
+  private static final int ROWS = 256;
+
+  /**
+   * A transfer, then multicalls of 4 and 32 inner calls of 260 bytes.
+   */
+  @Param({"transfer", "multicall-4", "multicall-32"})
+  private String trace;
+
+  private DecodeFunction decodeFunction;
+
+  private String abi;
+
+  private String[][] traces;
+
+  private int next;
+
+  @Setup
+  public void setup() throws Exception {
+    decodeFunction = new DecodeFunction();
+    decodeFunction.open(null);
+    UdfFixtures fixtures = new UdfFixtures(42);
+    boolean multicall = trace.startsWith("multicall");
+    abi = multicall ? UdfFixtures.MULTICALL_FUNCTION_ABI
+        : UdfFixtures.ERC20_TRANSFER_FUNCTION_ABI;
+    traces = new String[ROWS][];
+    for (int idx = 0; idx < ROWS; idx++) {
+      traces[idx] = multicall
+          ? fixtures.multicallTrace(Integer.parseInt(trace.substring("multicall-".length())), 260)
+          : fixtures.transferTrace();
+    }
+  }
+
+  @Benchmark
+  public String decode() {
+    String[] trace = traces[next++ & (ROWS - 1)];
+    return decodeFunction.eval(abi, trace[0], trace[1]);
+  }
+}
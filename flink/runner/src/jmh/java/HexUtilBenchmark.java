@@ -0,0 +1,97 @@
+package com.chainbase.evm;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the table-driven codec of {@link HexUtil} with the previous implementation, kept here
+ * as {@code legacy*}. Run with {@code mvn -Pjmh test-compile exec:exec -Djmh.args=HexUtil}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HexUtilBenchmark {
+
+  private static final char[] HEX_ARRAY = "0123456789ABCDEF".toCharArray();
+
+  /**
+   * 20 bytes for an address, 32 for a topic, 256 for a typical log data field.
+   */
+  @Param({"20", "32", "256"})
+  private int size;
+
+  private byte[] bytes;
+
+  private String hex;
+
+  private byte[] buffer;
+
+  @Setup
+  public void setup() {
+    bytes = new byte[size];
+    ThreadLocalRandom.current().nextBytes(bytes);
+    hex = HexUtil.bytes20xHex(bytes);
+    buffer = new byte[size];
+  }
+
+  @Benchmark
+  public String encodeLegacy() {
+    return String.format("0x%s", legacyBytes2PlainHex(bytes).toLowerCase());
+  }
+
+  @Benchmark
+  public String encode() {
+    return HexUtil.bytes20xHex(bytes);
+  }
+
+  @Benchmark
+  public byte[] decodeLegacy() {
+    return legacyPlainHex2Bytes(hex.substring(2));
+  }
+
+  @Benchmark
+  public byte[] decode() {
+    return HexUtil.hex2Bytes(hex);
+  }
+
+  @Benchmark
+  public int decodeIntoBuffer() {
+    return HexUtil.decodeHex(hex, buffer, 0);
+  }
+
+  private static String legacyBytes2PlainHex(byte[] bytes) {
+    char[] hexChars = new char[bytes.length * 2];
+    for (int j = 0; j < bytes.length; j++) {
+      int v = bytes[j] & 0xff;
+      hexChars[j * 2] = HEX_ARRAY[v >>> 4];
+      hexChars[j * 2 + 1] = HEX_ARRAY[v & 0x0f];
+    }
+    return new String(hexChars);
+  }
+
+  private static byte[] legacyPlainHex2Bytes(String hex) {
+    int len = hex.length();
+    byte[] data = new byte[len / 2];
+    for (int i = 0; i < len; i += 2) {
+      data[i / 2] =
+          (byte)
+              ((Character.digit(hex.charAt(i), 16) << 4)
+                  + (Character.digit(hex.charAt(i + 1), 16)));
+    }
+    return data;
+  }
+}
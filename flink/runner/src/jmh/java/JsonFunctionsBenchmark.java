@@ -0,0 +1,81 @@
+package com.chainbase.udf;
+
+import com.chainbase.udf.json.FromJson;
+import java.util.concurrent.TimeUnit;
+import org.apache.flink.types.Row;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * {@link RowToJsonFunction} and {@link ArrayToJsonFunction} over transaction rows nesting their
+ * receipt and logs, {@link FromJson} over arrays of addresses. Run with
+ * {@code mvn -Pjmh test-compile exec:exec -Djmh.args="JsonFunctions -prof gc"}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JsonFunctionsBenchmark {
+
+  private static final int ROWS = 256;
+
+  /**
+   * Logs per transaction, and addresses per JSON array.
+   */
+  @Param({"2", "20"})
+  private int size;
+
+  private RowToJsonFunction rowToJson;
+
+  private ArrayToJsonFunction arrayToJson;
+
+  private FromJson fromJson;
+
+  private Row[] rows;
+
+  private String[] jsonArrays;
+
+  private int next;
+
+  @Setup
+  public void setup() throws Exception {
+    rowToJson = new RowToJsonFunction();
+    arrayToJson = new ArrayToJsonFunction();
+    arrayToJson.open(null);
+    fromJson = new FromJson();
+    UdfFixtures fixtures = new UdfFixtures(42);
+    rows = new Row[ROWS];
+    jsonArrays = new String[ROWS];
+    for (int idx = 0; idx < ROWS; idx++) {
+      rows[idx] = fixtures.transactionRow(size);
+      jsonArrays[idx] = fixtures.addressesJson(size);
+    }
+  }
+
+  @Benchmark
+  public String rowToJson() {
+    return rowToJson.eval(rows[next++ & (ROWS - 1)]);
+  }
+
+  @Benchmark
+  public String arrayToJson() {
+    Row receipt = (Row) rows[next++ & (ROWS - 1)].getField("receipt");
+    return arrayToJson.eval((Row[]) receipt.getField("logs"));
+  }
+
+  @Benchmark
+  public Object fromJson() {
+    return fromJson.eval(jsonArrays[next++ & (ROWS - 1)], "array<string>");
+  }
+}
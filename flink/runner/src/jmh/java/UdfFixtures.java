@@ -0,0 +1,181 @@
+package com.chainbase.udf;
+
+import com.chainbase.evm.HexUtil;
+import com.esaulpaugh.headlong.abi.Address;
+import com.esaulpaugh.headlong.abi.Function;
+import com.esaulpaugh.headlong.abi.Tuple;
+import java.math.BigInteger;
+import java.util.LinkedHashMap;
+import java.util.Random;
+import org.apache.flink.types.Row;
+import org.apache.flink.types.RowKind;
+import org.apache.flink.types.RowUtils;
+
+/**
+ * Rows shaped like the mainnet data the UDFs see, generated from a fixed seed so that every run
+ * of a benchmark measures the same inputs.
+ */
+public final class UdfFixtures {
+
+  public static final String TRANSFER_ABI = "{\"anonymous\":false,\"inputs\":["
+      + "{\"indexed\":true,\"internalType\":\"address\",\"name\":\"from\",\"type\":\"address\"},"
+      + "{\"indexed\":true,\"internalType\":\"address\",\"name\":\"to\",\"type\":\"address\"},"
+      + "{\"indexed\":false,\"internalType\":\"uint256\",\"name\":\"value\",\"type\":\"uint256\"}"
+      + "],\"name\":\"Transfer\",\"type\":\"event\"}";
+
+  public static final String TRANSFER_TOPIC0 =
+      "0xddf252ad1be2c89b69c2b068fc378daa952ba7f163c4a11628f55a4df523b3ef";
+
+  /**
+   * Uniswap V2 pair.
+   */
+  public static final String SWAP_ABI = "{\"anonymous\":false,\"inputs\":["
+      + "{\"indexed\":true,\"internalType\":\"address\",\"name\":\"sender\",\"type\":\"address\"},"
+      + "{\"indexed\":false,\"internalType\":\"uint256\",\"name\":\"amount0In\",\"type\":\"uint256\"},"
+      + "{\"indexed\":false,\"internalType\":\"uint256\",\"name\":\"amount1In\",\"type\":\"uint256\"},"
+      + "{\"indexed\":false,\"internalType\":\"uint256\",\"name\":\"amount0Out\",\"type\":\"uint256\"},"
+      + "{\"indexed\":false,\"internalType\":\"uint256\",\"name\":\"amount1Out\",\"type\":\"uint256\"},"
+      + "{\"indexed\":true,\"internalType\":\"address\",\"name\":\"to\",\"type\":\"address\"}"
+      + "],\"name\":\"Swap\",\"type\":\"event\"}";
+
+  public static final String SWAP_TOPIC0 =
+      "0xd78ad95fa46c994b6551d0da85fc275fe613ce37657fb8d5e3d130840159d822";
+
+  public static final String ERC20_TRANSFER_FUNCTION_ABI = "{\"inputs\":["
+      + "{\"internalType\":\"address\",\"name\":\"to\",\"type\":\"address\"},"
+      + "{\"internalType\":\"uint256\",\"name\":\"value\",\"type\":\"uint256\"}],"
+      + "\"name\":\"transfer\",\"outputs\":[{\"internalType\":\"bool\",\"name\":\"\","
+      + "\"type\":\"bool\"}],\"stateMutability\":\"nonpayable\",\"type\":\"function\"}";
+
+  /**
+   * Uniswap V3 router, its traces carry the largest inputs of the common contracts.
+   */
+  public static final String MULTICALL_FUNCTION_ABI = "{\"inputs\":["
+      + "{\"internalType\":\"bytes[]\",\"name\":\"data\",\"type\":\"bytes[]\"}],"
+      + "\"name\":\"multicall\",\"outputs\":[{\"internalType\":\"bytes[]\",\"name\":\"results\","
+      + "\"type\":\"bytes[]\"}],\"stateMutability\":\"payable\",\"type\":\"function\"}";
+
+  private static final Function ERC20_TRANSFER = new Function("transfer(address,uint256)",
+      "(bool)");
+
+  private static final Function MULTICALL = new Function("multicall(bytes[])", "(bytes[])");
+
+  private final Random random;
+
+  public UdfFixtures(long seed) {
+    this.random = new Random(seed);
+  }
+
+  /**
+   * topic0 to topic3 then data, as the columns of a log row.
+   */
+  public String[] transferLog() {
+    return new String[]{TRANSFER_TOPIC0, addressTopic(), addressTopic(), null, uint256s(1)};
+  }
+
+  public String[] swapLog() {
+    return new String[]{SWAP_TOPIC0, addressTopic(), addressTopic(), null, uint256s(4)};
+  }
+
+  /**
+   * Input then output of a trace.
+   */
+  public String[] transferTrace() {
+    return new String[]{
+        HexUtil.bytes20xHex(ERC20_TRANSFER.encodeCallWithArgs(
+            Address.wrap(Address.toChecksumAddress(new BigInteger(160, random))),
+            new BigInteger(96, random)).array()),
+        uint256(BigInteger.ONE)};
+  }
+
+  /**
+   * A router multicall of {@code calls} inner calls of {@code callSize} bytes each, the output
+   * returning as many 32 bytes words.
+   */
+  public String[] multicallTrace(int calls, int callSize) {
+    byte[][] inputs = new byte[calls][];
+    byte[][] outputs = new byte[calls][];
+    for (int idx = 0; idx < calls; idx++) {
+      inputs[idx] = bytes(callSize);
+      outputs[idx] = bytes(32);
+    }
+    return new String[]{
+        HexUtil.bytes20xHex(MULTICALL.encodeCallWithArgs((Object) inputs).array()),
+        HexUtil.bytes20xHex(MULTICALL.getOutputs().encode(Tuple.singleton(outputs)).array())};
+  }
+
+  /**
+   * A transaction row with a nested receipt row and {@code logs} nested log rows.
+   */
+  public Row transactionRow(int logs) {
+    Row[] logRows = new Row[logs];
+    for (int idx = 0; idx < logs; idx++) {
+      String[] log = transferLog();
+      logRows[idx] = row(new String[]{"log_index", "address", "topics", "data"},
+          idx, address(), new String[]{log[0], log[1], log[2]}, log[4]);
+    }
+
+    Row receipt = row(new String[]{"status", "gas_used", "effective_gas_price", "logs"},
+        1, random.nextInt(1_000_000), new BigInteger(40, random).toString(), logRows);
+
+    return row(new String[]{"hash", "block_number", "from_address", "to_address", "value", "input",
+            "receipt"},
+        HexUtil.bytes20xHex(bytes(32)), 18_000_000L + random.nextInt(100_000), address(),
+        address(), new BigInteger(64, random).toString(), transferTrace()[0], receipt);
+  }
+
+  /**
+   * Rows are handed to the UDFs with both named and positioned fields, as Flink converts them.
+   */
+  private static Row row(String[] names, Object... values) {
+    LinkedHashMap<String, Integer> positionByName = new LinkedHashMap<>();
+    for (int idx = 0; idx < names.length; idx++) {
+      positionByName.put(names[idx], idx);
+    }
+    return RowUtils.createRowWithNamedPositions(RowKind.INSERT, values, positionByName);
+  }
+
+  /**
+   * A JSON array of {@code size} addresses, as stored in a STRING column.
+   */
+  public String addressesJson(int size) {
+    StringBuilder json = new StringBuilder("[");
+    for (int idx = 0; idx < size; idx++) {
+      json.append(idx == 0 ? "\"" : ",\"").append(address()).append('"');
+    }
+    return json.append(']').toString();
+  }
+
+  /**
+   * Token amounts in wei, spread over 6 to 30 digits.
+   */
+  public String amount() {
+    return new BigInteger(20 + random.nextInt(80), random).toString();
+  }
+
+  public String address() {
+    return HexUtil.bytes20xHex(bytes(20));
+  }
+
+  private String addressTopic() {
+    return "0x000000000000000000000000" + address().substring(2);
+  }
+
+  private String uint256s(int count) {
+    StringBuilder data = new StringBuilder("0x");
+    for (int idx = 0; idx < count; idx++) {
+      data.append(uint256(new BigInteger(128, random)).substring(2));
+    }
+    return data.toString();
+  }
+
+  private static String uint256(BigInteger value) {
+    return String.format("0x%064x", value);
+  }
+
+  private byte[] bytes(int size) {
+    byte[] bytes = new byte[size];
+    random.nextBytes(bytes);
+    return bytes;
+  }
+}
@@ -0,0 +1,212 @@
+package com.chainbase.common.batch;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Collects items submitted concurrently by several callers and hands them to the handler as one
+ * batch, either when {@code maxBatchSize} items are pending or after {@code lingerMs} elapsed
+ * since the first pending item.
+ *
+ * <p>Callers that block on the result of each item, e.g. a scalar UDF per slot, register with
+ * {@link #addBlockingCaller()}: the batch is then dispatched as soon as every registered caller is
+ * waiting on it, a lone caller doesn't wait for the linger, and a busy one delays the others by the
+ * linger at most.
+ *
+ * <p>At most {@code maxInFlight} items are queued or being dispatched at any time, callers block
+ * in {@link #submit(Object)} once that bound is reached.
+ */
+public class MicroBatcher<I, O> implements AutoCloseable {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(MicroBatcher.class);
+
+  private final Function<List<I>, List<O>> handler;
+
+  private final int maxBatchSize;
+
+  private final long lingerMs;
+
+  private final Semaphore inFlight;
+
+  private final ScheduledExecutorService scheduler;
+
+  private final ExecutorService dispatcher;
+
+  private final Object lock = new Object();
+
+  private List<Pending<I, O>> pending = new ArrayList<>();
+
+  private ScheduledFuture<?> lingerTask;
+
+  private int blockingCallers;
+
+  /**
+   * Items of the pending batch submitted by blocking callers.
+   */
+  private int pendingBlocking;
+
+  public MicroBatcher(String name, int maxBatchSize, long lingerMs, int maxInFlight,
+      Function<List<I>, List<O>> handler) {
+    if (maxBatchSize <= 0 || maxInFlight <= 0) {
+      throw new IllegalArgumentException(
+          String.format("Invalid batcher bounds, maxBatchSize: %d, maxInFlight: %d", maxBatchSize,
+              maxInFlight));
+    }
+    this.handler = handler;
+    this.maxBatchSize = maxBatchSize;
+    this.lingerMs = Math.max(0, lingerMs);
+    this.inFlight = new Semaphore(maxInFlight);
+    this.scheduler = Executors.newSingleThreadScheduledExecutor(daemonThreadFactory(name + "-linger"));
+    int dispatchThreads = Math.max(1, (maxInFlight + maxBatchSize - 1) / maxBatchSize);
+    this.dispatcher = Executors.newFixedThreadPool(dispatchThreads,
+        daemonThreadFactory(name + "-dispatch"));
+  }
+
+  public CompletableFuture<O> submit(I item) {
+    return submit(item, false);
+  }
+
+  /**
+   * Submits the item of a caller about to block on its result, see
+   * {@link #addBlockingCaller()}.
+   */
+  public CompletableFuture<O> submitBlocking(I item) {
+    return submit(item, true);
+  }
+
+  private CompletableFuture<O> submit(I item, boolean blocking) {
+    try {
+      inFlight.acquire();
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException("Interrupted while waiting for an in-flight slot", ex);
+    }
+
+    Pending<I, O> current = new Pending<>(item);
+    List<Pending<I, O>> ready = null;
+    synchronized (lock) {
+      pending.add(current);
+      if (blocking) {
+        pendingBlocking++;
+      }
+      if (pending.size() >= maxBatchSize || blocking && pendingBlocking >= blockingCallers) {
+        ready = drain();
+      } else if (pending.size() == 1) {
+        lingerTask = scheduler.schedule(this::flush, lingerMs, TimeUnit.MILLISECONDS);
+      }
+    }
+
+    if (ready != null) {
+      dispatch(ready);
+    }
+    return current.future;
+  }
+
+  public void addBlockingCaller() {
+    synchronized (lock) {
+      blockingCallers++;
+    }
+  }
+
+  /**
+   * The batch isn't waiting on the caller anymore, it's dispatched if the others wait on it.
+   */
+  public void removeBlockingCaller() {
+    List<Pending<I, O>> ready = null;
+    synchronized (lock) {
+      blockingCallers--;
+      if (pendingBlocking > 0 && pendingBlocking >= blockingCallers) {
+        ready = drain();
+      }
+    }
+    if (ready != null) {
+      dispatch(ready);
+    }
+  }
+
+  public void flush() {
+    List<Pending<I, O>> ready;
+    synchronized (lock) {
+      ready = drain();
+    }
+    if (!ready.isEmpty()) {
+      dispatch(ready);
+    }
+  }
+
+  private List<Pending<I, O>> drain() {
+    List<Pending<I, O>> ready = pending;
+    pending = new ArrayList<>();
+    pendingBlocking = 0;
+    if (lingerTask != null) {
+      lingerTask.cancel(false);
+      lingerTask = null;
+    }
+    return ready;
+  }
+
+  private void dispatch(List<Pending<I, O>> batch) {
+    dispatcher.execute(() -> {
+      try {
+        List<I> items = new ArrayList<>(batch.size());
+        for (Pending<I, O> p : batch) {
+          items.add(p.item);
+        }
+
+        List<O> results = handler.apply(items);
+        if (results.size() != batch.size()) {
+          throw new IllegalStateException(
+              String.format("The batch handler returned %d results for %d items", results.size(),
+                  batch.size()));
+        }
+        for (int idx = 0; idx < batch.size(); idx++) {
+          batch.get(idx).future.complete(results.get(idx));
+        }
+      } catch (Throwable ex) {
+        LOGGER.warn(String.format("Failed to dispatch a batch of %d items", batch.size()), ex);
+        batch.forEach(p -> p.future.completeExceptionally(ex));
+      } finally {
+        inFlight.release(batch.size());
+      }
+    });
+  }
+
+  @Override
+  public void close() {
+    flush();
+    scheduler.shutdown();
+    dispatcher.shutdown();
+  }
+
+  private static ThreadFactory daemonThreadFactory(String prefix) {
+    AtomicInteger counter = new AtomicInteger();
+    return runnable -> {
+      Thread thread = new Thread(runnable, prefix + "-" + counter.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    };
+  }
+
+  private static class Pending<I, O> {
+
+    private final I item;
+
+    private final CompletableFuture<O> future = new CompletableFuture<>();
+
+    private Pending(I item) {
+      this.item = item;
+    }
+  }
+}
@@ -0,0 +1,540 @@
+package com.chainbase.common.cached;
+
+import com.google.common.hash.Hashing;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UTFDataFormatException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.zip.CRC32;
+import javax.annotation.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A restart-surviving string cache stored under a local directory and bounded in bytes, meant to
+ * sit behind {@link LRUCache} for results that almost never change.
+ *
+ * <p>Records are appended to a ring of {@value #SEGMENTS} segment files and found through a
+ * memory-mapped hash index, so neither the keys nor the values are kept on the heap. The oldest
+ * segment is deleted once the ring is full, or as soon as all its records are expired; a hit on
+ * the oldest segment is written again first, so the entries in use survive the rotation. Every
+ * entry carries its own expiry time, so callers can keep negative results for a shorter time than
+ * positive ones.
+ *
+ * <p>Records are written through to their segment on every put, so a cancelled or failed over
+ * job loses none of them. They are checksummed and hold their key, so a torn record or a collision
+ * in the index reads as a miss. One instance is shared per store inside the JVM and reference
+ * counted, the last owner to close it releases the store for the next job. Another process on the
+ * host, e.g. a second TaskManager, opens the next free {@code <name>-<n>} store.
+ */
+public class DiskCache implements Closeable {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(DiskCache.class);
+
+  private static final ConcurrentMap<String, DiskCache> INSTANCES = new ConcurrentHashMap<>();
+
+  static final int SEGMENTS = 16;
+
+  static final long MIN_SEGMENT_BYTES = 64 * 1024;
+
+  private static final int MAX_STORES = 8;
+
+  /**
+   * Index slots are sized for records of this size, smaller records overwrite the oldest ones
+   * sooner.
+   */
+  private static final int AVERAGE_RECORD_BYTES = 128;
+
+  private static final int PROBES = 16;
+
+  private static final int MAGIC = 0x4d434331;
+
+  // Index layout: the header, the max expiry of every segment, then slots of hash, position and
+  // expiry
+  private static final int SLOTS_OFFSET = 4;
+
+  private static final int MAX_BYTES_OFFSET = 8;
+
+  private static final int FIRST_SEQ_OFFSET = 16;
+
+  private static final int WRITE_SEQ_OFFSET = 24;
+
+  private static final int EXPIRIES_OFFSET = 64;
+
+  private static final int HEADER_BYTES = EXPIRIES_OFFSET + SEGMENTS * 8;
+
+  private static final int SLOT_BYTES = 24;
+
+  private static final int RECORD_HEADER_BYTES = 8;
+
+  private final File base;
+
+  private final long maxBytes;
+
+  private final long segmentBytes;
+
+  private final int slots;
+
+  private final Map<Long, FileChannel> segments = new HashMap<>();
+
+  @Nullable
+  private FileLock lock;
+
+  @Nullable
+  private MappedByteBuffer index;
+
+  private long firstSeq;
+
+  private long writeSeq;
+
+  private long writeOffset;
+
+  /**
+   * Owners of the instance, guarded by {@link #INSTANCES}.
+   */
+  private int references = 1;
+
+  /**
+   * The store {@code name} under {@code directory}, created with a bound of {@code maxBytes} on
+   * disk, at least {@value #SEGMENTS} x {@value #MIN_SEGMENT_BYTES} bytes. A store shared with
+   * another function of the JVM keeps the bound it was opened with. Every call must be paired with
+   * a {@link #close()}.
+   */
+  public static DiskCache getInstance(String directory, String name, long maxBytes) {
+    synchronized (INSTANCES) {
+      for (int idx = 0; idx < MAX_STORES; idx++) {
+        File base = new File(directory, idx == 0 ? name : name + "-" + idx);
+        DiskCache cache = INSTANCES.get(base.getAbsolutePath());
+        if (cache != null) {
+          if (cache.maxBytes != Math.max(maxBytes, SEGMENTS * MIN_SEGMENT_BYTES)) {
+            LOGGER.warn(String.format("%s is already open with a bound of %d bytes", base,
+                cache.maxBytes));
+          }
+          cache.references++;
+          return cache;
+        }
+        FileLock lock = tryLock(base);
+        if (lock != null) {
+          cache = new DiskCache(base, maxBytes, lock);
+          if (cache.index != null) {
+            INSTANCES.put(base.getAbsolutePath(), cache);
+          }
+          return cache;
+        }
+        LOGGER.warn(String.format("%s is used by another process, trying the next store", base));
+      }
+    }
+    LOGGER.warn(String.format("Every %s store under %s is in use, caching nothing on disk", name,
+        directory));
+    return new DiskCache(new File(directory, name), maxBytes, null);
+  }
+
+  @Nullable
+  private static FileLock tryLock(File base) {
+    RandomAccessFile lockFile = null;
+    try {
+      Files.createDirectories(base.getAbsoluteFile().getParentFile().toPath());
+      lockFile = new RandomAccessFile(new File(base.getPath() + ".lock"), "rw");
+      FileLock lock = lockFile.getChannel().tryLock();
+      if (lock != null) {
+        return lock;
+      }
+    } catch (IOException | OverlappingFileLockException ex) {
+      // Another class loader of the JVM holds it, or the directory isn't usable
+      LOGGER.debug(String.format("Can't lock %s", base), ex);
+    }
+    if (lockFile != null) {
+      try {
+        lockFile.close();
+      } catch (IOException ignored) {
+        // Nothing was locked
+      }
+    }
+    return null;
+  }
+
+  private DiskCache(File base, long maxBytes, @Nullable FileLock lock) {
+    this.base = base;
+    this.maxBytes = Math.max(maxBytes, SEGMENTS * MIN_SEGMENT_BYTES);
+    this.segmentBytes = this.maxBytes / SEGMENTS;
+    this.slots = (int) Math.min(Math.max(1024, this.maxBytes / AVERAGE_RECORD_BYTES),
+        (Integer.MAX_VALUE - HEADER_BYTES) / SLOT_BYTES);
+    this.lock = lock;
+    if (lock == null) {
+      return;
+    }
+
+    try {
+      open();
+      LOGGER.info(String.format("Opened %s with segments %d to %d", base, firstSeq, writeSeq));
+    } catch (IOException ex) {
+      LOGGER.warn(String.format("Failed to open %s, caching nothing on disk", base), ex);
+      shutdown();
+    }
+  }
+
+  private void open() throws IOException {
+    long indexBytes = HEADER_BYTES + (long) slots * SLOT_BYTES;
+    try (RandomAccessFile indexFile = new RandomAccessFile(base.getPath() + ".idx", "rw")) {
+      boolean resized = indexFile.length() != indexBytes;
+      indexFile.setLength(indexBytes);
+      this.index = indexFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, indexBytes);
+      if (resized || index.getInt(0) != MAGIC || index.getInt(SLOTS_OFFSET) != slots
+          || index.getLong(MAX_BYTES_OFFSET) != maxBytes) {
+        reset();
+      }
+    }
+
+    this.firstSeq = index.getLong(FIRST_SEQ_OFFSET);
+    this.writeSeq = index.getLong(WRITE_SEQ_OFFSET);
+    this.writeOffset = Math.min(segmentFile(writeSeq).length(), segmentBytes);
+    dropExpiredSegments(System.currentTimeMillis());
+  }
+
+  /**
+   * Starts an empty store, the bound changed or the files aren't ours.
+   */
+  private void reset() throws IOException {
+    File[] files = base.getAbsoluteFile().getParentFile().listFiles(
+        (directory, fileName) -> fileName.startsWith(base.getName() + ".")
+            && fileName.endsWith(".seg"));
+    if (files != null) {
+      for (File file : files) {
+        Files.deleteIfExists(file.toPath());
+      }
+    }
+    for (int offset = 0; offset + 8 <= index.capacity(); offset += 8) {
+      index.putLong(offset, 0);
+    }
+    index.putInt(0, MAGIC);
+    index.putInt(SLOTS_OFFSET, slots);
+    index.putLong(MAX_BYTES_OFFSET, maxBytes);
+  }
+
+  @Nullable
+  public synchronized String get(String key) {
+    if (index == null) {
+      return null;
+    }
+    long hash = hash(key);
+    long now = System.currentTimeMillis();
+    int slot = findSlot(hash, now);
+    if (slot < 0) {
+      return null;
+    }
+
+    long position = index.getLong(slotOffset(slot) + 8);
+    long expiresAt = index.getLong(slotOffset(slot) + 16);
+    String[] record = read(position);
+    if (record == null || !record[0].equals(key)) {
+      return null;
+    }
+    // Second chance, the entry is in use so it moves out of the segment dropped next
+    if (position / segmentBytes == firstSeq && firstSeq != writeSeq) {
+      append(hash, key, record[1], expiresAt);
+    }
+    return record[1];
+  }
+
+  public synchronized void put(String key, String value, long ttlMs) {
+    if (index == null) {
+      return;
+    }
+    long hash = hash(key);
+    long expiresAt = System.currentTimeMillis() + ttlMs;
+    if (ttlMs < 0) {
+      int slot = findSlot(hash, Long.MIN_VALUE);
+      if (slot >= 0) {
+        index.putLong(slotOffset(slot), 0);
+      }
+      return;
+    }
+    append(hash, key, value, expiresAt);
+  }
+
+  /**
+   * Bytes of the segments on disk.
+   */
+  public synchronized long getSizeBytes() {
+    if (index == null) {
+      return 0;
+    }
+    long size = 0;
+    for (long seq = firstSeq; seq <= writeSeq; seq++) {
+      size += segmentFile(seq).length();
+    }
+    return size;
+  }
+
+  public long getMaxBytes() {
+    return maxBytes;
+  }
+
+  private void append(long hash, String key, String value, long expiresAt) {
+    byte[] record = encode(key, value, expiresAt);
+    if (record == null || record.length > segmentBytes) {
+      LOGGER.debug(String.format("Skip persisting oversized entry %s", key));
+      return;
+    }
+
+    try {
+      if (writeOffset + record.length > segmentBytes) {
+        roll();
+      }
+      long position = writeSeq * segmentBytes + writeOffset;
+      FileChannel channel = channel(writeSeq);
+      ByteBuffer bytes = ByteBuffer.wrap(record);
+      while (bytes.hasRemaining()) {
+        channel.write(bytes, writeOffset + bytes.position());
+      }
+      writeOffset += record.length;
+
+      int expiryOffset = expiryOffset(writeSeq);
+      index.putLong(expiryOffset, Math.max(index.getLong(expiryOffset), expiresAt));
+      putSlot(hash, position, expiresAt);
+    } catch (IOException ex) {
+      LOGGER.warn(String.format("Failed to write to %s, caching nothing on disk", base), ex);
+      shutdown();
+    }
+  }
+
+  private void roll() throws IOException {
+    writeSeq++;
+    writeOffset = 0;
+    index.putLong(expiryOffset(writeSeq), 0);
+    index.putLong(WRITE_SEQ_OFFSET, writeSeq);
+    while (writeSeq - firstSeq >= SEGMENTS) {
+      dropFirstSegment();
+    }
+    dropExpiredSegments(System.currentTimeMillis());
+  }
+
+  private void dropExpiredSegments(long now) throws IOException {
+    while (firstSeq < writeSeq && index.getLong(expiryOffset(firstSeq)) < now) {
+      dropFirstSegment();
+    }
+  }
+
+  /**
+   * The slots pointing to the segment are dead from now on, they are reused by later writes.
+   */
+  private void dropFirstSegment() throws IOException {
+    FileChannel channel = segments.remove(firstSeq);
+    if (channel != null) {
+      channel.close();
+    }
+    Files.deleteIfExists(segmentFile(firstSeq).toPath());
+    firstSeq++;
+    index.putLong(FIRST_SEQ_OFFSET, firstSeq);
+  }
+
+  /**
+   * The key and value of the record, null when it's gone, torn or not a record.
+   */
+  @Nullable
+  private String[] read(long position) {
+    long seq = position / segmentBytes;
+    long offset = position % segmentBytes;
+    if (seq < firstSeq || seq > writeSeq) {
+      return null;
+    }
+
+    try {
+      ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_BYTES);
+      if (!read(seq, offset, header)) {
+        return null;
+      }
+      int length = header.getInt(0);
+      if (length <= 0 || offset + RECORD_HEADER_BYTES + length > segmentBytes) {
+        return null;
+      }
+      ByteBuffer payload = ByteBuffer.allocate(length);
+      if (!read(seq, offset + RECORD_HEADER_BYTES, payload)) {
+        return null;
+      }
+      CRC32 crc = new CRC32();
+      crc.update(payload.array(), 0, length);
+      if ((int) crc.getValue() != header.getInt(4)) {
+        return null;
+      }
+
+      DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload.array()));
+      in.readLong();
+      return new String[]{in.readUTF(), in.readUTF()};
+    } catch (IOException ex) {
+      LOGGER.debug(String.format("Failed to read %s at %d", base, position), ex);
+      return null;
+    }
+  }
+
+  private boolean read(long seq, long offset, ByteBuffer bytes) throws IOException {
+    if (!segments.containsKey(seq) && !segmentFile(seq).exists()) {
+      return false;
+    }
+    FileChannel channel = channel(seq);
+    while (bytes.hasRemaining()) {
+      if (channel.read(bytes, offset + bytes.position()) < 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private FileChannel channel(long seq) throws IOException {
+    FileChannel channel = segments.get(seq);
+    if (channel == null) {
+      channel = new RandomAccessFile(segmentFile(seq), "rw").getChannel();
+      segments.put(seq, channel);
+    }
+    return channel;
+  }
+
+  private File segmentFile(long seq) {
+    return new File(base.getPath() + "." + seq + ".seg");
+  }
+
+  /**
+   * The slot of a live entry with the hash, -1 when there is none.
+   */
+  private int findSlot(long hash, long now) {
+    int start = (int) Math.floorMod(hash, (long) slots);
+    for (int probe = 0; probe < PROBES; probe++) {
+      int slot = (start + probe) % slots;
+      if (index.getLong(slotOffset(slot)) == hash && isLive(slot, now)) {
+        return slot;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Takes the slot of the same hash, else the first dead one, else the oldest one of the probes.
+   */
+  private void putSlot(long hash, long position, long expiresAt) {
+    int start = (int) Math.floorMod(hash, (long) slots);
+    long now = System.currentTimeMillis();
+    int target = -1;
+    int oldest = start;
+    for (int probe = 0; probe < PROBES; probe++) {
+      int slot = (start + probe) % slots;
+      if (index.getLong(slotOffset(slot)) == hash) {
+        target = slot;
+        break;
+      }
+      if (target < 0 && !isLive(slot, now)) {
+        target = slot;
+      }
+      if (index.getLong(slotOffset(slot) + 8) < index.getLong(slotOffset(oldest) + 8)) {
+        oldest = slot;
+      }
+    }
+    int offset = slotOffset(target < 0 ? oldest : target);
+    index.putLong(offset, hash);
+    index.putLong(offset + 8, position);
+    index.putLong(offset + 16, expiresAt);
+  }
+
+  private boolean isLive(int slot, long now) {
+    int offset = slotOffset(slot);
+    return index.getLong(offset) != 0 && index.getLong(offset + 8) >= firstSeq * segmentBytes
+        && index.getLong(offset + 16) >= now;
+  }
+
+  private static int slotOffset(int slot) {
+    return HEADER_BYTES + slot * SLOT_BYTES;
+  }
+
+  private static int expiryOffset(long seq) {
+    return EXPIRIES_OFFSET + (int) (seq % SEGMENTS) * 8;
+  }
+
+  /**
+   * Never 0, which marks an empty slot.
+   */
+  private static long hash(String key) {
+    long hash = Hashing.murmur3_128().hashString(key, StandardCharsets.UTF_8).asLong();
+    return hash == 0 ? 1 : hash;
+  }
+
+  /**
+   * The length and checksum of the payload, then the payload, null when the key or value is too
+   * large to store.
+   */
+  @Nullable
+  private static byte[] encode(String key, String value, long expiresAt) {
+    try {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream(
+          RECORD_HEADER_BYTES + 16 + key.length() + value.length());
+      DataOutputStream record = new DataOutputStream(bytes);
+      record.writeLong(0);
+      record.writeLong(expiresAt);
+      record.writeUTF(key);
+      record.writeUTF(value);
+
+      byte[] encoded = bytes.toByteArray();
+      int length = encoded.length - RECORD_HEADER_BYTES;
+      CRC32 crc = new CRC32();
+      crc.update(encoded, RECORD_HEADER_BYTES, length);
+      ByteBuffer.wrap(encoded).putInt(length).putInt((int) crc.getValue());
+      return encoded;
+    } catch (UTFDataFormatException ex) {
+      return null;
+    } catch (IOException ex) {
+      throw new IllegalStateException(ex);
+    }
+  }
+
+  /**
+   * Gives back the reference of an owner, the last one closes the store and unlocks it.
+   */
+  @Override
+  public void close() {
+    synchronized (INSTANCES) {
+      if (--references > 0) {
+        return;
+      }
+      shutdown();
+    }
+  }
+
+  private synchronized void shutdown() {
+    if (index != null) {
+      index.force();
+    }
+    index = null;
+    for (FileChannel channel : segments.values()) {
+      try {
+        channel.close();
+      } catch (IOException ignored) {
+        // Read only from now on
+      }
+    }
+    segments.clear();
+    try {
+      if (lock != null) {
+        lock.release();
+        lock.channel().close();
+      }
+    } catch (IOException ignored) {
+      // The lock goes away with the process anyway
+    }
+    lock = null;
+    INSTANCES.remove(base.getAbsolutePath(), this);
+  }
+}
@@ -1,33 +1,182 @@
 package com.chainbase.common.cached;
 
-import com.google.common.cache.CacheBuilder;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Policy;
 import java.io.Serializable;
-import java.util.concurrent.ConcurrentMap;
+import java.math.BigInteger;
+import java.util.OptionalLong;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
+import org.web3j.abi.datatypes.Type;
 
+/**
+ * A bounded in-memory cache backed by Caffeine: the W-TinyLFU admission keeps the frequently read
+ * entries of a large, skewed key space, e.g. the hot tokens among millions of contracts, where a
+ * plain LRU would let one-off keys flush them.
+ *
+ * <p>The bound is an entry count, or a memory budget when {@link Options#maximumWeightBytes} is
+ * set, entries being weighed by {@link #estimateBytes(Object)}. Hits, misses and evictions are
+ * recorded for the UDF metrics.
+ */
 public class LRUCache<K, V> implements Serializable {
 
-  private static final long serialVersionUID = -9221578054952959859L;
-  private final ConcurrentMap<K, V> cached;
+  private static final long serialVersionUID = 4381305620197584106L;
+
+  private static final int OBJECT_BYTES = 40;
+
+  private static final int ARRAY_BYTES = 16;
+
+  private final Cache<K, V> cached;
 
   public LRUCache(long maxSize) {
-    this.cached = CacheBuilder.newBuilder().maximumSize(maxSize).<K, V>build().asMap();
+    this(new Options().maximumSize(maxSize));
+  }
+
+  public LRUCache(Options options) {
+    Caffeine<Object, Object> builder = Caffeine.newBuilder()
+        // Evictions run on the writing thread instead of the common pool shared by the TaskManager
+        .executor(Runnable::run)
+        .recordStats();
+    if (options.maximumWeightBytes > 0) {
+      builder.maximumWeight(options.maximumWeightBytes)
+          .weigher((key, value) -> (int) Math.min(Integer.MAX_VALUE,
+              estimateBytes(key) + estimateBytes(value)));
+    } else {
+      builder.maximumSize(options.maximumSize);
+    }
+    if (options.expireAfterWriteMs > 0) {
+      builder.expireAfterWrite(options.expireAfterWriteMs, TimeUnit.MILLISECONDS);
+    }
+    if (options.expireAfterAccessMs > 0) {
+      builder.expireAfterAccess(options.expireAfterAccessMs, TimeUnit.MILLISECONDS);
+    }
+    this.cached = builder.build();
   }
 
   public void put(K key, V value) {
     cached.put(key, value);
   }
 
+  /**
+   * A null value returned by the callback isn't cached.
+   */
   public V computeIfAbsent(K key, Function<? super K, ? extends V> callback) {
-    return cached.computeIfAbsent(key, callback);
+    return cached.get(key, callback);
   }
 
 
   public V get(K key) {
-    return cached.get(key);
+    return cached.getIfPresent(key);
   }
 
   public boolean containsKey(K key) {
-    return cached.containsKey(key);
+    return cached.asMap().containsKey(key);
+  }
+
+  public long size() {
+    return cached.estimatedSize();
+  }
+
+  /**
+   * The estimated bytes of the entries when the cache is bounded by memory, the entry count
+   * otherwise.
+   */
+  public long getWeightedSize() {
+    OptionalLong weightedSize = cached.policy().eviction()
+        .map(Policy.Eviction::weightedSize)
+        .orElse(OptionalLong.empty());
+    return weightedSize.orElse(size());
+  }
+
+  public long getHitCount() {
+    return cached.stats().hitCount();
+  }
+
+  public long getMissCount() {
+    return cached.stats().missCount();
+  }
+
+  public long getEvictionCount() {
+    return cached.stats().evictionCount();
+  }
+
+  public double getHitRate() {
+    return cached.stats().hitRate();
+  }
+
+  /**
+   * A rough size of the cached keys and values: strings, byte arrays, big integers, web3j ABI
+   * types by their value, and arrays or iterables of those, e.g. a headlong tuple, are measured,
+   * any other object counts a flat {@value #OBJECT_BYTES} bytes.
+   */
+  public static long estimateBytes(Object value) {
+    if (value == null) {
+      return 0;
+    }
+    if (value instanceof String) {
+      return OBJECT_BYTES + 2L * ((String) value).length();
+    }
+    if (value instanceof byte[]) {
+      return ARRAY_BYTES + ((byte[]) value).length;
+    }
+    if (value instanceof BigInteger) {
+      return OBJECT_BYTES + ARRAY_BYTES + ((BigInteger) value).bitLength() / 8 + 1;
+    }
+    if (value instanceof Type) {
+      return OBJECT_BYTES + estimateBytes(((Type<?>) value).getValue());
+    }
+    if (value instanceof Object[]) {
+      long bytes = ARRAY_BYTES;
+      for (Object item : (Object[]) value) {
+        bytes += 8 + estimateBytes(item);
+      }
+      return bytes;
+    }
+    if (value instanceof Iterable) {
+      long bytes = OBJECT_BYTES;
+      for (Object item : (Iterable<?>) value) {
+        bytes += 8 + estimateBytes(item);
+      }
+      return bytes;
+    }
+    return OBJECT_BYTES;
+  }
+
+  /**
+   * Bounds and expiry of a cache, 0 disables an expiry.
+   */
+  public static class Options {
+
+    private long maximumSize = 1024;
+
+    private long maximumWeightBytes;
+
+    private long expireAfterWriteMs;
+
+    private long expireAfterAccessMs;
+
+    public Options maximumSize(long maximumSize) {
+      this.maximumSize = maximumSize;
+      return this;
+    }
+
+    /**
+     * Bounds the cache by the estimated bytes of its entries instead of their count.
+     */
+    public Options maximumWeightBytes(long maximumWeightBytes) {
+      this.maximumWeightBytes = maximumWeightBytes;
+      return this;
+    }
+
+    public Options expireAfterWriteMs(long expireAfterWriteMs) {
+      this.expireAfterWriteMs = expireAfterWriteMs;
+      return this;
+    }
+
+    public Options expireAfterAccessMs(long expireAfterAccessMs) {
+      this.expireAfterAccessMs = expireAfterAccessMs;
+      return this;
+    }
   }
 }
@@ -0,0 +1,96 @@
+package com.chainbase.common.collection;
+
+/**
+ * Open-addressing set of primitive ints, no boxing on insert or lookup. Not thread-safe.
+ */
+public final class IntHashSet {
+
+  private static final int EMPTY = 0;
+
+  private int[] slots;
+
+  private int mask;
+
+  private int size;
+
+  /**
+   * 0 marks the empty slots, so its membership is kept aside.
+   */
+  private boolean containsEmpty;
+
+  public IntHashSet(int expectedSize) {
+    int capacity = Integer.highestOneBit(Math.max(4, expectedSize * 2 - 1)) << 1;
+    this.slots = new int[capacity];
+    this.mask = capacity - 1;
+  }
+
+  public static IntHashSet of(int... values) {
+    IntHashSet set = new IntHashSet(values.length);
+    for (int value : values) {
+      set.add(value);
+    }
+    return set;
+  }
+
+  public boolean add(int value) {
+    if (value == EMPTY) {
+      boolean added = !containsEmpty;
+      containsEmpty = true;
+      size += added ? 1 : 0;
+      return added;
+    }
+
+    int idx = mix(value) & mask;
+    while (slots[idx] != EMPTY) {
+      if (slots[idx] == value) {
+        return false;
+      }
+      idx = (idx + 1) & mask;
+    }
+    slots[idx] = value;
+    size++;
+    if (size * 2 > slots.length) {
+      rehash(slots.length << 1);
+    }
+    return true;
+  }
+
+  public boolean contains(int value) {
+    if (value == EMPTY) {
+      return containsEmpty;
+    }
+
+    int idx = mix(value) & mask;
+    while (slots[idx] != EMPTY) {
+      if (slots[idx] == value) {
+        return true;
+      }
+      idx = (idx + 1) & mask;
+    }
+    return false;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  private void rehash(int capacity) {
+    int[] previous = slots;
+    slots = new int[capacity];
+    mask = capacity - 1;
+    for (int value : previous) {
+      if (value != EMPTY) {
+        int idx = mix(value) & mask;
+        while (slots[idx] != EMPTY) {
+          idx = (idx + 1) & mask;
+        }
+        slots[idx] = value;
+      }
+    }
+  }
+
+  private static int mix(int value) {
+    int h = value * 0x9E3779B9;
+    return h ^ (h >>> 16);
+  }
+}
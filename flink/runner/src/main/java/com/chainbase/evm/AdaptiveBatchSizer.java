@@ -0,0 +1,92 @@
+package com.chainbase.evm;
+
+/**
+ * Size of the next JSON-RPC batch of a client, tuned from the batches answered so far:
+ * <ul>
+ *   <li>grows by 10% while full batches come back under the latency and response size
+ *   targets</li>
+ *   <li>shrinks by a quarter when a batch is above one of them</li>
+ *   <li>halves when a batch times out, and when the provider rejects it as too large, which also
+ *   caps the size below the rejected one</li>
+ *   <li>drops to the calls answered when the provider answers the first calls of a batch only,
+ *   without capping the size</li>
+ * </ul>
+ *
+ * <p>A cap learnt from a rejection is raised by 10% again, up to the configured max, after
+ * {@value #RECOVERY_BATCHES} batches answered at the cap, so a transient rejection doesn't shrink
+ * the batches for good.
+ */
+public class AdaptiveBatchSizer {
+
+  static final int RECOVERY_BATCHES = 20;
+
+  private final long targetLatencyMs;
+
+  private final long targetResponseBytes;
+
+  private final int configuredMaxSize;
+
+  private int maxSize;
+
+  private int size;
+
+  private int answeredAtMaxSize;
+
+  public AdaptiveBatchSizer(int initialSize, int maxSize, long targetLatencyMs,
+      long targetResponseBytes) {
+    if (initialSize <= 0 || maxSize < initialSize) {
+      throw new IllegalArgumentException(
+          String.format("Invalid batch sizes, initialSize: %d, maxSize: %d", initialSize,
+              maxSize));
+    }
+    this.size = initialSize;
+    this.configuredMaxSize = maxSize;
+    this.maxSize = maxSize;
+    this.targetLatencyMs = targetLatencyMs;
+    this.targetResponseBytes = targetResponseBytes;
+  }
+
+  public synchronized int getSize() {
+    return size;
+  }
+
+  public synchronized int getMaxSize() {
+    return maxSize;
+  }
+
+  /**
+   * @param latencyMs time the node took to answer, waits for the rate limiter excluded
+   */
+  public synchronized void onAnswered(int batchSize, long latencyMs, long responseBytes) {
+    if (latencyMs > targetLatencyMs || responseBytes > targetResponseBytes) {
+      size = Math.max(1, Math.min(size, batchSize * 3 / 4));
+      answeredAtMaxSize = 0;
+    } else if (batchSize >= size) {
+      if (size >= maxSize && maxSize < configuredMaxSize
+          && ++answeredAtMaxSize >= RECOVERY_BATCHES) {
+        maxSize = Math.min(configuredMaxSize, maxSize + Math.max(1, maxSize / 10));
+        answeredAtMaxSize = 0;
+      }
+      size = Math.min(maxSize, size + Math.max(1, size / 10));
+    }
+  }
+
+  /**
+   * The provider answered the first {@code answered} calls only, e.g. past its response size limit.
+   */
+  public synchronized void onPartiallyAnswered(int batchSize, int answered) {
+    size = Math.max(1, Math.min(size, Math.min(batchSize - 1, answered)));
+    answeredAtMaxSize = 0;
+  }
+
+  public synchronized void onTimeout(int batchSize) {
+    size = Math.max(1, Math.min(size, batchSize / 2));
+    answeredAtMaxSize = 0;
+  }
+
+  public synchronized void onRejected(int batchSize) {
+    maxSize = Math.max(1, Math.min(maxSize, batchSize - 1));
+    size = Math.max(1, Math.min(size, batchSize / 2));
+    answeredAtMaxSize = 0;
+  }
+}
@@ -0,0 +1,173 @@
+package com.chainbase.evm;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import org.web3j.protocol.ObjectMapperFactory;
+import org.web3j.protocol.core.Request;
+import org.web3j.protocol.core.Response;
+import org.web3j.protocol.exceptions.ClientConnectionException;
+
+/**
+ * Sends JSON-RPC requests without holding a thread per request: calls are enqueued on the OkHttp
+ * dispatcher, which caps the requests in flight per endpoint and queues the others, and failed
+ * attempts are routed again by the {@link EndpointPool} from its timer, after a jittered
+ * exponential backoff, instead of sleeping on the caller.
+ *
+ * <p>The futures complete on the OkHttp threads, exceptionally with the last {@link IOException}
+ * or {@link ClientConnectionException} once the attempts are exhausted.
+ */
+class AsyncRpcTransport {
+
+  private final EndpointPool endpointPool;
+
+  private final RpcResultCache resultCache;
+
+  private final ObjectMapper objectMapper = ObjectMapperFactory.getObjectMapper();
+
+  private final int retryNumber;
+
+  private final int retryIntervalMs;
+
+  AsyncRpcTransport(EndpointPool endpointPool, RpcResultCache resultCache, int retryNumber,
+      int retryIntervalMs) {
+    this.endpointPool = endpointPool;
+    this.resultCache = resultCache;
+    this.retryNumber = Math.max(1, retryNumber);
+    this.retryIntervalMs = retryIntervalMs;
+  }
+
+  <T extends Response<?>> CompletableFuture<T> send(Request<?, T> request) {
+    T cached = resultCache.get(request);
+    if (cached != null) {
+      return CompletableFuture.completedFuture(cached);
+    }
+    return post(request, (ex) -> false, (body) -> {
+      T response = objectMapper.readValue(body, request.getResponseType());
+      resultCache.put(request, response);
+      return response;
+    });
+  }
+
+  /**
+   * The responses are matched to the requests by id, an entry is null when the node omitted it.
+   * Only the requests missing from the {@link RpcResultCache} are sent.
+   */
+  CompletableFuture<List<Response<?>>> sendBatch(
+      List<Request<?, ? extends Response<?>>> requests) {
+    return sendBatch(requests, (ex) -> false);
+  }
+
+  /**
+   * @param notRetried failures the batch fails with at once, e.g. a rejection for its size
+   */
+  CompletableFuture<List<Response<?>>> sendBatch(
+      List<Request<?, ? extends Response<?>>> requests, Predicate<Exception> notRetried) {
+    List<Response<?>> responses = new ArrayList<>(Collections.nCopies(requests.size(), null));
+    List<Request<?, ? extends Response<?>>> sent = new ArrayList<>(requests.size());
+    List<Integer> sentIndices = new ArrayList<>(requests.size());
+    for (int idx = 0; idx < requests.size(); idx++) {
+      Response<?> cached = resultCache.get(requests.get(idx));
+      if (cached != null) {
+        responses.set(idx, cached);
+      } else {
+        sent.add(requests.get(idx));
+        sentIndices.add(idx);
+      }
+    }
+    if (sent.isEmpty()) {
+      return CompletableFuture.completedFuture(responses);
+    }
+
+    return post(sent, notRetried, (body) -> {
+      List<Response<?>> received = readBatchResponses(objectMapper, objectMapper.readTree(body),
+          sent);
+      for (int idx = 0; idx < received.size(); idx++) {
+        resultCache.put(sent.get(idx), received.get(idx));
+        responses.set(sentIndices.get(idx), received.get(idx));
+      }
+      return responses;
+    });
+  }
+
+  /**
+   * The responses of a batch in request order, matched by id since nodes may answer out of order.
+   * A whole-batch error, e.g. a batch too large for the node, is thrown.
+   */
+  static List<Response<?>> readBatchResponses(ObjectMapper objectMapper, JsonNode nodes,
+      List<Request<?, ? extends Response<?>>> requests) throws IOException {
+    if (!nodes.isArray()) {
+      throw new ClientConnectionException("Invalid batch response received: " + nodes);
+    }
+    Map<Long, Integer> indexesById = new HashMap<>(requests.size() * 2);
+    for (int idx = 0; idx < requests.size(); idx++) {
+      indexesById.put(requests.get(idx).getId(), idx);
+    }
+
+    List<Response<?>> responses = new ArrayList<>(Collections.nCopies(requests.size(), null));
+    for (JsonNode node : nodes) {
+      Integer idx = indexesById.get(node.path("id").asLong(-1));
+      if (idx != null) {
+        responses.set(idx, objectMapper.treeToValue(node, requests.get(idx).getResponseType()));
+      }
+    }
+    return responses;
+  }
+
+  private <R> CompletableFuture<R> post(Object payload, Predicate<Exception> notRetried,
+      BodyParser<R> parser) {
+    CompletableFuture<R> future = new CompletableFuture<>();
+    try {
+      attempt(objectMapper.writeValueAsBytes(payload), notRetried, parser, future, 1,
+          System.nanoTime());
+    } catch (IOException ex) {
+      future.completeExceptionally(ex);
+    }
+    return future;
+  }
+
+  private <R> void attempt(byte[] payload, Predicate<Exception> notRetried, BodyParser<R> parser,
+      CompletableFuture<R> future, int attempt, long startedAt) {
+    endpointPool.post(payload).whenComplete((body, failure) -> {
+      Throwable cause = failure instanceof CompletionException ? failure.getCause() : failure;
+      if (cause == null) {
+        try {
+          future.complete(parser.parse(body));
+          return;
+        } catch (IOException | ClientConnectionException ex) {
+          cause = ex;
+        } catch (RuntimeException ex) {
+          future.completeExceptionally(ex);
+          return;
+        }
+      }
+      long backoff = RpcRateLimiter.backoffMs(retryIntervalMs, attempt);
+      if (attempt >= retryNumber
+          || !(cause instanceof IOException || cause instanceof ClientConnectionException)
+          || notRetried.test((Exception) cause)
+          || !RpcRateLimiter.isWithinRetryBudget(startedAt, backoff)) {
+        future.completeExceptionally(cause);
+        return;
+      }
+      endpointPool.onRetry();
+      endpointPool.getScheduler().schedule(
+          () -> attempt(payload, notRetried, parser, future, attempt + 1, startedAt), backoff,
+          TimeUnit.MILLISECONDS);
+    });
+  }
+
+  @FunctionalInterface
+  private interface BodyParser<R> {
+
+    R parse(byte[] body) throws IOException;
+  }
+}
@@ -1,23 +1,25 @@
 package com.chainbase.evm;
 
+import com.chainbase.common.cached.LRUCache;
+import com.chainbase.evm.Web3jClient.CallFunctionParameter;
 import com.chainbase.evm.Web3jClient.MultiCallParameter;
 import com.chainbase.evm.disassembler.Disassembler;
-import com.chainbase.evm.disassembler.Opcode;
-import com.chainbase.evm.disassembler.Opcodes;
+import com.chainbase.evm.selector.SelectorRegistry;
 import com.esaulpaugh.headlong.abi.Address;
-import com.esaulpaugh.headlong.abi.Function;
-import com.google.common.annotations.VisibleForTesting;
+import com.esaulpaugh.headlong.abi.Tuple;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.hash.HashCode;
 import java.io.IOException;
 import java.math.BigInteger;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
-import java.util.stream.Collectors;
 import javax.annotation.Nullable;
 import lombok.AllArgsConstructor;
 import lombok.Getter;
@@ -28,6 +30,11 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.web3j.protocol.core.DefaultBlockParameter;
 import org.web3j.protocol.core.DefaultBlockParameterName;
+import org.web3j.protocol.core.Request;
+import org.web3j.protocol.core.Response;
+import org.web3j.protocol.core.methods.response.EthCall;
+import org.web3j.protocol.core.methods.response.EthGetCode;
+import org.web3j.protocol.core.methods.response.EthGetStorageAt;
 import org.web3j.utils.Strings;
 import lombok.var;
 
@@ -73,10 +80,42 @@ public class ContractDiscriminator {
       // eip-3561 eip3561.proxy.next_implementation
       new String[]{EIP_3561_PROXY_NEXT_IMPL_CODE, EIP_3561_PROXY_NEXT_IMPL_CODE});
 
+  /**
+   * Every storage slot a proxy level may read, when its code isn't known yet.
+   */
+  private static final List<String> PROXY_SLOTS = ImmutableList.<String>builder()
+      .addAll(FLAG_HASH_POSITION_HASH_PAIRS.stream().map(pair -> pair[1]).iterator())
+      .add(ZEPPELINOS_BEACON_PROXY_SUB_PROXY_STORAGE_ADDRESS)
+      .build();
+
+  /**
+   * How the implementation of a proxy level is found, which decides what an empty code means.
+   */
+  private enum ProxyKind {
+    IMPLEMENTATION_FUNCTION, EIP_1167, MINIMAL_PROXY, STORAGE_SLOT, BEACON
+  }
+
+  /**
+   * Proxy patterns read from the bytecode, keyed by the runtime code hash and shared by every
+   * discriminator of the JVM.
+   */
+  private static final LRUCache<HashCode, ProxyPattern> PROXY_PATTERNS = new LRUCache<>(20_000);
+
   private final Web3jClient client;
 
+  private final SelectorRegistry selectorRegistry;
+
   public ContractDiscriminator(Web3jClient client) {
+    this(client, SelectorRegistry.defaults());
+  }
+
+  /**
+   * The registry must keep the ERC20, ERC721 and ERC1155 definitions, extend the defaults with
+   * {@link SelectorRegistry#with}.
+   */
+  public ContractDiscriminator(Web3jClient client, SelectorRegistry selectorRegistry) {
     this.client = client;
+    this.selectorRegistry = selectorRegistry;
   }
 
   public Optional<String> getContractCode(String contractAddress) throws IOException {
@@ -100,13 +139,13 @@ public class ContractDiscriminator {
       String[] implAddressAndCode = implAddressAndCodeOptional.get();
       String proxyAddress = implAddressAndCode[0];
       String proxyCode = implAddressAndCode[1];
-      ContractInfo contractInfo = ContractDiscriminator.getContractInfoWithContractType(proxyCode);
+      ContractInfo contractInfo = getContractInfoWithContractType(proxyCode);
       contractInfo.setProxy(true);
       contractInfo.setImplAddress(proxyAddress.toLowerCase());
       contractInfo.setImplCode(proxyCode.toLowerCase());
       return contractInfo;
     } else {
-      ContractInfo contractInfo = ContractDiscriminator.getContractInfoWithContractType(byteCode);
+      ContractInfo contractInfo = getContractInfoWithContractType(byteCode);
       contractInfo.setProxy(false);
       return contractInfo;
     }
@@ -157,7 +196,7 @@ public class ContractDiscriminator {
               "totalSupply"));
     }
 
-    List<Object> results = this.client.batchCall(multiCallParameters,
+    List<Object> results = this.client.multiCallWithFallback(multiCallParameters,
         DefaultBlockParameterName.LATEST);
 
     int startAtIdx = 0;
@@ -191,123 +230,177 @@ public class ContractDiscriminator {
 
   /**
    * Retrieve the actual contract address behind the proxy contract.
+   *
+   * <p>Every level is one JSON-RPC batch: the code of the implementation found by the previous
+   * level, its implementation() call and its candidate storage slots, all of them read
+   * speculatively since the code isn't known before the batch returns.
    */
   private Optional<String[]> getImplAddressAndCode(String proxyAddress, String proxyOpCode,
       DefaultBlockParameter blockNumber, int depth) {
-    // To prevent stack overflow
-    if (depth > 3) {
-      LOGGER.warn("Terminate the recursion if the depth exceeds three layers.");
-      return Optional.of(new String[]{proxyAddress, proxyOpCode});
-    }
-
-    // 1). Call the implementation function directly
-    MultiCallParameter callImplFunctionParameter = new MultiCallParameter(proxyAddress,
-        Collections.emptyList(), "implementation", "implementation()", "(address)", null);
-    List<Object> implementationResult = client.batchCall(Arrays.asList(callImplFunctionParameter),
-        blockNumber);
-    if (implementationResult.get(0) != null) {
-      String implAddress = ((Address) implementationResult.get(0)).toString();
-
-      if (EvmUtil.isBlockHoleAddress(implAddress)) {
-        return Optional.of(new String[]{proxyAddress, proxyOpCode});
+    String address = proxyAddress;
+    String code = proxyOpCode;
+    String previousAddress = null;
+    String previousCode = null;
+    ProxyKind hop = null;
+
+    for (int level = depth; ; level++) {
+      // To prevent stack overflow
+      boolean probing = level <= 3;
+      List<String> slots = code == null ? PROXY_SLOTS : getProxyPattern(code).getSlots();
+      CallFunctionParameter implementationCall = new CallFunctionParameter(
+          new MultiCallParameter(address, Collections.emptyList(), "implementation",
+              "implementation()", "(address)", null));
+      implementationCall.setBlockNumber(blockNumber);
+
+      List<Request<?, ? extends Response<?>>> requests = new ArrayList<>();
+      if (code == null) {
+        requests.add(client.ethGetCodeRequest(address, LATEST_BLOCK_NUMBER));
       }
-      Optional<String> implCode = client.getContractCode(implAddress, LATEST_BLOCK_NUMBER);
-      if (!implCode.isPresent()) {
-        return Optional.empty();
-      }
-      // bsc:0xecA88125a5ADbe82614ffC12D0DB554E2e2867C8 EIP-897
-      // 这种类似代理合约在递归调用implementation()之后会返回0x,如果不兼容处理，将返回空地址，导致后续使用合约地址获取token name,symbols等信息失败
-      if (implCode.get().equals("0x")) {
-        return Optional.of(new String[]{proxyAddress, proxyOpCode});
+      if (probing) {
+        requests.add(client.ethCallRequest(implementationCall));
+        for (String slot : slots) {
+          requests.add(client.ethGetStorageAtRequest(address, slot, LATEST_BLOCK_NUMBER));
+        }
       }
+      List<Response<?>> responses = client.batchSend(requests);
+      int responseIdx = 0;
 
-      return getImplAddressAndCode(implAddress, implCode.get(), blockNumber, depth + 1);
-    }
-
-    // 2). Utilizing a standardized proxy protocol to obtain the implementation slot
-
-    // eip-1167
-    // etc: 0xde400a2ed5a5f649a8cff6445a24ab934ff32b2c
-    if (proxyOpCode.startsWith(EIP_1167_CODE) && proxyOpCode.length() >= 80) {
-      String implAddress = HexUtil.to0xHex(proxyOpCode.substring(40, 80));
+      if (code == null) {
+        EthGetCode codeResponse = (EthGetCode) responses.get(responseIdx++);
+        code = codeResponse == null ? null : codeResponse.getCode();
+        if (code == null) {
+          return Optional.empty();
+        }
+        // bsc:0xecA88125a5ADbe82614ffC12D0DB554E2e2867C8 EIP-897
+        // 这种类似代理合约在递归调用implementation()之后会返回0x,如果不兼容处理，将返回空地址，导致后续使用合约地址获取token name,symbols等信息失败
+        if (code.equals("0x") && hop == ProxyKind.IMPLEMENTATION_FUNCTION) {
+          return Optional.of(new String[]{previousAddress, previousCode});
+        }
+        if (code.equals("0x") && hop == ProxyKind.BEACON) {
+          return level - 1 != 0
+              ? Optional.of(new String[]{previousAddress, previousCode})
+              : Optional.empty();
+        }
+      }
 
-      Optional<String> implCode = client.getContractCode(implAddress, LATEST_BLOCK_NUMBER);
-      if (!implCode.isPresent()) {
-        return Optional.empty();
+      if (!probing) {
+        LOGGER.warn("Terminate the recursion if the depth exceeds three layers.");
+        return Optional.of(new String[]{address, code});
       }
 
-      return Optional.empty();
-    }
+      Optional<Tuple> implementation = client.decodeCallResult(implementationCall,
+          (EthCall) responses.get(responseIdx++));
+      Map<String, String> storage = new HashMap<>();
+      for (String slot : slots) {
+        EthGetStorageAt storageResponse = (EthGetStorageAt) responses.get(responseIdx++);
+        storage.put(slot, storageResponse == null ? null : storageResponse.getData());
+      }
 
-    // eip1167 minimal proxies
-    // etc: 0x363d3d373d3d3d363d735af43d82803e903d91602b57fd5bf3
-    if (proxyOpCode.startsWith(EIP_1167_MINIMAL_PROXY_PREFIX) && proxyOpCode.endsWith(
-        EIP_1167_MINIMAL_PROXY_SUFFIX) && proxyOpCode.length() >= 80) {
-      String implAddress = HexUtil.to0xHex(
-          proxyOpCode.substring(EIP_1167_MINIMAL_PROXY_PREFIX.length(),
-              proxyOpCode.indexOf(EIP_1167_MINIMAL_PROXY_SUFFIX)));
-      Optional<String> implCode = client.getContractCode(implAddress, LATEST_BLOCK_NUMBER);
-      if (implCode.isPresent()) {
-        return getImplAddressAndCode(implAddress, implCode.get(), blockNumber, depth + 1);
-      } else {
+      String implAddress;
+      ProxyPattern pattern = getProxyPattern(code);
+      if (implementation.isPresent()) {
+        // 1). Call the implementation function directly
+        implAddress = ((Address) implementation.get().get(0)).toString();
+        if (EvmUtil.isBlockHoleAddress(implAddress)) {
+          return Optional.of(new String[]{address, code});
+        }
+        hop = ProxyKind.IMPLEMENTATION_FUNCTION;
+      } else if (pattern.getKind() == null) {
+        // 3). If it is not a first level proxy,
+        // then the current address is the final result instead of a proxy address.
+        // Otherwise, no proxied address was found.
+        return level != 0 ? Optional.of(new String[]{address, code}) : Optional.empty();
+      } else if (pattern.getKind() == ProxyKind.EIP_1167) {
+        // 2). Utilizing a standardized proxy protocol, the implementation isn't followed
         return Optional.empty();
+      } else if (pattern.getKind() == ProxyKind.MINIMAL_PROXY) {
+        implAddress = pattern.getImplAddress();
+        hop = ProxyKind.MINIMAL_PROXY;
+      } else {
+        String implStorageCode = storage.get(pattern.getSlots().get(0));
+        if (implStorageCode == null) {
+          return Optional.empty();
+        }
+        implAddress = HexUtil.to0xHex(implStorageCode.substring(implStorageCode.length() - 40));
+        // The beacon slot has no black hole check
+        if (pattern.getKind() == ProxyKind.STORAGE_SLOT
+            && EvmUtil.isBlockHoleAddress(implAddress)) {
+          return Optional.of(new String[]{address, code});
+        }
+        hop = pattern.getKind();
       }
+
+      previousAddress = address;
+      previousCode = code;
+      address = implAddress;
+      code = null;
     }
+  }
 
-    for (String[] flagAndPosition : FLAG_HASH_POSITION_HASH_PAIRS) {
-      if (proxyOpCode.contains(flagAndPosition[0])) {
-        Optional<String> implStorageCode = client.getStorageAt(proxyAddress, flagAndPosition[1],
-            LATEST_BLOCK_NUMBER);
-        if (!implStorageCode.isPresent()) {
-          return Optional.empty();
-        }
+  private static ProxyPattern getProxyPattern(String code) {
+    return PROXY_PATTERNS.computeIfAbsent(EvmUtil.hashRuntimeCode(code),
+        (innerKey) -> ProxyPattern.of(code));
+  }
 
-        var implAddress = HexUtil.to0xHex(
-            implStorageCode.get().substring(implStorageCode.get().length() - 40));
+  /**
+   * The proxy protocol recognized from the bytecode alone, the implementation() call aside.
+   */
+  @Getter
+  @AllArgsConstructor
+  private static class ProxyPattern {
 
-        if (EvmUtil.isBlockHoleAddress(implAddress)) {
-          return Optional.of(new String[]{proxyAddress, proxyOpCode});
-        }
+    private static final ProxyPattern NONE = new ProxyPattern(null, null,
+        Collections.emptyList());
 
-        var implCode = client.getContractCode(implAddress, LATEST_BLOCK_NUMBER);
-        if (!implCode.isPresent()) {
-          return Optional.empty();
-        }
+    /**
+     * Null when the code doesn't match any protocol.
+     */
+    @Nullable
+    private final ProxyKind kind;
 
-        return getImplAddressAndCode(implAddress, implCode.get(), blockNumber, depth + 1);
+    /**
+     * Embedded in the code of the minimal proxies.
+     */
+    @Nullable
+    private final String implAddress;
+
+    /**
+     * The storage slot holding the implementation, if any.
+     */
+    private final List<String> slots;
+
+    static ProxyPattern of(String code) {
+      // eip-1167
+      // etc: 0xde400a2ed5a5f649a8cff6445a24ab934ff32b2c
+      if (code.startsWith(EIP_1167_CODE) && code.length() >= 80) {
+        return new ProxyPattern(ProxyKind.EIP_1167, null, Collections.emptyList());
       }
-    }
 
-    // Zeppelions UpgradeableBeacon
-    // etc: 0x0890b2d8b6F938CF93b8b243AB8f0589031e158f
-    // Placing it at the end, this rule can potentially result in incorrect matches
-    if (proxyOpCode.contains(ZEPPELINOS_BEACON_PROXY_SIGNATURE)) {
-      var implStorageCode = client.getStorageAt(proxyAddress,
-          ZEPPELINOS_BEACON_PROXY_SUB_PROXY_STORAGE_ADDRESS, LATEST_BLOCK_NUMBER);
-      if (!implStorageCode.isPresent()) {
-        return Optional.empty();
+      // eip1167 minimal proxies
+      // etc: 0x363d3d373d3d3d363d735af43d82803e903d91602b57fd5bf3
+      if (code.startsWith(EIP_1167_MINIMAL_PROXY_PREFIX) && code.endsWith(
+          EIP_1167_MINIMAL_PROXY_SUFFIX) && code.length() >= 80) {
+        return new ProxyPattern(ProxyKind.MINIMAL_PROXY,
+            HexUtil.to0xHex(code.substring(EIP_1167_MINIMAL_PROXY_PREFIX.length(),
+                code.indexOf(EIP_1167_MINIMAL_PROXY_SUFFIX))),
+            Collections.emptyList());
       }
 
-      var implAddress = HexUtil.to0xHex(
-          implStorageCode.get().substring(implStorageCode.get().length() - 40));
-
-      var implCode = client.getContractCode(implAddress, LATEST_BLOCK_NUMBER);
-      if (!implCode.isPresent()) {
-        return Optional.empty();
+      for (String[] flagAndPosition : FLAG_HASH_POSITION_HASH_PAIRS) {
+        if (code.contains(flagAndPosition[0])) {
+          return new ProxyPattern(ProxyKind.STORAGE_SLOT, null,
+              Collections.singletonList(flagAndPosition[1]));
+        }
       }
 
-      if (!implCode.get().equals("0x")) {
-        return getImplAddressAndCode(implAddress, implCode.get(), blockNumber, depth + 1);
+      // Zeppelions UpgradeableBeacon
+      // etc: 0x0890b2d8b6F938CF93b8b243AB8f0589031e158f
+      // Placing it at the end, this rule can potentially result in incorrect matches
+      if (code.contains(ZEPPELINOS_BEACON_PROXY_SIGNATURE)) {
+        return new ProxyPattern(ProxyKind.BEACON, null,
+            Collections.singletonList(ZEPPELINOS_BEACON_PROXY_SUB_PROXY_STORAGE_ADDRESS));
       }
-    }
-
-    // 3). If it is not a first level proxy,
-    // then the current address is the final result instead of a proxy address.
-    // Otherwise, no proxied address was found.
-    if (depth != 0) {
-      return Optional.of(new String[]{proxyAddress, proxyOpCode});
-    } else {
-      return Optional.empty();
+      return NONE;
     }
   }
 
@@ -352,6 +445,12 @@ public class ContractDiscriminator {
 
     @Nullable
     private String implCode;
+
+    /**
+     * Names of all the registry interfaces implemented, see {@link SelectorRegistry}.
+     */
+    @Nullable
+    private List<String> interfaces;
   }
 
   @Getter
@@ -377,56 +476,15 @@ public class ContractDiscriminator {
     }
   }
 
-  @VisibleForTesting
-  static boolean isErc20(List<String> sighashes) {
-    return (isImplements(sighashes, "approve(address,uint256)") || isImplements(sighashes,
-        "totalSupply()")) && isImplements(sighashes, "transfer(address,uint256)")
-        // To avoid misidentifying ERC721 contracts as ERC20 ones, it is recommended to exclude all
-        // ERC721 contracts as well.
-        && !isImplements(sighashes, "setApprovalForAll(address,bool)");
-  }
-
-  @VisibleForTesting
-  static boolean isErc721(List<String> sighashes) {
-    return isImplements(sighashes, "setApprovalForAll(address,bool)");
-  }
-
-  @VisibleForTesting
-  static boolean isErc1155(List<String> sighashes) {
-    return isImplements(sighashes, "safeTransferFrom(address,address,uint256,uint256,bytes)")
-        && isImplements(sighashes,
-        "safeBatchTransferFrom(address,address,uint256[],uint256[],bytes)");
-  }
-
-  private static boolean isImplements(List<String> sighashes, String functionSignature) {
-    return sighashes.contains(new Function(functionSignature).selectorHex());
-  }
-
-  private static ContractInfo getContractInfoWithContractType(String byteCode) {
-    List<Opcode> opcodes = new Disassembler(byteCode).getOpcodes();
+  private ContractInfo getContractInfoWithContractType(String byteCode) {
+    long matched = selectorRegistry.match(EvmUtil.hashRuntimeCode(byteCode),
+        () -> new Disassembler(byteCode).getPush4Selectors());
 
-    List<String> sighashes = opcodes.stream()
-        .filter(opcode -> opcode.getOpcode().equals(Opcodes.PUSH4)).map(Opcode::getHexParameter)
-        .collect(Collectors.toList());
-
-    return getContractInfoWithContractType(sighashes);
-  }
-
-  private static ContractInfo getContractInfoWithContractType(List<String> sighashes) {
     ContractInfo contractInfo = new ContractInfo();
-
-    if (isErc20(sighashes) && !isErc721(sighashes)) {
-      contractInfo.setErc20(true);
-    }
-
-    if (isErc721(sighashes)) {
-      contractInfo.setErc721(true);
-    }
-
-    if (isErc1155(sighashes)) {
-      contractInfo.setErc1155(true);
-    }
-
+    contractInfo.setErc20(selectorRegistry.isMatched(matched, SelectorRegistry.ERC20));
+    contractInfo.setErc721(selectorRegistry.isMatched(matched, SelectorRegistry.ERC721));
+    contractInfo.setErc1155(selectorRegistry.isMatched(matched, SelectorRegistry.ERC1155));
+    contractInfo.setInterfaces(selectorRegistry.getNames(matched));
     return contractInfo;
   }
 
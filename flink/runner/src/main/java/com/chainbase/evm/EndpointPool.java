@@ -0,0 +1,663 @@
+package com.chainbase.evm;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.MissingNode;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.primitives.Bytes;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongConsumer;
+import java.util.stream.Collectors;
+import javax.annotation.Nullable;
+import lombok.Getter;
+import lombok.Setter;
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.OkHttpClient;
+import okhttp3.RequestBody;
+import okhttp3.ResponseBody;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.web3j.protocol.ObjectMapperFactory;
+import org.web3j.protocol.exceptions.ClientConnectionException;
+import org.web3j.protocol.http.HttpService;
+
+/**
+ * Routes the JSON-RPC payloads of one chain over several endpoints:
+ * <ul>
+ *   <li>the endpoint with the lowest EWMA latency plus rate-limit wait, weighted by its requests in
+ *   flight and its EWMA error rate, is picked, endpoints not measured yet first</li>
+ *   <li>an endpoint failing {@value #EJECT_AFTER_FAILURES} times in a row is ejected for
+ *   {@code ejectMs}, unless all of them are</li>
+ *   <li>idempotent reads still pending after the {@code hedgePercentile} latency of the pool,
+ *   tracked apart for single requests and batches, are sent again to the next best endpoint, the
+ *   first answer wins and the other call is cancelled</li>
+ *   <li>every request waits for the {@link RpcRateLimiter} of its endpoint, rate-limit answers
+ *   fail with a {@link RPCRateLimitException} and slow the limiter down</li>
+ * </ul>
+ *
+ * <p>Each {@link #post(byte[])} is a single attempt, retries are left to the callers so they are
+ * routed again. Attempts and retries are reported to the {@link RpcMetricsListener}s of the pool.
+ */
+public class EndpointPool {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(EndpointPool.class);
+
+  private static final double EWMA_ALPHA = 0.2;
+
+  private static final int EJECT_AFTER_FAILURES = 3;
+
+  public static final long DEFAULT_EJECT_MS = 30_000;
+
+  public static final double DEFAULT_HEDGE_PERCENTILE = 0.95;
+
+  private static final int LATENCY_WINDOW_SIZE = 256;
+
+  /**
+   * No hedging before the pool has enough samples to estimate its latency percentile.
+   */
+  private static final int MIN_LATENCY_SAMPLES = 32;
+
+  /**
+   * Reads hedged whatever the block, a contract code only changes on selfdestruct.
+   */
+  private static final Set<String> HEDGEABLE_METHODS = ImmutableSet.of("eth_getCode",
+      "eth_chainId");
+
+  /**
+   * Reads hedged at a fixed block only, by index of their block parameter.
+   */
+  private static final Map<String, Integer> FIXED_BLOCK_METHODS = ImmutableMap.of(
+      "eth_call", 1,
+      "eth_getStorageAt", 2,
+      "eth_getBalance", 1);
+
+  private static final ObjectMapper OBJECT_MAPPER = ObjectMapperFactory.getObjectMapper();
+
+  /**
+   * JSON-RPC error codes of the providers for rate limits: EIP-1474 "limit exceeded" and the
+   * HTTP-like ones.
+   */
+  private static final Set<Integer> RATE_LIMIT_ERROR_CODES = ImmutableSet.of(-32029, 429);
+
+  /**
+   * EIP-1474 "limit exceeded", a rate limit for some providers and a too large query for others.
+   */
+  private static final int LIMIT_EXCEEDED_ERROR_CODE = -32005;
+
+  private static final byte[] ERROR_FIELD = "\"error\"".getBytes(StandardCharsets.UTF_8);
+
+  private static final long SCHEDULER_KEEP_ALIVE_SECONDS = 60;
+
+  @Getter
+  private final List<Endpoint> endpoints;
+
+  @Getter
+  private final OkHttpClient httpClient;
+
+  private final LatencyWindow latencies = new LatencyWindow(LATENCY_WINDOW_SIZE);
+
+  /**
+   * A batch takes longer than a single request, it would set the hedge delay of single requests
+   * too late, and the other way round.
+   */
+  private final LatencyWindow batchLatencies = new LatencyWindow(LATENCY_WINDOW_SIZE);
+
+  private final List<RpcMetricsListener> listeners = new CopyOnWriteArrayList<>();
+
+  /**
+   * Delays the throttled requests, the hedges and the retries of the async API. Its thread is
+   * started on demand and stops when idle or once the pool is closed.
+   */
+  private final ScheduledThreadPoolExecutor scheduler;
+
+  /**
+   * 0 disables hedging.
+   */
+  @Getter
+  @Setter
+  private volatile double hedgePercentile = DEFAULT_HEDGE_PERCENTILE;
+
+  @Getter
+  @Setter
+  private volatile long ejectMs = DEFAULT_EJECT_MS;
+
+  public EndpointPool(List<String> urls, OkHttpClient httpClient) {
+    if (urls.isEmpty()) {
+      throw new IllegalArgumentException("At least one endpoint is required");
+    }
+    this.endpoints = Collections.unmodifiableList(
+        urls.stream().map(Endpoint::new).collect(Collectors.toList()));
+    this.httpClient = httpClient;
+    this.scheduler = new ScheduledThreadPoolExecutor(1, (runnable) -> {
+      Thread thread = new Thread(runnable, "web3j-endpoint-pool");
+      thread.setDaemon(true);
+      return thread;
+    });
+    scheduler.setKeepAliveTime(SCHEDULER_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS);
+    scheduler.allowCoreThreadTimeOut(true);
+  }
+
+  ScheduledExecutorService getScheduler() {
+    return scheduler;
+  }
+
+  /**
+   * Stops the timer thread once the delayed requests are sent, the http client is left open as it
+   * may be shared.
+   */
+  public void close() {
+    scheduler.shutdown();
+  }
+
+  public void addListener(RpcMetricsListener listener) {
+    listeners.add(listener);
+  }
+
+  public void removeListener(RpcMetricsListener listener) {
+    listeners.remove(listener);
+  }
+
+  /**
+   * Reported by the callers before they send a failed request again.
+   */
+  void onRetry() {
+    for (RpcMetricsListener listener : listeners) {
+      listener.onRetry();
+    }
+  }
+
+  /**
+   * Several endpoints of the same chain are separated by commas.
+   */
+  public static List<String> parseUrls(String nodeURLs) {
+    return Arrays.stream(nodeURLs.split(","))
+        .map(String::trim)
+        .filter(url -> !url.isEmpty())
+        .collect(Collectors.toList());
+  }
+
+  /**
+   * Completes with the response body, or exceptionally with an {@link IOException} or a
+   * {@link ClientConnectionException} for non 2xx statuses.
+   */
+  public CompletableFuture<byte[]> post(byte[] payload) {
+    return post(payload, null);
+  }
+
+  /**
+   * Like {@link #post(byte[])}, {@code onLatency} receiving the nanoseconds the answering node took
+   * before the body completes, waits for the rate limiter and the hedge delay excluded.
+   */
+  public CompletableFuture<byte[]> post(byte[] payload, @Nullable LongConsumer onLatency) {
+    RequestSummary summary = RequestSummary.of(payload);
+    LatencyWindow window = summary.batch ? batchLatencies : latencies;
+    Exchange exchange = new Exchange(payload, summary.method, summary.calls, window, onLatency);
+    Endpoint primary = choose(null);
+    exchange.send(primary);
+
+    long hedgeDelayNanos = getHedgeDelayNanos(window);
+    if (hedgeDelayNanos >= 0) {
+      ScheduledFuture<?> hedge = scheduler.schedule(() -> {
+        // Only the requests still pending by then are parsed to tell whether they are reads
+        if (exchange.result.isDone() || !isHedgeable(payload)) {
+          return;
+        }
+        Endpoint secondary = choose(primary);
+        if (secondary != null && !exchange.result.isDone()) {
+          exchange.send(secondary);
+        }
+      }, hedgeDelayNanos, TimeUnit.NANOSECONDS);
+      exchange.result.whenComplete((body, ex) -> hedge.cancel(false));
+    }
+    return exchange.result;
+  }
+
+  private long getHedgeDelayNanos(LatencyWindow window) {
+    if (endpoints.size() < 2 || hedgePercentile <= 0) {
+      return -1;
+    }
+    return window.percentile(hedgePercentile, MIN_LATENCY_SAMPLES);
+  }
+
+  /**
+   * Falls back to the endpoint back the soonest when all of them are ejected, unless an endpoint
+   * is excluded, i.e. for a hedge.
+   */
+  @Nullable
+  private Endpoint choose(@Nullable Endpoint excluded) {
+    long now = System.nanoTime();
+    Endpoint best = null;
+    double bestScore = Double.MAX_VALUE;
+    Endpoint soonest = null;
+    for (Endpoint endpoint : endpoints) {
+      if (endpoint == excluded) {
+        continue;
+      }
+      if (endpoint.isEjected(now)) {
+        if (soonest == null || endpoint.ejectedUntilNanos - soonest.ejectedUntilNanos < 0) {
+          soonest = endpoint;
+        }
+        continue;
+      }
+      double score = endpoint.score();
+      if (score < bestScore) {
+        best = endpoint;
+        bestScore = score;
+      }
+    }
+    return best != null || excluded != null ? best : soonest;
+  }
+
+  private static JsonNode readTree(byte[] payload) {
+    try {
+      return OBJECT_MAPPER.readTree(payload);
+    } catch (IOException ex) {
+      return MissingNode.getInstance();
+    }
+  }
+
+  static boolean isHedgeable(byte[] payload) {
+    JsonNode request = readTree(payload);
+    if (request.isArray()) {
+      for (JsonNode item : request) {
+        if (!isHedgeableCall(item)) {
+          return false;
+        }
+      }
+      return request.size() > 0;
+    }
+    return isHedgeableCall(request);
+  }
+
+  private static boolean isHedgeableCall(JsonNode request) {
+    String method = request.path("method").asText();
+    if (HEDGEABLE_METHODS.contains(method)) {
+      return true;
+    }
+    Integer blockIdx = FIXED_BLOCK_METHODS.get(method);
+    if (blockIdx == null) {
+      return false;
+    }
+    // A block number, or an EIP-1898 block hash / number object
+    JsonNode block = request.path("params").path(blockIdx);
+    return block.isObject() || (block.isTextual() && block.asText().startsWith("0x"));
+  }
+
+  /**
+   * Scans the body for an error first, a successful batch isn't parsed twice. Codes used for more
+   * than throttling, e.g. -32005 for a {@code eth_getLogs} range returning too many results, only
+   * count when the message is about the request rate.
+   */
+  static boolean isRateLimited(byte[] body) {
+    if (Bytes.indexOf(body, ERROR_FIELD) < 0) {
+      return false;
+    }
+    JsonNode response = readTree(body);
+    for (JsonNode item : response.isArray() ? response : Collections.singletonList(response)) {
+      JsonNode error = item.path("error");
+      if (error.isMissingNode() || error.isNull()) {
+        continue;
+      }
+      String message = error.path("message").asText().toLowerCase();
+      int code = error.path("code").asInt();
+      if (RATE_LIMIT_ERROR_CODES.contains(code) || message.contains("rate limit")
+          || message.contains("too many requests")
+          || (code == LIMIT_EXCEEDED_ERROR_CODE && (message.contains("rate")
+          || message.contains("request count") || message.contains("throttl")))) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * The calls of one {@link #post(byte[])}: the primary one and its hedge, if any.
+   */
+  private class Exchange {
+
+    private final byte[] payload;
+
+    private final String method;
+
+    private final int weight;
+
+    private final LatencyWindow window;
+
+    @Nullable
+    private final LongConsumer onLatency;
+
+    private final CompletableFuture<byte[]> result = new CompletableFuture<>();
+
+    private final List<Call> calls = new ArrayList<>(2);
+
+    private int pending;
+
+    private Exchange(byte[] payload, String method, int weight, LatencyWindow window,
+        @Nullable LongConsumer onLatency) {
+      this.payload = payload;
+      this.method = method;
+      this.weight = weight;
+      this.window = window;
+      this.onLatency = onLatency;
+    }
+
+    private void send(Endpoint endpoint) {
+      okhttp3.Request httpRequest = new okhttp3.Request.Builder()
+          .url(endpoint.url)
+          .post(RequestBody.create(payload, HttpService.JSON_MEDIA_TYPE))
+          .build();
+      Call call = httpClient.newCall(httpRequest);
+      synchronized (this) {
+        calls.add(call);
+        pending++;
+      }
+
+      endpoint.onStart();
+      long delayNanos = endpoint.limiter.reserve(weight);
+      if (delayNanos > 0) {
+        scheduler.schedule(() -> enqueue(endpoint, call), delayNanos, TimeUnit.NANOSECONDS);
+      } else {
+        enqueue(endpoint, call);
+      }
+    }
+
+    private void enqueue(Endpoint endpoint, Call call) {
+      long start = System.nanoTime();
+      call.enqueue(new Callback() {
+        @Override
+        public void onFailure(Call call, IOException ex) {
+          // The loser of a hedge is cancelled, which isn't a failure of its endpoint
+          if (call.isCanceled() && result.isDone()) {
+            endpoint.onRelease();
+            onAttemptFailure(ex);
+            return;
+          }
+          onEndpointFailure(endpoint, ex);
+        }
+
+        @Override
+        public void onResponse(Call call, okhttp3.Response response) {
+          try (ResponseBody body = response.body()) {
+            if (response.code() == 429) {
+              onRateLimited(endpoint, "HTTP 429");
+              return;
+            }
+            if (!response.isSuccessful() || body == null) {
+              onEndpointFailure(endpoint, new ClientConnectionException(
+                  String.format("Invalid response received: %d; %s", response.code(),
+                      body == null ? "" : body.string())));
+              return;
+            }
+            byte[] bytes = body.bytes();
+            if (isRateLimited(bytes)) {
+              onRateLimited(endpoint, new String(bytes, StandardCharsets.UTF_8));
+              return;
+            }
+            long latency = System.nanoTime() - start;
+            endpoint.onSuccess(latency);
+            window.record(latency);
+            for (RpcMetricsListener listener : listeners) {
+              listener.onResponse(method, weight, latency);
+            }
+            onAttemptSuccess(bytes, latency);
+          } catch (IOException ex) {
+            onEndpointFailure(endpoint, ex);
+          }
+        }
+      });
+    }
+
+    private void onEndpointFailure(Endpoint endpoint, Exception ex) {
+      endpoint.onFailure(System.nanoTime(), TimeUnit.MILLISECONDS.toNanos(ejectMs));
+      for (RpcMetricsListener listener : listeners) {
+        listener.onFailure(method);
+      }
+      onAttemptFailure(ex);
+    }
+
+    private void onRateLimited(Endpoint endpoint, String reason) {
+      endpoint.onRelease();
+      endpoint.limiter.onRateLimited();
+      for (RpcMetricsListener listener : listeners) {
+        listener.onRateLimited(method);
+      }
+      onAttemptFailure(new RPCRateLimitException(
+          String.format("Rate limited by %s: %s", endpoint.url, reason)));
+    }
+
+    private void onAttemptSuccess(byte[] body, long latencyNanos) {
+      if (onLatency != null && !result.isDone()) {
+        onLatency.accept(latencyNanos);
+      }
+      if (result.complete(body)) {
+        List<Call> others;
+        synchronized (this) {
+          others = new ArrayList<>(calls);
+        }
+        others.forEach(Call::cancel);
+      }
+    }
+
+    private void onAttemptFailure(Exception ex) {
+      boolean last;
+      synchronized (this) {
+        last = --pending == 0;
+      }
+      // A pending hedge answers for the failed call
+      if (last) {
+        result.completeExceptionally(ex);
+      } else {
+        LOGGER.debug("Request to a node failed, waiting for its hedge", ex);
+      }
+    }
+  }
+
+  /**
+   * Health of one endpoint, updated by the responses it returns.
+   */
+  public static final class Endpoint {
+
+    @Getter
+    private final String url;
+
+    /**
+     * Shared with the endpoints of other pools sending to the same URL.
+     */
+    @Getter
+    private final RpcRateLimiter limiter;
+
+    private double latencyNanos;
+
+    private double errorRate;
+
+    private int consecutiveFailures;
+
+    private volatile long ejectedUntilNanos;
+
+    private int inFlight;
+
+    private Endpoint(String url) {
+      this.url = url;
+      this.limiter = RpcRateLimiter.forEndpoint(url);
+      this.ejectedUntilNanos = System.nanoTime();
+    }
+
+    public synchronized double getLatencyMs() {
+      return latencyNanos / 1_000_000d;
+    }
+
+    public synchronized double getErrorRate() {
+      return errorRate;
+    }
+
+    /**
+     * Requests sent, or waiting for the rate limiter, and not answered yet.
+     */
+    public synchronized int getInFlight() {
+      return inFlight;
+    }
+
+    public boolean isEjected() {
+      return isEjected(System.nanoTime());
+    }
+
+    private boolean isEjected(long now) {
+      return ejectedUntilNanos - now > 0;
+    }
+
+    private double score() {
+      long waitNanos = limiter.getWaitNanos();
+      synchronized (this) {
+        return (latencyNanos + waitNanos + 1) * (inFlight + 1) / Math.max(0.05, 1 - errorRate);
+      }
+    }
+
+    private synchronized void onStart() {
+      inFlight++;
+    }
+
+    private synchronized void onRelease() {
+      inFlight--;
+    }
+
+    private synchronized void onSuccess(long latency) {
+      inFlight--;
+      latencyNanos = latencyNanos == 0 ? latency
+          : EWMA_ALPHA * latency + (1 - EWMA_ALPHA) * latencyNanos;
+      errorRate = (1 - EWMA_ALPHA) * errorRate;
+      consecutiveFailures = 0;
+    }
+
+    private synchronized void onFailure(long now, long ejectNanos) {
+      inFlight--;
+      errorRate = EWMA_ALPHA + (1 - EWMA_ALPHA) * errorRate;
+      if (++consecutiveFailures >= EJECT_AFTER_FAILURES) {
+        LOGGER.warn(String.format("Ejecting %s for %d ms after %d consecutive failures", url,
+            TimeUnit.NANOSECONDS.toMillis(ejectNanos), consecutiveFailures));
+        ejectedUntilNanos = now + ejectNanos;
+        // It is probed again once back, a single failure ejects it anew
+        consecutiveFailures = EJECT_AFTER_FAILURES - 1;
+      }
+    }
+  }
+
+  /**
+   * The method and the number of calls of a payload, read without building its tree, the params
+   * of the calls are skipped.
+   */
+  private static final class RequestSummary {
+
+    private static final RequestSummary UNKNOWN = new RequestSummary("", 1, false);
+
+    private final String method;
+
+    private final int calls;
+
+    private final boolean batch;
+
+    private RequestSummary(String method, int calls, boolean batch) {
+      this.method = method;
+      this.calls = calls;
+      this.batch = batch;
+    }
+
+    private static RequestSummary of(byte[] payload) {
+      try (JsonParser parser = OBJECT_MAPPER.getFactory().createParser(payload)) {
+        JsonToken token = parser.nextToken();
+        if (token == JsonToken.START_OBJECT) {
+          return new RequestSummary(readMethod(parser), 1, false);
+        }
+        if (token != JsonToken.START_ARRAY) {
+          return UNKNOWN;
+        }
+        String method = null;
+        int calls = 0;
+        while ((token = parser.nextToken()) != JsonToken.END_ARRAY && token != null) {
+          if (token != JsonToken.START_OBJECT) {
+            parser.skipChildren();
+            continue;
+          }
+          String itemMethod = readMethod(parser);
+          method = method == null || method.equals(itemMethod) ? itemMethod
+              : RpcMetricsListener.BATCH_METHOD;
+          calls++;
+        }
+        return new RequestSummary(method == null ? RpcMetricsListener.BATCH_METHOD : method,
+            Math.max(1, calls), true);
+      } catch (IOException ex) {
+        return UNKNOWN;
+      }
+    }
+
+    private static String readMethod(JsonParser parser) throws IOException {
+      String method = "";
+      while (parser.nextToken() == JsonToken.FIELD_NAME) {
+        String field = parser.getCurrentName();
+        if (parser.nextToken() == JsonToken.VALUE_STRING && "method".equals(field)) {
+          method = parser.getText();
+        } else {
+          parser.skipChildren();
+        }
+      }
+      return method;
+    }
+  }
+
+  /**
+   * The latest latencies of the pool, the percentile is computed again every
+   * {@code size / 8} samples.
+   */
+  private static final class LatencyWindow {
+
+    private final long[] samples;
+
+    private long count;
+
+    private long cachedPercentile = -1;
+
+    private double cachedFor;
+
+    private long cachedAt;
+
+    private LatencyWindow(int size) {
+      this.samples = new long[size];
+    }
+
+    private synchronized void record(long latency) {
+      samples[(int) (count++ % samples.length)] = latency;
+    }
+
+    private synchronized long percentile(double percentile, int minSamples) {
+      if (count < minSamples) {
+        return -1;
+      }
+      if (cachedPercentile < 0 || cachedFor != percentile
+          || count - cachedAt >= samples.length / 8) {
+        long[] sorted = Arrays.copyOf(samples, (int) Math.min(count, samples.length));
+        Arrays.sort(sorted);
+        cachedPercentile = sorted[(int) Math.min(sorted.length - 1,
+            Math.floor(percentile * sorted.length))];
+        cachedFor = percentile;
+        cachedAt = count;
+      }
+      return cachedPercentile;
+    }
+  }
+}
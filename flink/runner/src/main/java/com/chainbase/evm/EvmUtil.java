@@ -7,6 +7,7 @@ import com.esaulpaugh.headlong.abi.Event;
 import com.esaulpaugh.headlong.abi.Tuple;
 import com.esaulpaugh.headlong.abi.TupleType;
 import com.esaulpaugh.headlong.util.FastHex;
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ArrayNode;
@@ -17,13 +18,17 @@ import com.fasterxml.jackson.databind.node.NullNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.fasterxml.jackson.databind.node.TextNode;
 import com.google.common.base.Strings;
+import com.google.common.hash.HashCode;
 import com.joemelsha.crypto.hash.Keccak;
+import java.io.IOException;
 import java.lang.reflect.Constructor;
 import java.math.BigDecimal;
 import java.math.BigInteger;
 import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 import javax.annotation.Nullable;
@@ -59,12 +64,8 @@ public final class EvmUtil {
       @Nullable ABIType<?>[] elementTypes,
       @Nullable String[] elementNames) {
     try {
-      Class<?> clazz = Class.forName("com.esaulpaugh.headlong.abi.TupleType");
-      Constructor<?> constructor = clazz.getDeclaredConstructors()[0];
-      constructor.setAccessible(true);
-
       return (TupleType)
-          constructor.newInstance(
+          TupleTypeConstructorHolder.CONSTRUCTOR.newInstance(
               canonicalType == null ? tupleType.getCanonicalType() : canonicalType,
               dynamic == null ? tupleType.isDynamic() : dynamic,
               elementTypes == null ? getElementTypes(tupleType) : elementTypes,
@@ -74,6 +75,21 @@ public final class EvmUtil {
     }
   }
 
+  /**
+   * Resolved on first use and kept, the reflective lookup and {@code setAccessible} are much more
+   * expensive than the instantiation itself.
+   */
+  private static final class TupleTypeConstructorHolder {
+
+    private static final Constructor<?> CONSTRUCTOR = resolve();
+
+    private static Constructor<?> resolve() {
+      Constructor<?> constructor = TupleType.class.getDeclaredConstructors()[0];
+      constructor.setAccessible(true);
+      return constructor;
+    }
+  }
+
   private static String reviseTupleTypeName(
       Integer idx, @Nullable String name, @Nullable String prefix) {
     String revisedName;
@@ -143,6 +159,33 @@ public final class EvmUtil {
     return String.format("0x%s", hexString);
   }
 
+  /**
+   * Keccak-256 of the runtime code without its trailing solc CBOR metadata, so that contracts
+   * compiled from the same source but with different metadata hash share a key.
+   */
+  public static HashCode hashRuntimeCode(String hexCode) {
+    byte[] code = HexUtil.decodeHex(hexCode);
+    Keccak keccak = new Keccak(256);
+    keccak.update(code, 0, codeLengthWithoutMetadata(code));
+    return HashCode.fromBytes(keccak.digest());
+  }
+
+  /**
+   * The metadata is a CBOR map followed by its 2-byte big-endian length.
+   */
+  private static int codeLengthWithoutMetadata(byte[] code) {
+    int length = code.length;
+    if (length < 2) {
+      return length;
+    }
+    int metadataLength = (((code[length - 2] & 0xff) << 8) | (code[length - 1] & 0xff)) + 2;
+    if (metadataLength > 2 && metadataLength <= length
+        && (code[length - metadataLength] & 0xe0) == 0xa0) {
+      return length - metadataLength;
+    }
+    return length;
+  }
+
   public static JsonNode transformAtomicValue2ObjectNode(ABIType<?> atype, Object value) {
     if (!value.getClass().equals(atype.clazz())) {
       throw new IllegalArgumentException(
@@ -345,6 +388,197 @@ public final class EvmUtil {
     return objectNode;
   }
 
+  /**
+   * Streaming counterpart of {@link #transformTupleValue2ObjectNode}: writes the elements of the
+   * tuple as fields of the object currently open in the generator, producing the same JSON without
+   * building the intermediate tree. Names must be distinct, see {@link #hasDistinctElementNames}.
+   */
+  public static void writeTupleFields(JsonGenerator gen, TupleType atype, Tuple tuple)
+      throws IOException {
+    for (int idx = 0; idx < atype.size(); idx++) {
+      gen.writeFieldName(atype.getElementName(idx));
+
+      // If the input in the trace is null or the output in trace is null,
+      // we will return an empty Tuple
+      if (tuple.size() <= idx) {
+        gen.writeNull();
+      } else {
+        writeElementValue(gen, atype.get(idx), tuple.get(idx));
+      }
+    }
+  }
+
+  public static void writeTupleValue(JsonGenerator gen, TupleType atype, Tuple tuple)
+      throws IOException {
+    gen.writeStartObject();
+    writeTupleFields(gen, atype, tuple);
+    gen.writeEndObject();
+  }
+
+  private static void writeElementValue(JsonGenerator gen, ABIType<?> elementType,
+      Object elementValue) throws IOException {
+    switch (elementType.typeCode()) {
+      case ABIType.TYPE_CODE_TUPLE:
+        writeTupleValue(gen, (TupleType) elementType, (Tuple) elementValue);
+        break;
+
+      case ABIType.TYPE_CODE_ARRAY:
+        writeArrayValue(gen, (ArrayType<ABIType<?>, ?>) elementType, elementValue, false);
+        break;
+
+      default:
+        writeAtomicValue(gen, elementType, elementValue);
+    }
+  }
+
+  public static void writeAtomicValue(JsonGenerator gen, ABIType<?> atype, Object value)
+      throws IOException {
+    if (!value.getClass().equals(atype.clazz())) {
+      throw new IllegalArgumentException(
+          String.format(
+              "The class of %s is not equals the internal class in the %s", value, atype));
+    }
+
+    if (value instanceof Byte) {
+      gen.writeNumber((Byte) value);
+    } else if (value instanceof Integer) {
+      gen.writeNumber((Integer) value);
+    } else if (value instanceof Long) {
+      gen.writeNumber((Long) value);
+    } else if (value instanceof BigInteger || value instanceof BigDecimal) {
+      gen.writeString(value.toString());
+    } else if (value instanceof Address) {
+      gen.writeString(value.toString().toLowerCase());
+    } else if (value instanceof Boolean) {
+      gen.writeBoolean((Boolean) value);
+    } else {
+      throw new IllegalArgumentException(
+          String.format("Can't transform %s(%s) to json value", value, atype));
+    }
+  }
+
+  private static void writeArrayValue(JsonGenerator gen, ArrayType<ABIType<?>, ?> atype,
+      Object value, boolean tuple2Array) throws IOException {
+    ABIType<?> elementType = atype.getElementType();
+    int typeCode = elementType.typeCode();
+    String canonicalType = atype.getCanonicalType();
+
+    if (value instanceof int[] && typeCode == ABIType.TYPE_CODE_INT) {
+      gen.writeStartArray();
+      for (int item : (int[]) value) {
+        gen.writeNumber(item);
+      }
+      gen.writeEndArray();
+      return;
+    }
+
+    if (value instanceof long[] && typeCode == ABIType.TYPE_CODE_LONG) {
+      gen.writeStartArray();
+      for (long item : (long[]) value) {
+        gen.writeNumber(item);
+      }
+      gen.writeEndArray();
+      return;
+    }
+
+    if (value instanceof boolean[] && typeCode == ABIType.TYPE_CODE_BOOLEAN) {
+      gen.writeStartArray();
+      for (boolean item : (boolean[]) value) {
+        gen.writeBoolean(item);
+      }
+      gen.writeEndArray();
+      return;
+    }
+
+    if (value instanceof Object[]
+        && (typeCode == ABIType.TYPE_CODE_BIG_INTEGER
+        || typeCode == ABIType.TYPE_CODE_BIG_DECIMAL
+        || typeCode == ABIType.TYPE_CODE_ADDRESS)) {
+      gen.writeStartArray();
+      for (Object item : (Object[]) value) {
+        writeAtomicValue(gen, elementType, item);
+      }
+      gen.writeEndArray();
+      return;
+    }
+
+    if (typeCode == ABIType.TYPE_CODE_BYTE) {
+      if (value instanceof String && canonicalType.equals("string")) {
+        gen.writeString((String) value);
+        return;
+      }
+      if (value instanceof byte[]) {
+        if (canonicalType.equals("string")) {
+          gen.writeString(new String((byte[]) value, StandardCharsets.UTF_8));
+          return;
+        }
+        if (canonicalType.equals("function") || canonicalType.startsWith("bytes")) {
+          gen.writeString(HexUtil.bytes20xHex((byte[]) value));
+          return;
+        }
+      }
+    }
+
+    if (value instanceof Object[] && typeCode == ABIType.TYPE_CODE_ARRAY) {
+      gen.writeStartArray();
+      for (Object item : (Object[]) value) {
+        writeArrayValue(gen, (ArrayType<ABIType<?>, ?>) elementType, item, false);
+      }
+      gen.writeEndArray();
+      return;
+    }
+
+    if (value instanceof Tuple[] && typeCode == ABIType.TYPE_CODE_TUPLE) {
+      TupleType tupleType = (TupleType) elementType;
+      gen.writeStartArray();
+      for (Tuple item : (Tuple[]) value) {
+        if (tuple2Array) {
+          gen.writeStartArray();
+          for (int idx = 0; idx < tupleType.size(); idx++) {
+            writeAtomicValue(gen, tupleType.get(idx), item.get(idx));
+          }
+          gen.writeEndArray();
+        } else {
+          writeTupleValue(gen, tupleType, item);
+        }
+      }
+      gen.writeEndArray();
+      return;
+    }
+
+    throw new IllegalArgumentException(
+        String.format("Can't transform %s(%s) to json value", value, atype));
+  }
+
+  /**
+   * Whether the element names of the given tuples, taken together, and of every nested tuple are
+   * distinct. Object nodes silently keep the last duplicate, so only then the streaming writer
+   * produces the same JSON as the tree one.
+   */
+  public static boolean hasDistinctElementNames(TupleType... tupleTypes) {
+    Set<String> names = new HashSet<>();
+    for (TupleType tupleType : tupleTypes) {
+      for (int idx = 0; idx < tupleType.size(); idx++) {
+        if (!names.add(tupleType.getElementName(idx))
+            || !hasDistinctNestedNames(tupleType.get(idx))) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  private static boolean hasDistinctNestedNames(ABIType<?> type) {
+    switch (type.typeCode()) {
+      case ABIType.TYPE_CODE_TUPLE:
+        return hasDistinctElementNames((TupleType) type);
+      case ABIType.TYPE_CODE_ARRAY:
+        return hasDistinctNestedNames(((ArrayType<?, ?>) type).getElementType());
+      default:
+        return true;
+    }
+  }
+
   public static boolean isBlockHoleAddress(String address) {
     return BLOCK_HOLE_ADDRESS_LIST.contains(address);
   }
@@ -2,6 +2,8 @@ package com.chainbase.evm;
 
 import com.esaulpaugh.headlong.util.FastHex;
 import com.google.common.base.Strings;
+import java.util.Arrays;
+import javax.annotation.Nullable;
 
 public final class HexUtil {
 
@@ -11,6 +13,24 @@ public final class HexUtil {
 
   private static final char[] HEX_ARRAY = "0123456789ABCDEF".toCharArray();
 
+  private static final char[] LOWER_HEX_ARRAY = "0123456789abcdef".toCharArray();
+
+  /**
+   * Nibble value of each ASCII char, -1 for the non hex ones.
+   */
+  private static final byte[] NIBBLES = new byte[128];
+
+  static {
+    Arrays.fill(NIBBLES, (byte) -1);
+    for (int i = 0; i < 10; i++) {
+      NIBBLES['0' + i] = (byte) i;
+    }
+    for (int i = 0; i < 6; i++) {
+      NIBBLES['a' + i] = (byte) (10 + i);
+      NIBBLES['A' + i] = (byte) (10 + i);
+    }
+  }
+
   public static String to0xHex(String hex) {
     if (hex.startsWith("0x")) {
       return hex;
@@ -45,9 +65,9 @@ public final class HexUtil {
     }
 
     if (hex.startsWith("0x") || hex.startsWith("\\x")) {
-      return plainHex2Bytes(hex.substring(2));
+      return plainHex2Bytes(hex, 2);
     } else {
-      return plainHex2Bytes(hex);
+      return plainHex2Bytes(hex, 0);
     }
   }
 
@@ -55,7 +75,72 @@ public final class HexUtil {
     if (null == bytes) {
       return null;
     }
-    return String.format("0x%s", bytes2PlainHex(bytes).toLowerCase());
+    char[] hexChars = new char[2 + bytes.length * 2];
+    hexChars[0] = '0';
+    hexChars[1] = 'x';
+    encodeLowerHex(bytes, 0, bytes.length, hexChars, 2);
+    return new String(hexChars);
+  }
+
+  /**
+   * Writes the lowercase hex of {@code bytes[offset, offset + length)} into {@code dest} from
+   * {@code destOffset}, returns the index after the last written char.
+   */
+  public static int encodeLowerHex(byte[] bytes, int offset, int length, char[] dest,
+      int destOffset) {
+    int pos = destOffset;
+    for (int j = offset, end = offset + length; j < end; j++) {
+      int v = bytes[j] & 0xff;
+      dest[pos++] = LOWER_HEX_ARRAY[v >>> 4];
+      dest[pos++] = LOWER_HEX_ARRAY[v & 0x0f];
+    }
+    return pos;
+  }
+
+  /**
+   * Decodes the hex, with or without the 0x prefix, into {@code dest} from {@code destOffset}.
+   * Returns the number of decoded bytes, or -1 without writing anything when the input isn't
+   * even-length hex or doesn't fit in {@code dest}.
+   */
+  public static int decodeHex(CharSequence hex, byte[] dest, int destOffset) {
+    int start = hasHexPrefix(hex) ? 2 : 0;
+    int len = hex.length() - start;
+    if ((len & 1) != 0 || dest.length - destOffset < len / 2 || !isHex(hex, start)) {
+      return -1;
+    }
+    for (int i = start, pos = destOffset, end = hex.length(); i < end; i += 2) {
+      dest[pos++] = (byte) ((NIBBLES[hex.charAt(i)] << 4) | NIBBLES[hex.charAt(i + 1)]);
+    }
+    return len / 2;
+  }
+
+  /**
+   * Whether the input is even-length hex, with or without the 0x prefix.
+   */
+  public static boolean isValidHex(@Nullable CharSequence hex) {
+    if (hex == null) {
+      return false;
+    }
+    int start = hasHexPrefix(hex) ? 2 : 0;
+    return ((hex.length() - start) & 1) == 0 && isHex(hex, start);
+  }
+
+  private static boolean hasHexPrefix(CharSequence hex) {
+    return hex.length() >= 2 && hex.charAt(0) == '0' && hex.charAt(1) == 'x';
+  }
+
+  private static boolean isHex(CharSequence hex, int start) {
+    for (int i = start, end = hex.length(); i < end; i++) {
+      char c = hex.charAt(i);
+      if (c >= 128 || NIBBLES[c] < 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static int nibble(char c) {
+    return c < 128 ? NIBBLES[c] : -1;
   }
 
   public static String bytes2PlainHex(byte[] bytes) {
@@ -68,14 +153,12 @@ public final class HexUtil {
     return new String(hexChars);
   }
 
-  private static byte[] plainHex2Bytes(String hex) {
-    int len = hex.length();
+  private static byte[] plainHex2Bytes(String hex, int start) {
+    int len = hex.length() - start;
     byte[] data = new byte[len / 2];
     for (int i = 0; i < len; i += 2) {
       data[i / 2] =
-          (byte)
-              ((Character.digit(hex.charAt(i), 16) << 4)
-                  + (Character.digit(hex.charAt(i + 1), 16)));
+          (byte) ((nibble(hex.charAt(start + i)) << 4) + nibble(hex.charAt(start + i + 1)));
     }
     return data;
   }
@@ -0,0 +1,143 @@
+package com.chainbase.evm;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import org.web3j.protocol.Service;
+import org.web3j.protocol.core.BatchRequest;
+import org.web3j.protocol.core.BatchResponse;
+import org.web3j.protocol.core.Request;
+import org.web3j.protocol.core.Response;
+
+/**
+ * Sync web3j transport over an {@link EndpointPool}, so that the blocking API of
+ * {@link Web3jClient} is routed, hedged and cached as the async one.
+ */
+class PooledHttpService extends Service {
+
+  private final EndpointPool endpointPool;
+
+  private final RpcResultCache resultCache;
+
+  private final ThreadLocal<Long> lastLatencyNanos = ThreadLocal.withInitial(() -> 0L);
+
+  private final ThreadLocal<Integer> lastSentCount = ThreadLocal.withInitial(() -> 0);
+
+  PooledHttpService(EndpointPool endpointPool, RpcResultCache resultCache) {
+    super(false);
+    this.endpointPool = endpointPool;
+    this.resultCache = resultCache;
+  }
+
+  /**
+   * The raw types are the signature of {@link Service#send}.
+   */
+  @Override
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  public <T extends Response> T send(Request request, Class<T> responseType) throws IOException {
+    T cached = (T) resultCache.get(request);
+    if (cached != null) {
+      return cached;
+    }
+    T response = super.send(request, responseType);
+    resultCache.put(request, response);
+    return response;
+  }
+
+  /**
+   * Time the node took to answer the last request of the calling thread, waits for the rate
+   * limiter and retries excluded.
+   */
+  long getLastLatencyNanos() {
+    return lastLatencyNanos.get();
+  }
+
+  /**
+   * Requests of the last batch of the calling thread that were sent to the node, the others were
+   * answered by the {@link RpcResultCache}.
+   */
+  int getLastSentCount() {
+    return lastSentCount.get();
+  }
+
+  @Override
+  protected InputStream performIO(String payload) throws IOException {
+    try {
+      AtomicLong latency = new AtomicLong();
+      byte[] body = endpointPool.post(payload.getBytes(StandardCharsets.UTF_8), latency::set)
+          .get();
+      lastLatencyNanos.set(latency.get());
+      return new ByteArrayInputStream(body);
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while waiting for the node");
+    } catch (ExecutionException ex) {
+      Throwable cause = ex.getCause();
+      if (cause instanceof IOException) {
+        throw (IOException) cause;
+      }
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      throw new IOException(cause);
+    }
+  }
+
+  /**
+   * Unlike {@link Service#sendBatch}, matches the responses by id and fails with the error of the
+   * node when it rejects the whole batch, rather than with a ClassCastException. Only the requests
+   * missing from the {@link RpcResultCache} are sent.
+   */
+  @Override
+  public BatchResponse sendBatch(BatchRequest batchRequest) throws IOException {
+    lastLatencyNanos.set(0L);
+    lastSentCount.set(0);
+    List<Request<?, ? extends Response<?>>> requests = batchRequest.getRequests();
+    List<Response<?>> responses = new ArrayList<>(Collections.nCopies(requests.size(), null));
+    List<Request<?, ? extends Response<?>>> sent = new ArrayList<>(requests.size());
+    List<Integer> sentIndices = new ArrayList<>(requests.size());
+    for (int idx = 0; idx < requests.size(); idx++) {
+      Response<?> cached = resultCache.get(requests.get(idx));
+      if (cached != null) {
+        responses.set(idx, cached);
+      } else {
+        sent.add(requests.get(idx));
+        sentIndices.add(idx);
+      }
+    }
+
+    lastSentCount.set(sent.size());
+    if (!sent.isEmpty()) {
+      List<Response<?>> received;
+      try (InputStream body = performIO(objectMapper.writeValueAsString(sent))) {
+        received = AsyncRpcTransport.readBatchResponses(objectMapper, objectMapper.readTree(body),
+            sent);
+      }
+      for (int idx = 0; idx < received.size(); idx++) {
+        Response<?> response = received.get(idx);
+        if (response == null) {
+          Response<Object> missing = new Response<>();
+          missing.setError(
+              new Response.Error(-32603, "No response for the request in the batch"));
+          response = missing;
+        } else {
+          resultCache.put(sent.get(idx), response);
+        }
+        responses.set(sentIndices.get(idx), response);
+      }
+    }
+    return new BatchResponse(requests, responses);
+  }
+
+  @Override
+  public void close() {
+    // The http client is owned by the Web3jClient
+  }
+}
@@ -0,0 +1,14 @@
+package com.chainbase.evm;
+
+import org.web3j.protocol.exceptions.ClientConnectionException;
+
+/**
+ * The provider answered with HTTP 429 or a JSON-RPC rate-limit error, the request is retried like
+ * any connection failure but doesn't count against the health of the endpoint.
+ */
+public class RPCRateLimitException extends ClientConnectionException {
+
+  public RPCRateLimitException(String message) {
+    super(message);
+  }
+}
@@ -0,0 +1,33 @@
+package com.chainbase.evm;
+
+/**
+ * Observes the requests sent by an {@link EndpointPool}, e.g. to report them as metrics. The
+ * callbacks run on the OkHttp and retry threads, they must not block.
+ *
+ * <p>A request is labelled with its JSON-RPC method, a batch with the method of its calls when
+ * they share one, {@value #BATCH_METHOD} otherwise.
+ */
+public interface RpcMetricsListener {
+
+  String BATCH_METHOD = "batch";
+
+  /**
+   * A successful answer of an endpoint, for {@code calls} JSON-RPC calls.
+   */
+  void onResponse(String method, int calls, long latencyNanos);
+
+  /**
+   * A failed attempt: connection error, non 2xx status or unreadable body.
+   */
+  void onFailure(String method);
+
+  /**
+   * An attempt rejected by the rate limit of the endpoint.
+   */
+  void onRateLimited(String method);
+
+  /**
+   * A failed request about to be sent again.
+   */
+  void onRetry();
+}
@@ -0,0 +1,182 @@
+package com.chainbase.evm;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Token bucket of one endpoint, shared by every client of the JVM sending to the same URL. A
+ * request costs its weight, i.e. the number of calls of a JSON-RPC batch, and may overdraw the
+ * bucket: the next requests wait until the debt is refilled.
+ *
+ * <p>The rate follows AIMD: it is halved when the provider answers with a rate-limit error, at
+ * most once per second, then grows back by 5% of its base rate per second. An endpoint without a
+ * configured rate isn't throttled until its first rate-limit error, from which on it starts at
+ * half the rate observed during the last second.
+ */
+public final class RpcRateLimiter {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(RpcRateLimiter.class);
+
+  private static final ConcurrentMap<String, RpcRateLimiter> LIMITERS = new ConcurrentHashMap<>();
+
+  private static final long SECOND_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+  private static final double MIN_RATE_RATIO = 0.05;
+
+  private static final double ADDITIVE_INCREASE_RATIO = 0.05;
+
+  private static final int MAX_BACKOFF_SHIFT = 5;
+
+  /**
+   * Cap of one backoff, whatever the base interval of the client.
+   */
+  public static final long MAX_BACKOFF_MS = 10_000;
+
+  /**
+   * Time from the first attempt after which a request isn't retried anymore, however many retries
+   * the client allows, so a call to a failing node fails within a minute rather than hours.
+   */
+  public static final long RETRY_BUDGET_MS = 60_000;
+
+  private final String url;
+
+  /**
+   * Weight per second, 0 when unbounded.
+   */
+  private double configuredRate;
+
+  private double capacity;
+
+  private double baseRate;
+
+  private double rate;
+
+  private double tokens;
+
+  private long refilledAt = System.nanoTime();
+
+  private long decreasedAt = refilledAt - SECOND_NANOS;
+
+  private long windowStartedAt = refilledAt;
+
+  private long windowWeight;
+
+  private long previousWindowWeight;
+
+  private RpcRateLimiter(String url) {
+    this.url = url;
+  }
+
+  public static RpcRateLimiter forEndpoint(String url) {
+    return LIMITERS.computeIfAbsent(url, RpcRateLimiter::new);
+  }
+
+  /**
+   * Exponential backoff with jitter of the {@code attempt}-th retry: a random delay between half
+   * and all of {@code baseMs * 2^(attempt - 1)}, the exponent being capped at
+   * {@value #MAX_BACKOFF_SHIFT} and the delay at {@value #MAX_BACKOFF_MS}ms.
+   */
+  public static long backoffMs(long baseMs, int attempt) {
+    long backoff = Math.min(MAX_BACKOFF_MS,
+        baseMs << Math.min(MAX_BACKOFF_SHIFT, Math.max(0, attempt - 1)));
+    long half = backoff / 2;
+    return half + (half > 0 ? ThreadLocalRandom.current().nextLong(half + 1) : 0);
+  }
+
+  /**
+   * Whether a retry after {@code backoffMs} still fits in the {@value #RETRY_BUDGET_MS}ms budget
+   * of a request first sent at {@code startedAtNanos}.
+   */
+  public static boolean isWithinRetryBudget(long startedAtNanos, long backoffMs) {
+    return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAtNanos) + backoffMs
+        <= RETRY_BUDGET_MS;
+  }
+
+  /**
+   * @param requestsPerSecond weight refilled per second, 0 or less for unbounded
+   * @param batchWeightBudget capacity of the bucket, i.e. the weight sent at once after a pause
+   */
+  public synchronized RpcRateLimiter configure(double requestsPerSecond, int batchWeightBudget) {
+    if (requestsPerSecond == configuredRate && batchWeightBudget == capacity) {
+      return this;
+    }
+    this.configuredRate = Math.max(0, requestsPerSecond);
+    this.capacity = Math.max(1, batchWeightBudget);
+    this.baseRate = configuredRate;
+    this.rate = configuredRate;
+    this.tokens = Math.min(tokens, capacity);
+    return this;
+  }
+
+  /**
+   * Takes the weight from the bucket, the request must wait for the returned delay before being
+   * sent.
+   */
+  public synchronized long reserve(int weight) {
+    long now = System.nanoTime();
+    if (now - windowStartedAt >= SECOND_NANOS) {
+      previousWindowWeight = now - windowStartedAt < 2 * SECOND_NANOS ? windowWeight : 0;
+      windowWeight = 0;
+      windowStartedAt = now;
+    }
+    windowWeight += weight;
+
+    if (rate <= 0) {
+      return 0;
+    }
+    refill(now);
+    tokens -= weight;
+    return tokens >= 0 ? 0 : (long) (-tokens / rate * SECOND_NANOS);
+  }
+
+  /**
+   * How long a request would wait for the bucket now, without taking from it.
+   */
+  public synchronized long getWaitNanos() {
+    if (rate <= 0) {
+      return 0;
+    }
+    refill(System.nanoTime());
+    return tokens >= 1 ? 0 : (long) ((1 - tokens) / rate * SECOND_NANOS);
+  }
+
+  public synchronized void onRateLimited() {
+    long now = System.nanoTime();
+    if (now - decreasedAt < SECOND_NANOS) {
+      return;
+    }
+    refill(now);
+    decreasedAt = now;
+    if (rate <= 0) {
+      // Discovers the rate of an unbounded endpoint
+      baseRate = Math.max(1, Math.max(previousWindowWeight, windowWeight) / 2d);
+      rate = baseRate;
+      capacity = Math.max(capacity, 1);
+      tokens = 0;
+    } else {
+      rate = Math.max(baseRate * MIN_RATE_RATIO, rate / 2);
+    }
+    LOGGER.warn(String.format("%s is rate limited, sending %.1f requests per second", url, rate));
+  }
+
+  public synchronized double getRate() {
+    return rate;
+  }
+
+  private void refill(long now) {
+    double elapsed = (double) (now - refilledAt) / SECOND_NANOS;
+    refilledAt = now;
+    if (rate <= 0) {
+      return;
+    }
+    tokens = Math.min(capacity, tokens + elapsed * rate);
+    if (now - decreasedAt >= SECOND_NANOS) {
+      double ceiling = configuredRate > 0 ? configuredRate : Double.MAX_VALUE;
+      rate = Math.min(ceiling, rate + elapsed * baseRate * ADDITIVE_INCREASE_RATIO);
+    }
+  }
+}
@@ -0,0 +1,254 @@
+package com.chainbase.evm;
+
+import com.chainbase.common.cached.DiskCache;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.hash.Hashing;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import javax.annotation.Nullable;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+import org.web3j.protocol.ObjectMapperFactory;
+import org.web3j.protocol.core.DefaultBlockParameter;
+import org.web3j.protocol.core.DefaultBlockParameterNumber;
+import org.web3j.protocol.core.Request;
+import org.web3j.protocol.core.Response;
+
+/**
+ * Results of the reads pinned to a block number, which never change once the block is final, so
+ * a rerun over the same history doesn't send them again. Reads at {@code latest}, {@code pending}
+ * or any other tag are never cached.
+ *
+ * <p>Entries are keyed by a hash of the node URL, the method and its params. They are kept in a
+ * memory tier bounded by size, least recently used first out, in front of an optional
+ * {@link DiskCache} bounded in bytes which survives restarts, its oldest entries evicted first
+ * unless they are still read.
+ *
+ * <p>A client, and so its cache, is shared by every UDF of the JVM sending to the same node, each
+ * of them configuring it from its own job parameters: the first configuration replaces the
+ * default, the later ones only grow the memory tier, so the largest budget wins whatever the
+ * order the UDFs open in.
+ */
+public class RpcResultCache {
+
+  /**
+   * Params of the cached methods, the block included: a request with fewer params reads the
+   * default block, {@code latest}.
+   */
+  private static final Map<String, Integer> CACHED_METHOD_ARITIES = ImmutableMap.of(
+      "eth_call", 2, "eth_getCode", 2, "eth_getStorageAt", 3, "eth_getBalance", 2);
+
+  private static final long DISK_TTL_MS = TimeUnit.DAYS.toMillis(365);
+
+  private final ObjectMapper objectMapper = ObjectMapperFactory.getObjectMapper();
+
+  private final String namespace;
+
+  private final LongAdder memoryHits = new LongAdder();
+
+  private final LongAdder diskHits = new LongAdder();
+
+  private final LongAdder misses = new LongAdder();
+
+  private long maxMemoryBytes = -1;
+
+  private boolean configured;
+
+  @Nullable
+  private volatile Cache<String, String> memory;
+
+  @Nullable
+  private volatile DiskCache disk;
+
+  public RpcResultCache(String nodeURL) {
+    this.namespace = nodeURL;
+  }
+
+  /**
+   * @param defaultMemoryBytes size of the memory tier until the cache is configured
+   */
+  public RpcResultCache(String nodeURL, long defaultMemoryBytes) {
+    this(nodeURL);
+    resizeMemory(defaultMemoryBytes);
+  }
+
+  /**
+   * The first call sets the cache up, the later ones keep the largest memory budget asked and the
+   * disk tier already open.
+   *
+   * @param maxMemoryBytes approximate size of the memory tier, 0 disables the cache
+   * @param directory      directory of the disk tier, null to keep the results in memory only
+   * @param maxDiskBytes   size of the disk tier
+   */
+  public synchronized RpcResultCache configure(long maxMemoryBytes, @Nullable String directory,
+      long maxDiskBytes) {
+    long budget = configured ? Math.max(this.maxMemoryBytes, maxMemoryBytes) : maxMemoryBytes;
+    configured = true;
+    if (budget != this.maxMemoryBytes) {
+      resizeMemory(budget);
+    }
+    if (budget <= 0) {
+      close();
+    } else if (disk == null && directory != null) {
+      this.disk = DiskCache.getInstance(directory, "rpc-results", maxDiskBytes);
+    }
+    return this;
+  }
+
+  private void resizeMemory(long maxMemoryBytes) {
+    Cache<String, String> previous = this.memory;
+    Cache<String, String> memory = maxMemoryBytes <= 0 ? null : CacheBuilder.newBuilder()
+        .maximumWeight(maxMemoryBytes)
+        .<String, String>weigher((key, value) -> 2 * (key.length() + value.length()))
+        .recordStats()
+        .build();
+    if (memory != null && previous != null) {
+      memory.putAll(previous.asMap());
+    }
+    this.maxMemoryBytes = maxMemoryBytes;
+    this.memory = memory;
+  }
+
+  /**
+   * Gives back the disk tier, so the next job of the TaskManager can open it.
+   */
+  public synchronized void close() {
+    DiskCache disk = this.disk;
+    this.disk = null;
+    if (disk != null) {
+      disk.close();
+    }
+  }
+
+  /**
+   * The cached response of the request, null when it isn't cached or can't be.
+   */
+  @Nullable
+  public <T extends Response> T get(Request<?, T> request) {
+    Cache<String, String> memory = this.memory;
+    String key = memory == null ? null : key(request);
+    if (key == null) {
+      return null;
+    }
+
+    String result = memory.getIfPresent(key);
+    if (result != null) {
+      memoryHits.increment();
+      return toResponse(request, result);
+    }
+    DiskCache disk = this.disk;
+    result = disk == null ? null : disk.get(key);
+    if (result != null) {
+      diskHits.increment();
+      memory.put(key, result);
+      return toResponse(request, result);
+    }
+    misses.increment();
+    return null;
+  }
+
+  /**
+   * Keeps the result of a successful response to a cacheable request.
+   */
+  public void put(Request<?, ?> request, @Nullable Response<?> response) {
+    Cache<String, String> memory = this.memory;
+    if (memory == null || response == null || response.hasError()
+        || !(response.getResult() instanceof String)) {
+      return;
+    }
+    String key = key(request);
+    if (key == null) {
+      return;
+    }
+
+    String result = (String) response.getResult();
+    memory.put(key, result);
+    DiskCache disk = this.disk;
+    if (disk != null) {
+      disk.put(key, result, DISK_TTL_MS);
+    }
+  }
+
+  public Stats getStats() {
+    Cache<String, String> memory = this.memory;
+    DiskCache disk = this.disk;
+    return new Stats(memoryHits.sum(), diskHits.sum(), misses.sum(),
+        memory == null ? 0 : memory.size(), memory == null ? 0 : memory.stats().evictionCount(),
+        disk == null ? 0 : disk.getSizeBytes());
+  }
+
+  /**
+   * Whether the request reads the state at a block number.
+   */
+  public static boolean isCacheable(Request<?, ?> request) {
+    Integer arity = CACHED_METHOD_ARITIES.get(request.getMethod());
+    List<?> params = request.getParams();
+    if (arity == null || params == null || params.size() != arity) {
+      return false;
+    }
+    Object block = params.get(params.size() - 1);
+    if (block instanceof DefaultBlockParameter) {
+      return block instanceof DefaultBlockParameterNumber;
+    }
+    return block instanceof String && ((String) block).startsWith("0x");
+  }
+
+  @Nullable
+  private String key(Request<?, ?> request) {
+    if (!isCacheable(request)) {
+      return null;
+    }
+    try {
+      String content = String.join("\n", namespace, request.getMethod(),
+          objectMapper.writeValueAsString(request.getParams()));
+      return Hashing.sha256().hashString(content, StandardCharsets.UTF_8).toString();
+    } catch (JsonProcessingException ex) {
+      return null;
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <T extends Response> T toResponse(Request<?, T> request, String result) {
+    try {
+      T response = request.getResponseType().getDeclaredConstructor().newInstance();
+      response.setId(request.getId());
+      response.setJsonrpc(request.getJsonrpc());
+      response.setResult(result);
+      return response;
+    } catch (ReflectiveOperationException ex) {
+      throw new IllegalStateException(
+          "Can't create a response of " + request.getResponseType(), ex);
+    }
+  }
+
+  @Getter
+  @ToString
+  @AllArgsConstructor
+  public static class Stats {
+
+    private final long memoryHitCount;
+
+    private final long diskHitCount;
+
+    private final long missCount;
+
+    private final long memoryEntries;
+
+    private final long evictionCount;
+
+    private final long diskBytes;
+
+    public double getHitRate() {
+      long requests = memoryHitCount + diskHitCount + missCount;
+      return requests == 0 ? 0 : (double) (memoryHitCount + diskHitCount) / requests;
+    }
+  }
+}
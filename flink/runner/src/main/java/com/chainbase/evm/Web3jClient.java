@@ -2,32 +2,44 @@ package com.chainbase.evm;
 
 import static com.chainbase.evm.HexUtil.DEV_WALLET_ADDRESS;
 
+import com.chainbase.common.batch.MicroBatcher;
 import com.chainbase.evm.response.BlockBalanceChangeResponse;
 import com.chainbase.evm.response.TraceBlockResponse;
 import com.esaulpaugh.headlong.abi.Tuple;
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Stopwatch;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Streams;
 import java.io.IOException;
 import java.math.BigInteger;
+import java.net.SocketTimeoutException;
 import java.nio.BufferUnderflowException;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 import javax.annotation.Nullable;
+import lombok.AccessLevel;
 import lombok.AllArgsConstructor;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
 import lombok.ToString;
+import okhttp3.Dispatcher;
+import okhttp3.OkHttpClient;
 import org.bouncycastle.util.encoders.Hex;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -40,7 +52,6 @@ import org.web3j.abi.datatypes.DynamicStruct;
 import org.web3j.abi.datatypes.Function;
 import org.web3j.abi.datatypes.Type;
 import org.web3j.protocol.Web3j;
-import org.web3j.protocol.Web3jService;
 import org.web3j.protocol.core.BatchRequest;
 import org.web3j.protocol.core.BatchResponse;
 import org.web3j.protocol.core.DefaultBlockParameter;
@@ -59,7 +70,7 @@ import org.web3j.protocol.exceptions.ClientConnectionException;
 import org.web3j.protocol.http.HttpService;
 
 @Getter
-public class Web3jClient {
+public class Web3jClient implements AutoCloseable {
 
   private static final Logger LOGGER = LoggerFactory.getLogger(Web3jClient.class);
 
@@ -127,14 +138,40 @@ public class Web3jClient {
 
   private static final DefaultBlockParameter LATEST_BLOCK_NUMBER = DefaultBlockParameterName.LATEST;
 
-  private static final Integer DEFAULT_RETRY_NUMBER = 3;
+  static final Integer DEFAULT_RETRY_NUMBER = 3;
 
-  private static final Integer DEFAULT_RETRY_INTERVAL_MS = 100;
+  static final Integer DEFAULT_RETRY_INTERVAL_MS = 100;
 
   private static final int BATCH_CALL_LIMIT = 100;
 
+  private static final int MAX_BATCH_CALL_LIMIT = 1000;
+
+  private static final long DEFAULT_BATCH_TARGET_LATENCY_MS = 1000;
+
+  private static final long DEFAULT_BATCH_TARGET_RESPONSE_BYTES = 4 * 1024 * 1024;
+
+  /**
+   * Error messages of the providers rejecting a batch, or a response, for its size.
+   */
+  private static final List<String> TOO_LARGE_MARKERS = Arrays.asList("too large", "too big",
+          "batch limit", "received: 413");
+
+  private static final int DEFAULT_COALESCE_LINGER_MS = 5;
+
+  private static final int DEFAULT_COALESCE_MAX_IN_FLIGHT = 256;
+
+  /**
+   * aggregate3 runs every inner call inside one eth_call, keep groups small enough to stay under
+   * the gas cap of the node.
+   */
+  private static final int MULTICALL_GROUP_LIMIT = 50;
+
+  private static final int DEFAULT_MAX_IN_FLIGHT = 64;
+
+  private static final long DEFAULT_RESULT_CACHE_BYTES = 32 * 1024 * 1024;
+
   private final Web3j web3j;
-  private final Web3jService web3Serivce;
+  private final PooledHttpService web3Serivce;
 
   private final int retryNumber;
 
@@ -142,6 +179,23 @@ public class Web3jClient {
 
   private final boolean ignoreWeb3jIOException;
 
+  /**
+   * Keyed by batch size, linger and max in flight, callers with the same knobs share one.
+   */
+  private final ConcurrentMap<List<Number>, MicroBatcher<CallFunctionParameter, Optional<Tuple>>>
+          callCoalescers = new ConcurrentHashMap<>();
+
+  private volatile AdaptiveBatchSizer batchSizer = new AdaptiveBatchSizer(BATCH_CALL_LIMIT,
+          MAX_BATCH_CALL_LIMIT, DEFAULT_BATCH_TARGET_LATENCY_MS,
+          DEFAULT_BATCH_TARGET_RESPONSE_BYTES);
+
+  private final EndpointPool endpointPool;
+
+  private final RpcResultCache resultCache;
+
+  @Getter(AccessLevel.NONE)
+  private final AsyncRpcTransport asyncTransport;
+
   public Web3jClient(String nodeURL) {
     this(nodeURL, DEFAULT_RETRY_NUMBER, DEFAULT_RETRY_INTERVAL_MS, false);
   }
@@ -152,11 +206,56 @@ public class Web3jClient {
 
   public Web3jClient(
           String nodeURL, int retryNumber, int retryIntervalMs, boolean ignoreWeb3jIOException) {
-    this.web3Serivce = new HttpService(nodeURL);
+    this(nodeURL, retryNumber, retryIntervalMs, ignoreWeb3jIOException, DEFAULT_MAX_IN_FLIGHT);
+  }
+
+  /**
+   * @param nodeURL     one or several comma separated endpoints of the same chain, requests are
+   *                    routed by {@link EndpointPool}
+   * @param maxInFlight requests of the async API sent to each endpoint at the same time, the
+   *                    others are queued without blocking the caller
+   */
+  public Web3jClient(String nodeURL, int retryNumber, int retryIntervalMs,
+          boolean ignoreWeb3jIOException, int maxInFlight) {
+    this(nodeURL, retryNumber, retryIntervalMs, ignoreWeb3jIOException,
+            newHttpClient(maxInFlight));
+  }
+
+  /**
+   * @param httpClient connection pool and dispatcher of the client, possibly shared with other
+   *                   clients, see {@link Web3jClientRegistry}
+   */
+  public Web3jClient(String nodeURL, int retryNumber, int retryIntervalMs,
+          boolean ignoreWeb3jIOException, OkHttpClient httpClient) {
+    // The sync and async APIs share the connection pool and the endpoint health
+    this.endpointPool = new EndpointPool(EndpointPool.parseUrls(nodeURL), httpClient);
+    this.resultCache = new RpcResultCache(nodeURL, DEFAULT_RESULT_CACHE_BYTES);
+    this.web3Serivce = new PooledHttpService(endpointPool, resultCache);
     this.web3j = Web3j.build(web3Serivce);
     this.retryNumber = retryNumber;
     this.retryIntervalMs = retryIntervalMs;
     this.ignoreWeb3jIOException = ignoreWeb3jIOException;
+    this.asyncTransport = new AsyncRpcTransport(endpointPool, resultCache, retryNumber,
+            retryIntervalMs);
+  }
+
+  private static OkHttpClient newHttpClient(int maxInFlight) {
+    Dispatcher dispatcher = new Dispatcher();
+    dispatcher.setMaxRequests(maxInFlight);
+    dispatcher.setMaxRequestsPerHost(maxInFlight);
+    return HttpService.getOkHttpClientBuilder().dispatcher(dispatcher).build();
+  }
+
+  /**
+   * Stops the coalescing layer and the timer of the endpoints, and closes the disk tier of the
+   * result cache, the http client is left open as it may be shared.
+   */
+  @Override
+  public synchronized void close() {
+    callCoalescers.values().forEach(MicroBatcher::close);
+    callCoalescers.clear();
+    resultCache.close();
+    endpointPool.close();
   }
 
   // getByteCode
@@ -169,15 +268,35 @@ public class Web3jClient {
     return batchCallFunctionWithBlockNumber(Arrays.asList(parameter)).get(0);
   }
 
+  /**
+   * Sends the calls in consecutive batches sized by the {@link AdaptiveBatchSizer} of the client.
+   */
   public List<Optional<Tuple>> batchCallFunctionWithBlockNumber(
           List<CallFunctionParameter> parameters) {
-    return parameters.stream()
-            .collect(Collectors.groupingBy(i -> (parameters.indexOf(i) / BATCH_CALL_LIMIT)))
-            .values()
-            .stream()
-            .map(this::batchCallFunctionWithBlockNumberLimit)
-            .flatMap(Collection::stream)
-            .collect(Collectors.toList());
+    List<Optional<Tuple>> results = new ArrayList<>(parameters.size());
+    int from = 0;
+    while (from < parameters.size()) {
+      int to = Math.min(parameters.size(), from + batchSizer.getSize());
+      results.addAll(batchCallFunctionWithBlockNumberLimit(parameters.subList(from, to)));
+      from = to;
+    }
+    return results;
+  }
+
+  /**
+   * Replaces the default batch sizing of the eth_call batches: starts at {@code initialSize} and
+   * stays within {@code maxSize}, the latency and response size of the batches being kept under
+   * the targets.
+   */
+  public Web3jClient withAdaptiveBatching(int initialSize, int maxSize, long targetLatencyMs,
+          long targetResponseBytes) {
+    this.batchSizer = new AdaptiveBatchSizer(initialSize, maxSize, targetLatencyMs,
+            targetResponseBytes);
+    return this;
+  }
+
+  AdaptiveBatchSizer getBatchSizer() {
+    return batchSizer;
   }
 
   /**
@@ -190,36 +309,32 @@ public class Web3jClient {
   public List<Optional<Tuple>> batchCallFunctionWithBlockNumberLimit(
           List<CallFunctionParameter> parameters) {
     BatchRequest batch = web3j.newBatch();
-
-    List<String> functions =
-            parameters.stream()
-                    .map(
-                            parameter ->
-                                    FunctionEncoder.encode(
-                                            new Function(
-                                                    parameter.getFunctionName(),
-                                                    parameter.getInputs(),
-                                                    /**
-                                                     * 由于下方代码使用 headlong 完成 decode，所以这里 outputParameters 可以传入一个空数组占位即可
-                                                     * 这个参数不会参与 function decode 的计算
-                                                     */
-                                                    Arrays.asList())))
-                    .collect(Collectors.toList());
-
-    for (int idx = 0; idx < functions.size(); idx += 1) {
-      String function = functions.get(idx);
-      CallFunctionParameter parameter = parameters.get(idx);
-      batch.add(
-              web3j.ethCall(
-                      Transaction.createEthCallTransaction(
-                              DEV_WALLET_ADDRESS, parameter.getContractAddress(), function),
-                      parameter.getBlockNumber()));
+    for (CallFunctionParameter parameter : parameters) {
+      batch.add(ethCallRequest(parameter));
     }
 
     ArrayList<Optional<Tuple>> results = new ArrayList<>();
 
     List<? extends Response<?>> batchResponse;
-    Optional<BatchResponse> optionalBatchResponse = batchSendWithLimitRetry(batch);
+    Optional<BatchResponse> optionalBatchResponse;
+    try {
+      // A batch rejected for its size is split instead of being retried as is
+      optionalBatchResponse = tryRequest(batch::send,
+              ex -> parameters.size() > 1 && isTooLarge(ex));
+    } catch (BatchTooLargeException ex) {
+      LOGGER.debug(String.format("Splitting a batch of %d calls", parameters.size()),
+              ex.getCause());
+      if (ex.getCause() instanceof SocketTimeoutException) {
+        batchSizer.onTimeout(parameters.size());
+      } else {
+        batchSizer.onRejected(parameters.size());
+      }
+      int half = parameters.size() / 2;
+      results.addAll(batchCallFunctionWithBlockNumberLimit(parameters.subList(0, half)));
+      results.addAll(
+              batchCallFunctionWithBlockNumberLimit(parameters.subList(half, parameters.size())));
+      return results;
+    }
     if (optionalBatchResponse.isPresent()) {
       batchResponse = optionalBatchResponse.get().getResponses();
     } else {
@@ -228,24 +343,143 @@ public class Web3jClient {
               .collect(Collectors.toList());
     }
 
+    List<Integer> tooLargeIndices = new ArrayList<>();
+    long responseBytes = 0;
     for (int idx = 0; idx < batchResponse.size(); idx += 1) {
       Response response = batchResponse.get(idx);
       CallFunctionParameter parameter = parameters.get(idx);
 
       if (response.getError() != null) {
+        if (parameters.size() > 1 && isTooLarge(response.getError().getMessage())) {
+          tooLargeIndices.add(idx);
+          results.add(Optional.empty());
+          continue;
+        }
         LOGGER.warn(
                 String.format(
                         "Failed to call contract, params: %s, error: %s",
                         parameter.toString(), response.getError().getMessage()));
         results.add(Optional.empty());
       } else {
-        results.add(decodeCallResponse(parameter, (String) response.getResult()));
+        String result = (String) response.getResult();
+        responseBytes += result == null ? 0 : result.length();
+        results.add(decodeCallResponse(parameter, result));
+      }
+    }
+
+    if (tooLargeIndices.isEmpty()) {
+      // Calls answered by the result cache say nothing of what the node can take
+      int sentCount = web3Serivce.getLastSentCount();
+      if (sentCount > 0) {
+        batchSizer.onAnswered(sentCount,
+                TimeUnit.NANOSECONDS.toMillis(web3Serivce.getLastLatencyNanos()), responseBytes);
       }
+      return results;
     }
 
+    // The node answered part of the batch only, e.g. geth past its response size limit, which
+    // isn't a rejection of the whole batch
+    if (tooLargeIndices.size() == parameters.size()) {
+      batchSizer.onRejected(parameters.size());
+    } else {
+      batchSizer.onPartiallyAnswered(parameters.size(),
+              parameters.size() - tooLargeIndices.size());
+    }
+    List<Optional<Tuple>> retried = batchCallFunctionWithBlockNumber(
+            tooLargeIndices.stream().map(parameters::get).collect(Collectors.toList()));
+    for (int idx = 0; idx < tooLargeIndices.size(); idx++) {
+      results.set(tooLargeIndices.get(idx), retried.get(idx));
+    }
     return results;
   }
 
+  private static boolean isTooLarge(Exception ex) {
+    if (ex instanceof RPCRateLimitException) {
+      return false;
+    }
+    return ex instanceof SocketTimeoutException || isTooLarge(ex.getMessage());
+  }
+
+  private static boolean isTooLarge(@Nullable String message) {
+    if (message == null) {
+      return false;
+    }
+    String lowerMessage = message.toLowerCase();
+    return TOO_LARGE_MARKERS.stream().anyMatch(lowerMessage::contains);
+  }
+
+  public Request<?, EthCall> ethCallRequest(CallFunctionParameter parameter) {
+    String function =
+            FunctionEncoder.encode(
+                    new Function(
+                            parameter.getFunctionName(),
+                            parameter.getInputs(),
+                            /**
+                             * 由于下方代码使用 headlong 完成 decode，所以这里 outputParameters 可以传入一个空数组占位即可
+                             * 这个参数不会参与 function decode 的计算
+                             */
+                            Arrays.asList()));
+    return web3j.ethCall(
+            Transaction.createEthCallTransaction(
+                    DEV_WALLET_ADDRESS, parameter.getContractAddress(), function),
+            parameter.getBlockNumber());
+  }
+
+  /**
+   * Decodes the response of a request built by {@link #ethCallRequest}, empty when it failed.
+   */
+  public Optional<Tuple> decodeCallResult(
+          CallFunctionParameter parameter, @Nullable EthCall response) {
+    if (response == null || response.getError() != null) {
+      return Optional.empty();
+    }
+    return decodeCallResponse(parameter, response.getValue());
+  }
+
+  public Request<?, EthGetCode> ethGetCodeRequest(
+          String contractAddress, DefaultBlockParameter blockNumber) {
+    return web3j.ethGetCode(contractAddress, blockNumber);
+  }
+
+  public Request<?, EthGetStorageAt> ethGetStorageAtRequest(
+          String contractAddress, String position, DefaultBlockParameter blockNumber) {
+    return web3j.ethGetStorageAt(
+            contractAddress, new BigInteger(HexUtil.toPureHex(position), 16), blockNumber);
+  }
+
+  /**
+   * Sends requests of any methods as one JSON-RPC batch. The responses are in request order, an
+   * entry is null when its request returned an error, all of them when the batch couldn't be
+   * sent.
+   */
+  public List<Response<?>> batchSend(List<Request<?, ? extends Response<?>>> requests) {
+    List<Response<?>> responses = new ArrayList<>(Collections.nCopies(requests.size(), null));
+    if (requests.isEmpty()) {
+      return responses;
+    }
+
+    BatchRequest batch = web3j.newBatch();
+    requests.forEach(batch::add);
+    Optional<BatchResponse> batchResponse = batchSendWithLimitRetry(batch);
+    if (!batchResponse.isPresent()) {
+      return responses;
+    }
+
+    List<? extends Response<?>> received = batchResponse.get().getResponses();
+    for (int idx = 0; idx < received.size() && idx < requests.size(); idx += 1) {
+      Response<?> response = received.get(idx);
+      if (response.getError() != null) {
+        LOGGER.debug(
+                String.format(
+                        "Failed to send %s, error: %s",
+                        requests.get(idx).getMethod(), response.getError().getMessage()));
+      } else {
+        responses.set(idx, response);
+      }
+    }
+    return responses;
+  }
+
   public List<Object> batchCall(
           List<MultiCallParameter> parameters, DefaultBlockParameter blockParameter) {
 
@@ -259,21 +493,155 @@ public class Web3jClient {
     List<Optional<Tuple>> results = this.batchCallFunctionWithBlockNumber(multiFunctionParameterList);
     LOGGER.info(
             String.format("BatchCall execution time: %d ms", stop.elapsed(TimeUnit.MILLISECONDS)));
-    return Streams.zip(
-                    results.stream(),
-                    multiFunctionParameterList.stream(),
-                    (result, parameter) ->
-                            result
-                                    .map(
-                                            item ->
-                                                    !(parameter.getDefaultValue() instanceof Tuple)
-                                                            && !parameter.getFunctionOutputSign().contains(",")
-                                                            ? item.get(0)
-                                                            : (Object) item)
-                                    .orElse(parameter.getDefaultValue()))
+    return Streams.zip(results.stream(), multiFunctionParameterList.stream(),
+                    (result, parameter) -> unwrapCallResult(parameter, result))
             .collect(Collectors.toList());
   }
 
+  /**
+   * Single-output functions are unwrapped from their tuple, failed calls fall back to the default
+   * value of the parameter.
+   */
+  public static Object unwrapCallResult(MultiCallParameter parameter, Optional<Tuple> result) {
+    return result
+            .map(
+                    item ->
+                            !(parameter.getDefaultValue() instanceof Tuple)
+                                    && !parameter.getFunctionOutputSign().contains(",")
+                                    ? item.get(0)
+                                    : (Object) item)
+            .orElse(parameter.getDefaultValue());
+  }
+
+  /**
+   * Same contract as {@link #batchCall(List, DefaultBlockParameter)}, but the calls are sent as
+   * aggregate3 multicalls and only calls that fail inside the multicall are retried as batched
+   * eth_calls.
+   */
+  public List<Object> multiCallWithFallback(
+          List<MultiCallParameter> parameters, DefaultBlockParameter blockParameter) {
+    List<CallFunctionParameter> callParameters =
+            parameters.stream()
+                    .map(parameter -> new CallFunctionParameter(parameter, blockParameter))
+                    .collect(Collectors.toList());
+
+    List<Optional<Tuple>> results = coalescedCallGroupedByBlock(callParameters);
+    return Streams.zip(results.stream(), callParameters.stream(),
+                    (result, parameter) -> unwrapCallResult(parameter, result))
+            .collect(Collectors.toList());
+  }
+
+  /**
+   * The coalescing layer of the client for these knobs, shared with the callers using the same
+   * ones. Calls are buffered for up to {@code lingerMs}, grouped by block and sent as one
+   * aggregate3 multicall per group.
+   */
+  public MicroBatcher<CallFunctionParameter, Optional<Tuple>> callCoalescer(int batchSize,
+          long lingerMs, int maxInFlight) {
+    return callCoalescers.computeIfAbsent(Arrays.asList(batchSize, lingerMs, maxInFlight),
+            (knobs) -> new MicroBatcher<>("eth-call-coalescer", batchSize, lingerMs, maxInFlight,
+                    this::coalescedCallGroupedByBlock));
+  }
+
+  /**
+   * Sizes the cache of the reads pinned to a block number, see {@link RpcResultCache}, the disk
+   * tier keeps them across reruns of the same history. On a client shared by several UDFs the
+   * largest memory budget and the first disk tier are kept.
+   */
+  public Web3jClient withResultCache(long maxMemoryBytes, @Nullable String directory,
+          long maxDiskBytes) {
+    resultCache.configure(maxMemoryBytes, directory, maxDiskBytes);
+    return this;
+  }
+
+  /**
+   * Throttles the endpoints of this client, the limiters are shared with every client of the JVM
+   * sending to the same URLs, see {@link RpcRateLimiter}.
+   */
+  public Web3jClient withRateLimit(double requestsPerSecond, int batchWeightBudget) {
+    for (EndpointPool.Endpoint endpoint : endpointPool.getEndpoints()) {
+      endpoint.getLimiter().configure(requestsPerSecond, batchWeightBudget);
+    }
+    return this;
+  }
+
+  /**
+   * Sets how the endpoints of this client fail over, see {@link EndpointPool}: idempotent reads
+   * pending past the {@code hedgePercentile} latency are sent to a second endpoint, 0 disables it,
+   * and an endpoint failing in a row is ejected for {@code ejectMs}.
+   */
+  public Web3jClient withFailover(double hedgePercentile, long ejectMs) {
+    endpointPool.setHedgePercentile(hedgePercentile);
+    endpointPool.setEjectMs(ejectMs);
+    return this;
+  }
+
+  /**
+   * Queues the call on the coalescing layer of the default knobs, see
+   * {@link #callCoalescer(int, long, int)}.
+   */
+  public CompletableFuture<Optional<Tuple>> coalescedCall(CallFunctionParameter parameter) {
+    return callCoalescer(BATCH_CALL_LIMIT, DEFAULT_COALESCE_LINGER_MS,
+            DEFAULT_COALESCE_MAX_IN_FLIGHT).submit(parameter);
+  }
+
+  /**
+   * Calls sharing a block are sent through Multicall3, calls that revert inside the multicall, and
+   * groups whose multicall fails as a whole (e.g. blocks before Multicall3 was deployed), fall back
+   * to one batched eth_call each so their result matches the uncoalesced path.
+   */
+  @VisibleForTesting
+  List<Optional<Tuple>> coalescedCallGroupedByBlock(List<CallFunctionParameter> parameters) {
+    Map<String, List<Integer>> indicesByBlock = new LinkedHashMap<>();
+    for (int idx = 0; idx < parameters.size(); idx++) {
+      indicesByBlock.computeIfAbsent(parameters.get(idx).getBlockNumber().getValue(),
+              key -> new ArrayList<>()).add(idx);
+    }
+
+    List<Optional<Tuple>> results =
+            new ArrayList<>(Collections.nCopies(parameters.size(), Optional.<Tuple>empty()));
+    List<Integer> fallbackIndices = new ArrayList<>();
+
+    for (List<Integer> blockIndices : indicesByBlock.values()) {
+      for (List<Integer> group : Lists.partition(blockIndices, MULTICALL_GROUP_LIMIT)) {
+        if (group.size() == 1) {
+          fallbackIndices.addAll(group);
+          continue;
+        }
+
+        List<MultiCallParameter> groupParameters =
+                group.stream().map(parameters::get).collect(Collectors.toList());
+        List<Optional<Tuple>> groupResults;
+        try {
+          groupResults = multiCallWithStatus(groupParameters,
+                  parameters.get(group.get(0)).getBlockNumber());
+        } catch (RuntimeException ex) {
+          LOGGER.debug(String.format("Multicall of %d calls failed, falling back to batch mode",
+                  group.size()), ex);
+          fallbackIndices.addAll(group);
+          continue;
+        }
+
+        for (int idx = 0; idx < group.size(); idx++) {
+          if (groupResults.get(idx).isPresent()) {
+            results.set(group.get(idx), groupResults.get(idx));
+          } else {
+            fallbackIndices.add(group.get(idx));
+          }
+        }
+      }
+    }
+
+    if (!fallbackIndices.isEmpty()) {
+      List<Optional<Tuple>> fallbackResults = batchCallFunctionWithBlockNumber(
+              fallbackIndices.stream().map(parameters::get).collect(Collectors.toList()));
+      for (int idx = 0; idx < fallbackIndices.size(); idx++) {
+        results.set(fallbackIndices.get(idx), fallbackResults.get(idx));
+      }
+    }
+    return results;
+  }
+
   /**
    * If you need to call ethCall method with a batch of different blockNumbers,I recommend to use
    * 'batchCallFunctionWithBlockNumber' method;
@@ -284,13 +652,94 @@ public class Web3jClient {
   public List<Object> multiCall(
           List<MultiCallParameter> parameters, DefaultBlockParameter blockParameter) {
 
+    return decodeMultiCallReturns(parameters, sendAggregate3(parameters, blockParameter));
+  }
+
+  /**
+   * Same as {@link #multiCall(List, DefaultBlockParameter)}, but honours the success flag of every
+   * inner call: reverted or undecodable calls are returned as empty instead of a default value.
+   */
+  public List<Optional<Tuple>> multiCallWithStatus(
+          List<? extends MultiCallParameter> parameters, DefaultBlockParameter blockParameter) {
+    Tuple[] decodedReturns = sendAggregate3(parameters, blockParameter);
+    if (decodedReturns.length != parameters.size()) {
+      throw new RPCCallException(
+              String.format("The aggregate3 returned %d results for %d calls",
+                      decodedReturns.length, parameters.size()), null);
+    }
+
+    List<Optional<Tuple>> result = new ArrayList<>(parameters.size());
+    for (int idx = 0; idx < decodedReturns.length; idx += 1) {
+      Tuple decodedReturn = decodedReturns[idx];
+      if (!(Boolean) decodedReturn.get(0)) {
+        result.add(Optional.empty());
+      } else {
+        result.add(decodeCallReturn(parameters.get(idx), (byte[]) decodedReturn.get(1)));
+      }
+    }
+    return result;
+  }
+
+  private List<Object> decodeMultiCallReturns(
+          List<MultiCallParameter> parameters, Tuple[] decodedReturns) {
+    // 3). 解析内部函数的返回值
+    List<Object> result = new ArrayList<>();
+
+    for (int idx = 0; idx < decodedReturns.length; idx += 1) {
+      MultiCallParameter parameter = parameters.get(idx);
+      Tuple decodedReturn = decodedReturns[idx];
+      com.esaulpaugh.headlong.abi.Function headlongFunction =
+              new com.esaulpaugh.headlong.abi.Function(
+                      parameter.getFunctionInputSign(), parameter.getFunctionOutputSign());
+      int[] indices = IntStream.range(0, headlongFunction.getOutputs().size()).toArray();
+
+      Object functionDecodedReturn;
+      try {
+        functionDecodedReturn =
+                headlongFunction.decodeReturn((byte[]) decodedReturn.get(1), indices);
+      } catch (BufferUnderflowException ex) {
+        functionDecodedReturn = parameter.getDefaultValue();
+      } catch (IllegalArgumentException ex) {
+        if (ex.getMessage().contains("unsigned val exceeds bit limit")) {
+          functionDecodedReturn = parameter.getDefaultValue();
+        } else {
+          LOGGER.error(
+                  String.format(
+                          "The decoded return from aggregate3 can't be decoded, parameters size: %d",
+                          parameters.size()),
+                  ex);
+          functionDecodedReturn = null;
+        }
+      } catch (Exception ex) {
+        LOGGER.error(
+                String.format(
+                        "The decoded return from aggregate3 can't be decoded, parameters size: %d",
+                        parameters.size()),
+                ex);
+        functionDecodedReturn = null;
+      }
+
+      result.add(functionDecodedReturn);
+    }
+
+    return result;
+  }
+
+  private Tuple[] sendAggregate3(
+          List<? extends MultiCallParameter> parameters, DefaultBlockParameter blockParameter) {
+    return decodeAggregate3(
+            ethCall(aggregate3Transaction(parameters), blockParameter), parameters.size());
+  }
+
+  private Transaction aggregate3Transaction(List<? extends MultiCallParameter> parameters) {
+
     List<DynamicStruct> parameterTypes =
             parameters.stream()
                     .map(
                             p -> {
                               String encode =
                                       FunctionEncoder.encode(
-                                              new Function(p.getFunctionName(), p.inputs, Collections.emptyList()));
+                                              new Function(p.getFunctionName(), p.getInputs(), Collections.emptyList()));
                               return new DynamicStruct(
                                       new Address(p.getContractAddress()),
                                       new Bool(true),
@@ -303,12 +752,13 @@ public class Web3jClient {
     String aggregateFunctionEncode =
             FunctionEncoder.encode(new Function("aggregate3", inputParameters, Collections.emptyList()));
 
-    Transaction ethCallTransaction =
-            Transaction.createEthCallTransaction(
+    return Transaction.createEthCallTransaction(
                     Address.DEFAULT.getValue(), MULTICALL_V3_ADDRESS, aggregateFunctionEncode);
 
+  }
+
+  private Tuple[] decodeAggregate3(Optional<EthCall> optionalSendResult, int parametersSize) {
     EthCall sendResult;
-    Optional<EthCall> optionalSendResult = ethCall(ethCallTransaction, blockParameter);
     if (optionalSendResult.isPresent()) {
       sendResult = optionalSendResult.get();
       if (Objects.nonNull(sendResult.getError())) {
@@ -335,55 +785,18 @@ public class Web3jClient {
       LOGGER.warn(
               String.format(
                       "Failed to decode the return, result: %s, error: %s, parameters size: %d",
-                      sendResult.getResult(), sendMsg, parameters.size()),
+                      sendResult.getResult(), sendMsg, parametersSize),
               ex);
       throw ex;
     }
-
-    // 3). 解析内部函数的返回值
-    List<Object> result = new ArrayList<>();
-
-    for (int idx = 0; idx < decodedReturns.length; idx += 1) {
-      MultiCallParameter parameter = parameters.get(idx);
-      Tuple decodedReturn = decodedReturns[idx];
-      com.esaulpaugh.headlong.abi.Function headlongFunction =
-              new com.esaulpaugh.headlong.abi.Function(
-                      parameter.getFunctionInputSign(), parameter.getFunctionOutputSign());
-      int[] indices = IntStream.range(0, headlongFunction.getOutputs().size()).toArray();
-
-      Object functionDecodedReturn;
-      try {
-        functionDecodedReturn =
-                headlongFunction.decodeReturn((byte[]) decodedReturn.get(1), indices);
-      } catch (BufferUnderflowException ex) {
-        functionDecodedReturn = parameter.getDefaultValue();
-      } catch (IllegalArgumentException ex) {
-        if (ex.getMessage().contains("unsigned val exceeds bit limit")) {
-          functionDecodedReturn = parameter.getDefaultValue();
-        } else {
-          LOGGER.error(
-                  String.format(
-                          "The decoded return from aggregate3 can't be decoded, parameters size: %d",
-                          parameters.size()),
-                  ex);
-          functionDecodedReturn = null;
-        }
-      } catch (Exception ex) {
-        LOGGER.error(
-                String.format(
-                        "The decoded return from aggregate3 can't be decoded, parameters size: %d",
-                        parameters.size()),
-                ex);
-        functionDecodedReturn = null;
-      }
-
-      result.add(functionDecodedReturn);
-    }
-
-    return result;
+    return decodedReturns;
   }
 
   private Optional<Tuple> decodeCallResponse(CallFunctionParameter parameter, String response) {
+    return decodeCallReturn(parameter, HexUtil.hex2Bytes(response));
+  }
+
+  private Optional<Tuple> decodeCallReturn(MultiCallParameter parameter, byte[] response) {
     try {
       com.esaulpaugh.headlong.abi.Function headlongFunction =
               new com.esaulpaugh.headlong.abi.Function(
@@ -406,7 +819,7 @@ public class Web3jClient {
        */
       Object decodedReturn =
               headlongFunction.decodeReturn(
-                      HexUtil.hex2Bytes(response),
+                      response,
                       IntStream.range(0, headlongFunction.getOutputs().size()).toArray());
 
       /**
@@ -422,14 +835,13 @@ public class Web3jClient {
 
       return Optional.of(decodedReturnTuple);
     } catch (Exception ex) {
-      String blockNumberStr;
-      if (parameter.getBlockNumber() instanceof DefaultBlockParameterNumber) {
-        blockNumberStr = parameter.getBlockNumber().toString();
-      } else if (parameter.getBlockNumber() instanceof DefaultBlockParameterName) {
-        blockNumberStr = parameter.getBlockNumber().getValue();
-      } else {
-        throw new RuntimeException(
-                "The blockNumber does not correspond to either DefaultBlockParameterNumber nor DefaultBlockParameterName");
+      if (parameter instanceof CallFunctionParameter) {
+        DefaultBlockParameter blockNumber = ((CallFunctionParameter) parameter).getBlockNumber();
+        if (!(blockNumber instanceof DefaultBlockParameterNumber)
+                && !(blockNumber instanceof DefaultBlockParameterName)) {
+          throw new RuntimeException(
+                  "The blockNumber does not correspond to either DefaultBlockParameterNumber nor DefaultBlockParameterName");
+        }
       }
       return Optional.empty();
     }
@@ -469,18 +881,211 @@ public class Web3jClient {
 
   public Optional<String> getStorageAt(
           String contractAddress, String position, DefaultBlockParameter blockNumber) {
-    return this.sendWithLimitedRetry(
-                    web3j.ethGetStorageAt(
-                            contractAddress, new BigInteger(HexUtil.toPureHex(position), 16), blockNumber))
+    return this.sendWithLimitedRetry(ethGetStorageAtRequest(contractAddress, position, blockNumber))
             .map(EthGetStorageAt::getData);
   }
 
   public Optional<String> getContractCode(
           String contractAddress, DefaultBlockParameter blockNumber) {
-    return this.sendWithLimitedRetry(web3j.ethGetCode(contractAddress, blockNumber))
+    return this.sendWithLimitedRetry(ethGetCodeRequest(contractAddress, blockNumber))
             .map(EthGetCode::getCode);
   }
 
+  /**
+   * Async counterpart of the sync API: nothing blocks the caller, the result is empty when the
+   * node stays unreachable and {@code ignoreWeb3jIOException} is set, otherwise the future
+   * completes exceptionally.
+   */
+  public <T extends Response<?>> CompletableFuture<Optional<T>> sendAsync(Request<?, T> request) {
+    return asyncTransport.send(request).handle(this::recoverAsync);
+  }
+
+  /**
+   * Async counterpart of {@link #batchSend(List)}.
+   */
+  public CompletableFuture<List<Response<?>>> batchSendAsync(
+          List<Request<?, ? extends Response<?>>> requests) {
+    if (requests.isEmpty()) {
+      return CompletableFuture.completedFuture(new ArrayList<>());
+    }
+    return asyncTransport.sendBatch(requests).handle(this::recoverAsync).thenApply(received -> {
+      List<Response<?>> responses = received.orElseGet(
+              () -> new ArrayList<>(Collections.nCopies(requests.size(), null)));
+      for (int idx = 0; idx < responses.size(); idx += 1) {
+        Response<?> response = responses.get(idx);
+        if (response != null && response.getError() != null) {
+          LOGGER.debug(
+                  String.format(
+                          "Failed to send %s, error: %s",
+                          requests.get(idx).getMethod(), response.getError().getMessage()));
+          responses.set(idx, null);
+        }
+      }
+      return responses;
+    });
+  }
+
+  public CompletableFuture<Optional<EthCall>> ethCallAsync(
+          Transaction transaction, DefaultBlockParameter blockNumber) {
+    return sendAsync(web3j.ethCall(transaction, blockNumber));
+  }
+
+  public CompletableFuture<Optional<String>> getStorageAtAsync(
+          String contractAddress, String position, DefaultBlockParameter blockNumber) {
+    return sendAsync(ethGetStorageAtRequest(contractAddress, position, blockNumber))
+            .thenApply(response -> response.map(EthGetStorageAt::getData));
+  }
+
+  public CompletableFuture<Optional<String>> getContractCodeAsync(
+          String contractAddress, DefaultBlockParameter blockNumber) {
+    return sendAsync(ethGetCodeRequest(contractAddress, blockNumber))
+            .thenApply(response -> response.map(EthGetCode::getCode));
+  }
+
+  public CompletableFuture<Optional<Tuple>> callFunctionAsync(CallFunctionParameter parameter) {
+    return sendAsync(ethCallRequest(parameter))
+            .thenApply(response -> decodeCallResult(parameter, response.orElse(null)));
+  }
+
+  /**
+   * Async counterpart of {@link #batchCall(List, DefaultBlockParameter)}, the batches of
+   * the adaptive size are sent concurrently.
+   */
+  public CompletableFuture<List<Object>> batchCallAsync(
+          List<MultiCallParameter> parameters, DefaultBlockParameter blockParameter) {
+    List<CallFunctionParameter> callParameters =
+            parameters.stream()
+                    .map(parameter -> new CallFunctionParameter(parameter, blockParameter))
+                    .collect(Collectors.toList());
+
+    return batchCallFunctionAsync(callParameters).thenApply(results ->
+            Streams.zip(results.stream(), callParameters.stream(),
+                            (result, parameter) -> unwrapCallResult(parameter, result))
+                    .collect(Collectors.toList()));
+  }
+
+  private CompletableFuture<List<Optional<Tuple>>> batchCallFunctionAsync(
+          List<CallFunctionParameter> parameters) {
+    List<CompletableFuture<List<Optional<Tuple>>>> batches = new ArrayList<>();
+    for (List<CallFunctionParameter> chunk : Lists.partition(parameters, batchSizer.getSize())) {
+      batches.add(batchCallFunctionLimitAsync(chunk));
+    }
+    return CompletableFuture.allOf(batches.toArray(new CompletableFuture[0])).thenApply(ignored -> {
+      List<Optional<Tuple>> results = new ArrayList<>(parameters.size());
+      batches.forEach(batch -> results.addAll(batch.join()));
+      return results;
+    });
+  }
+
+  /**
+   * Async counterpart of {@link #batchCallFunctionWithBlockNumberLimit(List)}: a batch rejected
+   * for its size is split in halves without being retried as is, and the calls the node answered
+   * as too large are sent again in smaller batches. Only the async batches that fail feed the
+   * {@link AdaptiveBatchSizer}, their latency includes the queueing on the dispatcher.
+   */
+  private CompletableFuture<List<Optional<Tuple>>> batchCallFunctionLimitAsync(
+          List<CallFunctionParameter> parameters) {
+    List<Request<?, ? extends Response<?>>> requests =
+            parameters.stream().map(this::ethCallRequest).collect(Collectors.toList());
+    return asyncTransport.sendBatch(requests, ex -> parameters.size() > 1 && isTooLarge(ex))
+            .handle((responses, failure) -> {
+              Throwable cause = failure instanceof CompletionException
+                      ? failure.getCause() : failure;
+              if (cause instanceof Exception && parameters.size() > 1
+                      && isTooLarge((Exception) cause)) {
+                LOGGER.debug(String.format("Splitting a batch of %d calls", parameters.size()),
+                        cause);
+                if (cause instanceof SocketTimeoutException) {
+                  batchSizer.onTimeout(parameters.size());
+                } else {
+                  batchSizer.onRejected(parameters.size());
+                }
+                int half = parameters.size() / 2;
+                return batchCallFunctionLimitAsync(parameters.subList(0, half)).thenCombine(
+                        batchCallFunctionLimitAsync(parameters.subList(half, parameters.size())),
+                        (first, second) -> {
+                          List<Optional<Tuple>> results = new ArrayList<>(first);
+                          results.addAll(second);
+                          return results;
+                        });
+              }
+              return recoverAsync(responses, failure)
+                      .map(received -> decodeBatchAsync(parameters, received))
+                      .orElseGet(() -> CompletableFuture.completedFuture(
+                              new ArrayList<>(Collections.nCopies(parameters.size(),
+                                      Optional.empty()))));
+            })
+            .thenCompose(future -> future);
+  }
+
+  private CompletableFuture<List<Optional<Tuple>>> decodeBatchAsync(
+          List<CallFunctionParameter> parameters, List<Response<?>> responses) {
+    List<Optional<Tuple>> results = new ArrayList<>(parameters.size());
+    List<Integer> tooLargeIndices = new ArrayList<>();
+    for (int idx = 0; idx < parameters.size(); idx++) {
+      Response<?> response = responses.get(idx);
+      if (response == null) {
+        results.add(Optional.empty());
+      } else if (response.getError() != null) {
+        if (parameters.size() > 1 && isTooLarge(response.getError().getMessage())) {
+          tooLargeIndices.add(idx);
+        } else {
+          LOGGER.warn(String.format("Failed to call contract, params: %s, error: %s",
+                  parameters.get(idx), response.getError().getMessage()));
+        }
+        results.add(Optional.empty());
+      } else {
+        results.add(decodeCallResponse(parameters.get(idx), (String) response.getResult()));
+      }
+    }
+    if (tooLargeIndices.isEmpty()) {
+      return CompletableFuture.completedFuture(results);
+    }
+
+    if (tooLargeIndices.size() == parameters.size()) {
+      batchSizer.onRejected(parameters.size());
+    } else {
+      batchSizer.onPartiallyAnswered(parameters.size(),
+              parameters.size() - tooLargeIndices.size());
+    }
+    return batchCallFunctionAsync(
+            tooLargeIndices.stream().map(parameters::get).collect(Collectors.toList()))
+            .thenApply(retried -> {
+              for (int idx = 0; idx < tooLargeIndices.size(); idx++) {
+                results.set(tooLargeIndices.get(idx), retried.get(idx));
+              }
+              return results;
+            });
+  }
+
+  /**
+   * Async counterpart of {@link #multiCall(List, DefaultBlockParameter)}.
+   */
+  public CompletableFuture<List<Object>> multiCallAsync(
+          List<MultiCallParameter> parameters, DefaultBlockParameter blockParameter) {
+    return ethCallAsync(aggregate3Transaction(parameters), blockParameter)
+            .thenApply(response -> decodeMultiCallReturns(
+                    parameters, decodeAggregate3(response, parameters.size())));
+  }
+
+  private <T> Optional<T> recoverAsync(T response, Throwable failure) {
+    if (failure == null) {
+      return Optional.of(response);
+    }
+    Throwable cause = failure instanceof CompletionException ? failure.getCause() : failure;
+    if (!(cause instanceof IOException) && !(cause instanceof ClientConnectionException)) {
+      throw new CompletionException(cause);
+    }
+    if (!this.ignoreWeb3jIOException) {
+      throw new CompletionException(
+              new RuntimeException("Failed to send request to web3 node", cause));
+    }
+
+    LOGGER.error(
+            String.format("Failed to send request to web3 node with %d retry", this.retryNumber));
+    return Optional.empty();
+  }
+
   private Optional<BatchResponse> batchSendWithLimitRetry(BatchRequest batchRequest) {
     return tryRequest(batchRequest::send);
   }
@@ -492,20 +1097,38 @@ public class Web3jClient {
   }
 
   private <Resp> Optional<Resp> tryRequest(RequestSupplier<Resp> handle) {
+    return tryRequest(handle, ex -> false);
+  }
+
+  /**
+   * @param notRetried failures thrown at once wrapped in a {@link BatchTooLargeException}
+   */
+  private <Resp> Optional<Resp> tryRequest(RequestSupplier<Resp> handle,
+          Predicate<Exception> notRetried) {
     int sendRetryNumber = 0;
     Exception lastException = null;
+    long startedAt = System.nanoTime();
 
     while (sendRetryNumber < this.retryNumber) {
       try {
         return Optional.of(handle.get());
       } catch (IOException | ClientConnectionException ex) {
+        if (notRetried.test(ex)) {
+          throw new BatchTooLargeException(ex);
+        }
+        sendRetryNumber += 1;
+        lastException = ex;
+        long backoff = RpcRateLimiter.backoffMs(this.retryIntervalMs, sendRetryNumber);
+        if (sendRetryNumber >= this.retryNumber
+                || !RpcRateLimiter.isWithinRetryBudget(startedAt, backoff)) {
+          break;
+        }
+        endpointPool.onRetry();
         try {
-          Thread.sleep(this.retryIntervalMs);
+          Thread.sleep(backoff);
         } catch (InterruptedException sleepException) {
           throw new RuntimeException(sleepException);
         }
-        sendRetryNumber += 1;
-        lastException = ex;
       }
     }
 
@@ -514,7 +1137,7 @@ public class Web3jClient {
     }
 
     LOGGER.error(
-            String.format("Failed to send request to web3 node with %d retry", this.retryNumber));
+            String.format("Failed to send request to web3 node with %d retry", sendRetryNumber));
     return Optional.empty();
   }
 
@@ -522,6 +1145,13 @@ public class Web3jClient {
     return tryRequest(request::send);
   }
 
+  private static class BatchTooLargeException extends RuntimeException {
+
+    private BatchTooLargeException(Exception cause) {
+      super(cause);
+    }
+  }
+
   @Getter
   @Setter
   @NoArgsConstructor
@@ -0,0 +1,122 @@
+package com.chainbase.evm;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import org.web3j.protocol.http.HttpService;
+
+/**
+ * Clients shared by every UDF instance of the JVM, i.e. of all the slots of a TaskManager, so that
+ * they send to each endpoint over one connection pool instead of one per function and slot.
+ *
+ * <p>Clients are reference counted: a UDF acquires the clients of its endpoints and releases them
+ * in {@code close()}, the last release closes the client. They all share one {@link OkHttpClient}
+ * which keeps the connections alive between calls, negotiates HTTP/2 with the endpoints that
+ * support it and transparently requests gzip compressed responses. It's created with the first
+ * client and shut down with the last one, so no thread outlives the job on the TaskManager.
+ */
+public final class Web3jClientRegistry {
+
+  private static final int MAX_IDLE_CONNECTIONS = 64;
+
+  private static final long KEEP_ALIVE_MINUTES = 5;
+
+  private static final long PING_INTERVAL_SECONDS = 30;
+
+  private static final int MAX_REQUESTS = 1024;
+
+  private static final int MAX_REQUESTS_PER_HOST = 64;
+
+  private static OkHttpClient httpClient;
+
+  private static final Map<String, Entry> CLIENTS = new HashMap<>();
+
+  private Web3jClientRegistry() {
+  }
+
+  public static Web3jClient acquire(String endpoint) {
+    return acquire(endpoint, Web3jClient.DEFAULT_RETRY_NUMBER,
+        Web3jClient.DEFAULT_RETRY_INTERVAL_MS, false);
+  }
+
+  /**
+   * The client of the endpoint with these retry settings, created on the first acquisition.
+   */
+  public static synchronized Web3jClient acquire(String endpoint, int retryNumber,
+      int retryIntervalMs, boolean ignoreWeb3jIOException) {
+    String key = String.format("%s|%d|%d|%b", endpoint, retryNumber, retryIntervalMs,
+        ignoreWeb3jIOException);
+    if (httpClient == null) {
+      httpClient = newHttpClient();
+    }
+    Entry entry = CLIENTS.computeIfAbsent(key, (_key) -> new Entry(key,
+        new Web3jClient(endpoint, retryNumber, retryIntervalMs, ignoreWeb3jIOException,
+            httpClient)));
+    entry.references += 1;
+    return entry.client;
+  }
+
+  /**
+   * Gives back a client acquired from the registry.
+   *
+   * @return whether this was the last reference and the client has been closed
+   */
+  public static synchronized boolean release(Web3jClient client) {
+    for (Entry entry : CLIENTS.values()) {
+      if (entry.client != client) {
+        continue;
+      }
+      entry.references -= 1;
+      if (entry.references > 0) {
+        return false;
+      }
+      CLIENTS.remove(entry.key);
+      client.close();
+      if (CLIENTS.isEmpty()) {
+        httpClient.dispatcher().executorService().shutdown();
+        httpClient.connectionPool().evictAll();
+        httpClient = null;
+      }
+      return true;
+    }
+    throw new IllegalArgumentException("The client wasn't acquired from the registry");
+  }
+
+  static synchronized OkHttpClient getHttpClient() {
+    return httpClient;
+  }
+
+  private static OkHttpClient newHttpClient() {
+    Dispatcher dispatcher = new Dispatcher();
+    dispatcher.setMaxRequests(MAX_REQUESTS);
+    dispatcher.setMaxRequestsPerHost(MAX_REQUESTS_PER_HOST);
+    return HttpService.getOkHttpClientBuilder()
+        .dispatcher(dispatcher)
+        .connectionPool(
+            new ConnectionPool(MAX_IDLE_CONNECTIONS, KEEP_ALIVE_MINUTES, TimeUnit.MINUTES))
+        // HTTP/2 is negotiated over TLS, plain http endpoints stay on HTTP/1.1
+        .protocols(Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1))
+        .pingInterval(PING_INTERVAL_SECONDS, TimeUnit.SECONDS)
+        .retryOnConnectionFailure(true)
+        .build();
+  }
+
+  private static class Entry {
+
+    private final String key;
+
+    private final Web3jClient client;
+
+    private int references;
+
+    private Entry(String key, Web3jClient client) {
+      this.key = key;
+      this.client = client;
+    }
+  }
+}
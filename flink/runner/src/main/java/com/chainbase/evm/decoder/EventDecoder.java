@@ -0,0 +1,114 @@
+package com.chainbase.evm.decoder;
+
+import com.chainbase.evm.ABIDecoder;
+import com.chainbase.evm.EvmUtil;
+import com.esaulpaugh.headlong.abi.ABIObject;
+import com.esaulpaugh.headlong.abi.Event;
+import com.esaulpaugh.headlong.abi.Tuple;
+import com.esaulpaugh.headlong.abi.TupleType;
+import java.io.IOException;
+import javax.annotation.Nullable;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.flink.types.Row;
+
+/**
+ * Decoder plan of one event ABI: the parsed {@link Event} and its renamed input tuple are built
+ * once, so decoding a log only runs the headlong decode and the JSON streaming.
+ */
+public class EventDecoder {
+
+  private final Event event;
+
+  private final TupleType revisedInputs;
+
+  private final int topicsCount;
+
+  /**
+   * Duplicate names fall back to the tree serialization, which keeps the last value.
+   */
+  private final boolean streamable;
+
+  private TupleRowConverter rowConverter;
+
+  public EventDecoder(Event event) {
+    this.event = event;
+    this.revisedInputs = EvmUtil.reviseOnCopyTuple(event.getInputs(), false);
+    this.topicsCount = event.getIndexedParams().size() + 1;
+    this.streamable = EvmUtil.hasDistinctElementNames(revisedInputs);
+  }
+
+  public static EventDecoder compile(String abiJson) {
+    ABIObject abiObject = ABIObject.fromJson(abiJson);
+    if (!abiObject.isEvent()) {
+      throw new RuntimeException("Only decode events are supported !");
+    }
+    return new EventDecoder(abiObject.asEvent());
+  }
+
+  public Event getEvent() {
+    return event;
+  }
+
+  /**
+   * Returns null when the number of non-blank topics doesn't match the indexed inputs of the
+   * event.
+   */
+  @Nullable
+  public String decode(String[] topicsHex, byte[] data, TupleJsonWriter writer)
+      throws IOException {
+    Tuple tuple = decodeTuple(topicsHex, data);
+    if (tuple == null) {
+      return null;
+    }
+    if (streamable) {
+      return writer.write((gen) -> EvmUtil.writeTupleValue(gen, revisedInputs, tuple));
+    }
+    return EvmUtil.transformTupleValue2ObjectNode(revisedInputs, tuple).toString();
+  }
+
+  /**
+   * Typed counterpart of {@link #decode}, see {@link TupleRowConverter}.
+   */
+  @Nullable
+  public Row decodeRow(String[] topicsHex, byte[] data) {
+    Tuple tuple = decodeTuple(topicsHex, data);
+    return tuple == null ? null : getRowConverter().toRow(tuple);
+  }
+
+  public TupleRowConverter getRowConverter() {
+    if (rowConverter == null) {
+      rowConverter = TupleRowConverter.of(revisedInputs);
+    }
+    return rowConverter;
+  }
+
+  TupleType getRevisedInputs() {
+    return revisedInputs;
+  }
+
+  boolean isStreamable() {
+    return streamable;
+  }
+
+  @Nullable
+  Tuple decodeTuple(String[] topicsHex, byte[] data) {
+    int count = 0;
+    for (String topic : topicsHex) {
+      if (StringUtils.isNotBlank(topic)) {
+        count++;
+      }
+    }
+    if (count != topicsCount) {
+      return null;
+    }
+
+    String[] topics = new String[count];
+    int idx = 0;
+    for (String topic : topicsHex) {
+      if (StringUtils.isNotBlank(topic)) {
+        topics[idx++] = topic;
+      }
+    }
+    return ABIDecoder.decodeEvent(topics, data, event);
+  }
+}
@@ -0,0 +1,107 @@
+package com.chainbase.evm.decoder;
+
+import com.chainbase.evm.EvmUtil;
+import com.chainbase.utils.JSONUtils;
+import com.esaulpaugh.headlong.abi.ABIJSON;
+import com.esaulpaugh.headlong.abi.ABIObject;
+import com.esaulpaugh.headlong.abi.Event;
+import com.esaulpaugh.headlong.abi.Tuple;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.annotation.Nullable;
+
+/**
+ * Decodes logs of a whole contract ABI: every non-anonymous event is compiled once and indexed by
+ * its topic0, so a log is dispatched to its decoder with one hash lookup.
+ *
+ * <p>Events sharing a topic0 but indexing different inputs (e.g. ERC20 and ERC721 Transfer) are
+ * tried in ABI order, the first one matching the topic count wins.
+ */
+public class EventDispatcher {
+
+  private final Map<String, List<EventDecoder>> decodersByTopic0;
+
+  public EventDispatcher(List<Event> events) {
+    this.decodersByTopic0 = new HashMap<>(events.size() * 2);
+    for (Event event : events) {
+      if (event.isAnonymous()) {
+        continue;
+      }
+      decodersByTopic0
+          .computeIfAbsent(EvmUtil.providesEventTopic0(event.getCanonicalSignature()),
+              (topic0) -> new ArrayList<>(1))
+          .add(new EventDecoder(event));
+    }
+  }
+
+  /**
+   * Accepts a full contract ABI (functions and errors are ignored) or a single event ABI.
+   */
+  public static EventDispatcher compile(String abiJson) {
+    if (abiJson.trim().startsWith("[")) {
+      return new EventDispatcher(ABIJSON.parseEvents(abiJson));
+    }
+    ABIObject abiObject = ABIObject.fromJson(abiJson);
+    if (!abiObject.isEvent()) {
+      throw new RuntimeException("Only decode events are supported !");
+    }
+    return new EventDispatcher(Collections.singletonList(abiObject.asEvent()));
+  }
+
+  public int size() {
+    return decodersByTopic0.size();
+  }
+
+  /**
+   * Returns {@code {"event":name,"args":{...}}} for the first event of the ABI matching the log,
+   * or null when none does.
+   */
+  @Nullable
+  public String decode(String[] topicsHex, byte[] data, TupleJsonWriter writer)
+      throws IOException {
+    List<EventDecoder> decoders = getDecoders(topicsHex[0]);
+    if (decoders == null) {
+      return null;
+    }
+
+    for (EventDecoder decoder : decoders) {
+      Tuple tuple = decoder.decodeTuple(topicsHex, data);
+      if (tuple == null) {
+        continue;
+      }
+      String name = decoder.getEvent().getName();
+      if (decoder.isStreamable()) {
+        return writer.write((gen) -> {
+          gen.writeStartObject();
+          gen.writeStringField("event", name);
+          gen.writeFieldName("args");
+          EvmUtil.writeTupleValue(gen, decoder.getRevisedInputs(), tuple);
+          gen.writeEndObject();
+        });
+      }
+      ObjectNode result = JSONUtils.createObjectNode();
+      result.put("event", name);
+      result.set("args",
+          EvmUtil.transformTupleValue2ObjectNode(decoder.getRevisedInputs(), tuple));
+      return result.toString();
+    }
+    return null;
+  }
+
+  @Nullable
+  List<EventDecoder> getDecoders(@Nullable String topic0) {
+    if (topic0 == null) {
+      return null;
+    }
+    List<EventDecoder> decoders = decodersByTopic0.get(topic0);
+    if (decoders == null) {
+      decoders = decodersByTopic0.get(topic0.toLowerCase());
+    }
+    return decoders;
+  }
+}
@@ -0,0 +1,92 @@
+package com.chainbase.evm.decoder;
+
+import com.chainbase.evm.EvmUtil;
+import com.esaulpaugh.headlong.abi.ABIObject;
+import com.esaulpaugh.headlong.abi.Function;
+import com.esaulpaugh.headlong.abi.Tuple;
+import com.esaulpaugh.headlong.abi.TupleType;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import org.apache.flink.types.Row;
+
+/**
+ * Decoder plan of one function ABI: the parsed {@link Function} and its renamed input and output
+ * tuples are built once, so decoding a call only runs the headlong decode and the JSON
+ * streaming.
+ */
+public class FunctionDecoder {
+
+  private final Function function;
+
+  private final TupleType revisedInputs;
+
+  private final TupleType revisedOutputs;
+
+  /**
+   * Duplicate names fall back to the tree serialization, which keeps the last value.
+   */
+  private final boolean streamable;
+
+  private TupleRowConverter rowConverter;
+
+  public FunctionDecoder(Function function) {
+    this.function = function;
+    this.revisedInputs = EvmUtil.reviseOnCopyTuple(function.getInputs(), false);
+    this.revisedOutputs = EvmUtil.reviseOnCopyTuple(function.getOutputs(), true);
+    this.streamable = EvmUtil.hasDistinctElementNames(revisedInputs, revisedOutputs);
+  }
+
+  public static FunctionDecoder compile(String abiJson) {
+    ABIObject abiObject = ABIObject.fromJson(abiJson);
+    if (!abiObject.isFunction()) {
+      throw new RuntimeException("Only decode functions are supported !");
+    }
+    return new FunctionDecoder(abiObject.asFunction());
+  }
+
+  public Function getFunction() {
+    return function;
+  }
+
+  public String decode(byte[] input, byte[] output, TupleJsonWriter writer) throws IOException {
+    Tuple inputParam = decode(function::decodeCall, input);
+    Tuple resultParam = decode(function::decodeReturn, output);
+
+    if (streamable) {
+      return writer.write((gen) -> {
+        gen.writeStartObject();
+        EvmUtil.writeTupleFields(gen, revisedInputs, inputParam);
+        EvmUtil.writeTupleFields(gen, revisedOutputs, resultParam);
+        gen.writeEndObject();
+      });
+    }
+    ObjectNode objectNode = EvmUtil.transformTupleValue2ObjectNode(revisedInputs, inputParam);
+    ObjectNode outputObjectNode =
+        EvmUtil.transformTupleValue2ObjectNode(revisedOutputs, resultParam);
+    return objectNode.setAll(outputObjectNode).toString();
+  }
+
+  /**
+   * Typed counterpart of {@link #decode}, see {@link TupleRowConverter}.
+   */
+  public Row decodeRow(byte[] input, byte[] output) {
+    return getRowConverter().toRow(
+        decode(function::decodeCall, input), decode(function::decodeReturn, output));
+  }
+
+  public TupleRowConverter getRowConverter() {
+    if (rowConverter == null) {
+      rowConverter = TupleRowConverter.of(revisedInputs, revisedOutputs);
+    }
+    return rowConverter;
+  }
+
+  private static Tuple decode(java.util.function.Function<ByteBuffer, Tuple> func, byte[] hex) {
+    ByteBuffer buffer = ByteBuffer.wrap(hex);
+    if (buffer.capacity() <= 0) {
+      return Tuple.EMPTY;
+    }
+    return func.apply(buffer);
+  }
+}
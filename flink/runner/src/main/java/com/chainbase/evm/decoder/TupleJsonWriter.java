@@ -0,0 +1,32 @@
+package com.chainbase.evm.decoder;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import java.io.IOException;
+import java.io.StringWriter;
+
+/**
+ * Reusable character buffer the decoders stream their JSON into, see
+ * {@link com.chainbase.evm.EvmUtil#writeTupleValue}. Not thread-safe, keep one per function
+ * instance.
+ */
+public final class TupleJsonWriter {
+
+  private static final JsonFactory FACTORY = new JsonFactory();
+
+  private final StringWriter buffer = new StringWriter(512);
+
+  public String write(Body body) throws IOException {
+    buffer.getBuffer().setLength(0);
+    try (JsonGenerator gen = FACTORY.createGenerator(buffer)) {
+      body.write(gen);
+    }
+    return buffer.toString();
+  }
+
+  @FunctionalInterface
+  public interface Body {
+
+    void write(JsonGenerator gen) throws IOException;
+  }
+}
@@ -0,0 +1,186 @@
+package com.chainbase.evm.decoder;
+
+import com.chainbase.evm.HexUtil;
+import com.esaulpaugh.headlong.abi.ABIType;
+import com.esaulpaugh.headlong.abi.ArrayType;
+import com.esaulpaugh.headlong.abi.Tuple;
+import com.esaulpaugh.headlong.abi.TupleType;
+import com.esaulpaugh.headlong.abi.UnitType;
+import com.google.common.base.Strings;
+import java.lang.reflect.Array;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import org.apache.flink.table.api.DataTypes;
+import org.apache.flink.table.types.DataType;
+import org.apache.flink.types.Row;
+
+/**
+ * Maps decoded tuples to Flink rows, typed after the ABI so fields can be read by column:
+ * <ul>
+ *   <li>address, bytes, function, string and fixed: STRING, same text as the JSON output</li>
+ *   <li>bool: BOOLEAN</li>
+ *   <li>(u)intN: BIGINT when it fits, DECIMAL(38, 0) up to 38 digits, STRING otherwise</li>
+ *   <li>arrays: ARRAY, tuples: ROW</li>
+ * </ul>
+ */
+public final class TupleRowConverter {
+
+  private static final BigInteger DECIMAL_MAX = BigInteger.TEN.pow(38).subtract(BigInteger.ONE);
+
+  private static final BigInteger DECIMAL_MIN = DECIMAL_MAX.negate();
+
+  private final DataType dataType;
+
+  private final Converter[] converters;
+
+  private final int[] tupleSizes;
+
+  private TupleRowConverter(DataType dataType, Converter[] converters, int[] tupleSizes) {
+    this.dataType = dataType;
+    this.converters = converters;
+    this.tupleSizes = tupleSizes;
+  }
+
+  /**
+   * One ROW holding the elements of all the given tuples in order, e.g. the inputs then the
+   * outputs of a function.
+   */
+  public static TupleRowConverter of(TupleType... tupleTypes) {
+    List<DataTypes.Field> fields = new ArrayList<>();
+    List<Converter> converters = new ArrayList<>();
+    Set<String> names = new HashSet<>();
+    int[] tupleSizes = new int[tupleTypes.length];
+    for (int t = 0; t < tupleTypes.length; t++) {
+      TupleType tupleType = tupleTypes[t];
+      tupleSizes[t] = tupleType.size();
+      for (int idx = 0; idx < tupleType.size(); idx++) {
+        Column column = column(tupleType.get(idx));
+        fields.add(DataTypes.FIELD(
+            fieldName(names, tupleType.getElementName(idx), fields.size()), column.dataType));
+        converters.add(column.converter);
+      }
+    }
+    return new TupleRowConverter(
+        DataTypes.ROW(fields.toArray(new DataTypes.Field[0])),
+        converters.toArray(new Converter[0]),
+        tupleSizes);
+  }
+
+  public DataType getDataType() {
+    return dataType;
+  }
+
+  /**
+   * Elements missing from a tuple, e.g. the outputs of a reverted call, are null.
+   */
+  public Row toRow(Tuple... tuples) {
+    Row row = new Row(converters.length);
+    int pos = 0;
+    for (int t = 0; t < tupleSizes.length; t++) {
+      for (int idx = 0; idx < tupleSizes[t]; idx++, pos++) {
+        if (idx < tuples[t].size()) {
+          row.setField(pos, converters[pos].convert(tuples[t].get(idx)));
+        }
+      }
+    }
+    return row;
+  }
+
+  private static String fieldName(Set<String> names, String name, int idx) {
+    String fieldName = Strings.isNullOrEmpty(name) ? String.format("_%d", idx) : name;
+    if (!names.add(fieldName)) {
+      fieldName = String.format("%s_%d", fieldName, idx);
+      names.add(fieldName);
+    }
+    return fieldName;
+  }
+
+  private static Column column(ABIType<?> type) {
+    switch (type.typeCode()) {
+      case ABIType.TYPE_CODE_BOOLEAN:
+        return new Column(DataTypes.BOOLEAN(), (value) -> value);
+
+      case ABIType.TYPE_CODE_INT:
+      case ABIType.TYPE_CODE_LONG:
+      case ABIType.TYPE_CODE_BIG_INTEGER:
+        return integerColumn((UnitType<?>) type);
+
+      case ABIType.TYPE_CODE_BIG_DECIMAL:
+        return new Column(DataTypes.STRING(), Object::toString);
+
+      case ABIType.TYPE_CODE_ADDRESS:
+        return new Column(DataTypes.STRING(), (value) -> value.toString().toLowerCase());
+
+      case ABIType.TYPE_CODE_ARRAY:
+        return arrayColumn((ArrayType<?, ?>) type);
+
+      case ABIType.TYPE_CODE_TUPLE:
+        TupleRowConverter nested = of((TupleType) type);
+        return new Column(nested.dataType, (value) -> nested.toRow((Tuple) value));
+
+      default:
+        throw new IllegalArgumentException(
+            String.format("Can't map %s to a column type", type.getCanonicalType()));
+    }
+  }
+
+  private static Column integerColumn(UnitType<?> type) {
+    int magnitudeBits = type.isUnsigned() ? type.getBitLength() : type.getBitLength() - 1;
+    if (magnitudeBits <= 63) {
+      return new Column(DataTypes.BIGINT(), (value) -> ((Number) value).longValue());
+    }
+    if (type.maxValue().compareTo(DECIMAL_MAX) <= 0
+        && type.minValue().compareTo(DECIMAL_MIN) >= 0) {
+      return new Column(DataTypes.DECIMAL(38, 0), (value) -> value instanceof BigInteger
+          ? new BigDecimal((BigInteger) value)
+          : BigDecimal.valueOf(((Number) value).longValue()));
+    }
+    return new Column(DataTypes.STRING(), Object::toString);
+  }
+
+  private static Column arrayColumn(ArrayType<?, ?> type) {
+    ABIType<?> elementType = type.getElementType();
+    if (elementType.typeCode() == ABIType.TYPE_CODE_BYTE) {
+      if (type.isString()) {
+        return new Column(DataTypes.STRING(), (value) -> value instanceof String
+            ? value
+            : new String((byte[]) value, StandardCharsets.UTF_8));
+      }
+      return new Column(DataTypes.STRING(), (value) -> HexUtil.bytes20xHex((byte[]) value));
+    }
+
+    Column element = column(elementType);
+    Class<?> elementClass = element.dataType.getConversionClass();
+    return new Column(DataTypes.ARRAY(element.dataType), (value) -> {
+      int length = Array.getLength(value);
+      Object array = Array.newInstance(elementClass, length);
+      for (int idx = 0; idx < length; idx++) {
+        Array.set(array, idx, element.converter.convert(Array.get(value, idx)));
+      }
+      return array;
+    });
+  }
+
+  @FunctionalInterface
+  private interface Converter {
+
+    Object convert(Object value);
+  }
+
+  private static final class Column {
+
+    private final DataType dataType;
+
+    private final Converter converter;
+
+    private Column(DataType dataType, Converter converter) {
+      this.dataType = dataType;
+      this.converter = converter;
+    }
+  }
+}
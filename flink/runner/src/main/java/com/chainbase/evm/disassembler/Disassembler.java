@@ -1,11 +1,17 @@
 package com.chainbase.evm.disassembler;
 
+import com.chainbase.evm.HexUtil;
 import java.math.BigInteger;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/**
+ * Scans the bytecode in place: opcode objects and the text listing are only built when asked,
+ * {@link #getPush4Selectors()} reads the PUSH4 operands straight from the bytes.
+ */
 public class Disassembler {
 
   private static final Logger LOGGER = LoggerFactory.getLogger(Disassembler.class.getName());
@@ -14,13 +20,17 @@ public class Disassembler {
       "a165627a7a72305820"; // 0xa1 0x65 'b' 'z' 'z' 'r' '0' 0x58 0x20 + <32 bytes swarm hash> <2
   // bytes length of the metadata>
 
+  private static final int PUSH4 = Opcodes.PUSH4.getOpcode();
+
   private final String code;
 
+  private final byte[] bytecode;
+
   private String contractMetadata;
 
-  private String disassembledCode = "";
+  private String disassembledCode;
 
-  private final List<Opcode> opcodes = new ArrayList<>();
+  private List<Opcode> opcodes;
 
   public Disassembler(String code) {
     String[] codeStripped = cleanData(code);
@@ -28,7 +38,7 @@ public class Disassembler {
     if (codeStripped.length > 1) {
       this.contractMetadata = CONTRACT_METADATA_PREFIX + codeStripped[1];
     }
-    loadOpcodes();
+    this.bytecode = toBytes(this.code);
   }
 
   public static String[] cleanData(String code) {
@@ -38,38 +48,44 @@ public class Disassembler {
     return code.split(CONTRACT_METADATA_PREFIX);
   }
 
-  private void loadOpcodes() {
-    StringToCharIterator iterator = new StringToCharIterator(code);
-    StringBuilder disassembledCodeBuilder = new StringBuilder();
-    int offset = 0;
-    while (iterator.hasNext()) {
-      String nextByte = iterator.next();
-      Opcode opcode = new Opcode();
-      opcode.setOffset(offset);
-      Integer opcodeHex = Integer.valueOf(nextByte, 16);
-      Opcodes opcodeDefinition = Opcodes.getOpcode(opcodeHex);
-      if (opcodeDefinition == null) {
-        LOGGER.debug("Unknown opcode: " + opcodeHex);
-        opcode.setOpcode(Opcodes.UNKNOWN);
-      } else {
-        opcode.setOpcode(opcodeDefinition);
-        int parametersNum = opcodeDefinition.getParametersNum();
-        if (parametersNum > 0) {
-          offset += parametersNum;
-          String opParameter = getParameter(parametersNum, iterator);
-          String parameterString = opParameter.replaceAll("0x", "");
-          if ("".equals(parameterString)) {
-            opcode.setOpcode(Opcodes.UNKNOWN);
-          } else {
-            opcode.setParameter(new BigInteger(parameterString, 16));
-          }
-        }
+  /**
+   * A trailing half byte is ignored.
+   */
+  private static byte[] toBytes(String code) {
+    String evenCode = (code.length() & 1) == 0 ? code : code.substring(0, code.length() - 1);
+    byte[] bytes = new byte[evenCode.length() / 2];
+    if (HexUtil.decodeHex(evenCode, bytes, 0) < 0) {
+      throw new IllegalArgumentException("Invalid bytecode: " + evenCode);
+    }
+    return bytes;
+  }
+
+  private static int parametersNum(int opcode) {
+    Opcodes opcodeDefinition = Opcodes.fromByte(opcode);
+    return opcodeDefinition == null ? 0 : opcodeDefinition.getParametersNum();
+  }
+
+  /**
+   * Operands of the PUSH4 instructions, as big-endian ints, in code order. A PUSH4 truncated by
+   * the end of the code keeps the bytes it has.
+   */
+  public int[] getPush4Selectors() {
+    int[] selectors = new int[32];
+    int count = 0;
+    for (int pc = 0; pc < bytecode.length; pc += 1 + parametersNum(bytecode[pc] & 0xff)) {
+      if ((bytecode[pc] & 0xff) != PUSH4 || pc + 1 >= bytecode.length) {
+        continue;
       }
-      offset++;
-      opcodes.add(opcode);
-      disassembledCodeBuilder.append(opcode).append(System.lineSeparator());
+      int selector = 0;
+      for (int i = pc + 1, end = Math.min(pc + 5, bytecode.length); i < end; i++) {
+        selector = (selector << 8) | (bytecode[i] & 0xff);
+      }
+      if (count == selectors.length) {
+        selectors = Arrays.copyOf(selectors, count * 2);
+      }
+      selectors[count++] = selector;
     }
-    this.disassembledCode = disassembledCodeBuilder.toString();
+    return Arrays.copyOf(selectors, count);
   }
 
   public String getCode() {
@@ -81,21 +97,50 @@ public class Disassembler {
   }
 
   public String getDisassembledCode() {
+    if (disassembledCode == null) {
+      StringBuilder disassembledCodeBuilder = new StringBuilder();
+      for (Opcode opcode : getOpcodes()) {
+        disassembledCodeBuilder.append(opcode).append(System.lineSeparator());
+      }
+      disassembledCode = disassembledCodeBuilder.toString();
+    }
     return disassembledCode;
   }
 
   public List<Opcode> getOpcodes() {
+    if (opcodes == null) {
+      opcodes = loadOpcodes();
+    }
     return opcodes;
   }
 
-  private static String getParameter(int parametersNum, StringToCharIterator iterator) {
-    StringBuilder sb = new StringBuilder("0x");
-    int i = 0;
-    while (i < parametersNum && iterator.hasNext()) {
-      String next = iterator.next();
-      sb.append(next);
-      i++;
+  private List<Opcode> loadOpcodes() {
+    List<Opcode> loaded = new ArrayList<>();
+    int pc = 0;
+    while (pc < bytecode.length) {
+      int opcodeByte = bytecode[pc] & 0xff;
+      Opcode opcode = new Opcode();
+      opcode.setOffset(pc);
+      Opcodes opcodeDefinition = Opcodes.fromByte(opcodeByte);
+      int parametersNum = 0;
+      if (opcodeDefinition == null) {
+        LOGGER.debug("Unknown opcode: " + opcodeByte);
+        opcode.setOpcode(Opcodes.UNKNOWN);
+      } else {
+        opcode.setOpcode(opcodeDefinition);
+        parametersNum = opcodeDefinition.getParametersNum();
+        if (parametersNum > 0) {
+          int end = Math.min(pc + 1 + parametersNum, bytecode.length);
+          if (end == pc + 1) {
+            opcode.setOpcode(Opcodes.UNKNOWN);
+          } else {
+            opcode.setParameter(new BigInteger(1, Arrays.copyOfRange(bytecode, pc + 1, end)));
+          }
+        }
+      }
+      pc += 1 + parametersNum;
+      loaded.add(opcode);
     }
-    return sb.toString();
+    return loaded;
   }
 }
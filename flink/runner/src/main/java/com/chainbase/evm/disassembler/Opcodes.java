@@ -1,8 +1,6 @@
 package com.chainbase.evm.disassembler;
 
 import java.util.Arrays;
-import java.util.HashMap;
-import java.util.Map;
 
 public enum Opcodes {
   UNKNOWN(-1, 0),
@@ -149,10 +147,14 @@ public enum Opcodes {
   private final int opcode;
   private final int parametersNum;
 
-  private static final Map<Integer, Opcodes> opcodes = new HashMap<>();
+  /**
+   * Indexed by the opcode byte, null for the undefined ones.
+   */
+  private static final Opcodes[] opcodes = new Opcodes[256];
 
   static {
-    Arrays.stream(Opcodes.values()).forEach(opcode -> opcodes.put(opcode.getOpcode(), opcode));
+    Arrays.stream(Opcodes.values()).filter(opcode -> opcode != UNKNOWN)
+        .forEach(opcode -> opcodes[opcode.getOpcode()] = opcode);
   }
 
   Opcodes(int opcode, int paramsNum) {
@@ -161,7 +163,14 @@ public enum Opcodes {
   }
 
   static Opcodes getOpcode(Integer hex) {
-    return opcodes.get(hex);
+    return hex == null || hex < 0 || hex >= opcodes.length ? null : opcodes[hex];
+  }
+
+  /**
+   * Definition of an opcode byte in [0, 255], null when undefined.
+   */
+  static Opcodes fromByte(int value) {
+    return opcodes[value];
   }
 
   public int getOpcode() {
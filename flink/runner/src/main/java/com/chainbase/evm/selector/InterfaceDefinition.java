@@ -0,0 +1,115 @@
+package com.chainbase.evm.selector;
+
+import com.chainbase.common.collection.IntHashSet;
+import com.esaulpaugh.headlong.abi.Function;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A contract interface recognized from the function selectors found in the bytecode: every
+ * required group needs at least one of its selectors, and none of the excluded selectors may be
+ * present. Selectors are hashed once, when the definition is built.
+ */
+public final class InterfaceDefinition {
+
+  private final String name;
+
+  private final int[][] requiredGroups;
+
+  private final int[] excluded;
+
+  private InterfaceDefinition(String name, int[][] requiredGroups, int[] excluded) {
+    this.name = name;
+    this.requiredGroups = requiredGroups;
+    this.excluded = excluded;
+  }
+
+  public static Builder builder(String name) {
+    return new Builder(name);
+  }
+
+  /**
+   * Big-endian int of the 4-byte selector, e.g. 0xa9059cbb for "transfer(address,uint256)".
+   */
+  public static int selector(String functionSignature) {
+    return ByteBuffer.wrap(Function.parse(functionSignature).selector()).getInt();
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public boolean isImplementedBy(IntHashSet selectors) {
+    for (int[] group : requiredGroups) {
+      if (!containsAny(selectors, group)) {
+        return false;
+      }
+    }
+    return !containsAny(selectors, excluded);
+  }
+
+  private static boolean containsAny(IntHashSet selectors, int[] candidates) {
+    for (int candidate : candidates) {
+      if (selectors.contains(candidate)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  public static final class Builder {
+
+    private final String name;
+
+    private final List<int[]> requiredGroups = new ArrayList<>();
+
+    private final List<String> excluded = new ArrayList<>();
+
+    private Builder(String name) {
+      this.name = name;
+    }
+
+    /**
+     * Every one of the functions is required.
+     */
+    public Builder requires(String... functionSignatures) {
+      for (String functionSignature : functionSignatures) {
+        requiredGroups.add(new int[]{selector(functionSignature)});
+      }
+      return this;
+    }
+
+    /**
+     * At least one of the functions is required.
+     */
+    public Builder requiresAnyOf(String... functionSignatures) {
+      requiredGroups.add(selectors(functionSignatures));
+      return this;
+    }
+
+    public Builder excludes(String... functionSignatures) {
+      for (String functionSignature : functionSignatures) {
+        excluded.add(functionSignature);
+      }
+      return this;
+    }
+
+    public InterfaceDefinition build() {
+      if (requiredGroups.isEmpty()) {
+        throw new IllegalArgumentException(
+            String.format("Interface %s doesn't require any function", name));
+      }
+      return new InterfaceDefinition(name, requiredGroups.toArray(new int[0][]),
+          selectors(excluded.toArray(new String[0])));
+    }
+
+    private static int[] selectors(String[] functionSignatures) {
+      int[] selectors = new int[functionSignatures.length];
+      for (int idx = 0; idx < functionSignatures.length; idx++) {
+        selectors[idx] = selector(functionSignatures[idx]);
+      }
+      return selectors;
+    }
+  }
+}
@@ -0,0 +1,140 @@
+package com.chainbase.evm.selector;
+
+import com.chainbase.common.cached.LRUCache;
+import com.chainbase.common.collection.IntHashSet;
+import com.chainbase.evm.EvmUtil;
+import com.google.common.collect.ImmutableList;
+import com.google.common.hash.HashCode;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Ordered interface definitions matched against the selectors of a contract in one pass, the
+ * result being a bitmap where bit i is set when the i-th definition is implemented. Definitions
+ * added with {@link #with} keep the bits of the existing ones.
+ */
+public final class SelectorRegistry {
+
+  public static final String ERC20 = "ERC20";
+  public static final String ERC721 = "ERC721";
+  public static final String ERC1155 = "ERC1155";
+  public static final String ERC4626 = "ERC4626";
+  public static final String ERC777 = "ERC777";
+  public static final String ERC2612 = "ERC2612";
+  public static final String PERMIT2 = "Permit2";
+
+  private static final int CODE_CACHE_SIZE = 20_000;
+
+  /**
+   * Shared by every discriminator of the JVM that doesn't bring its own registry.
+   */
+  private static final SelectorRegistry DEFAULT = new SelectorRegistry(ImmutableList.of(
+      InterfaceDefinition.builder(ERC20)
+          .requiresAnyOf("approve(address,uint256)", "totalSupply()")
+          .requires("transfer(address,uint256)")
+          // To avoid misidentifying ERC721 contracts as ERC20 ones, it is recommended to exclude
+          // all ERC721 contracts as well.
+          .excludes("setApprovalForAll(address,bool)")
+          .build(),
+      InterfaceDefinition.builder(ERC721)
+          .requires("setApprovalForAll(address,bool)")
+          .build(),
+      InterfaceDefinition.builder(ERC1155)
+          .requires("safeTransferFrom(address,address,uint256,uint256,bytes)",
+              "safeBatchTransferFrom(address,address,uint256[],uint256[],bytes)")
+          .build(),
+      InterfaceDefinition.builder(ERC4626)
+          .requires("asset()", "convertToShares(uint256)", "deposit(uint256,address)",
+              "redeem(uint256,address,address)")
+          .build(),
+      InterfaceDefinition.builder(ERC777)
+          .requires("granularity()", "send(address,uint256,bytes)",
+              "operatorSend(address,address,uint256,bytes,bytes)")
+          .build(),
+      InterfaceDefinition.builder(ERC2612)
+          .requires("permit(address,address,uint256,uint256,uint8,bytes32,bytes32)",
+              "nonces(address)")
+          .build(),
+      InterfaceDefinition.builder(PERMIT2)
+          .requires("nonceBitmap(address,uint256)", "invalidateUnorderedNonces(uint256,uint256)")
+          .build()));
+
+  private final List<InterfaceDefinition> definitions;
+
+  private final Map<String, Integer> indexes = new HashMap<>();
+
+  private final LRUCache<HashCode, Long> matchedByCode = new LRUCache<>(CODE_CACHE_SIZE);
+
+  public SelectorRegistry(List<InterfaceDefinition> definitions) {
+    if (definitions.size() > Long.SIZE) {
+      throw new IllegalArgumentException(
+          String.format("At most %d interfaces can be registered", Long.SIZE));
+    }
+    this.definitions = ImmutableList.copyOf(definitions);
+    for (int idx = 0; idx < definitions.size(); idx++) {
+      if (indexes.put(definitions.get(idx).getName(), idx) != null) {
+        throw new IllegalArgumentException(
+            String.format("Interface %s is registered twice", definitions.get(idx).getName()));
+      }
+    }
+  }
+
+  /**
+   * ERC20, ERC721, ERC1155, ERC4626, ERC777, ERC2612 and Permit2.
+   */
+  public static SelectorRegistry defaults() {
+    return DEFAULT;
+  }
+
+  public SelectorRegistry with(InterfaceDefinition... extraDefinitions) {
+    List<InterfaceDefinition> merged = new ArrayList<>(definitions);
+    for (InterfaceDefinition definition : extraDefinitions) {
+      merged.add(definition);
+    }
+    return new SelectorRegistry(merged);
+  }
+
+  /**
+   * Memoized by the runtime code hash, see {@link EvmUtil#hashRuntimeCode}: clones and standard
+   * tokens are only disassembled once per registry.
+   */
+  public long match(HashCode codeHash, Supplier<int[]> selectors) {
+    return matchedByCode.computeIfAbsent(codeHash, (innerKey) -> match(selectors.get()));
+  }
+
+  public long match(int[] selectors) {
+    return match(IntHashSet.of(selectors));
+  }
+
+  public long match(IntHashSet selectors) {
+    long matched = 0L;
+    for (int idx = 0; idx < definitions.size(); idx++) {
+      if (definitions.get(idx).isImplementedBy(selectors)) {
+        matched |= 1L << idx;
+      }
+    }
+    return matched;
+  }
+
+  public boolean isMatched(long matched, String interfaceName) {
+    Integer idx = indexes.get(interfaceName);
+    if (idx == null) {
+      throw new IllegalArgumentException(
+          String.format("Interface %s isn't registered", interfaceName));
+    }
+    return (matched & (1L << idx)) != 0;
+  }
+
+  public List<String> getNames(long matched) {
+    List<String> names = new ArrayList<>(Long.bitCount(matched));
+    for (int idx = 0; idx < definitions.size(); idx++) {
+      if ((matched & (1L << idx)) != 0) {
+        names.add(definitions.get(idx).getName());
+      }
+    }
+    return names;
+  }
+}
@@ -217,6 +217,11 @@ public class ETLProcessor {
         conf.setString("execution.checkpointing.tolerable-failed-checkpoints", "2147483647");
         conf.setString("sql-client.execution.result-mode", "tableau");
         conf.setString("table.exec.sink.not-null-enforcer", "ERROR");
+        // UDF tuning knobs, e.g. eth-call.max-in-flight, are read back as job parameters
+        if (config.get("parameters") instanceof Map) {
+            ((Map<?, ?>) config.get("parameters")).forEach(
+                    (key, value) -> conf.setString(String.valueOf(key), String.valueOf(value)));
+        }
         env.getConfig().setGlobalJobParameters(conf);
     }
 
@@ -247,7 +252,10 @@ public class ETLProcessor {
 
     private void registerUDFs() {
         tEnv.createTemporarySystemFunction("Decode_Event", DecodeEvent.class);
+        tEnv.createTemporarySystemFunction("Decode_Events", DecodeEvents.class);
+        tEnv.createTemporarySystemFunction("Decode_Event_Row", DecodeEventRow.class);
         tEnv.createTemporarySystemFunction("Decode_Function", DecodeFunction.class);
+        tEnv.createTemporarySystemFunction("Decode_Function_Row", DecodeFunctionRow.class);
         tEnv.createTemporarySystemFunction("Eth_Call", EthCallRequest.class);
 
         tEnv.createTemporarySystemFunction("ROW_TO_JSON", RowToJsonFunction.class);
@@ -255,6 +263,7 @@ public class ETLProcessor {
         tEnv.createTemporarySystemFunction("GET_TOKEN_META", GetTokenMeta.class);
         tEnv.createTemporarySystemFunction("Abs", Abs.class);
         tEnv.createTemporarySystemFunction("Add", Add.class);
+        tEnv.createTemporarySystemFunction("ApproxCountDistinct", ApproxCountDistinct.class);
         tEnv.createTemporarySystemFunction("CountDistinct", CountDistinct.class);
         tEnv.createTemporarySystemFunction("Divide", Divide.class);
         tEnv.createTemporarySystemFunction("Multiply", Multiply.class);
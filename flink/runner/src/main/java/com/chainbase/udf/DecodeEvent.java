@@ -1,21 +1,18 @@
 package com.chainbase.udf;
 
 
-import com.chainbase.evm.ABIDecoder;
-import com.chainbase.evm.EvmUtil;
 import com.chainbase.common.cached.LRUCache;
 import com.chainbase.evm.HexUtil;
-import com.chainbase.utils.JSONUtils;
-import com.esaulpaugh.headlong.abi.ABIObject;
-import com.esaulpaugh.headlong.abi.Event;
-import com.esaulpaugh.headlong.abi.Tuple;
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.node.ObjectNode;
-import java.util.Arrays;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Objects;
-import org.apache.commons.lang3.StringUtils;
+import com.chainbase.evm.decoder.EventDecoder;
+import com.chainbase.evm.decoder.TupleJsonWriter;
+import com.chainbase.utils.JobParameterUtils;
+import com.chainbase.utils.MetricUtils;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import java.nio.charset.StandardCharsets;
+import org.apache.flink.metrics.Counter;
+import org.apache.flink.metrics.MetricGroup;
 import org.apache.flink.table.functions.FunctionContext;
 import org.apache.flink.table.functions.ScalarFunction;
 import org.slf4j.Logger;
@@ -25,54 +22,80 @@ public class DecodeEvent extends ScalarFunction {
 
   private final static Logger logger = LoggerFactory.getLogger(DecodeEvent.class);
   private static final long serialVersionUID = -7436945467996032199L;
+  private static final HashFunction HASH_FUNCTION = Hashing.farmHashFingerprint64();
 
-  private final Map<String, Event> eventMap = new HashMap<>(1);
-  private LRUCache<String, String> cache;
+  /**
+   * Compiled decoders keyed by the 64-bit hash of the ABI JSON.
+   */
+  private LRUCache<Long, EventDecoder> decoders;
+  /**
+   * Optional, log payloads are mostly unique so results rarely repeat; keyed by a 64-bit hash of
+   * the inputs instead of the inputs themselves.
+   */
+  private LRUCache<Long, String> cache;
 
-  private static JsonNode parseABI(String abiJson) {
-    return JSONUtils.toJSONObject(abiJson);
-  }
+  /**
+   * Inputs that don't match their ABI, decoded to null.
+   */
+  private transient Counter decodeFailures;
+
+  private TupleJsonWriter writer;
 
   @Override
   public void open(FunctionContext context) throws Exception {
     super.open(context);
-    this.cache = new LRUCache<>(32);
-  }
-
-  private String decodeEvent(Event event, String[] topicsHex, byte[] data) {
-    String[] topics = Arrays.stream(topicsHex).filter(Objects::nonNull).filter(StringUtils::isNotBlank)
-        .toArray(String[]::new);
-    if (topics.length != event.getIndexedParams().size() + 1) {
-      return null;
+    this.writer = new TupleJsonWriter();
+    this.decoders = new LRUCache<>(
+        JobParameterUtils.getInt(context, "decode-event.decoder-cache.size", 256));
+    if (JobParameterUtils.getBoolean(context, "decode-event.result-cache.enabled", false)) {
+      this.cache = new LRUCache<>(
+          JobParameterUtils.getCacheOptions(context, "decode-event.result-cache", 32));
     }
 
-    Tuple tuple = ABIDecoder.decodeEvent(topics, data, event);
-    ObjectNode result = EvmUtil.transformTupleValue2ObjectNode(
-        EvmUtil.reviseOnCopyTuple(event.getInputs(), false), tuple);
-    return result.toString();
+    MetricGroup metricGroup = MetricUtils.getMetricGroup(context);
+    MetricUtils.registerCache(metricGroup, "decoderCache", decoders);
+    if (cache != null) {
+      MetricUtils.registerCache(metricGroup, "resultCache", cache);
+    }
+    this.decodeFailures = metricGroup.counter("decodeFailures");
   }
 
-  private String handle(String abi, String topic0, String topic1, String topic2, String topic3,
-      byte[] data) {
+  private String handle(long abiHash, String abi, String[] topics, byte[] data) {
     try {
-      String[] topics = new String[]{topic0, topic1, topic2, topic3};
-      Event abiEventObject = eventMap.computeIfAbsent(abi, ABIObject::fromJson);
-      if (!abiEventObject.isEvent()) {
-        throw new RuntimeException("Only decode events are supported !");
-      }
-      return decodeEvent(abiEventObject.asEvent(), topics, data);
+      EventDecoder decoder = decoders.computeIfAbsent(abiHash,
+          (innerKey) -> EventDecoder.compile(abi));
+      return decoder.decode(topics, data, writer);
     } catch (Exception e) {
-      logger.debug("decoding failure, %s", e);
+      decodeFailures.inc();
+      logger.debug("decoding failure", e);
       return null;
     }
   }
 
   public String eval(String abi, String topic0, String topic1, String topic2, String topic3,
       byte[] data) {
-    String key = String.join("-",
-        Arrays.asList(abi, topic0, topic1, topic2, topic3, Arrays.toString(data)));
-    return cache.computeIfAbsent(key,
-        (innerKey) -> handle(abi, topic0, topic1, topic2, topic3, data));
+    if (abi == null) {
+      decodeFailures.inc();
+      return null;
+    }
+    long abiHash = HASH_FUNCTION.hashString(abi, StandardCharsets.UTF_8).asLong();
+    String[] topics = new String[]{topic0, topic1, topic2, topic3};
+    if (cache == null) {
+      return handle(abiHash, abi, topics, data);
+    }
+
+    Hasher hasher = HASH_FUNCTION.newHasher().putLong(abiHash);
+    for (String topic : topics) {
+      hasher.putInt(topic == null ? -1 : topic.length());
+      if (topic != null) {
+        hasher.putString(topic, StandardCharsets.UTF_8);
+      }
+    }
+    if (data != null) {
+      hasher.putBytes(data);
+    }
+    return cache.computeIfAbsent(hasher.hash().asLong(),
+        (innerKey) -> handle(abiHash, abi, topics, data));
   }
 
   public String eval(String abi, String topic0, String topic1, String topic2, String topic3,
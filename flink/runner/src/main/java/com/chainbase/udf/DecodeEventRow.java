@@ -0,0 +1,100 @@
+package com.chainbase.udf;
+
+
+import com.chainbase.common.cached.LRUCache;
+import com.chainbase.evm.HexUtil;
+import com.chainbase.evm.decoder.EventDecoder;
+import com.chainbase.utils.JobParameterUtils;
+import com.chainbase.utils.MetricUtils;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import java.nio.charset.StandardCharsets;
+import java.util.Optional;
+import org.apache.flink.metrics.Counter;
+import org.apache.flink.metrics.MetricGroup;
+import org.apache.flink.table.api.DataTypes;
+import org.apache.flink.table.catalog.DataTypeFactory;
+import org.apache.flink.table.functions.FunctionContext;
+import org.apache.flink.table.functions.ScalarFunction;
+import org.apache.flink.table.types.DataType;
+import org.apache.flink.table.types.inference.CallContext;
+import org.apache.flink.table.types.inference.InputTypeStrategies;
+import org.apache.flink.table.types.inference.TypeInference;
+import org.apache.flink.types.Row;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Typed variant of {@link DecodeEvent}: the ABI must be a literal, its inputs become the fields of
+ * the returned ROW, e.g. {@code Decode_Event_Row(abi, topic0, topic1, topic2, topic3, data)._to}.
+ */
+public class DecodeEventRow extends ScalarFunction {
+
+  private final static Logger logger = LoggerFactory.getLogger(DecodeEventRow.class);
+  private static final long serialVersionUID = 6160862826436458893L;
+  private static final HashFunction HASH_FUNCTION = Hashing.farmHashFingerprint64();
+
+  /**
+   * Compiled decoders keyed by the 64-bit hash of the ABI JSON.
+   */
+  private LRUCache<Long, EventDecoder> decoders;
+
+  /**
+   * Inputs that don't match their ABI, decoded to null.
+   */
+  private transient Counter decodeFailures;
+
+  @Override
+  public void open(FunctionContext context) throws Exception {
+    super.open(context);
+    this.decoders = new LRUCache<>(
+        JobParameterUtils.getInt(context, "decode-event.decoder-cache.size", 256));
+
+    MetricGroup metricGroup = MetricUtils.getMetricGroup(context);
+    MetricUtils.registerCache(metricGroup, "decoderCache", decoders);
+    this.decodeFailures = metricGroup.counter("decodeFailures");
+  }
+
+  @Override
+  public TypeInference getTypeInference(DataTypeFactory typeFactory) {
+    DataType string = DataTypes.STRING();
+    return TypeInference.newBuilder()
+        .inputTypeStrategy(InputTypeStrategies.or(
+            InputTypeStrategies.explicitSequence(
+                string, string, string, string, string, DataTypes.BYTES()),
+            InputTypeStrategies.explicitSequence(string, string, string, string, string, string)))
+        .outputTypeStrategy(DecodeEventRow::inferRowType)
+        .build();
+  }
+
+  private static Optional<DataType> inferRowType(CallContext callContext) {
+    if (!callContext.isArgumentLiteral(0) || callContext.isArgumentNull(0)) {
+      throw callContext.newValidationError("The ABI of Decode_Event_Row must be a literal.");
+    }
+    String abi = callContext.getArgumentValue(0, String.class).orElse("");
+    try {
+      return Optional.of(EventDecoder.compile(abi).getRowConverter().getDataType());
+    } catch (Exception e) {
+      throw callContext.newValidationError("Invalid event ABI %s: %s", abi, e.getMessage());
+    }
+  }
+
+  public Row eval(String abi, String topic0, String topic1, String topic2, String topic3,
+      byte[] data) {
+    try {
+      long abiHash = HASH_FUNCTION.hashString(abi, StandardCharsets.UTF_8).asLong();
+      EventDecoder decoder = decoders.computeIfAbsent(abiHash,
+          (innerKey) -> EventDecoder.compile(abi));
+      return decoder.decodeRow(new String[]{topic0, topic1, topic2, topic3}, data);
+    } catch (Exception e) {
+      decodeFailures.inc();
+      logger.debug("decoding failure", e);
+      return null;
+    }
+  }
+
+  public Row eval(String abi, String topic0, String topic1, String topic2, String topic3,
+      String data) {
+    return eval(abi, topic0, topic1, topic2, topic3, HexUtil.decodeHex(data));
+  }
+}
@@ -0,0 +1,73 @@
+package com.chainbase.udf;
+
+
+import com.chainbase.common.cached.LRUCache;
+import com.chainbase.evm.HexUtil;
+import com.chainbase.evm.decoder.EventDispatcher;
+import com.chainbase.evm.decoder.TupleJsonWriter;
+import com.chainbase.utils.JobParameterUtils;
+import com.chainbase.utils.MetricUtils;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import java.nio.charset.StandardCharsets;
+import org.apache.flink.metrics.Counter;
+import org.apache.flink.metrics.MetricGroup;
+import org.apache.flink.table.functions.FunctionContext;
+import org.apache.flink.table.functions.ScalarFunction;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Decodes a log against every event of a contract ABI in one call, e.g.
+ * {@code Decode_Events(abi, topic0, topic1, topic2, topic3, data)} returns
+ * {@code {"event":"Swap","args":{...}}}, or null when no event of the ABI matches the log.
+ */
+public class DecodeEvents extends ScalarFunction {
+
+  private final static Logger logger = LoggerFactory.getLogger(DecodeEvents.class);
+  private static final long serialVersionUID = 2968370871203947516L;
+  private static final HashFunction HASH_FUNCTION = Hashing.farmHashFingerprint64();
+
+  /**
+   * Compiled dispatchers keyed by the 64-bit hash of the ABI JSON.
+   */
+  private LRUCache<Long, EventDispatcher> dispatchers;
+
+  /**
+   * Inputs that don't match their ABI, decoded to null.
+   */
+  private transient Counter decodeFailures;
+
+  private TupleJsonWriter writer;
+
+  @Override
+  public void open(FunctionContext context) throws Exception {
+    super.open(context);
+    this.writer = new TupleJsonWriter();
+    this.dispatchers = new LRUCache<>(
+        JobParameterUtils.getInt(context, "decode-events.dispatcher-cache.size", 64));
+
+    MetricGroup metricGroup = MetricUtils.getMetricGroup(context);
+    MetricUtils.registerCache(metricGroup, "dispatcherCache", dispatchers);
+    this.decodeFailures = metricGroup.counter("decodeFailures");
+  }
+
+  public String eval(String abi, String topic0, String topic1, String topic2, String topic3,
+      byte[] data) {
+    try {
+      long abiHash = HASH_FUNCTION.hashString(abi, StandardCharsets.UTF_8).asLong();
+      EventDispatcher dispatcher = dispatchers.computeIfAbsent(abiHash,
+          (innerKey) -> EventDispatcher.compile(abi));
+      return dispatcher.decode(new String[]{topic0, topic1, topic2, topic3}, data, writer);
+    } catch (Exception e) {
+      decodeFailures.inc();
+      logger.debug("decoding failure", e);
+      return null;
+    }
+  }
+
+  public String eval(String abi, String topic0, String topic1, String topic2, String topic3,
+      String data) {
+    return eval(abi, topic0, topic1, topic2, topic3, HexUtil.decodeHex(data));
+  }
+}
@@ -1,12 +1,17 @@
 package com.chainbase.udf;
 
-import com.chainbase.evm.EvmUtil;
+import com.chainbase.common.cached.LRUCache;
 import com.chainbase.evm.HexUtil;
-import com.esaulpaugh.headlong.abi.ABIObject;
-import com.esaulpaugh.headlong.abi.Function;
-import com.esaulpaugh.headlong.abi.Tuple;
-import com.fasterxml.jackson.databind.node.ObjectNode;
-import java.nio.ByteBuffer;
+import com.chainbase.evm.decoder.FunctionDecoder;
+import com.chainbase.evm.decoder.TupleJsonWriter;
+import com.chainbase.utils.JobParameterUtils;
+import com.chainbase.utils.MetricUtils;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import java.nio.charset.StandardCharsets;
+import org.apache.flink.metrics.Counter;
+import org.apache.flink.metrics.MetricGroup;
+import org.apache.flink.table.functions.FunctionContext;
 import org.apache.flink.table.functions.ScalarFunction;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -15,39 +20,41 @@ public class DecodeFunction extends ScalarFunction {
 
   private final static Logger logger = LoggerFactory.getLogger(DecodeFunction.class);
   private static final long serialVersionUID = 2004249297425923280L;
+  private static final HashFunction HASH_FUNCTION = Hashing.farmHashFingerprint64();
 
+  /**
+   * Compiled decoders keyed by the 64-bit hash of the ABI JSON.
+   */
+  private LRUCache<Long, FunctionDecoder> decoders;
 
-  private Tuple decode(java.util.function.Function<ByteBuffer, Tuple> func, byte[] hex) {
-    ByteBuffer buffer = ByteBuffer.wrap(hex);
-    if (buffer.capacity() <= 0) {
-      return Tuple.EMPTY;
-    }
-    return func.apply(buffer);
-  }
+  /**
+   * Inputs that don't match their ABI, decoded to null.
+   */
+  private transient Counter decodeFailures;
 
-  private String decodeFunction(Function function, byte[] input, byte[] output) {
+  private TupleJsonWriter writer;
 
-    Tuple inputParam = decode(function::decodeCall, input);
-    Tuple resultParam = decode(function::decodeReturn, output);
+  @Override
+  public void open(FunctionContext context) throws Exception {
+    super.open(context);
+    this.writer = new TupleJsonWriter();
+    this.decoders = new LRUCache<>(
+        JobParameterUtils.getInt(context, "decode-function.decoder-cache.size", 256));
 
-    ObjectNode objectNode =
-        EvmUtil.transformTupleValue2ObjectNode(
-            EvmUtil.reviseOnCopyTuple(function.getInputs(), false), inputParam);
-    ObjectNode outputObjectNode =
-        EvmUtil.transformTupleValue2ObjectNode(
-            EvmUtil.reviseOnCopyTuple(function.getOutputs(), true), resultParam);
-    return objectNode.setAll(outputObjectNode).toString();
+    MetricGroup metricGroup = MetricUtils.getMetricGroup(context);
+    MetricUtils.registerCache(metricGroup, "decoderCache", decoders);
+    this.decodeFailures = metricGroup.counter("decodeFailures");
   }
 
   public String eval(String abi, byte[] input, byte[] output) {
     try {
-      ABIObject abiFunctionObject = ABIObject.fromJson(abi);
-      if (!abiFunctionObject.isFunction()) {
-        throw new RuntimeException("Only decode functions are supported !");
-      }
-      return decodeFunction(abiFunctionObject.asFunction(), input, output);
+      long abiHash = HASH_FUNCTION.hashString(abi, StandardCharsets.UTF_8).asLong();
+      FunctionDecoder decoder = decoders.computeIfAbsent(abiHash,
+          (innerKey) -> FunctionDecoder.compile(abi));
+      return decoder.decode(input, output, writer);
     } catch (Exception e) {
-      logger.debug("decoding failure, %s", e);
+      decodeFailures.inc();
+      logger.debug("decoding failure", e);
       return null;
     }
   }
@@ -55,4 +62,4 @@ public class DecodeFunction extends ScalarFunction {
   public String eval(String abi, String input, String output) {
     return eval(abi, HexUtil.decodeHex(input), HexUtil.decodeHex(output));
   }
-}
\ No newline at end of file
+}
@@ -0,0 +1,97 @@
+package com.chainbase.udf;
+
+import com.chainbase.common.cached.LRUCache;
+import com.chainbase.evm.HexUtil;
+import com.chainbase.evm.decoder.FunctionDecoder;
+import com.chainbase.utils.JobParameterUtils;
+import com.chainbase.utils.MetricUtils;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import java.nio.charset.StandardCharsets;
+import java.util.Optional;
+import org.apache.flink.metrics.Counter;
+import org.apache.flink.metrics.MetricGroup;
+import org.apache.flink.table.api.DataTypes;
+import org.apache.flink.table.catalog.DataTypeFactory;
+import org.apache.flink.table.functions.FunctionContext;
+import org.apache.flink.table.functions.ScalarFunction;
+import org.apache.flink.table.types.DataType;
+import org.apache.flink.table.types.inference.CallContext;
+import org.apache.flink.table.types.inference.InputTypeStrategies;
+import org.apache.flink.table.types.inference.TypeInference;
+import org.apache.flink.types.Row;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Typed variant of {@link DecodeFunction}: the ABI must be a literal, its inputs then its
+ * {@code output_} prefixed outputs become the fields of the returned ROW.
+ */
+public class DecodeFunctionRow extends ScalarFunction {
+
+  private final static Logger logger = LoggerFactory.getLogger(DecodeFunctionRow.class);
+  private static final long serialVersionUID = -3324093478017925146L;
+  private static final HashFunction HASH_FUNCTION = Hashing.farmHashFingerprint64();
+
+  /**
+   * Compiled decoders keyed by the 64-bit hash of the ABI JSON.
+   */
+  private LRUCache<Long, FunctionDecoder> decoders;
+
+  /**
+   * Inputs that don't match their ABI, decoded to null.
+   */
+  private transient Counter decodeFailures;
+
+  @Override
+  public void open(FunctionContext context) throws Exception {
+    super.open(context);
+    this.decoders = new LRUCache<>(
+        JobParameterUtils.getInt(context, "decode-function.decoder-cache.size", 256));
+
+    MetricGroup metricGroup = MetricUtils.getMetricGroup(context);
+    MetricUtils.registerCache(metricGroup, "decoderCache", decoders);
+    this.decodeFailures = metricGroup.counter("decodeFailures");
+  }
+
+  @Override
+  public TypeInference getTypeInference(DataTypeFactory typeFactory) {
+    DataType string = DataTypes.STRING();
+    DataType bytes = DataTypes.BYTES();
+    return TypeInference.newBuilder()
+        .inputTypeStrategy(InputTypeStrategies.or(
+            InputTypeStrategies.explicitSequence(string, bytes, bytes),
+            InputTypeStrategies.explicitSequence(string, string, string)))
+        .outputTypeStrategy(DecodeFunctionRow::inferRowType)
+        .build();
+  }
+
+  private static Optional<DataType> inferRowType(CallContext callContext) {
+    if (!callContext.isArgumentLiteral(0) || callContext.isArgumentNull(0)) {
+      throw callContext.newValidationError("The ABI of Decode_Function_Row must be a literal.");
+    }
+    String abi = callContext.getArgumentValue(0, String.class).orElse("");
+    try {
+      return Optional.of(FunctionDecoder.compile(abi).getRowConverter().getDataType());
+    } catch (Exception e) {
+      throw callContext.newValidationError("Invalid function ABI %s: %s", abi, e.getMessage());
+    }
+  }
+
+  public Row eval(String abi, byte[] input, byte[] output) {
+    try {
+      long abiHash = HASH_FUNCTION.hashString(abi, StandardCharsets.UTF_8).asLong();
+      FunctionDecoder decoder = decoders.computeIfAbsent(abiHash,
+          (innerKey) -> FunctionDecoder.compile(abi));
+      return decoder.decodeRow(input, output);
+    } catch (Exception e) {
+      decodeFailures.inc();
+      logger.debug("decoding failure", e);
+      return null;
+    }
+  }
+
+  public Row eval(String abi, String input, String output) {
+    return eval(abi, HexUtil.decodeHex(input), HexUtil.decodeHex(output));
+  }
+}
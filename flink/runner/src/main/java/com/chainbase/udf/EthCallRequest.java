@@ -1,9 +1,14 @@
 package com.chainbase.udf;
 
+import com.chainbase.common.batch.MicroBatcher;
 import com.chainbase.common.cached.LRUCache;
 import com.chainbase.evm.Web3jClient;
+import com.chainbase.evm.Web3jClient.CallFunctionParameter;
 import com.chainbase.evm.Web3jClient.MultiCallParameter;
+import com.chainbase.evm.Web3jClientRegistry;
 import com.chainbase.utils.JSONUtils;
+import com.chainbase.utils.JobParameterUtils;
+import com.chainbase.utils.MetricUtils;
 import com.esaulpaugh.headlong.abi.Tuple;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
@@ -13,14 +18,16 @@ import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.fasterxml.jackson.databind.util.RawValue;
 import java.math.BigInteger;
 import java.util.Arrays;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
-import java.util.Objects;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 import org.apache.commons.lang3.StringUtils;
+import org.apache.flink.metrics.MetricGroup;
 import org.apache.flink.table.api.DataTypes;
 import org.apache.flink.table.catalog.DataTypeFactory;
 import org.apache.flink.table.functions.FunctionContext;
@@ -51,8 +58,25 @@ public class EthCallRequest extends ScalarFunction {
       return block.getValue();
     }
   };
-  private final Map<String, Web3jClient> clientMap = new HashMap<>(1);
+  /**
+   * Clients acquired from the {@link Web3jClientRegistry}, calls from every slot of the TaskManager
+   * are coalesced per endpoint, so concurrent rows share one multicall (or JSON-RPC batch) instead
+   * of one round trip each.
+   */
+  private transient ConcurrentMap<String, Web3jClient> clients;
+  /**
+   * The coalescer of each endpoint client for the knobs of this instance, instances with other
+   * knobs get coalescers of their own. The instance is one of its blocking callers, a miss waits
+   * for the misses of the other slots up to the linger.
+   */
+  private transient ConcurrentMap<String, MicroBatcher<CallFunctionParameter, Optional<Tuple>>>
+      coalescers;
   private LRUCache<String, Object> cache;
+  private int batchSize;
+  private long lingerMs;
+  private int maxInFlight;
+  private transient RpcClientOptions rpcClientOptions;
+  private transient RpcMetrics rpcMetrics;
 
   private static JsonNode parseABI(String abiJson) {
     return JSONUtils.toJSONObject(abiJson);
@@ -109,12 +133,49 @@ public class EthCallRequest extends ScalarFunction {
   @Override
   public void open(FunctionContext context) throws Exception {
     super.open(context);
-    this.cache = new LRUCache<>(32);
+    this.cache = new LRUCache<>(
+        JobParameterUtils.getCacheOptions(context, "eth-call.cache", 10_000));
+    this.clients = new ConcurrentHashMap<>();
+    this.coalescers = new ConcurrentHashMap<>();
+    this.batchSize = JobParameterUtils.getInt(context, "eth-call.batch-size", 100);
+    this.lingerMs = JobParameterUtils.getLong(context, "eth-call.linger-ms", 5);
+    this.maxInFlight = JobParameterUtils.getInt(context, "eth-call.max-in-flight", 256);
+    this.rpcClientOptions = RpcClientOptions.from(context);
+
+    MetricGroup metricGroup = MetricUtils.getMetricGroup(context);
+    MetricUtils.registerCache(metricGroup, "cache", cache);
+    this.rpcMetrics = RpcMetrics.register(metricGroup);
+  }
+
+  @Override
+  public void close() throws Exception {
+    if (coalescers != null) {
+      coalescers.values().forEach(MicroBatcher::removeBlockingCaller);
+      coalescers.clear();
+    }
+    if (clients != null) {
+      for (Web3jClient web3jClient : clients.values()) {
+        rpcMetrics.untrack(web3jClient);
+        Web3jClientRegistry.release(web3jClient);
+      }
+      clients.clear();
+    }
+    super.close();
   }
 
   private Web3jClient getWeb3jClientInstance(String endpoint) {
-    return clientMap.computeIfAbsent(endpoint,
-        (_endpoint) -> new Web3jClient(_endpoint, 1000, 1000, false));
+    return clients.computeIfAbsent(endpoint,
+        (_endpoint) -> rpcMetrics.track(rpcClientOptions.apply(
+                Web3jClientRegistry.acquire(_endpoint, 1000, 1000, false))));
+  }
+
+  private MicroBatcher<CallFunctionParameter, Optional<Tuple>> getCoalescer(String endpoint) {
+    return coalescers.computeIfAbsent(endpoint, (_endpoint) -> {
+      MicroBatcher<CallFunctionParameter, Optional<Tuple>> coalescer =
+          getWeb3jClientInstance(_endpoint).callCoalescer(batchSize, lingerMs, maxInFlight);
+      coalescer.addBlockingCaller();
+      return coalescer;
+    });
   }
 
   private String toJSON(Object obj) {
@@ -127,6 +188,10 @@ public class EthCallRequest extends ScalarFunction {
 
   public Object eval(String endpoint, String abiJson, String contractAddress,
       DefaultBlockParameter blockNumber, String... params) {
+    // The state at latest or pending moves with every block, only calls at a number are cached
+    if (!(blockNumber instanceof DefaultBlockParameterNumber)) {
+      return invoke(endpoint, abiJson, contractAddress, blockNumber, params);
+    }
     String key = String.join("-",
         Arrays.asList(endpoint, abiJson, contractAddress, blockNumber.getValue(),
             Arrays.toString(params)));
@@ -137,29 +202,36 @@ public class EthCallRequest extends ScalarFunction {
   public Object invoke(String endpoint, String abiJson, String contractAddress,
       DefaultBlockParameter blockNumber, String... params) {
     try {
-      JsonNode abiJsonNode = parseABI(abiJson);
-      String functionName = abiJsonNode.get("name").asText();
-      MultiCallParameter requestParam = buildMultiCallParameter(abiJsonNode, contractAddress,
-          params);
-
-      Web3jClient web3jClient = getWeb3jClientInstance(endpoint);
-      List<Object> result = web3jClient.batchCall(Arrays.asList(requestParam), blockNumber);
-      logger.debug(String.format("RPC Result: %s(%s) ^%s^ %s%n",
-          functionName, toJSON(params), outputBlockNumber.apply(blockNumber), result));
-      if (result.isEmpty()) {
-        return null;
+      return submitCall(endpoint, abiJson, contractAddress, blockNumber, params).join();
+    } catch (CompletionException ex) {
+      if (ex.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) ex.getCause();
       }
-      return convertOutputType(abiJsonNode,
-          result.stream().filter(Objects::nonNull).findFirst().orElse(null));
-    } catch (RuntimeException ex) {
       throw ex;
-    } catch (Exception ex) {
-      logger.debug(String.format("Call eth_call failed, %s, params: %s", ex,
-          toJSON(Arrays.asList(abiJson, contractAddress, blockNumber, params))));
-      return null;
     }
   }
 
+  /**
+   * Queues the call on the coalescer of the endpoint client, the returned future completes with the
+   * converted output once the batch it was coalesced into has been answered.
+   */
+  private CompletableFuture<Object> submitCall(String endpoint, String abiJson,
+      String contractAddress, DefaultBlockParameter blockNumber, String... params) {
+    JsonNode abiJsonNode = parseABI(abiJson);
+    String functionName = abiJsonNode.get("name").asText();
+    MultiCallParameter requestParam = buildMultiCallParameter(abiJsonNode, contractAddress,
+        params);
+    CallFunctionParameter callParameter = new CallFunctionParameter(requestParam, blockNumber);
+
+    MicroBatcher<CallFunctionParameter, Optional<Tuple>> coalescer = getCoalescer(endpoint);
+    return coalescer.submitBlocking(callParameter).thenApply(result -> {
+      Object value = Web3jClient.unwrapCallResult(callParameter, result);
+      logger.debug(String.format("RPC Result: %s(%s) ^%s^ %s%n",
+          functionName, toJSON(params), outputBlockNumber.apply(blockNumber), value));
+      return convertOutputType(abiJsonNode, value);
+    });
+  }
+
   private Object convertOutputType(JsonNode abiJsonNode, Object value) {
     if (null == value) {
       return null;
@@ -1,19 +1,39 @@
 package com.chainbase.udf;
 
+import com.chainbase.common.batch.MicroBatcher;
+import com.chainbase.common.cached.DiskCache;
 import com.chainbase.common.cached.LRUCache;
 import com.chainbase.evm.ContractDiscriminator;
 import com.chainbase.evm.ContractDiscriminator.ContractInfo;
 import com.chainbase.evm.ContractDiscriminator.TokenInfo;
 import com.chainbase.evm.HexUtil;
 import com.chainbase.evm.Web3jClient;
+import com.chainbase.evm.Web3jClientRegistry;
 import com.chainbase.utils.JSONUtils;
+import com.chainbase.utils.JobParameterUtils;
+import com.chainbase.utils.MetricUtils;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.google.common.base.Stopwatch;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
 import javax.annotation.Nullable;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.apache.flink.metrics.MetricGroup;
 import org.apache.flink.table.functions.FunctionContext;
 import org.apache.flink.table.functions.ScalarFunction;
 import org.slf4j.Logger;
@@ -23,66 +43,282 @@ public class GetTokenMeta extends ScalarFunction {
 
   private static final long serialVersionUID = 1607389111240208924L;
   private final static Logger LOGGER = LoggerFactory.getLogger(GetTokenMeta.class);
-  private final Map<String, Web3jClient> clientMap = new HashMap<>(1);
+  /**
+   * Misses from every slot of the TaskManager are collected per shared client, i.e. per endpoint,
+   * so a burst of contract creations resolves name/symbol/decimals/totalSupply in shared
+   * multicalls. Keyed by the client and the batch size, linger and max in flight, instances with
+   * other knobs get batchers of their own. Closed with the last release of the client.
+   */
+  private static final ConcurrentMap<List<Object>, ClientBatcher> BATCHERS =
+      new ConcurrentHashMap<>();
+  /**
+   * Classifying a contract takes a round trip per proxy level, the contracts of a batch are
+   * classified concurrently.
+   */
+  private static final int CONTRACT_INFO_THREADS = 32;
+  private transient ConcurrentMap<String, Web3jClient> clients;
+  /**
+   * The batcher of each endpoint client for the knobs of this instance, the instance is one of its
+   * blocking callers.
+   */
+  private transient ConcurrentMap<String, MicroBatcher<TokenMetaRequest, String>> batchers;
   private LRUCache<String, String> cache;
+  @Nullable
+  private transient DiskCache persistentCache;
+  private long positiveTtlMs;
+  private long negativeTtlMs;
+  private int batchSize;
+  private long lingerMs;
+  private int maxInFlight;
+  private transient RpcClientOptions rpcClientOptions;
+  private transient RpcMetrics rpcMetrics;
 
-  private Web3jClient getWeb3jClientInstance(String endpoint) {
-    return clientMap.computeIfAbsent(endpoint, Web3jClient::new);
+  private MicroBatcher<TokenMetaRequest, String> getBatcherInstance(String endpoint) {
+    return batchers.computeIfAbsent(endpoint, (_endpoint) -> {
+      Web3jClient web3jClient = clients.computeIfAbsent(_endpoint,
+          (__endpoint) -> rpcMetrics.track(
+              rpcClientOptions.apply(Web3jClientRegistry.acquire(__endpoint))));
+      MicroBatcher<TokenMetaRequest, String> batcher = BATCHERS.computeIfAbsent(
+          Arrays.asList(web3jClient, batchSize, lingerMs, maxInFlight),
+          (key) -> new ClientBatcher(web3jClient, batchSize, lingerMs, maxInFlight)).batcher;
+      batcher.addBlockingCaller();
+      return batcher;
+    });
   }
 
   @Override
   public void open(FunctionContext context) throws Exception {
     super.open(context);
     LOGGER.debug("GetTokenMeta open invoke");
-    this.cache = new LRUCache<>(32);
+    // Thousands of hot tokens at mainnet traffic, W-TinyLFU keeps them against one-off contracts
+    this.cache = new LRUCache<>(
+        JobParameterUtils.getCacheOptions(context, "token-meta.cache", 10_000));
+    this.clients = new ConcurrentHashMap<>();
+    this.batchers = new ConcurrentHashMap<>();
+    this.batchSize = JobParameterUtils.getInt(context, "token-meta.batch-size",
+        ContractDiscriminator.DEFAULT_TOKEN_META_MULTICALL_SIZE);
+    this.lingerMs = JobParameterUtils.getLong(context, "token-meta.linger-ms", 10);
+    this.maxInFlight = JobParameterUtils.getInt(context, "token-meta.max-in-flight", 200);
+    this.rpcClientOptions = RpcClientOptions.from(context);
+
+    MetricGroup metricGroup = MetricUtils.getMetricGroup(context);
+    MetricUtils.registerCache(metricGroup, "cache", cache);
+    this.rpcMetrics = RpcMetrics.register(metricGroup);
+
+    // Token metadata almost never changes after deployment, keep it across restarts on local disk
+    if (JobParameterUtils.getBoolean(context, "token-meta.persistent-cache.enabled", true)) {
+      String directory = JobParameterUtils.getCacheDirectory(context,
+          "token-meta.persistent-cache.dir");
+      this.persistentCache = DiskCache.getInstance(directory, "token-meta",
+          JobParameterUtils.getLong(context, "token-meta.persistent-cache.max-size-mb", 256)
+              * 1024 * 1024);
+    }
+    this.positiveTtlMs = TimeUnit.HOURS.toMillis(
+        JobParameterUtils.getLong(context, "token-meta.persistent-cache.ttl-hours", 30 * 24));
+    this.negativeTtlMs = TimeUnit.HOURS.toMillis(
+        JobParameterUtils.getLong(context, "token-meta.persistent-cache.negative-ttl-hours", 24));
+  }
+
+  @Override
+  public void close() throws Exception {
+    if (batchers != null) {
+      batchers.values().forEach(MicroBatcher::removeBlockingCaller);
+      batchers.clear();
+    }
+    if (clients != null) {
+      for (Web3jClient web3jClient : clients.values()) {
+        rpcMetrics.untrack(web3jClient);
+        if (Web3jClientRegistry.release(web3jClient)) {
+          BATCHERS.entrySet().removeIf(entry -> {
+            if (entry.getKey().get(0) != web3jClient) {
+              return false;
+            }
+            entry.getValue().close();
+            return true;
+          });
+        }
+      }
+      clients.clear();
+    }
+    if (persistentCache != null) {
+      persistentCache.close();
+      persistentCache = null;
+    }
+    super.close();
   }
 
   public String eval(String endpoint, String contractAddress, String bytecode) {
     String key = String.format("%s-%s-%s", endpoint, contractAddress, bytecode);
 
     return cache.computeIfAbsent(key, (String innerKey) -> {
+      String persistentKey = Objects.isNull(contractAddress) ? null
+          : String.format("%s-%s", endpoint, contractAddress.toLowerCase());
+      if (persistentCache != null && persistentKey != null) {
+        String persisted = persistentCache.get(persistentKey);
+        if (persisted != null) {
+          return persisted;
+        }
+      }
+
       Stopwatch timer = Stopwatch.createStarted();
       String result = invoke(endpoint, contractAddress, bytecode);
       timer.stop();
       LOGGER.debug(String.format("GetTokenMeta(%s) %sms -> %s", contractAddress,
           timer.elapsed(TimeUnit.MILLISECONDS), result));
+
+      if (persistentCache != null && persistentKey != null && isResolved(result)) {
+        persistentCache.put(persistentKey, result, isToken(result) ? positiveTtlMs : negativeTtlMs);
+      }
       return result;
     });
   }
 
+  /**
+   * Whether the contract was classified, an empty result means the node failed to return its code
+   * and must not outlive the error.
+   */
+  private static boolean isResolved(@Nullable String result) {
+    return result != null && JSONUtils.toJSONObject(result).has("is_erc20");
+  }
+
+  /**
+   * Contracts that match no token standard are cached as negative results, they expire sooner in
+   * case the contract is a proxy that gets upgraded later.
+   */
+  private static boolean isToken(String result) {
+    JsonNode json = JSONUtils.toJSONObject(result);
+    return json.path("is_erc20").asBoolean() || json.path("is_erc721").asBoolean()
+        || json.path("is_erc1155").asBoolean();
+  }
+
   public String eval(String endpoint, String contractAddress, byte[] bytecode) {
     return eval(endpoint, contractAddress, HexUtil.bytes20xHex(bytecode));
   }
 
+  /**
+   * Null when the contract couldn't be classified, e.g. the node failed to answer for it.
+   */
   public String invoke(String endpoint, String contractAddress, @Nullable String bytecode) {
-    Web3jClient web3jClient = getWeb3jClientInstance(endpoint);
-
     if (Objects.isNull(contractAddress)) {
       return JSONUtils.toString(Collections.emptyMap());
     }
-    contractAddress = contractAddress.toLowerCase();
+    TokenMetaRequest request = new TokenMetaRequest(contractAddress.toLowerCase(), bytecode);
+    try {
+      return getBatcherInstance(endpoint).submitBlocking(request).join();
+    } catch (CompletionException ex) {
+      if (ex.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) ex.getCause();
+      }
+      throw ex;
+    }
+  }
 
+  /**
+   * A request that fails is answered with null and isn't cached, the other requests of the batch
+   * are answered as usual.
+   */
+  private static List<String> resolveTokenMetas(Web3jClient web3jClient,
+      ExecutorService contractInfoExecutor, List<TokenMetaRequest> requests) {
     ContractDiscriminator contractDiscriminator = new ContractDiscriminator(web3jClient);
-    ContractInfo contractInfo = contractDiscriminator.getContractInfo(contractAddress, bytecode);
+    List<CompletableFuture<ContractInfo>> lookups = requests.stream()
+        .map(request -> CompletableFuture.supplyAsync(
+            () -> contractDiscriminator.getContractInfo(request.getContractAddress(),
+                request.getBytecode()), contractInfoExecutor))
+        .collect(Collectors.toList());
 
-    if (Objects.isNull(contractInfo)) {
-      return JSONUtils.toString(Collections.emptyMap());
+    List<Map<String, Object>> results = new ArrayList<>(requests.size());
+    List<Integer> tokenIndexes = new ArrayList<>(requests.size());
+    List<String> tokenAddresses = new ArrayList<>(requests.size());
+    List<ContractInfo> tokenContractInfos = new ArrayList<>(requests.size());
+
+    for (int idx = 0; idx < requests.size(); idx++) {
+      ContractInfo contractInfo;
+      try {
+        contractInfo = lookups.get(idx).join();
+      } catch (CompletionException ex) {
+        LOGGER.warn(String.format("Failed to classify contract %s",
+            requests.get(idx).getContractAddress()), ex.getCause());
+        results.add(null);
+        continue;
+      }
+
+      if (Objects.isNull(contractInfo)) {
+        results.add(Collections.emptyMap());
+        continue;
+      }
+
+      Map<String, Object> result = new HashMap<>(8);
+      result.put("is_erc20", contractInfo.isErc20());
+      result.put("is_erc721", contractInfo.isErc721());
+      result.put("is_erc1155", contractInfo.isErc1155());
+      result.put("is_proxy", contractInfo.isProxy());
+      results.add(result);
+      tokenIndexes.add(idx);
+      tokenAddresses.add(requests.get(idx).getContractAddress());
+      tokenContractInfos.add(contractInfo);
+    }
+
+    try {
+      List<TokenInfo> tokenInfos = contractDiscriminator.batchGetTokenInfosWithBatchSize(
+          tokenAddresses, tokenContractInfos,
+          ContractDiscriminator.DEFAULT_TOKEN_META_MULTICALL_SIZE);
+      for (int tokenIdx = 0; tokenIdx < tokenIndexes.size(); tokenIdx++) {
+        TokenInfo tokenInfo = tokenInfos.get(tokenIdx);
+        if (Objects.nonNull(tokenInfo)) {
+          Map<String, Object> result = results.get(tokenIndexes.get(tokenIdx));
+          result.put("name", tokenInfo.getName());
+          result.put("symbol", tokenInfo.getSymbol());
+          result.put("decimals", tokenInfo.getDecimals());
+          result.put("total_supply", tokenInfo.getTotalSupply());
+        }
+      }
+    } catch (RuntimeException ex) {
+      LOGGER.warn(String.format("Failed to get the token infos of %s", tokenAddresses), ex);
+      tokenIndexes.forEach(idx -> results.set(idx, null));
     }
 
-    Map<String, Object> result = new HashMap<>(8);
-    result.put("is_erc20", contractInfo.isErc20());
-    result.put("is_erc721", contractInfo.isErc721());
-    result.put("is_erc1155", contractInfo.isErc1155());
-    result.put("is_proxy", contractInfo.isProxy());
+    return results.stream()
+        .map(result -> result == null ? null : JSONUtils.toString(result))
+        .collect(Collectors.toList());
+  }
 
-    TokenInfo tokenInfo = contractDiscriminator.getTokenInfo(contractAddress, contractInfo);
+  /**
+   * The batcher of a shared client and the threads classifying the contracts of its batches.
+   */
+  private static class ClientBatcher implements AutoCloseable {
 
-    if (Objects.nonNull(tokenInfo)) {
-      result.put("name", tokenInfo.getName());
-      result.put("symbol", tokenInfo.getSymbol());
-      result.put("decimals", tokenInfo.getDecimals());
-      result.put("total_supply", tokenInfo.getTotalSupply());
+    private final ExecutorService contractInfoExecutor;
+
+    private final MicroBatcher<TokenMetaRequest, String> batcher;
+
+    private ClientBatcher(Web3jClient web3jClient, int batchSize, long lingerMs,
+        int maxInFlight) {
+      AtomicInteger threadCount = new AtomicInteger();
+      this.contractInfoExecutor = Executors.newFixedThreadPool(CONTRACT_INFO_THREADS,
+          (runnable) -> {
+            Thread thread = new Thread(runnable,
+                "token-meta-contract-info-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+          });
+      this.batcher = new MicroBatcher<>("token-meta", batchSize, lingerMs, maxInFlight,
+          requests -> resolveTokenMetas(web3jClient, contractInfoExecutor, requests));
+    }
+
+    @Override
+    public void close() {
+      batcher.close();
+      contractInfoExecutor.shutdown();
     }
-    return JSONUtils.toString(result);
+  }
+
+  @Getter
+  @AllArgsConstructor
+  private static class TokenMetaRequest {
+
+    private final String contractAddress;
+
+    @Nullable
+    private final String bytecode;
   }
 }
@@ -0,0 +1,60 @@
+package com.chainbase.udf;
+
+import com.chainbase.evm.EndpointPool;
+import com.chainbase.evm.Web3jClient;
+import com.chainbase.utils.JobParameterUtils;
+import javax.annotation.Nullable;
+import org.apache.flink.table.functions.FunctionContext;
+
+/**
+ * The `rpc.*` knobs shared by the UDFs sending to a node, applied to the clients they acquire.
+ */
+class RpcClientOptions {
+
+  private final int requestsPerSecond;
+
+  private final int batchWeightBudget;
+
+  private final long resultCacheBytes;
+
+  @Nullable
+  private final String resultCacheDirectory;
+
+  private final long resultCacheDiskBytes;
+
+  private final double hedgePercentile;
+
+  private final long ejectMs;
+
+  private RpcClientOptions(@Nullable FunctionContext context) {
+    this.requestsPerSecond = JobParameterUtils.getInt(context, "rpc.rate-limit.requests-per-second",
+        0);
+    this.batchWeightBudget = JobParameterUtils.getInt(context, "rpc.rate-limit.batch-weight-budget",
+        100);
+    this.resultCacheBytes = JobParameterUtils.getLong(context, "rpc.result-cache.max-memory-mb",
+        32) * 1024 * 1024;
+    // Block-pinned reads never change, backfill reruns reuse them from local disk
+    this.resultCacheDirectory =
+        JobParameterUtils.getBoolean(context, "rpc.result-cache.persistent.enabled", false)
+            ? JobParameterUtils.getCacheDirectory(context, "rpc.result-cache.persistent.dir")
+            : null;
+    this.resultCacheDiskBytes = JobParameterUtils.getLong(context,
+        "rpc.result-cache.persistent.max-size-mb", 1024) * 1024 * 1024;
+    // Only with several comma separated endpoints, 0 disables hedging
+    this.hedgePercentile = JobParameterUtils.getDouble(context, "rpc.hedge-percentile",
+        EndpointPool.DEFAULT_HEDGE_PERCENTILE);
+    this.ejectMs = JobParameterUtils.getLong(context, "rpc.eject-ms",
+        EndpointPool.DEFAULT_EJECT_MS);
+  }
+
+  static RpcClientOptions from(@Nullable FunctionContext context) {
+    return new RpcClientOptions(context);
+  }
+
+  Web3jClient apply(Web3jClient web3jClient) {
+    return web3jClient
+        .withRateLimit(requestsPerSecond, batchWeightBudget)
+        .withFailover(hedgePercentile, ejectMs)
+        .withResultCache(resultCacheBytes, resultCacheDirectory, resultCacheDiskBytes);
+  }
+}
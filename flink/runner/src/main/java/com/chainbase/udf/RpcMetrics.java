@@ -0,0 +1,174 @@
+package com.chainbase.udf;
+
+import com.chainbase.evm.EndpointPool;
+import com.chainbase.evm.RpcMetricsListener;
+import com.chainbase.evm.RpcResultCache;
+import com.chainbase.evm.Web3jClient;
+import com.chainbase.utils.MetricUtils;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToLongFunction;
+import org.apache.flink.metrics.Counter;
+import org.apache.flink.metrics.Gauge;
+import org.apache.flink.metrics.Histogram;
+import org.apache.flink.metrics.MeterView;
+import org.apache.flink.metrics.MetricGroup;
+
+/**
+ * The `rpc` metrics of the UDFs sending to a node, fed by the {@link Web3jClient}s they acquire:
+ * <ul>
+ *   <li>calls, callsPerSecond, failures, rateLimited and retries counters</li>
+ *   <li>batchSize and, per method, latencyMs histograms</li>
+ *   <li>inFlight and resultCache gauges</li>
+ * </ul>
+ *
+ * <p>Clients are shared by every slot of the TaskManager, see
+ * {@link com.chainbase.evm.Web3jClientRegistry}, and their calls can't be told apart by subtask
+ * once coalesced. A client is reported by the first of the subtasks tracking it, then by the next
+ * one when that subtask untracks it, so the sum over the subtasks counts every call once.
+ */
+class RpcMetrics implements RpcMetricsListener {
+
+  /**
+   * The metrics tracking each client, the first one reports it.
+   */
+  private static final ConcurrentMap<Web3jClient, List<RpcMetrics>> TRACKERS =
+      new ConcurrentHashMap<>();
+
+  private final MetricGroup group;
+
+  private final Set<Web3jClient> clients = ConcurrentHashMap.newKeySet();
+
+  private final Set<Web3jClient> reported = ConcurrentHashMap.newKeySet();
+
+  private final ConcurrentMap<String, Histogram> latencies = new ConcurrentHashMap<>();
+
+  private final Counter calls;
+
+  private final Counter failures;
+
+  private final Counter rateLimited;
+
+  private final Counter retries;
+
+  private final Histogram batchSizes;
+
+  private RpcMetrics(MetricGroup group) {
+    this.group = group;
+    this.calls = group.counter("calls");
+    group.meter("callsPerSecond", new MeterView(calls));
+    this.failures = group.counter("failures");
+    this.rateLimited = group.counter("rateLimited");
+    this.retries = group.counter("retries");
+    this.batchSizes = MetricUtils.histogram(group, "batchSize");
+    group.<Long, Gauge<Long>>gauge("inFlight", this::getInFlight);
+
+    MetricGroup resultCache = group.addGroup("resultCache");
+    resultCache.<Long, Gauge<Long>>gauge("hits",
+        () -> sumStats(stats -> stats.getMemoryHitCount() + stats.getDiskHitCount()));
+    resultCache.<Long, Gauge<Long>>gauge("misses",
+        () -> sumStats(RpcResultCache.Stats::getMissCount));
+    resultCache.<Long, Gauge<Long>>gauge("evictions",
+        () -> sumStats(RpcResultCache.Stats::getEvictionCount));
+    resultCache.<Long, Gauge<Long>>gauge("size",
+        () -> sumStats(RpcResultCache.Stats::getMemoryEntries));
+    resultCache.<Long, Gauge<Long>>gauge("diskBytes",
+        () -> sumStats(RpcResultCache.Stats::getDiskBytes));
+  }
+
+  static RpcMetrics register(MetricGroup group) {
+    return new RpcMetrics(group.addGroup("rpc"));
+  }
+
+  /**
+   * Reports the requests of the client until it is {@link #untrack(Web3jClient) untracked}.
+   */
+  Web3jClient track(Web3jClient web3jClient) {
+    if (clients.add(web3jClient)) {
+      TRACKERS.compute(web3jClient, (client, trackers) -> {
+        if (trackers == null) {
+          trackers = new ArrayList<>();
+        }
+        trackers.add(this);
+        if (trackers.size() == 1) {
+          startReporting(client);
+        }
+        return trackers;
+      });
+    }
+    return web3jClient;
+  }
+
+  void untrack(Web3jClient web3jClient) {
+    if (clients.remove(web3jClient)) {
+      TRACKERS.computeIfPresent(web3jClient, (client, trackers) -> {
+        if (trackers.get(0) == this) {
+          stopReporting(client);
+          trackers.remove(0);
+          if (!trackers.isEmpty()) {
+            trackers.get(0).startReporting(client);
+          }
+        } else {
+          trackers.remove(this);
+        }
+        return trackers.isEmpty() ? null : trackers;
+      });
+    }
+  }
+
+  private void startReporting(Web3jClient web3jClient) {
+    reported.add(web3jClient);
+    web3jClient.getEndpointPool().addListener(this);
+  }
+
+  private void stopReporting(Web3jClient web3jClient) {
+    web3jClient.getEndpointPool().removeListener(this);
+    reported.remove(web3jClient);
+  }
+
+  @Override
+  public void onResponse(String method, int calls, long latencyNanos) {
+    this.calls.inc(calls);
+    batchSizes.update(calls);
+    latencies.computeIfAbsent(method,
+            (_method) -> MetricUtils.histogram(group.addGroup("method", _method), "latencyMs"))
+        .update(TimeUnit.NANOSECONDS.toMillis(latencyNanos));
+  }
+
+  @Override
+  public void onFailure(String method) {
+    failures.inc();
+  }
+
+  @Override
+  public void onRateLimited(String method) {
+    rateLimited.inc();
+  }
+
+  @Override
+  public void onRetry() {
+    retries.inc();
+  }
+
+  private long getInFlight() {
+    long inFlight = 0;
+    for (Web3jClient web3jClient : reported) {
+      for (EndpointPool.Endpoint endpoint : web3jClient.getEndpointPool().getEndpoints()) {
+        inFlight += endpoint.getInFlight();
+      }
+    }
+    return inFlight;
+  }
+
+  private long sumStats(ToLongFunction<RpcResultCache.Stats> metric) {
+    long sum = 0;
+    for (Web3jClient web3jClient : reported) {
+      sum += metric.applyAsLong(web3jClient.getResultCache().getStats());
+    }
+    return sum;
+  }
+}
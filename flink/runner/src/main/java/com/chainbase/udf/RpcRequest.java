@@ -1,7 +1,10 @@
 package com.chainbase.udf;
 import com.chainbase.evm.Web3jClient;
+import com.chainbase.evm.Web3jClientRegistry;
 import com.chainbase.common.cached.LRUCache;
 import com.chainbase.utils.JSONUtils;
+import com.chainbase.utils.JobParameterUtils;
+import com.chainbase.utils.MetricUtils;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -10,6 +13,7 @@ import java.math.BigInteger;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Optional;
+import org.apache.flink.metrics.MetricGroup;
 import org.apache.flink.table.api.DataTypes;
 import org.apache.flink.table.catalog.DataTypeFactory;
 import org.apache.flink.table.functions.FunctionContext;
@@ -23,8 +27,10 @@ public class RpcRequest extends ScalarFunction {
     private final static Logger logger = LoggerFactory.getLogger(RpcRequest.class);
     private final static ObjectMapper objectMapper = new ObjectMapper();
     private static final long serialVersionUID = -4525805997990479092L;
-    private final Map<String, Web3jClient> clientMap = new HashMap<>(1);
+    private transient Map<String, Web3jClient> clientMap;
     private LRUCache<String, Object> cache;
+    private transient RpcClientOptions rpcClientOptions;
+    private transient RpcMetrics rpcMetrics;
 
     private static JsonNode parseABI(String abiJson) {
         return JSONUtils.toJSONObject(abiJson);
@@ -34,11 +40,32 @@ public class RpcRequest extends ScalarFunction {
     public void open(FunctionContext context) throws Exception {
         super.open(context);
         logger.info("Rpc request open invoke");
-        this.cache = new LRUCache<>(32);
+        this.cache = new LRUCache<>(
+            JobParameterUtils.getCacheOptions(context, "rpc-request.cache", 32));
+        this.clientMap = new HashMap<>(1);
+        this.rpcClientOptions = RpcClientOptions.from(context);
+
+        MetricGroup metricGroup = MetricUtils.getMetricGroup(context);
+        MetricUtils.registerCache(metricGroup, "cache", cache);
+        this.rpcMetrics = RpcMetrics.register(metricGroup);
+    }
+
+    @Override
+    public void close() throws Exception {
+        if (clientMap != null) {
+            for (Web3jClient web3jClient : clientMap.values()) {
+                rpcMetrics.untrack(web3jClient);
+                Web3jClientRegistry.release(web3jClient);
+            }
+            clientMap.clear();
+        }
+        super.close();
     }
 
     private Web3jClient getWeb3jClientInstance(String endpoint) {
-        return clientMap.computeIfAbsent(endpoint, Web3jClient::new);
+        return clientMap.computeIfAbsent(endpoint,
+            (_endpoint) -> rpcMetrics.track(
+                rpcClientOptions.apply(Web3jClientRegistry.acquire(_endpoint))));
     }
 
     private String toJSON(Object obj) {
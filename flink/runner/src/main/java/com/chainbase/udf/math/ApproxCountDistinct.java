@@ -0,0 +1,176 @@
+package com.chainbase.udf.math;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import java.nio.charset.StandardCharsets;
+import org.apache.flink.table.functions.AggregateFunction;
+
+/**
+ * Approximate distinct count over a HyperLogLog sketch, e.g. the unique active addresses of an
+ * hour in a few KB of state instead of every address.
+ *
+ * <p>The accumulator is {@code 2^precision} one byte registers, {@value #DEFAULT_PRECISION} by
+ * default (16 KB, a standard error of 0.81%), or set per call with
+ * {@code ApproxCountDistinct(value, precision)} between {@value #MIN_PRECISION} and
+ * {@value #MAX_PRECISION}, the error being {@code 1.04 / sqrt(2^precision)}. Values are hashed
+ * with the 64-bit FarmHash fingerprint, which is stable across JVMs so that sketches restored from
+ * a savepoint keep merging, and the count is estimated with the improved estimator of Ertl, "New
+ * cardinality estimation algorithms for HyperLogLog sketches" (2017), accurate from empty to huge
+ * sketches without bias tables.
+ *
+ * <p>Sketches merge without loss, for two-phase aggregation and session windows, but can't
+ * retract: use {@link CountDistinct} over updating inputs.
+ */
+public class ApproxCountDistinct extends
+    AggregateFunction<Long, ApproxCountDistinct.SketchAccumulator> {
+
+  private static final long serialVersionUID = -1907402869371180227L;
+
+  public static final int DEFAULT_PRECISION = 14;
+
+  public static final int MIN_PRECISION = 4;
+
+  public static final int MAX_PRECISION = 18;
+
+  private static final HashFunction HASH_FUNCTION = Hashing.farmHashFingerprint64();
+
+  @Override
+  public SketchAccumulator createAccumulator() {
+    return new SketchAccumulator();
+  }
+
+  @Override
+  public Long getValue(SketchAccumulator accumulator) {
+    return accumulator.registers == null ? 0L : estimate(accumulator.registers);
+  }
+
+  public void accumulate(SketchAccumulator accumulator, String elem) {
+    accumulate(accumulator, elem, DEFAULT_PRECISION);
+  }
+
+  public void accumulate(SketchAccumulator accumulator, String elem, Integer precision) {
+    if (elem == null) {
+      return;
+    }
+    if (accumulator.registers == null) {
+      accumulator.registers = new byte[1 << checkPrecision(precision)];
+    }
+    add(accumulator.registers, HASH_FUNCTION.hashString(elem, StandardCharsets.UTF_8).asLong());
+  }
+
+  public void merge(SketchAccumulator acc, Iterable<SketchAccumulator> it) {
+    for (SketchAccumulator a : it) {
+      if (a.registers == null) {
+        continue;
+      }
+      if (acc.registers == null) {
+        acc.registers = a.registers.clone();
+        continue;
+      }
+      if (a.registers.length != acc.registers.length) {
+        throw new IllegalArgumentException(String.format(
+            "Can't merge sketches of %d and %d registers", acc.registers.length,
+            a.registers.length));
+      }
+      for (int idx = 0; idx < acc.registers.length; idx++) {
+        if (a.registers[idx] > acc.registers[idx]) {
+          acc.registers[idx] = a.registers[idx];
+        }
+      }
+    }
+  }
+
+  public void resetAccumulator(SketchAccumulator acc) {
+    acc.registers = null;
+  }
+
+  private static int checkPrecision(Integer precision) {
+    if (precision == null || precision < MIN_PRECISION || precision > MAX_PRECISION) {
+      throw new IllegalArgumentException(String.format(
+          "The precision of ApproxCountDistinct must be between %d and %d, got %s",
+          MIN_PRECISION, MAX_PRECISION, precision));
+    }
+    return precision;
+  }
+
+  /**
+   * The first {@code precision} bits of the hash pick the register, which keeps the highest rank,
+   * i.e. position of the first set bit, seen among the remaining bits.
+   */
+  static void add(byte[] registers, long hash) {
+    int precision = Integer.numberOfTrailingZeros(registers.length);
+    int idx = (int) (hash >>> (64 - precision));
+    // The guard bit caps the rank at 65 - precision when the remaining bits are all zeros
+    int rank = Long.numberOfLeadingZeros((hash << precision) | (1L << (precision - 1))) + 1;
+    if (rank > registers[idx]) {
+      registers[idx] = (byte) rank;
+    }
+  }
+
+  /**
+   * The improved raw estimator of Ertl, computed from the histogram of the register values.
+   */
+  static long estimate(byte[] registers) {
+    int m = registers.length;
+    int q = 64 - Integer.numberOfTrailingZeros(m);
+    int[] histogram = new int[q + 2];
+    for (byte register : registers) {
+      histogram[register]++;
+    }
+
+    double z = m * tau(1 - (double) histogram[q + 1] / m);
+    for (int k = q; k >= 1; k--) {
+      z = 0.5 * (z + histogram[k]);
+    }
+    z += m * sigma((double) histogram[0] / m);
+    return Math.round((double) m * m / (2 * Math.log(2)) / z);
+  }
+
+  private static double sigma(double x) {
+    if (x == 1) {
+      return Double.POSITIVE_INFINITY;
+    }
+    double y = 1;
+    double z = x;
+    double previous;
+    do {
+      x *= x;
+      previous = z;
+      z += x * y;
+      y += y;
+    } while (z != previous);
+    return z;
+  }
+
+  private static double tau(double x) {
+    if (x == 0 || x == 1) {
+      return 0;
+    }
+    double y = 1;
+    double z = 1 - x;
+    double previous;
+    do {
+      x = Math.sqrt(x);
+      previous = z;
+      y *= 0.5;
+      z -= Math.pow(1 - x, 2) * y;
+    } while (z != previous);
+    return z / 3;
+  }
+
+  public static class SketchAccumulator {
+
+    /**
+     * Null until the first value, the precision of the sketch being set by the call.
+     */
+    public byte[] registers;
+
+    public byte[] getRegisters() {
+      return registers;
+    }
+
+    public void setRegisters(byte[] registers) {
+      this.registers = registers;
+    }
+  }
+}
@@ -1,15 +1,18 @@
 package com.chainbase.udf.math;
 
-import java.util.ArrayList;
-import java.util.HashSet;
-import java.util.List;
+import java.util.Map;
+import org.apache.flink.table.api.dataview.MapView;
 import org.apache.flink.table.functions.AggregateFunction;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 
+/**
+ * Exact distinct count. The elements are kept in a {@link MapView} with their multiplicity, so a
+ * state backend stores one entry per element, updated in place, instead of rewriting the whole
+ * accumulator on every row, and a retraction only removes an element once all its rows are
+ * retracted. See {@link ApproxCountDistinct} when an estimate is enough.
+ */
 public class CountDistinct extends AggregateFunction<Long, CountDistinct.CountAccumulator> {
 
-  private final static Logger LOGGER = LoggerFactory.getLogger(CountDistinct.class);
+  private static final long serialVersionUID = 1725870436012693614L;
 
   @Override
   public CountAccumulator createAccumulator() {
@@ -18,44 +21,80 @@ public class CountDistinct extends AggregateFunction<Long, CountDistinct.CountAc
 
   @Override
   public Long getValue(CountAccumulator accumulator) {
-    if (accumulator.distinctSet == null || accumulator.distinctSet.isEmpty()) {
-      return 0L;
-    }
-    HashSet<String> set = new HashSet<>(accumulator.distinctSet);
-    return (long) set.size();
+    return accumulator.distinct;
   }
 
-  public void accumulate(CountAccumulator accumulator, String elem) {
+  public void accumulate(CountAccumulator accumulator, String elem) throws Exception {
     if (elem != null) {
-      accumulator.distinctSet.add(elem);
+      accumulator.add(elem, 1);
     }
   }
 
-  public void retract(CountAccumulator accumulator, String elem) {
-    accumulator.distinctSet.remove(elem);
+  public void retract(CountAccumulator accumulator, String elem) throws Exception {
+    if (elem == null) {
+      return;
+    }
+    Integer count = accumulator.counts.get(elem);
+    if (count == null) {
+      return;
+    }
+    if (count > 1) {
+      accumulator.counts.put(elem, count - 1);
+    } else {
+      accumulator.counts.remove(elem);
+      accumulator.distinct--;
+    }
   }
 
-
-  public void merge(CountAccumulator acc, Iterable<CountAccumulator> it) {
+  public void merge(CountAccumulator acc, Iterable<CountAccumulator> it) throws Exception {
     for (CountAccumulator a : it) {
-      acc.distinctSet.addAll(a.distinctSet);
+      for (Map.Entry<String, Integer> entry : a.counts.entries()) {
+        acc.add(entry.getKey(), entry.getValue());
+      }
     }
   }
 
   public void resetAccumulator(CountAccumulator acc) {
-    acc.distinctSet = new ArrayList<>();
+    acc.counts.clear();
+    acc.distinct = 0;
   }
 
   public static class CountAccumulator {
 
-    public List<String> distinctSet = new ArrayList<>();
+    /**
+     * Rows accumulated per element.
+     */
+    public MapView<String, Integer> counts = new MapView<>();
+
+    /**
+     * Elements in {@link #counts}, tracked to emit without iterating the view.
+     */
+    public long distinct;
+
+    public MapView<String, Integer> getCounts() {
+      return counts;
+    }
+
+    public void setCounts(MapView<String, Integer> counts) {
+      this.counts = counts;
+    }
+
+    public long getDistinct() {
+      return distinct;
+    }
 
-    public List<String> getDistinctSet() {
-      return distinctSet;
+    public void setDistinct(long distinct) {
+      this.distinct = distinct;
     }
 
-    public void setDistinctSet(List<String> ds) {
-      this.distinctSet = ds;
+    private void add(String elem, int rows) throws Exception {
+      Integer count = counts.get(elem);
+      if (count == null) {
+        distinct++;
+        counts.put(elem, rows);
+      } else {
+        counts.put(elem, count + rows);
+      }
     }
   }
-}
\ No newline at end of file
+}
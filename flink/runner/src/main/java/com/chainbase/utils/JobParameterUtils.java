@@ -0,0 +1,85 @@
+package com.chainbase.utils;
+
+import com.chainbase.common.cached.LRUCache;
+import java.io.File;
+import javax.annotation.Nullable;
+import org.apache.flink.configuration.ClusterOptions;
+import org.apache.flink.configuration.Configuration;
+import org.apache.flink.configuration.ConfigurationUtils;
+import org.apache.flink.configuration.GlobalConfiguration;
+import org.apache.flink.table.functions.FunctionContext;
+
+/**
+ * Reads UDF tuning knobs from the global job parameters. The manuscript `parameters` section is
+ * copied into the job parameters, a missing context (e.g. unit tests) falls back to the default.
+ */
+public class JobParameterUtils {
+
+  public static String getString(@Nullable FunctionContext context, String key,
+      String defaultValue) {
+    if (context == null) {
+      return defaultValue;
+    }
+    return context.getJobParameter(key, defaultValue);
+  }
+
+  public static int getInt(@Nullable FunctionContext context, String key, int defaultValue) {
+    return Integer.parseInt(getString(context, key, String.valueOf(defaultValue)).trim());
+  }
+
+  public static long getLong(@Nullable FunctionContext context, String key, long defaultValue) {
+    return Long.parseLong(getString(context, key, String.valueOf(defaultValue)).trim());
+  }
+
+  public static double getDouble(@Nullable FunctionContext context, String key,
+      double defaultValue) {
+    return Double.parseDouble(getString(context, key, String.valueOf(defaultValue)).trim());
+  }
+
+  public static boolean getBoolean(@Nullable FunctionContext context, String key,
+      boolean defaultValue) {
+    return Boolean.parseBoolean(getString(context, key, String.valueOf(defaultValue)).trim());
+  }
+
+  /**
+   * The knobs of the cache under {@code prefix}: {@code .size} entries, or a
+   * {@code .max-memory-mb} budget when set, and {@code .expire-after-write-ms} /
+   * {@code .expire-after-access-ms}, 0 meaning never.
+   */
+  public static LRUCache.Options getCacheOptions(@Nullable FunctionContext context, String prefix,
+      long defaultSize) {
+    return new LRUCache.Options()
+        .maximumSize(getLong(context, prefix + ".size", defaultSize))
+        .maximumWeightBytes(getLong(context, prefix + ".max-memory-mb", 0) * 1024 * 1024)
+        .expireAfterWriteMs(getLong(context, prefix + ".expire-after-write-ms", 0))
+        .expireAfterAccessMs(getLong(context, prefix + ".expire-after-access-ms", 0));
+  }
+
+  /**
+   * The directory of the caches kept across restarts, {@code key} when set, otherwise
+   * {@code manuscript-cache} under the working directory base of the TaskManager, i.e.
+   * {@code process.taskmanager.working-dir}, which defaults to the first {@code io.tmp.dirs}.
+   */
+  public static String getCacheDirectory(@Nullable FunctionContext context, String key) {
+    String directory = getString(context, key, "");
+    if (!directory.trim().isEmpty()) {
+      return directory.trim();
+    }
+    return new File(WorkingDirectory.BASE, "manuscript-cache").getPath();
+  }
+
+  /**
+   * The configuration of the TaskManager isn't exposed to functions, it's read once from the
+   * Flink configuration directory.
+   */
+  private static class WorkingDirectory {
+
+    private static final String BASE = resolve();
+
+    private static String resolve() {
+      Configuration configuration = GlobalConfiguration.loadConfiguration();
+      return configuration.getOptional(ClusterOptions.TASK_MANAGER_PROCESS_WORKING_DIR_BASE)
+          .orElseGet(() -> ConfigurationUtils.parseTempDirectories(configuration)[0]);
+    }
+  }
+}
@@ -0,0 +1,46 @@
+package com.chainbase.utils;
+
+import com.chainbase.common.cached.LRUCache;
+import javax.annotation.Nullable;
+import org.apache.flink.metrics.Gauge;
+import org.apache.flink.metrics.Histogram;
+import org.apache.flink.metrics.MetricGroup;
+import org.apache.flink.metrics.groups.UnregisteredMetricsGroup;
+import org.apache.flink.table.functions.FunctionContext;
+
+/**
+ * Registers the UDF metrics under the metric group of the function, a missing context (e.g. unit
+ * tests) falls back to a group reporting nowhere.
+ */
+public class MetricUtils {
+
+  /**
+   * Samples kept by the histograms, their percentiles cover the latest values only.
+   */
+  private static final int HISTOGRAM_WINDOW_SIZE = 1024;
+
+  public static MetricGroup getMetricGroup(@Nullable FunctionContext context) {
+    if (context == null) {
+      return new UnregisteredMetricsGroup();
+    }
+    return context.getMetricGroup();
+  }
+
+  /**
+   * Gauges of the cache under the {@code name} subgroup: hits, misses, evictions, size,
+   * weightedSize and hitRate.
+   */
+  public static void registerCache(MetricGroup group, String name, LRUCache<?, ?> cache) {
+    MetricGroup cacheGroup = group.addGroup(name);
+    cacheGroup.<Long, Gauge<Long>>gauge("hits", cache::getHitCount);
+    cacheGroup.<Long, Gauge<Long>>gauge("misses", cache::getMissCount);
+    cacheGroup.<Long, Gauge<Long>>gauge("evictions", cache::getEvictionCount);
+    cacheGroup.<Long, Gauge<Long>>gauge("size", cache::size);
+    cacheGroup.<Long, Gauge<Long>>gauge("weightedSize", cache::getWeightedSize);
+    cacheGroup.<Double, Gauge<Double>>gauge("hitRate", cache::getHitRate);
+  }
+
+  public static Histogram histogram(MetricGroup group, String name) {
+    return group.histogram(name, new SlidingWindowHistogram(HISTOGRAM_WINDOW_SIZE));
+  }
+}
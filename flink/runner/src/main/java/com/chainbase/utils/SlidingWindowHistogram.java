@@ -0,0 +1,112 @@
+package com.chainbase.utils;
+
+import java.util.Arrays;
+import org.apache.flink.metrics.Histogram;
+import org.apache.flink.metrics.HistogramStatistics;
+
+/**
+ * Histogram over the latest {@code windowSize} values, built on the public flink-metrics-core API
+ * only. The statistics are computed on a sorted copy of the window taken when they are read, by
+ * the reporter thread, so updates only cost a write to the ring buffer.
+ */
+public class SlidingWindowHistogram implements Histogram {
+
+  private final long[] values;
+
+  private long count;
+
+  public SlidingWindowHistogram(int windowSize) {
+    if (windowSize <= 0) {
+      throw new IllegalArgumentException("Invalid window size: " + windowSize);
+    }
+    this.values = new long[windowSize];
+  }
+
+  @Override
+  public synchronized void update(long value) {
+    values[(int) (count % values.length)] = value;
+    count++;
+  }
+
+  @Override
+  public synchronized long getCount() {
+    return count;
+  }
+
+  @Override
+  public HistogramStatistics getStatistics() {
+    long[] window;
+    synchronized (this) {
+      window = Arrays.copyOf(values, (int) Math.min(count, values.length));
+    }
+    Arrays.sort(window);
+    return new Snapshot(window);
+  }
+
+  private static class Snapshot extends HistogramStatistics {
+
+    private final long[] sorted;
+
+    private Snapshot(long[] sorted) {
+      this.sorted = sorted;
+    }
+
+    /**
+     * Linear interpolation between the closest ranks, the estimate commons-math uses by default.
+     */
+    @Override
+    public double getQuantile(double quantile) {
+      if (sorted.length == 0) {
+        return Double.NaN;
+      }
+      double position = quantile * (sorted.length + 1);
+      if (position < 1) {
+        return sorted[0];
+      }
+      if (position >= sorted.length) {
+        return sorted[sorted.length - 1];
+      }
+      int lower = (int) position;
+      double fraction = position - lower;
+      return sorted[lower - 1] + fraction * (sorted[lower] - sorted[lower - 1]);
+    }
+
+    @Override
+    public long[] getValues() {
+      return Arrays.copyOf(sorted, sorted.length);
+    }
+
+    @Override
+    public int size() {
+      return sorted.length;
+    }
+
+    @Override
+    public double getMean() {
+      return sorted.length == 0 ? Double.NaN : Arrays.stream(sorted).average().getAsDouble();
+    }
+
+    @Override
+    public double getStdDev() {
+      if (sorted.length < 2) {
+        return sorted.length == 0 ? Double.NaN : 0;
+      }
+      double mean = getMean();
+      double squares = 0;
+      for (long value : sorted) {
+        squares += (value - mean) * (value - mean);
+      }
+      return Math.sqrt(squares / (sorted.length - 1));
+    }
+
+    @Override
+    public long getMax() {
+      return sorted.length == 0 ? 0 : sorted[sorted.length - 1];
+    }
+
+    @Override
+    public long getMin() {
+      return sorted.length == 0 ? 0 : sorted[0];
+    }
+  }
+}
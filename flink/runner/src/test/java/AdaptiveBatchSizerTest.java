@@ -0,0 +1,80 @@
+package com.chainbase.evm;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class AdaptiveBatchSizerTest {
+
+  @Test
+  void growsWhileUnderTargets() {
+    AdaptiveBatchSizer sizer = new AdaptiveBatchSizer(100, 120, 1000, 1024);
+
+    sizer.onAnswered(100, 200, 512);
+    Assertions.assertEquals(110, sizer.getSize());
+    sizer.onAnswered(110, 200, 512);
+    sizer.onAnswered(121, 200, 512);
+    Assertions.assertEquals(120, sizer.getSize());
+
+    // A partial batch, the tail of the calls, says nothing about a larger one
+    sizer.onAnswered(10, 200, 512);
+    Assertions.assertEquals(120, sizer.getSize());
+  }
+
+  @Test
+  void shrinksAboveTargets() {
+    AdaptiveBatchSizer sizer = new AdaptiveBatchSizer(100, 1000, 1000, 1024);
+
+    sizer.onAnswered(100, 2000, 512);
+    Assertions.assertEquals(75, sizer.getSize());
+    sizer.onAnswered(75, 200, 4096);
+    Assertions.assertEquals(56, sizer.getSize());
+  }
+
+  @Test
+  void halvesOnTimeout() {
+    AdaptiveBatchSizer sizer = new AdaptiveBatchSizer(100, 1000, 1000, 1024);
+
+    sizer.onTimeout(100);
+    Assertions.assertEquals(50, sizer.getSize());
+    Assertions.assertEquals(1000, sizer.getMaxSize());
+  }
+
+  @Test
+  void capsBelowRejectedSize() {
+    AdaptiveBatchSizer sizer = new AdaptiveBatchSizer(100, 1000, 1000, 1024);
+
+    sizer.onRejected(100);
+    Assertions.assertEquals(50, sizer.getSize());
+    Assertions.assertEquals(99, sizer.getMaxSize());
+
+    for (int idx = 0; idx < 20; idx++) {
+      sizer.onAnswered(sizer.getSize(), 10, 10);
+    }
+    Assertions.assertEquals(99, sizer.getSize());
+
+    sizer.onRejected(1);
+    Assertions.assertEquals(1, sizer.getSize());
+    Assertions.assertEquals(1, sizer.getMaxSize());
+  }
+
+  @Test
+  void raisesTheCapAgainOverTime() {
+    AdaptiveBatchSizer sizer = new AdaptiveBatchSizer(100, 200, 1000, 1024);
+
+    sizer.onRejected(100);
+    for (int idx = 0; idx < 200; idx++) {
+      sizer.onAnswered(sizer.getSize(), 10, 10);
+    }
+    Assertions.assertEquals(200, sizer.getMaxSize());
+    Assertions.assertEquals(200, sizer.getSize());
+  }
+
+  @Test
+  void partialAnswersDontCap() {
+    AdaptiveBatchSizer sizer = new AdaptiveBatchSizer(100, 1000, 1000, 1024);
+
+    sizer.onPartiallyAnswered(100, 60);
+    Assertions.assertEquals(60, sizer.getSize());
+    Assertions.assertEquals(1000, sizer.getMaxSize());
+  }
+}
@@ -0,0 +1,74 @@
+package com.chainbase.udf.math;
+
+import com.chainbase.udf.math.ApproxCountDistinct.SketchAccumulator;
+import java.util.Arrays;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class ApproxCountDistinctTest {
+
+  private final ApproxCountDistinct function = new ApproxCountDistinct();
+
+  @Test
+  void estimatesWithinStandardError() {
+    for (int cardinality : new int[]{0, 1, 100, 10_000, 1_000_000}) {
+      SketchAccumulator accumulator = function.createAccumulator();
+      for (int idx = 0; idx < cardinality; idx++) {
+        function.accumulate(accumulator, address(idx));
+        // Duplicates don't count
+        function.accumulate(accumulator, address(idx / 2));
+      }
+      // 3 standard errors of the default precision
+      Assertions.assertEquals(cardinality, function.getValue(accumulator),
+          Math.max(1, 0.025 * cardinality));
+    }
+  }
+
+  @Test
+  void estimatesAtEveryPrecision() {
+    for (int precision = ApproxCountDistinct.MIN_PRECISION;
+        precision <= ApproxCountDistinct.MAX_PRECISION; precision++) {
+      SketchAccumulator accumulator = function.createAccumulator();
+      for (int idx = 0; idx < 100_000; idx++) {
+        function.accumulate(accumulator, address(idx), precision);
+      }
+      // 4 standard errors of the precision
+      double error = 4 * 1.04 / Math.sqrt(1 << precision);
+      Assertions.assertEquals(100_000, function.getValue(accumulator), error * 100_000,
+          "precision " + precision);
+    }
+  }
+
+  @Test
+  void mergesSketches() {
+    SketchAccumulator first = function.createAccumulator();
+    SketchAccumulator second = function.createAccumulator();
+    for (int idx = 0; idx < 60_000; idx++) {
+      function.accumulate(idx < 40_000 ? first : second, address(idx));
+      function.accumulate(idx < 20_000 ? second : first, address(idx));
+    }
+
+    SketchAccumulator merged = function.createAccumulator();
+    function.merge(merged, Arrays.asList(first, second, function.createAccumulator()));
+    Assertions.assertEquals(60_000, function.getValue(merged), 0.025 * 60_000);
+    Assertions.assertEquals(1 << ApproxCountDistinct.DEFAULT_PRECISION, merged.registers.length);
+  }
+
+  @Test
+  void setsPrecisionPerCall() {
+    SketchAccumulator accumulator = function.createAccumulator();
+    function.accumulate(accumulator, address(0), 10);
+    Assertions.assertEquals(1024, accumulator.registers.length);
+    Assertions.assertThrows(IllegalArgumentException.class,
+        () -> function.accumulate(function.createAccumulator(), address(0), 30));
+
+    SketchAccumulator other = function.createAccumulator();
+    function.accumulate(other, address(1));
+    Assertions.assertThrows(IllegalArgumentException.class,
+        () -> function.merge(accumulator, Arrays.asList(other)));
+  }
+
+  private static String address(int idx) {
+    return String.format("0x%040x", idx);
+  }
+}
@@ -0,0 +1,132 @@
+package com.chainbase.evm;
+
+import static com.chainbase.evm.JsonRpcStubServer.ERC1155_CODE;
+import static com.chainbase.evm.JsonRpcStubServer.ERC20_CODE;
+import static com.chainbase.evm.JsonRpcStubServer.ERC721_CODE;
+
+import com.chainbase.evm.ContractDiscriminator.ContractInfo;
+import com.chainbase.evm.ContractDiscriminator.TokenInfo;
+import java.math.BigInteger;
+import java.util.Arrays;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class ContractDiscriminatorTest {
+
+  private static final String TOKEN = "0x00000000000000000000000000000000000000a1";
+
+  private static final String PROXY = "0x00000000000000000000000000000000000000b1";
+
+  private static final String IMPL = "0x00000000000000000000000000000000000000c1";
+
+  private static final String EIP_1967_SLOT =
+      "0x360894a13ba1a3210667c828492db98dca3e2076cc3735a920a3ca505d382bbc";
+
+  private JsonRpcStubServer stub;
+
+  private ContractDiscriminator discriminator;
+
+  @BeforeEach
+  void startNode() throws Exception {
+    stub = JsonRpcStubServer.start();
+    discriminator = new ContractDiscriminator(
+        new Web3jClient(stub.getUrl()).withResultCache(0, null, 0));
+  }
+
+  @AfterEach
+  void stopNode() {
+    stub.close();
+  }
+
+  @Test
+  void classifiesTokenStandardsFromBytecode() {
+    ContractInfo erc20 = discriminator.getContractInfo(TOKEN, ERC20_CODE);
+    Assertions.assertTrue(erc20.isErc20());
+    Assertions.assertFalse(erc20.isErc721());
+    Assertions.assertFalse(erc20.isProxy());
+
+    Assertions.assertTrue(discriminator.getContractInfo(TOKEN, ERC721_CODE).isErc721());
+    Assertions.assertFalse(discriminator.getContractInfo(TOKEN, ERC721_CODE).isErc20());
+    Assertions.assertTrue(discriminator.getContractInfo(TOKEN, ERC1155_CODE).isErc1155());
+
+    ContractInfo other = discriminator.getContractInfo(TOKEN, "0x6080604052600080fd");
+    Assertions.assertFalse(other.isErc20() || other.isErc721() || other.isErc1155());
+  }
+
+  @Test
+  void fetchesTheCodeWhenMissing() {
+    stub.fixture("eth_getCode", Arrays.asList(TOKEN, "latest"), ERC20_CODE);
+
+    Assertions.assertTrue(discriminator.getContractInfo(TOKEN, null).isErc20());
+    Assertions.assertTrue(discriminator.getContractInfo(TOKEN, "0x").isErc20());
+  }
+
+  @Test
+  void followsMinimalProxies() {
+    stub.fixture("eth_getCode", Arrays.asList(IMPL, "latest"), ERC1155_CODE);
+
+    ContractInfo info = discriminator.getContractInfo(PROXY,
+        "0x363d3d373d3d3d363d73" + IMPL.substring(2) + "5af43d82803e903d91602b57fd5bf3");
+    Assertions.assertTrue(info.isProxy());
+    Assertions.assertTrue(info.isErc1155());
+    Assertions.assertEquals(IMPL, info.getImplAddress());
+    Assertions.assertEquals(ERC1155_CODE, info.getImplCode());
+  }
+
+  @Test
+  void followsEip1967StorageSlot() {
+    stub.fixture("eth_getStorageAt", Arrays.asList(PROXY, EIP_1967_SLOT, "latest"),
+            "0x000000000000000000000000" + IMPL.substring(2))
+        .fixture("eth_getCode", Arrays.asList(IMPL, "latest"), ERC721_CODE);
+
+    ContractInfo info = discriminator.getContractInfo(PROXY,
+        "0x60806040527f" + EIP_1967_SLOT.substring(2) + "5400");
+    Assertions.assertTrue(info.isProxy());
+    Assertions.assertTrue(info.isErc721());
+    Assertions.assertEquals(IMPL, info.getImplAddress());
+  }
+
+  @Test
+  void followsTheImplementationFunction() {
+    // implementation() answered by the proxy, the implementation having none
+    stub.callFixture(PROXY, "0x5c60da1b", "latest",
+            "0x000000000000000000000000" + IMPL.substring(2))
+        .fixture("eth_getCode", Arrays.asList(IMPL, "latest"), ERC20_CODE);
+
+    ContractInfo info = discriminator.getContractInfo(PROXY, "0x6080604052600080fd");
+    Assertions.assertTrue(info.isProxy());
+    Assertions.assertTrue(info.isErc20());
+    Assertions.assertEquals(IMPL, info.getImplAddress());
+  }
+
+  @Test
+  void readsTokenInfos() {
+    stub.tokenFixture(TOKEN, "HOBA Inu", "HOBA", 9, 1_000_000_000)
+        .tokenFixture(PROXY, "Layer3", "L3", 18, 3_333);
+    ContractInfo token = discriminator.getContractInfo(TOKEN, ERC20_CODE);
+    ContractInfo other = discriminator.getContractInfo(TOKEN, ERC20_CODE);
+
+    TokenInfo[] infos = discriminator.batchGetTokenInfosWithBatchSize(Arrays.asList(TOKEN, PROXY),
+        Arrays.asList(token, other), ContractDiscriminator.DEFAULT_TOKEN_META_MULTICALL_SIZE)
+        .toArray(new TokenInfo[0]);
+
+    Assertions.assertEquals("HOBA Inu", infos[0].getName());
+    Assertions.assertEquals("HOBA", infos[0].getSymbol());
+    Assertions.assertEquals(9, infos[0].getDecimals());
+    Assertions.assertEquals(BigInteger.valueOf(1_000_000_000), infos[0].getTotalSupply());
+    Assertions.assertEquals("Layer3", infos[1].getName());
+    Assertions.assertEquals("L3", infos[1].getSymbol());
+    Assertions.assertEquals(18, infos[1].getDecimals());
+  }
+
+  @Test
+  void defaultsTheInfosOfNonTokens() {
+    TokenInfo info = discriminator.getTokenInfo(TOKEN, discriminator.getContractInfo(TOKEN,
+        "0x6080604052600080fd"));
+    Assertions.assertEquals("", info.getName());
+    Assertions.assertEquals(0, info.getDecimals());
+    Assertions.assertEquals(BigInteger.ZERO, info.getTotalSupply());
+  }
+}
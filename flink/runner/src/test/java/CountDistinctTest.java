@@ -0,0 +1,43 @@
+package com.chainbase.udf.math;
+
+import com.chainbase.udf.math.CountDistinct.CountAccumulator;
+import java.util.Arrays;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class CountDistinctTest {
+
+  private final CountDistinct function = new CountDistinct();
+
+  @Test
+  void retractsOnceEveryRowIsRetracted() throws Exception {
+    CountAccumulator accumulator = function.createAccumulator();
+    for (String elem : new String[]{"0xa", "0xb", "0xa", null}) {
+      function.accumulate(accumulator, elem);
+    }
+    Assertions.assertEquals(2L, function.getValue(accumulator));
+
+    function.retract(accumulator, "0xa");
+    Assertions.assertEquals(2L, function.getValue(accumulator));
+    function.retract(accumulator, "0xa");
+    function.retract(accumulator, "0xc");
+    Assertions.assertEquals(1L, function.getValue(accumulator));
+  }
+
+  @Test
+  void mergesCounts() throws Exception {
+    CountAccumulator first = function.createAccumulator();
+    CountAccumulator second = function.createAccumulator();
+    function.accumulate(first, "0xa");
+    function.accumulate(second, "0xa");
+    function.accumulate(second, "0xb");
+
+    function.merge(first, Arrays.asList(second));
+    Assertions.assertEquals(2L, function.getValue(first));
+    function.retract(first, "0xa");
+    Assertions.assertEquals(2L, function.getValue(first));
+
+    function.resetAccumulator(first);
+    Assertions.assertEquals(0L, function.getValue(first));
+  }
+}
@@ -0,0 +1,47 @@
+package com.chainbase.udf;
+
+import com.chainbase.evm.decoder.EventDecoder;
+import java.math.BigDecimal;
+import org.apache.flink.types.Row;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class DecodeEventRowTest {
+
+  private static final String SWAP_ABI = "{\"anonymous\": false, \"inputs\": [{\"indexed\": true, \"name\": \"sender\", \"type\": \"address\"}, {\"indexed\": false, \"name\": \"amount0\", \"type\": \"int256\"}, {\"indexed\": false, \"name\": \"liquidity\", \"type\": \"uint128\"}, {\"indexed\": false, \"name\": \"sqrtPriceX96\", \"type\": \"uint96\"}, {\"indexed\": false, \"name\": \"tick\", \"type\": \"int24\"}, {\"indexed\": false, \"name\": \"fees\", \"type\": \"uint32[]\"}], \"name\": \"Swap\", \"type\": \"event\"}";
+
+  private static final String SWAP_TOPIC0 = "0x617c68e12489c6e1d8b571b4c3366d09a101d260d7f990efd879e1fa87184fa9";
+
+  private static final String SENDER_TOPIC = "0x000000000000000000000000dac17f958d2ee523a2206206994597c13d831ec7";
+
+  private static final String DATA = "0x"
+      + "fffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffc18"
+      + "00000000000000000000000000000000000000000000000000000000000003e8"
+      + "0000000000000000000000000000000000000000000000000de0b6b3a7640000"
+      + "fffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffff6"
+      + "00000000000000000000000000000000000000000000000000000000000000a0"
+      + "0000000000000000000000000000000000000000000000000000000000000002"
+      + "0000000000000000000000000000000000000000000000000000000000000005"
+      + "00000000000000000000000000000000000000000000000000000000000001f4";
+
+  @Test
+  void derivesColumnTypesFromAbi() {
+    Assertions.assertEquals(
+        "ROW<`sender` STRING, `amount0` STRING, `liquidity` STRING, `sqrtPriceX96` DECIMAL(38, 0), `tick` BIGINT, `fees` ARRAY<BIGINT>>",
+        EventDecoder.compile(SWAP_ABI).getRowConverter().getDataType().toString());
+  }
+
+  @Test
+  void decodesTypedRow() throws Exception {
+    DecodeEventRow decodeEventRow = new DecodeEventRow();
+    decodeEventRow.open(null);
+
+    Row row = decodeEventRow.eval(SWAP_ABI, SWAP_TOPIC0, SENDER_TOPIC, null, null, DATA);
+    Assertions.assertEquals("0xdac17f958d2ee523a2206206994597c13d831ec7", row.getField(0));
+    Assertions.assertEquals("-1000", row.getField(1));
+    Assertions.assertEquals("1000", row.getField(2));
+    Assertions.assertEquals(new BigDecimal("1000000000000000000"), row.getField(3));
+    Assertions.assertEquals(-10L, row.getField(4));
+    Assertions.assertArrayEquals(new Long[]{5L, 500L}, (Long[]) row.getField(5));
+  }
+}
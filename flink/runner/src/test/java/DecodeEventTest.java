@@ -0,0 +1,42 @@
+package com.chainbase.udf;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class DecodeEventTest {
+
+  private static final String TRANSFER_ABI = "{\"anonymous\": false, \"inputs\": [{\"indexed\": true, \"internalType\": \"address\", \"name\": \"_from\", \"type\": \"address\"}, {\"indexed\": true, \"internalType\": \"address\", \"name\": \"_to\", \"type\": \"address\"}, {\"indexed\": false, \"internalType\": \"uint256\", \"name\": \"_value\", \"type\": \"uint256\"}], \"name\": \"Transfer\", \"type\": \"event\"}";
+
+  private static final String TRANSFER_TOPIC0 = "0xddf252ad1be2c89b69c2b068fc378daa952ba7f163c4a11628f55a4df523b3ef";
+
+  private static final String FROM_TOPIC = "0x0000000000000000000000004d880e7d7d03122bb9da9cbb5e408cd18e8d996d";
+
+  private static final String TO_TOPIC = "0x000000000000000000000000dac17f958d2ee523a2206206994597c13d831ec7";
+
+  private static final String VALUE_DATA = "0x000000000000000000000000000000000000000000000000000000032d4cb209";
+
+  private static final String EXPECTED = "{\"_from\":\"0x4d880e7d7d03122bb9da9cbb5e408cd18e8d996d\",\"_to\":\"0xdac17f958d2ee523a2206206994597c13d831ec7\",\"_value\":\"13644902921\"}";
+
+  @Test
+  void decodesTransfer() throws Exception {
+    DecodeEvent decodeEvent = new DecodeEvent();
+    decodeEvent.open(null);
+
+    Assertions.assertEquals(EXPECTED,
+        decodeEvent.eval(TRANSFER_ABI, TRANSFER_TOPIC0, FROM_TOPIC, TO_TOPIC, null, VALUE_DATA));
+    // The compiled decoder is reused for the next row
+    Assertions.assertEquals(EXPECTED,
+        decodeEvent.eval(TRANSFER_ABI, TRANSFER_TOPIC0, FROM_TOPIC, TO_TOPIC, "", VALUE_DATA));
+  }
+
+  @Test
+  void returnsNullWhenTopicsDoNotMatch() throws Exception {
+    DecodeEvent decodeEvent = new DecodeEvent();
+    decodeEvent.open(null);
+
+    Assertions.assertNull(
+        decodeEvent.eval(TRANSFER_ABI, TRANSFER_TOPIC0, FROM_TOPIC, null, null, VALUE_DATA));
+    Assertions.assertNull(
+        decodeEvent.eval(null, TRANSFER_TOPIC0, FROM_TOPIC, TO_TOPIC, null, VALUE_DATA));
+  }
+}
@@ -0,0 +1,40 @@
+package com.chainbase.udf;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class DecodeEventsTest {
+
+  private static final String ABI = "[{\"inputs\": [], \"stateMutability\": \"nonpayable\", \"type\": \"constructor\"}, {\"anonymous\": false, \"inputs\": [{\"indexed\": true, \"name\": \"owner\", \"type\": \"address\"}, {\"indexed\": true, \"name\": \"spender\", \"type\": \"address\"}, {\"indexed\": false, \"name\": \"value\", \"type\": \"uint256\"}], \"name\": \"Approval\", \"type\": \"event\"}, {\"anonymous\": false, \"inputs\": [{\"indexed\": true, \"name\": \"from\", \"type\": \"address\"}, {\"indexed\": true, \"name\": \"to\", \"type\": \"address\"}, {\"indexed\": false, \"name\": \"value\", \"type\": \"uint256\"}], \"name\": \"Transfer\", \"type\": \"event\"}, {\"anonymous\": false, \"inputs\": [{\"indexed\": true, \"name\": \"from\", \"type\": \"address\"}, {\"indexed\": true, \"name\": \"to\", \"type\": \"address\"}, {\"indexed\": true, \"name\": \"tokenId\", \"type\": \"uint256\"}], \"name\": \"Transfer\", \"type\": \"event\"}]";
+
+  private static final String TRANSFER_TOPIC0 = "0xddf252ad1be2c89b69c2b068fc378daa952ba7f163c4a11628f55a4df523b3ef";
+
+  private static final String FROM_TOPIC = "0x0000000000000000000000004d880e7d7d03122bb9da9cbb5e408cd18e8d996d";
+
+  private static final String TO_TOPIC = "0x000000000000000000000000dac17f958d2ee523a2206206994597c13d831ec7";
+
+  private static final String VALUE = "0x000000000000000000000000000000000000000000000000000000032d4cb209";
+
+  @Test
+  void dispatchesByTopic0AndTopicCount() throws Exception {
+    DecodeEvents decodeEvents = new DecodeEvents();
+    decodeEvents.open(null);
+
+    Assertions.assertEquals(
+        "{\"event\":\"Transfer\",\"args\":{\"from\":\"0x4d880e7d7d03122bb9da9cbb5e408cd18e8d996d\",\"to\":\"0xdac17f958d2ee523a2206206994597c13d831ec7\",\"value\":\"13644902921\"}}",
+        decodeEvents.eval(ABI, TRANSFER_TOPIC0, FROM_TOPIC, TO_TOPIC, null, VALUE));
+    Assertions.assertEquals(
+        "{\"event\":\"Transfer\",\"args\":{\"from\":\"0x4d880e7d7d03122bb9da9cbb5e408cd18e8d996d\",\"to\":\"0xdac17f958d2ee523a2206206994597c13d831ec7\",\"tokenId\":\"13644902921\"}}",
+        decodeEvents.eval(ABI, TRANSFER_TOPIC0, FROM_TOPIC, TO_TOPIC, VALUE, "0x"));
+  }
+
+  @Test
+  void returnsNullForUnknownTopic0() throws Exception {
+    DecodeEvents decodeEvents = new DecodeEvents();
+    decodeEvents.open(null);
+
+    Assertions.assertNull(decodeEvents.eval(ABI,
+        "0x0000000000000000000000000000000000000000000000000000000000000001", FROM_TOPIC,
+        TO_TOPIC, null, VALUE));
+  }
+}
@@ -0,0 +1,118 @@
+package com.chainbase.udf;
+
+import com.chainbase.evm.decoder.FunctionDecoder;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import org.apache.flink.table.api.DataTypes;
+import org.apache.flink.table.api.ValidationException;
+import org.apache.flink.table.catalog.DataTypeFactory;
+import org.apache.flink.table.functions.FunctionDefinition;
+import org.apache.flink.table.types.DataType;
+import org.apache.flink.table.types.inference.CallContext;
+import org.apache.flink.table.types.inference.TypeInference;
+import org.apache.flink.table.types.inference.TypeInferenceUtil;
+import org.apache.flink.types.Row;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class DecodeFunctionRowTest {
+
+  private static final String TRANSFER_ABI = "{\"inputs\": [{\"name\": \"_to\", \"type\": \"address\"}, {\"name\": \"_value\", \"type\": \"uint256\"}], \"name\": \"transfer\", \"outputs\": [{\"name\": \"\", \"type\": \"bool\"}], \"stateMutability\": \"nonpayable\", \"type\": \"function\"}";
+
+  private static final String INPUT = "0xa9059cbb000000000000000000000000dac17f958d2ee523a2206206994597c13d831ec7000000000000000000000000000000000000000000000000000000032d4cb209";
+
+  private static final String OUTPUT = "0x0000000000000000000000000000000000000000000000000000000000000001";
+
+  private static final String TRANSFER_ROW =
+      "ROW<`_to` STRING, `_value` STRING, `output__0` BOOLEAN>";
+
+  @Test
+  void derivesColumnTypesFromAbi() {
+    Assertions.assertEquals(TRANSFER_ROW,
+        FunctionDecoder.compile(TRANSFER_ABI).getRowConverter().getDataType().toString());
+  }
+
+  @Test
+  void decodesTypedRow() throws Exception {
+    DecodeFunctionRow decodeFunctionRow = new DecodeFunctionRow();
+    decodeFunctionRow.open(null);
+
+    Row row = decodeFunctionRow.eval(TRANSFER_ABI, INPUT, OUTPUT);
+    Assertions.assertEquals("0xdac17f958d2ee523a2206206994597c13d831ec7", row.getField(0));
+    Assertions.assertEquals("13644902921", row.getField(1));
+    Assertions.assertEquals(true, row.getField(2));
+  }
+
+  @Test
+  void infersRowTypeFromLiteralAbi() {
+    // What the planner runs when validating a SQL call to Decode_Function_Row
+    TypeInference typeInference = new DecodeFunctionRow().getTypeInference(null);
+
+    Assertions.assertEquals(TRANSFER_ROW, TypeInferenceUtil.runTypeInference(typeInference,
+            new LiteralCallContext(TRANSFER_ABI, INPUT, OUTPUT), null)
+        .getOutputDataType().toString());
+    // A column ABI can't type the row, nor can an invalid ABI
+    Assertions.assertThrows(ValidationException.class, () -> TypeInferenceUtil.runTypeInference(
+        typeInference, new LiteralCallContext(null, INPUT, OUTPUT), null));
+    Assertions.assertThrows(ValidationException.class, () -> TypeInferenceUtil.runTypeInference(
+        typeInference, new LiteralCallContext("{}", INPUT, OUTPUT), null));
+  }
+
+  /**
+   * String arguments of a SQL call, a null one standing for a column reference.
+   */
+  private static class LiteralCallContext implements CallContext {
+
+    private final Object[] literals;
+
+    LiteralCallContext(Object... literals) {
+      this.literals = literals;
+    }
+
+    @Override
+    public DataTypeFactory getDataTypeFactory() {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public FunctionDefinition getFunctionDefinition() {
+      return new DecodeFunctionRow();
+    }
+
+    @Override
+    public boolean isArgumentLiteral(int pos) {
+      return literals[pos] != null;
+    }
+
+    @Override
+    public boolean isArgumentNull(int pos) {
+      return false;
+    }
+
+    @Override
+    public <T> Optional<T> getArgumentValue(int pos, Class<T> clazz) {
+      return Optional.ofNullable(literals[pos]).filter(clazz::isInstance).map(clazz::cast);
+    }
+
+    @Override
+    public String getName() {
+      return "Decode_Function_Row";
+    }
+
+    @Override
+    public List<DataType> getArgumentDataTypes() {
+      return Collections.nCopies(literals.length, DataTypes.STRING());
+    }
+
+    @Override
+    public Optional<DataType> getOutputDataType() {
+      return Optional.empty();
+    }
+
+    @Override
+    public boolean isGroupedAggregation() {
+      return false;
+    }
+  }
+}
@@ -0,0 +1,33 @@
+package com.chainbase.udf;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class DecodeFunctionTest {
+
+  private static final String TRANSFER_ABI = "{\"inputs\": [{\"name\": \"_to\", \"type\": \"address\"}, {\"name\": \"_value\", \"type\": \"uint256\"}], \"name\": \"transfer\", \"outputs\": [{\"name\": \"\", \"type\": \"bool\"}], \"stateMutability\": \"nonpayable\", \"type\": \"function\"}";
+
+  private static final String INPUT = "0xa9059cbb000000000000000000000000dac17f958d2ee523a2206206994597c13d831ec7000000000000000000000000000000000000000000000000000000032d4cb209";
+
+  private static final String OUTPUT = "0x0000000000000000000000000000000000000000000000000000000000000001";
+
+  private static final String EXPECTED = "{\"_to\":\"0xdac17f958d2ee523a2206206994597c13d831ec7\",\"_value\":\"13644902921\",\"output__0\":true}";
+
+  @Test
+  void decodesCallAndReturn() throws Exception {
+    DecodeFunction decodeFunction = new DecodeFunction();
+    decodeFunction.open(null);
+
+    Assertions.assertEquals(EXPECTED, decodeFunction.eval(TRANSFER_ABI, INPUT, OUTPUT));
+    // The compiled decoder is reused for the next row
+    Assertions.assertEquals(EXPECTED, decodeFunction.eval(TRANSFER_ABI, INPUT, OUTPUT));
+  }
+
+  @Test
+  void returnsNullForNonFunctionAbi() throws Exception {
+    DecodeFunction decodeFunction = new DecodeFunction();
+    decodeFunction.open(null);
+
+    Assertions.assertNull(decodeFunction.eval("{\"anonymous\": false, \"inputs\": [], \"name\": \"Paused\", \"type\": \"event\"}", INPUT, OUTPUT));
+  }
+}
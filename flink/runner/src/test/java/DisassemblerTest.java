@@ -0,0 +1,39 @@
+package com.chainbase.evm.disassembler;
+
+import com.google.common.base.Strings;
+import java.math.BigInteger;
+import java.util.List;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class DisassemblerTest {
+
+  // PUSH1 0x80, PUSH4 transfer, EQ, PUSH4 approve, 0x0c (undefined), PUSH2 truncated to one byte,
+  // then the swarm metadata
+  private static final String CODE = "0x608063a9059cbb1463095ea7b30c61ff"
+      + "a165627a7a72305820" + Strings.repeat("00", 32) + "0029";
+
+  @Test
+  void extractsPush4Selectors() {
+    Assertions.assertArrayEquals(new int[]{0xa9059cbb, 0x095ea7b3},
+        new Disassembler(CODE).getPush4Selectors());
+  }
+
+  @Test
+  void listsOpcodesLazily() {
+    Disassembler disassembler = new Disassembler(CODE);
+    List<Opcode> opcodes = disassembler.getOpcodes();
+
+    Assertions.assertEquals(6, opcodes.size());
+    Assertions.assertEquals(Opcodes.PUSH4, opcodes.get(1).getOpcode());
+    Assertions.assertEquals("a9059cbb", opcodes.get(1).getHexParameter());
+    Assertions.assertEquals(Opcodes.UNKNOWN, opcodes.get(4).getOpcode());
+    Assertions.assertEquals(BigInteger.valueOf(0xff), opcodes.get(5).getParameter());
+    Assertions.assertEquals(String.join(System.lineSeparator(),
+            "0x000 PUSH1 0x80", "0x002 PUSH4 0xa9059cbb", "0x007 EQ", "0x008 PUSH4 0x95ea7b3",
+            "0x00D UNKNOWN", "0x00E PUSH2 0xff", ""),
+        disassembler.getDisassembledCode());
+    Assertions.assertEquals("a165627a7a72305820" + Strings.repeat("00", 32) + "0029",
+        disassembler.getContractMetadata());
+  }
+}
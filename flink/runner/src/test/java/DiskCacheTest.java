@@ -0,0 +1,122 @@
+package com.chainbase.common.cached;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileLock;
+import java.nio.file.Path;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class DiskCacheTest {
+
+  private static final long MAX_BYTES = DiskCache.SEGMENTS * DiskCache.MIN_SEGMENT_BYTES;
+
+  @TempDir
+  Path directory;
+
+  @Test
+  void entriesSurviveReopen() {
+    DiskCache cache = DiskCache.getInstance(directory.toString(), "token-meta", MAX_BYTES);
+    cache.put("eth-0xabc", "{\"symbol\":\"ABC\"}", 60_000);
+    Assertions.assertEquals("{\"symbol\":\"ABC\"}", cache.get("eth-0xabc"));
+    cache.close();
+
+    DiskCache reopened = DiskCache.getInstance(directory.toString(), "token-meta", MAX_BYTES);
+    Assertions.assertEquals("{\"symbol\":\"ABC\"}", reopened.get("eth-0xabc"));
+    Assertions.assertNull(reopened.get("eth-0xdef"));
+    reopened.close();
+  }
+
+  @Test
+  void sharedStoreIsReleasedByTheLastOwner() throws Exception {
+    DiskCache first = DiskCache.getInstance(directory.toString(), "token-meta", MAX_BYTES);
+    DiskCache second = DiskCache.getInstance(directory.toString(), "token-meta", MAX_BYTES);
+    Assertions.assertSame(first, second);
+    first.put("eth-0xabc", "{\"symbol\":\"ABC\"}", 60_000);
+
+    first.close();
+    Assertions.assertEquals("{\"symbol\":\"ABC\"}", second.get("eth-0xabc"));
+    second.close();
+    // Unlocked, so the next job of the JVM opens the same store
+    try (RandomAccessFile lockFile = new RandomAccessFile(
+        new File(directory.toFile(), "token-meta.lock"), "rw");
+        FileLock lock = lockFile.getChannel().tryLock()) {
+      Assertions.assertNotNull(lock);
+    }
+  }
+
+  @Test
+  void writesAreOnDiskBeforeClose() {
+    DiskCache cache = DiskCache.getInstance(directory.toString(), "token-meta", MAX_BYTES);
+    cache.put("eth-0xabc", "{\"symbol\":\"ABC\"}", 60_000);
+
+    Assertions.assertEquals(cache.getSizeBytes(),
+        new File(directory.toFile(), "token-meta.0.seg").length());
+    cache.close();
+  }
+
+  @Test
+  void expiredEntriesAreDropped() {
+    DiskCache cache = DiskCache.getInstance(directory.toString(), "token-meta", MAX_BYTES);
+    cache.put("eth-0xdef", "{}", 60_000);
+    cache.put("eth-0xdef", "{}", -1);
+    Assertions.assertNull(cache.get("eth-0xdef"));
+    cache.close();
+
+    DiskCache reopened = DiskCache.getInstance(directory.toString(), "token-meta", MAX_BYTES);
+    Assertions.assertNull(reopened.get("eth-0xdef"));
+    reopened.close();
+  }
+
+  @Test
+  void evictsTheOldestSegmentsPastTheBound() {
+    DiskCache cache = DiskCache.getInstance(directory.toString(), "rpc-results", MAX_BYTES);
+    String value = new String(new char[1000]).replace('\0', 'x');
+    for (int idx = 0; idx < 5_000; idx++) {
+      cache.put("key-" + idx, value, 60_000);
+      // Hits on the oldest segment write the entry again
+      Assertions.assertEquals(value, cache.get("key-0"));
+    }
+
+    Assertions.assertTrue(cache.getSizeBytes() <= MAX_BYTES);
+    Assertions.assertEquals(value, cache.get("key-0"));
+    Assertions.assertNull(cache.get("key-1"));
+    Assertions.assertEquals(value, cache.get("key-4999"));
+    cache.close();
+    File[] segments = directory.toFile().listFiles((dir, name) -> name.endsWith(".seg"));
+    Assertions.assertTrue(segments != null && segments.length <= DiskCache.SEGMENTS);
+  }
+
+  @Test
+  void expiredSegmentsAreDeleted() throws Exception {
+    DiskCache cache = DiskCache.getInstance(directory.toString(), "rpc-results", MAX_BYTES);
+    String value = new String(new char[1000]).replace('\0', 'x');
+    for (int idx = 0; idx < 500; idx++) {
+      cache.put("negative-" + idx, value, 0);
+    }
+    Thread.sleep(10);
+    // Rolls to the next segment, which deletes the expired ones
+    for (int idx = 0; idx < 100; idx++) {
+      cache.put("positive", value, 60_000);
+    }
+
+    Assertions.assertTrue(cache.getSizeBytes() <= 3 * DiskCache.MIN_SEGMENT_BYTES);
+    Assertions.assertNull(cache.get("negative-0"));
+    Assertions.assertEquals(value, cache.get("positive"));
+    cache.close();
+  }
+
+  @Test
+  void opensTheNextStoreWhenLocked() throws Exception {
+    try (RandomAccessFile lockFile = new RandomAccessFile(
+        new File(directory.toFile(), "token-meta.lock"), "rw");
+        FileLock ignored = lockFile.getChannel().lock()) {
+      DiskCache cache = DiskCache.getInstance(directory.toString(), "token-meta", MAX_BYTES);
+      cache.put("eth-0xabc", "{\"symbol\":\"ABC\"}", 60_000);
+      Assertions.assertEquals("{\"symbol\":\"ABC\"}", cache.get("eth-0xabc"));
+      cache.close();
+      Assertions.assertTrue(new File(directory.toFile(), "token-meta-1.idx").exists());
+    }
+  }
+}
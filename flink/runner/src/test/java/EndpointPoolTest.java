@@ -0,0 +1,237 @@
+package com.chainbase.evm;
+
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import okhttp3.OkHttpClient;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class EndpointPoolTest {
+
+  private static final byte[] GET_CODE = bytes(
+      "{\"jsonrpc\":\"2.0\",\"method\":\"eth_getCode\",\"params\":[\"0x01\",\"latest\"],\"id\":1}");
+
+  private static final byte[] BLOCK_NUMBER = bytes(
+      "{\"jsonrpc\":\"2.0\",\"method\":\"eth_blockNumber\",\"params\":[],\"id\":1}");
+
+  private static final byte[] RESULT = bytes("{\"jsonrpc\":\"2.0\",\"id\":1,\"result\":\"0x1\"}");
+
+  private final OkHttpClient httpClient = new OkHttpClient();
+
+  private Node first;
+
+  private Node second;
+
+  @AfterEach
+  void stopNodes() {
+    for (Node node : new Node[]{first, second}) {
+      if (node != null) {
+        node.server.stop(0);
+      }
+    }
+  }
+
+  @Test
+  void detectsIdempotentReads() {
+    Assertions.assertTrue(EndpointPool.isHedgeable(GET_CODE));
+    Assertions.assertFalse(EndpointPool.isHedgeable(BLOCK_NUMBER));
+    Assertions.assertTrue(EndpointPool.isHedgeable(bytes(
+        "{\"method\":\"eth_call\",\"params\":[{\"to\":\"0x01\"},\"0x10\"]}")));
+    Assertions.assertFalse(EndpointPool.isHedgeable(bytes(
+        "{\"method\":\"eth_call\",\"params\":[{\"to\":\"0x01\"},\"latest\"]}")));
+    Assertions.assertFalse(EndpointPool.isHedgeable(bytes(
+        "[{\"method\":\"eth_getCode\",\"params\":[\"0x01\",\"latest\"]},"
+            + "{\"method\":\"eth_sendRawTransaction\",\"params\":[\"0x00\"]}]")));
+  }
+
+  @Test
+  void ejectsFailingEndpoint() throws Exception {
+    first = new Node(500, 0);
+    second = new Node(200, 0);
+    EndpointPool pool = new EndpointPool(Arrays.asList(first.url(), second.url()), httpClient);
+
+    for (int idx = 0; idx < 10; idx++) {
+      try {
+        pool.post(BLOCK_NUMBER).get(5, TimeUnit.SECONDS);
+      } catch (ExecutionException ex) {
+        // The failures of the first node until it is ejected
+      }
+    }
+    Assertions.assertTrue(pool.getEndpoints().get(0).isEjected());
+    Assertions.assertFalse(pool.getEndpoints().get(1).isEjected());
+
+    int before = first.requests.get();
+    for (int idx = 0; idx < 10; idx++) {
+      Assertions.assertArrayEquals(RESULT, pool.post(BLOCK_NUMBER).get(5, TimeUnit.SECONDS));
+    }
+    Assertions.assertEquals(before, first.requests.get());
+  }
+
+  @Test
+  void failsOverRateLimitedEndpointWithoutEjectingIt() throws Exception {
+    first = new Node(429, 0);
+    second = new Node(200, 0);
+    EndpointPool pool = new EndpointPool(Arrays.asList(first.url(), second.url()), httpClient);
+
+    ExecutionException ex = Assertions.assertThrows(ExecutionException.class,
+        () -> pool.post(BLOCK_NUMBER).get(5, TimeUnit.SECONDS));
+    Assertions.assertTrue(ex.getCause() instanceof RPCRateLimitException);
+    Assertions.assertFalse(pool.getEndpoints().get(0).isEjected());
+    Assertions.assertTrue(pool.getEndpoints().get(0).getLimiter().getRate() > 0);
+    Assertions.assertArrayEquals(RESULT, pool.post(BLOCK_NUMBER).get(5, TimeUnit.SECONDS));
+  }
+
+  @Test
+  void detectsRateLimitErrors() {
+    Assertions.assertFalse(EndpointPool.isRateLimited(RESULT));
+    Assertions.assertFalse(EndpointPool.isRateLimited(bytes(
+        "{\"id\":1,\"error\":{\"code\":3,\"message\":\"execution reverted\"}}")));
+    Assertions.assertTrue(EndpointPool.isRateLimited(bytes(
+        "[{\"id\":1,\"result\":\"0x\"},{\"id\":2,\"error\":{\"code\":-32005,"
+            + "\"message\":\"project ID request rate exceeded\"}}]")));
+    // The same code for a query over too many logs isn't a rate limit
+    Assertions.assertFalse(EndpointPool.isRateLimited(bytes(
+        "{\"id\":1,\"error\":{\"code\":-32005,"
+            + "\"message\":\"query returned more than 10000 results\"}}")));
+    Assertions.assertTrue(EndpointPool.isRateLimited(bytes(
+        "{\"id\":1,\"error\":{\"code\":-32000,\"message\":\"Too Many Requests\"}}")));
+  }
+
+  @Test
+  void hedgesSlowRead() throws Exception {
+    first = new Node(200, 0);
+    second = new Node(200, 0);
+    EndpointPool pool = new EndpointPool(Arrays.asList(first.url(), second.url()), httpClient);
+    // Enough samples to estimate the latency percentile of the pool
+    for (int idx = 0; idx < 64; idx++) {
+      pool.post(GET_CODE).get(5, TimeUnit.SECONDS);
+    }
+
+    // Far past the timeout, only the hedges to the second node can answer in time
+    first.delayMs.set(60_000);
+    int before = second.requests.get();
+    for (int idx = 0; idx < 4; idx++) {
+      Assertions.assertArrayEquals(RESULT, pool.post(GET_CODE).get(10, TimeUnit.SECONDS));
+    }
+    Assertions.assertTrue(second.requests.get() - before >= 4);
+  }
+
+  @Test
+  void doesntHedgeWhenDisabled() throws Exception {
+    first = new Node(200, 0);
+    second = new Node(200, 0);
+    EndpointPool pool = new EndpointPool(Arrays.asList(first.url(), second.url()), httpClient);
+    pool.setHedgePercentile(0);
+    for (int idx = 0; idx < 64; idx++) {
+      pool.post(GET_CODE).get(5, TimeUnit.SECONDS);
+    }
+
+    first.delayMs.set(60_000);
+    second.delayMs.set(60_000);
+    int sent = first.requests.get() + second.requests.get();
+    CompletableFuture<byte[]> pending = pool.post(GET_CODE);
+    Thread.sleep(500);
+    Assertions.assertEquals(sent + 1, first.requests.get() + second.requests.get());
+    pending.cancel(false);
+  }
+
+  @Test
+  void reportsAttemptsToListeners() throws Exception {
+    first = new Node(500, 0);
+    second = new Node(200, 0);
+    RecordingListener listener = new RecordingListener();
+    EndpointPool failing = new EndpointPool(Collections.singletonList(first.url()), httpClient);
+    failing.addListener(listener);
+    Assertions.assertThrows(ExecutionException.class,
+        () -> failing.post(BLOCK_NUMBER).get(5, TimeUnit.SECONDS));
+
+    EndpointPool pool = new EndpointPool(Collections.singletonList(second.url()), httpClient);
+    pool.addListener(listener);
+    pool.post(bytes("[" + new String(GET_CODE, StandardCharsets.UTF_8) + ","
+        + new String(GET_CODE, StandardCharsets.UTF_8) + "]")).get(5, TimeUnit.SECONDS);
+    pool.removeListener(listener);
+    pool.post(BLOCK_NUMBER).get(5, TimeUnit.SECONDS);
+
+    Assertions.assertEquals(Arrays.asList("failure eth_blockNumber", "response eth_getCode 2"),
+        listener.events);
+    Assertions.assertEquals(0, pool.getEndpoints().get(0).getInFlight());
+  }
+
+  private static byte[] bytes(String text) {
+    return text.getBytes(StandardCharsets.UTF_8);
+  }
+
+  private static final class RecordingListener implements RpcMetricsListener {
+
+    private final List<String> events = Collections.synchronizedList(new ArrayList<>());
+
+    @Override
+    public void onResponse(String method, int calls, long latencyNanos) {
+      events.add(String.format("response %s %d", method, calls));
+    }
+
+    @Override
+    public void onFailure(String method) {
+      events.add("failure " + method);
+    }
+
+    @Override
+    public void onRateLimited(String method) {
+      events.add("rate-limited " + method);
+    }
+
+    @Override
+    public void onRetry() {
+      events.add("retry");
+    }
+  }
+
+  private static final class Node {
+
+    private final HttpServer server;
+
+    private final AtomicInteger requests = new AtomicInteger();
+
+    private final AtomicLong delayMs;
+
+    private Node(int status, long delayMs) throws IOException {
+      this.delayMs = new AtomicLong(delayMs);
+      this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+      server.setExecutor(Executors.newCachedThreadPool());
+      server.createContext("/", exchange -> {
+        requests.incrementAndGet();
+        try {
+          Thread.sleep(this.delayMs.get());
+        } catch (InterruptedException ex) {
+          Thread.currentThread().interrupt();
+        }
+        exchange.sendResponseHeaders(status, RESULT.length);
+        try (OutputStream body = exchange.getResponseBody()) {
+          body.write(RESULT);
+        } catch (IOException ex) {
+          // The hedged call was cancelled
+        }
+        exchange.close();
+      });
+      server.start();
+    }
+
+    private String url() {
+      return String.format("http://127.0.0.1:%d", server.getAddress().getPort());
+    }
+  }
+}
@@ -1,25 +1,145 @@
 package com.chainbase.udf;
 
+import com.chainbase.evm.JsonRpcStubServer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.apache.flink.configuration.Configuration;
+import org.apache.flink.configuration.PipelineOptions;
+import org.apache.flink.table.functions.FunctionContext;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
 public class EthCallRequestTest {
-  private final EthCallRequest rpcRequest;
 
-  public EthCallRequestTest() throws Exception {
-    this.rpcRequest = new EthCallRequest();
-    this.rpcRequest.open(null);
+  private static final String BALANCE_OF_ABI = "{\"inputs\":[{\"internalType\":\"address\",\"name\":\"account\",\"type\":\"address\"}],\"name\":\"balanceOf\",\"outputs\":[{\"internalType\":\"uint256\",\"name\":\"\",\"type\":\"uint256\"}],\"stateMutability\":\"view\",\"type\":\"function\"}";
+
+  private static final String USDT = "0xdAC17F958D2ee523a2206206994597C13D831ec7";
+
+  private static final String HOLDER = "0x4d880E7d7D03122bB9dA9CBb5e408cd18E8D996d";
+
+  private static final String BALANCE_OF_HOLDER =
+      "0x70a08231000000000000000000000000" + HOLDER.substring(2);
+
+  private JsonRpcStubServer stub;
+
+  private EthCallRequest rpcRequest;
+
+  @BeforeEach
+  public void open() throws Exception {
+    stub = JsonRpcStubServer.start()
+        .callFixture(USDT, BALANCE_OF_HOLDER, "0x1145b42", uint256(13644832905L))
+        .callFixture(USDT, BALANCE_OF_HOLDER, "latest", uint256(42));
+    rpcRequest = new EthCallRequest();
+    rpcRequest.open(null);
+  }
+
+  @AfterEach
+  public void close() throws Exception {
+    rpcRequest.close();
+    stub.close();
   }
 
   @Test
   public void testBalanceOf() {
-    String balanceOfABI = "{\"inputs\":[{\"internalType\":\"address\",\"name\":\"account\",\"type\":\"address\"}],\"name\":\"balanceOf\",\"outputs\":[{\"internalType\":\"uint256\",\"name\":\"\",\"type\":\"uint256\"}],\"stateMutability\":\"view\",\"type\":\"function\"}";
-
-    Object result = rpcRequest.eval(
-            "https://rpc.ankr.com/eth", balanceOfABI,
-            "0xdAC17F958D2ee523a2206206994597C13D831ec7", 18111298L,
-            "0x4d880E7d7D03122bB9dA9CBb5e408cd18E8D996d");
+    Object result = rpcRequest.eval(stub.getUrl(), BALANCE_OF_ABI, USDT, 18111298L, HOLDER);
     Assertions.assertEquals("13644832905", result);
   }
 
-}
\ No newline at end of file
+  @Test
+  public void testBalanceOfAtLatest() {
+    Assertions.assertEquals("42", rpcRequest.eval(stub.getUrl(), BALANCE_OF_ABI, USDT, HOLDER));
+  }
+
+  @Test
+  public void testCachesCallsAtABlockNumber() {
+    rpcRequest.eval(stub.getUrl(), BALANCE_OF_ABI, USDT, 18111298L, HOLDER);
+    rpcRequest.eval(stub.getUrl(), BALANCE_OF_ABI, USDT, HOLDER);
+    int calls = stub.getCallCount();
+
+    Assertions.assertEquals("13644832905",
+        rpcRequest.eval(stub.getUrl(), BALANCE_OF_ABI, USDT, 18111298L, HOLDER));
+    Assertions.assertEquals(calls, stub.getCallCount());
+    // The state at latest moves with every block
+    rpcRequest.eval(stub.getUrl(), BALANCE_OF_ABI, USDT, HOLDER);
+    Assertions.assertEquals(calls + 1, stub.getCallCount());
+  }
+
+  @Test
+  public void testCoalescesTheMissesOfConcurrentSlots() throws Exception {
+    int slots = 8;
+    for (int idx = 0; idx < slots; idx++) {
+      stub.callFixture(USDT, "0x70a08231" + uint256(0xa000 + idx).substring(2), "0x1145b42",
+          uint256(idx));
+    }
+    // A linger long enough for every slot to join the batch, which is sent once they all wait
+    Configuration configuration = new Configuration();
+    configuration.set(PipelineOptions.GLOBAL_JOB_PARAMETERS,
+        Collections.singletonMap("eth-call.linger-ms", "1000"));
+    FunctionContext context = new FunctionContext(null, null, configuration);
+    List<EthCallRequest> functions = new ArrayList<>();
+    for (int idx = 0; idx < slots; idx++) {
+      EthCallRequest function = new EthCallRequest();
+      function.open(context);
+      functions.add(function);
+    }
+
+    ExecutorService executor = Executors.newFixedThreadPool(slots);
+    try {
+      // Every slot sends a first call before the others join
+      CyclicBarrier registered = new CyclicBarrier(slots);
+      for (Future<?> warmUp : submitAll(executor, functions, (function, idx) -> {
+        registered.await();
+        return function.eval(stub.getUrl(), BALANCE_OF_ABI, USDT, HOLDER);
+      })) {
+        warmUp.get();
+      }
+
+      int sent = stub.getHttpRequestCount();
+      CyclicBarrier started = new CyclicBarrier(slots);
+      List<Future<Object>> results = submitAll(executor, functions, (function, idx) -> {
+        started.await();
+        return function.eval(stub.getUrl(), BALANCE_OF_ABI, USDT, 18111298L, address(idx));
+      });
+      for (int idx = 0; idx < slots; idx++) {
+        Assertions.assertEquals(String.valueOf(idx), results.get(idx).get());
+      }
+      Assertions.assertTrue(stub.getHttpRequestCount() - sent < slots);
+    } finally {
+      executor.shutdown();
+      for (EthCallRequest function : functions) {
+        function.close();
+      }
+    }
+  }
+
+  private static List<Future<Object>> submitAll(ExecutorService executor,
+      List<EthCallRequest> functions, SlotCall call) {
+    List<Future<Object>> futures = new ArrayList<>();
+    for (int idx = 0; idx < functions.size(); idx++) {
+      EthCallRequest function = functions.get(idx);
+      int slot = idx;
+      futures.add(executor.submit(() -> call.apply(function, slot)));
+    }
+    return futures;
+  }
+
+  private interface SlotCall {
+
+    Object apply(EthCallRequest function, int slot) throws Exception;
+  }
+
+  private static String address(int idx) {
+    return String.format("0x%040x", 0xa000 + idx);
+  }
+
+  private static String uint256(long value) {
+    return String.format("0x%064x", value);
+  }
+}
@@ -0,0 +1,32 @@
+package com.chainbase.evm;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class HexUtilTest {
+
+  @Test
+  void encodesLowercaseWithPrefix() {
+    Assertions.assertEquals("0x00ff7fab", HexUtil.bytes20xHex(new byte[]{0, -1, 127, -85}));
+    Assertions.assertEquals("0x", HexUtil.bytes20xHex(new byte[0]));
+    Assertions.assertNull(HexUtil.bytes20xHex(null));
+  }
+
+  @Test
+  void decodesIntoBuffer() {
+    byte[] buffer = new byte[6];
+    Assertions.assertEquals(4, HexUtil.decodeHex("0x00FF7fab", buffer, 2));
+    Assertions.assertArrayEquals(new byte[]{0, 0, 0, -1, 127, -85}, buffer);
+    Assertions.assertArrayEquals(new byte[]{0, -1, 127, -85}, HexUtil.hex2Bytes("\\x00ff7fab"));
+  }
+
+  @Test
+  void rejectsInvalidHexWithoutThrowing() {
+    byte[] buffer = new byte[4];
+    Assertions.assertEquals(-1, HexUtil.decodeHex("0xabc", buffer, 0));
+    Assertions.assertEquals(-1, HexUtil.decodeHex("0xzz", buffer, 0));
+    Assertions.assertEquals(-1, HexUtil.decodeHex("0x0011223344", buffer, 0));
+    Assertions.assertFalse(HexUtil.isValidHex("0x12é4"));
+    Assertions.assertTrue(HexUtil.isValidHex("0x"));
+  }
+}
@@ -0,0 +1,25 @@
+package com.chainbase.common.collection;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class IntHashSetTest {
+
+  @Test
+  void behavesLikeASet() {
+    IntHashSet set = new IntHashSet(2);
+    Set<Integer> expected = new HashSet<>();
+    Random random = new Random(42);
+    for (int i = 0; i < 2000; i++) {
+      int value = random.nextInt(500) - 250;
+      Assertions.assertEquals(expected.add(value), set.add(value));
+    }
+    Assertions.assertEquals(expected.size(), set.size());
+    for (int value = -300; value < 300; value++) {
+      Assertions.assertEquals(expected.contains(value), set.contains(value));
+    }
+  }
+}
@@ -0,0 +1,426 @@
+package com.chainbase.evm;
+
+import com.esaulpaugh.headlong.abi.Address;
+import com.esaulpaugh.headlong.abi.Function;
+import com.esaulpaugh.headlong.abi.Tuple;
+import com.esaulpaugh.headlong.abi.TupleType;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import javax.annotation.Nullable;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.RequestBody;
+import okhttp3.ResponseBody;
+
+/**
+ * In-JVM JSON-RPC node answering from fixtures, so that the RPC path can be tested and load tested
+ * offline and deterministically.
+ *
+ * <p>Fixtures are JSON lines of {@code {"method", "params", "result" | "error"}}. They are loaded
+ * with {@link #replay(Path)}, added with {@link #fixture}, or captured from a live node with
+ * {@link #record(String)} and written by {@link #saveFixtures(Path)}. eth_call fixtures are matched
+ * on the target, the calldata and the block only, and an aggregate3 call to Multicall3 without a
+ * fixture of its own is answered from the fixtures of its inner calls, so multicalls replay
+ * whatever the grouping of the calls.
+ *
+ * <p>Latency, HTTP 500 errors, HTTP 429 rate limits and a maximum batch size can be injected, the
+ * injected failures being drawn from a seeded random.
+ */
+public class JsonRpcStubServer implements AutoCloseable {
+
+  /**
+   * Token contracts reduced to the PUSH4 of their selectors, for eth_getCode fixtures:
+   * totalSupply(), transfer(address,uint256) and approve(address,uint256).
+   */
+  public static final String ERC20_CODE = "0x60806040526318160ddd1463a9059cbb1463095ea7b31400";
+
+  /**
+   * setApprovalForAll(address,bool).
+   */
+  public static final String ERC721_CODE = "0x608060405263a22cb4651400";
+
+  /**
+   * safeTransferFrom(address,address,uint256,uint256,bytes) and
+   * safeBatchTransferFrom(address,address,uint256[],uint256[],bytes).
+   */
+  public static final String ERC1155_CODE = "0x608060405263f242432a14632eb2c2d61400";
+
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+
+  private static final String MULTICALL_V3_ADDRESS = "0xca11bde05977b3631167028862be2a173976ca11";
+
+  private static final Function AGGREGATE3 =
+      new Function("aggregate3((address,bool,bytes)[])", "((bool,bytes)[])");
+
+  private static final MediaType JSON = MediaType.get("application/json; charset=utf-8");
+
+  private final HttpServer server;
+
+  private final Map<String, ObjectNode> fixtures = new ConcurrentHashMap<>();
+
+  @Nullable
+  private final String upstreamUrl;
+
+  @Nullable
+  private final OkHttpClient upstream;
+
+  private final AtomicInteger httpRequestCount = new AtomicInteger();
+
+  private final AtomicInteger callCount = new AtomicInteger();
+
+  private final Random random = new Random(0);
+
+  private volatile long latencyMs;
+
+  private volatile double errorRate;
+
+  private volatile double rateLimitRate;
+
+  private volatile int maxBatchSize = Integer.MAX_VALUE;
+
+  private JsonRpcStubServer(@Nullable String upstreamUrl) throws IOException {
+    this.upstreamUrl = upstreamUrl;
+    this.upstream = upstreamUrl == null ? null : new OkHttpClient();
+    this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+    server.setExecutor(Executors.newCachedThreadPool());
+    server.createContext("/", this::handle);
+    server.start();
+  }
+
+  /**
+   * A server without fixtures, see {@link #fixture}.
+   */
+  public static JsonRpcStubServer start() throws IOException {
+    return new JsonRpcStubServer(null);
+  }
+
+  public static JsonRpcStubServer replay(Path fixtureFile) throws IOException {
+    JsonRpcStubServer server = new JsonRpcStubServer(null);
+    for (String line : Files.readAllLines(fixtureFile, StandardCharsets.UTF_8)) {
+      if (!line.trim().isEmpty()) {
+        server.addFixture((ObjectNode) MAPPER.readTree(line));
+      }
+    }
+    return server;
+  }
+
+  /**
+   * A server forwarding every request to the node and keeping its answers as fixtures.
+   */
+  public static JsonRpcStubServer record(String upstreamUrl) throws IOException {
+    return new JsonRpcStubServer(upstreamUrl);
+  }
+
+  public String getUrl() {
+    return String.format("http://127.0.0.1:%d", server.getAddress().getPort());
+  }
+
+  /**
+   * HTTP requests received, a batch being one request.
+   */
+  public int getHttpRequestCount() {
+    return httpRequestCount.get();
+  }
+
+  /**
+   * JSON-RPC calls answered, a batch counting for each of its calls.
+   */
+  public int getCallCount() {
+    return callCount.get();
+  }
+
+  public JsonRpcStubServer withLatencyMs(long latencyMs) {
+    this.latencyMs = latencyMs;
+    return this;
+  }
+
+  /**
+   * Share of the HTTP requests failing with a 500.
+   */
+  public JsonRpcStubServer withErrorRate(double errorRate) {
+    this.errorRate = errorRate;
+    return this;
+  }
+
+  /**
+   * Share of the HTTP requests rejected with a 429.
+   */
+  public JsonRpcStubServer withRateLimitRate(double rateLimitRate) {
+    this.rateLimitRate = rateLimitRate;
+    return this;
+  }
+
+  /**
+   * Larger batches are rejected as a whole, as most providers do.
+   */
+  public JsonRpcStubServer withMaxBatchSize(int maxBatchSize) {
+    this.maxBatchSize = maxBatchSize;
+    return this;
+  }
+
+  public JsonRpcStubServer fixture(String method, List<?> params, Object result) {
+    ObjectNode fixture = MAPPER.createObjectNode();
+    fixture.put("method", method);
+    fixture.set("params", MAPPER.valueToTree(params));
+    fixture.set("result", MAPPER.valueToTree(result));
+    addFixture(fixture);
+    return this;
+  }
+
+  /**
+   * An eth_call answered with {@code result}, the hex of the ABI encoded return.
+   */
+  public JsonRpcStubServer callFixture(String to, String data, String block, String result) {
+    Map<String, String> transaction = new HashMap<>();
+    transaction.put("to", to);
+    transaction.put("data", data);
+    return fixture("eth_call", Arrays.asList(transaction, block), result);
+  }
+
+  /**
+   * An eth_call answered with the error of {@code code} and {@code message}.
+   */
+  public JsonRpcStubServer callErrorFixture(String to, String data, String block, int code,
+      String message) {
+    Map<String, String> transaction = new HashMap<>();
+    transaction.put("to", to);
+    transaction.put("data", data);
+    ObjectNode fixture = MAPPER.createObjectNode();
+    fixture.put("method", "eth_call");
+    fixture.set("params", MAPPER.valueToTree(Arrays.asList(transaction, block)));
+    fixture.set("error", error(null, code, message).path("error"));
+    addFixture(fixture);
+    return this;
+  }
+
+  /**
+   * The name(), symbol(), decimals() and totalSupply() answers of a token at the latest block.
+   */
+  public JsonRpcStubServer tokenFixture(String token, String name, String symbol, int decimals,
+      long totalSupply) {
+    return callFixture(token, "0x06fdde03", "latest", encode("(string)", name))
+        .callFixture(token, "0x95d89b41", "latest", encode("(string)", symbol))
+        .callFixture(token, "0x313ce567", "latest", String.format("0x%064x", decimals))
+        .callFixture(token, "0x18160ddd", "latest", String.format("0x%064x", totalSupply));
+  }
+
+  /**
+   * Writes the fixtures sorted by method and params, so that recordings diff well.
+   */
+  public void saveFixtures(Path fixtureFile) throws IOException {
+    Map<String, ObjectNode> sorted = new TreeMap<>(fixtures);
+    List<String> lines = sorted.values().stream().map(JsonNode::toString)
+        .collect(Collectors.toList());
+    Files.write(fixtureFile, lines, StandardCharsets.UTF_8);
+  }
+
+  @Override
+  public void close() {
+    server.stop(0);
+  }
+
+  private void addFixture(ObjectNode fixture) {
+    fixtures.put(key(fixture.path("method").asText(), fixture.path("params")), fixture);
+  }
+
+  private static String key(String method, JsonNode params) {
+    JsonNode transaction = params.path(0);
+    if ("eth_call".equals(method) && transaction.isObject()) {
+      String data = transaction.has("data") ? transaction.path("data").asText()
+          : transaction.path("input").asText();
+      return String.join("|", method, transaction.path("to").asText().toLowerCase(),
+          data.toLowerCase(), params.path(1).asText("latest").toLowerCase());
+    }
+    return method + "|" + params.toString().toLowerCase();
+  }
+
+  private void handle(HttpExchange exchange) throws IOException {
+    httpRequestCount.incrementAndGet();
+    byte[] body = readAll(exchange.getRequestBody());
+    if (latencyMs > 0) {
+      try {
+        Thread.sleep(latencyMs);
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+      }
+    }
+
+    int status = 200;
+    byte[] reply;
+    double roll;
+    synchronized (random) {
+      roll = random.nextDouble();
+    }
+    if (roll < rateLimitRate) {
+      status = 429;
+      reply = "Too Many Requests".getBytes(StandardCharsets.UTF_8);
+    } else if (roll < rateLimitRate + errorRate) {
+      status = 500;
+      reply = "Internal Server Error".getBytes(StandardCharsets.UTF_8);
+    } else if (upstreamUrl != null) {
+      reply = forward(body);
+    } else {
+      reply = MAPPER.writeValueAsBytes(answer(MAPPER.readTree(body)));
+    }
+
+    exchange.getResponseHeaders().set("Content-Type", "application/json");
+    exchange.sendResponseHeaders(status, reply.length);
+    try (OutputStream out = exchange.getResponseBody()) {
+      out.write(reply);
+    } catch (IOException ex) {
+      // The client gave up, e.g. a hedged call was cancelled
+    }
+    exchange.close();
+  }
+
+  private JsonNode answer(JsonNode payload) {
+    if (!payload.isArray()) {
+      return answerCall(payload);
+    }
+    if (payload.size() > maxBatchSize) {
+      return error(null, -32600,
+          String.format("batch too large, %d calls above the limit of %d", payload.size(),
+              maxBatchSize));
+    }
+    ArrayNode responses = MAPPER.createArrayNode();
+    payload.forEach(call -> responses.add(answerCall(call)));
+    return responses;
+  }
+
+  private JsonNode answerCall(JsonNode call) {
+    callCount.incrementAndGet();
+    JsonNode id = call.path("id");
+    String method = call.path("method").asText();
+    JsonNode params = call.path("params");
+
+    ObjectNode fixture = fixtures.get(key(method, params));
+    if (fixture != null) {
+      ObjectNode response = response(id);
+      if (fixture.has("error")) {
+        response.set("error", fixture.get("error"));
+      } else {
+        response.set("result", fixture.get("result"));
+      }
+      return response;
+    }
+
+    JsonNode transaction = params.path(0);
+    if ("eth_call".equals(method)
+        && MULTICALL_V3_ADDRESS.equalsIgnoreCase(transaction.path("to").asText())
+        && transaction.path("data").asText().startsWith("0x" + AGGREGATE3.selectorHex())) {
+      return aggregate3(id, transaction.path("data").asText(), params.path(1).asText("latest"));
+    }
+    return error(id, -32000, String.format("No fixture for %s %s", method, params));
+  }
+
+  private JsonNode aggregate3(JsonNode id, String data, String block) {
+    Tuple[] calls = AGGREGATE3.decodeCall(HexUtil.hex2Bytes(data)).get(0);
+    Tuple[] results = new Tuple[calls.length];
+    for (int idx = 0; idx < calls.length; idx++) {
+      Address target = calls[idx].get(0);
+      boolean allowFailure = calls[idx].get(1);
+      byte[] callData = calls[idx].get(2);
+      ObjectNode fixture = fixtures.get(String.join("|", "eth_call",
+          target.toString().toLowerCase(), HexUtil.bytes20xHex(callData).toLowerCase(),
+          block.toLowerCase()));
+
+      if (fixture != null && fixture.has("result")) {
+        results[idx] = Tuple.of(true, HexUtil.hex2Bytes(fixture.get("result").asText()));
+      } else if (allowFailure) {
+        results[idx] = Tuple.of(false, new byte[0]);
+      } else {
+        return error(id, 3, "execution reverted");
+      }
+    }
+    ObjectNode response = response(id);
+    response.put("result",
+        HexUtil.bytes20xHex(AGGREGATE3.getOutputs().encode(Tuple.singleton(results)).array()));
+    return response;
+  }
+
+  private byte[] forward(byte[] body) throws IOException {
+    okhttp3.Request request = new okhttp3.Request.Builder().url(upstreamUrl)
+        .post(RequestBody.create(body, JSON)).build();
+    byte[] reply;
+    try (okhttp3.Response response = upstream.newCall(request).execute()) {
+      ResponseBody responseBody = response.body();
+      reply = responseBody == null ? new byte[0] : responseBody.bytes();
+      if (!response.isSuccessful() || EndpointPool.isRateLimited(reply)) {
+        return reply;
+      }
+    }
+
+    JsonNode calls = MAPPER.readTree(body);
+    JsonNode responses = MAPPER.readTree(reply);
+    Map<String, JsonNode> callsById = new HashMap<>();
+    for (JsonNode call : calls.isArray() ? calls : MAPPER.createArrayNode().add(calls)) {
+      callsById.put(call.path("id").asText(), call);
+    }
+    for (JsonNode response : responses.isArray() ? responses
+        : MAPPER.createArrayNode().add(responses)) {
+      JsonNode call = callsById.get(response.path("id").asText());
+      if (call == null) {
+        continue;
+      }
+      callCount.incrementAndGet();
+      ObjectNode fixture = MAPPER.createObjectNode();
+      fixture.set("method", call.path("method"));
+      fixture.set("params", call.path("params"));
+      if (response.has("error")) {
+        fixture.set("error", response.get("error"));
+      } else {
+        fixture.set("result", response.path("result"));
+      }
+      addFixture(fixture);
+    }
+    return reply;
+  }
+
+  private static String encode(String types, Object value) {
+    return HexUtil.bytes20xHex(TupleType.parse(types).encode(Tuple.of(value)).array());
+  }
+
+  private static ObjectNode response(@Nullable JsonNode id) {
+    ObjectNode response = MAPPER.createObjectNode();
+    response.put("jsonrpc", "2.0");
+    response.set("id", id);
+    return response;
+  }
+
+  private static ObjectNode error(@Nullable JsonNode id, int code, String message) {
+    ObjectNode response = response(id);
+    response.putObject("error").put("code", code).put("message", message);
+    return response;
+  }
+
+  private static byte[] readAll(InputStream in) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    byte[] buffer = new byte[8192];
+    for (int read = in.read(buffer); read >= 0; read = in.read(buffer)) {
+      out.write(buffer, 0, read);
+    }
+    return out.toByteArray();
+  }
+}
@@ -0,0 +1,131 @@
+package com.chainbase.evm;
+
+import com.chainbase.evm.Web3jClient.CallFunctionParameter;
+import com.chainbase.evm.Web3jClient.MultiCallParameter;
+import com.esaulpaugh.headlong.abi.Tuple;
+import java.math.BigInteger;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.web3j.protocol.core.DefaultBlockParameter;
+
+class JsonRpcStubServerTest {
+
+  private static final String USDT = "0xdac17f958d2ee523a2206206994597c13d831ec7";
+
+  private static final DefaultBlockParameter BLOCK =
+      DefaultBlockParameter.valueOf(BigInteger.valueOf(18_000_000));
+
+  private static final String TOTAL_SUPPLY = "0x18160ddd";
+
+  private static final String DECIMALS = "0x313ce567";
+
+  @TempDir
+  Path directory;
+
+  @Test
+  void servesFixturesToClient() throws Exception {
+    try (JsonRpcStubServer node = usdtNode()) {
+      Web3jClient client = new Web3jClient(node.getUrl());
+
+      Assertions.assertEquals(Optional.of("0x6080"), client.getContractCode(USDT, BLOCK));
+      List<Optional<Tuple>> results = client.batchCallFunctionWithBlockNumber(
+          Arrays.asList(call("totalSupply"), call("decimals")));
+      Assertions.assertEquals(BigInteger.valueOf(1_000_000), results.get(0).get().get(0));
+      Assertions.assertEquals(BigInteger.valueOf(6), results.get(1).get().get(0));
+      Assertions.assertEquals(2, node.getHttpRequestCount());
+    }
+  }
+
+  @Test
+  void answersMulticallFromInnerCalls() throws Exception {
+    try (JsonRpcStubServer node = usdtNode()) {
+      Web3jClient client = new Web3jClient(node.getUrl());
+
+      List<Object> results = client.multiCall(
+          Arrays.asList(call("totalSupply"), call("decimals"), call("name")), BLOCK);
+      Assertions.assertEquals(BigInteger.valueOf(1_000_000), results.get(0));
+      Assertions.assertEquals(BigInteger.valueOf(6), results.get(1));
+      Assertions.assertEquals("n/a", results.get(2));
+      Assertions.assertEquals(1, node.getCallCount());
+    }
+  }
+
+  @Test
+  void splitsBatchesAboveProviderLimit() throws Exception {
+    try (JsonRpcStubServer node = usdtNode().withMaxBatchSize(2)) {
+      Web3jClient client = new Web3jClient(node.getUrl()).withResultCache(0, null, 0);
+
+      List<CallFunctionParameter> calls = new ArrayList<>();
+      for (int idx = 0; idx < 5; idx++) {
+        calls.add(call("decimals"));
+      }
+      for (Optional<Tuple> result : client.batchCallFunctionWithBlockNumber(calls)) {
+        Assertions.assertEquals(BigInteger.valueOf(6), result.get().get(0));
+      }
+      Assertions.assertTrue(client.getBatchSizer().getMaxSize() <= 2);
+    }
+  }
+
+  @Test
+  void injectsLatencyAndRateLimits() throws Exception {
+    try (JsonRpcStubServer node = usdtNode().withLatencyMs(200).withRateLimitRate(1)) {
+      Web3jClient client = new Web3jClient(node.getUrl(), 2, 10, true);
+
+      long start = System.nanoTime();
+      Assertions.assertEquals(Optional.empty(),
+          client.getContractCodeAsync(USDT, BLOCK).get(10, TimeUnit.SECONDS));
+      Assertions.assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 400);
+      Assertions.assertEquals(2, node.getHttpRequestCount());
+      Assertions.assertTrue(
+          client.getEndpointPool().getEndpoints().get(0).getLimiter().getRate() > 0);
+    }
+  }
+
+  @Test
+  void replaysRecordedTraffic() throws Exception {
+    Path fixtures = directory.resolve("usdt.jsonl");
+    try (JsonRpcStubServer node = usdtNode();
+        JsonRpcStubServer recorder = JsonRpcStubServer.record(node.getUrl())) {
+      Web3jClient client = new Web3jClient(recorder.getUrl());
+      Assertions.assertEquals(Optional.of("0x6080"), client.getContractCode(USDT, BLOCK));
+      client.batchCallFunctionWithBlockNumber(Collections.singletonList(call("decimals")));
+      recorder.saveFixtures(fixtures);
+    }
+
+    try (JsonRpcStubServer replay = JsonRpcStubServer.replay(fixtures)) {
+      Web3jClient client = new Web3jClient(replay.getUrl());
+      Assertions.assertEquals(Optional.of("0x6080"), client.getContractCode(USDT, BLOCK));
+      Assertions.assertEquals(BigInteger.valueOf(6), client.batchCallFunctionWithBlockNumber(
+          Collections.singletonList(call("decimals"))).get(0).get().get(0));
+      // Not recorded
+      Assertions.assertEquals(Optional.empty(), client.batchCallFunctionWithBlockNumber(
+          Collections.singletonList(call("totalSupply"))).get(0));
+    }
+  }
+
+  private static JsonRpcStubServer usdtNode() throws Exception {
+    return JsonRpcStubServer.start()
+        .fixture("eth_getCode", Arrays.asList(USDT, "0x112a880"), "0x6080")
+        .callFixture(USDT, TOTAL_SUPPLY, "0x112a880", uint256(1_000_000))
+        .callFixture(USDT, DECIMALS, "0x112a880", uint256(6));
+  }
+
+  private static CallFunctionParameter call(String functionName) {
+    MultiCallParameter parameter = new MultiCallParameter(USDT, Collections.emptyList(),
+        functionName, functionName + "()", "name".equals(functionName) ? "(string)" : "(uint256)",
+        "n/a");
+    return new CallFunctionParameter(parameter, BLOCK);
+  }
+
+  private static String uint256(long value) {
+    return String.format("0x%064x", value);
+  }
+}
@@ -0,0 +1,49 @@
+package com.chainbase.common.cached;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.web3j.abi.datatypes.DynamicBytes;
+import org.web3j.abi.datatypes.Utf8String;
+
+class LRUCacheTest {
+
+  @Test
+  void countsHitsMissesAndEvictions() {
+    LRUCache<String, String> cache = new LRUCache<>(2);
+    Assertions.assertEquals("a", cache.computeIfAbsent("a", (key) -> key));
+    Assertions.assertEquals("a", cache.computeIfAbsent("a", (key) -> "recomputed"));
+    Assertions.assertNull(cache.get("b"));
+    cache.put("b", "b");
+    cache.put("c", "c");
+
+    Assertions.assertEquals(1, cache.getHitCount());
+    Assertions.assertEquals(2, cache.getMissCount());
+    Assertions.assertEquals(1, cache.getEvictionCount());
+    Assertions.assertEquals(2, cache.size());
+    Assertions.assertEquals(1 / 3d, cache.getHitRate(), 1e-9);
+  }
+
+  @Test
+  void boundsEntriesByEstimatedBytes() {
+    LRUCache<String, String> cache = new LRUCache<>(new LRUCache.Options()
+        .maximumSize(1_000).maximumWeightBytes(2_000));
+    String value = new String(new char[200]).replace('\0', 'x');
+    for (int idx = 0; idx < 100; idx++) {
+      cache.put("key-" + idx, value);
+    }
+
+    Assertions.assertTrue(cache.size() > 0 && cache.size() <= 4);
+    Assertions.assertTrue(cache.getWeightedSize() <= 2_000);
+    Assertions.assertEquals(100 - cache.size(), cache.getEvictionCount());
+  }
+
+  @Test
+  void weighsAbiValuesByContent() {
+    String name = new String(new char[1000]).replace('\0', 'x');
+    Assertions.assertTrue(LRUCache.estimateBytes(new Utf8String(name)) > 2000);
+    Assertions.assertTrue(LRUCache.estimateBytes(new DynamicBytes(new byte[1000])) > 1000);
+    Assertions.assertTrue(LRUCache.estimateBytes(Arrays.asList(name, BigInteger.TEN)) > 2000);
+  }
+}
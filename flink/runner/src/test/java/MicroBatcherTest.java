@@ -0,0 +1,96 @@
+package com.chainbase.common.batch;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class MicroBatcherTest {
+
+  @Test
+  void coalescesConcurrentItemsIntoOneBatch() {
+    List<Integer> batchSizes = new CopyOnWriteArrayList<>();
+    try (MicroBatcher<Integer, String> batcher = new MicroBatcher<>("test", 4, 10_000, 16,
+        items -> {
+          batchSizes.add(items.size());
+          return items.stream().map(i -> "v" + i).collect(Collectors.toList());
+        })) {
+      List<CompletableFuture<String>> futures = new ArrayList<>();
+      for (int i = 0; i < 4; i++) {
+        futures.add(batcher.submit(i));
+      }
+
+      for (int i = 0; i < 4; i++) {
+        Assertions.assertEquals("v" + i, futures.get(i).join());
+      }
+      Assertions.assertEquals(List.of(4), batchSizes);
+    }
+  }
+
+  @Test
+  void flushesPartialBatchAfterLinger() {
+    try (MicroBatcher<Integer, Integer> batcher = new MicroBatcher<>("test", 100, 5, 16,
+        items -> items)) {
+      Assertions.assertEquals(7, batcher.submit(7).join());
+    }
+  }
+
+  @Test
+  void dispatchesAtOnceForALoneBlockingCaller() {
+    try (MicroBatcher<Integer, Integer> batcher = new MicroBatcher<>("test", 100, 60_000, 16,
+        items -> items)) {
+      batcher.addBlockingCaller();
+      // Would wait a minute for the linger, nothing else can join the batch
+      Assertions.assertEquals(1, batcher.submitBlocking(1).join());
+    }
+  }
+
+  @Test
+  void dispatchesOnceEveryBlockingCallerWaits() throws Exception {
+    List<Integer> batchSizes = new CopyOnWriteArrayList<>();
+    try (MicroBatcher<Integer, Integer> batcher = new MicroBatcher<>("test", 100, 60_000, 16,
+        items -> {
+          batchSizes.add(items.size());
+          return items;
+        })) {
+      batcher.addBlockingCaller();
+      batcher.addBlockingCaller();
+      CompletableFuture<Integer> first = batcher.submitBlocking(1);
+      Thread.sleep(50);
+      Assertions.assertFalse(first.isDone());
+
+      // Both callers wait on the batch, nothing else can join it
+      Assertions.assertEquals(2, batcher.submitBlocking(2).join());
+      Assertions.assertEquals(1, first.join());
+      Assertions.assertEquals(List.of(2), batchSizes);
+    }
+  }
+
+  @Test
+  void dispatchesWhenTheOtherBlockingCallerLeaves() {
+    try (MicroBatcher<Integer, Integer> batcher = new MicroBatcher<>("test", 100, 60_000, 16,
+        items -> items)) {
+      batcher.addBlockingCaller();
+      batcher.addBlockingCaller();
+      CompletableFuture<Integer> waiting = batcher.submitBlocking(1);
+
+      batcher.removeBlockingCaller();
+      Assertions.assertEquals(1, waiting.join());
+    }
+  }
+
+  @Test
+  void failsEveryItemOfAFailedBatch() {
+    try (MicroBatcher<Integer, Integer> batcher = new MicroBatcher<>("test", 2, 5, 16, items -> {
+      throw new IllegalStateException("boom");
+    })) {
+      CompletableFuture<Integer> first = batcher.submit(1);
+      CompletableFuture<Integer> second = batcher.submit(2);
+      Assertions.assertThrows(Exception.class, first::join);
+      Assertions.assertThrows(Exception.class, second::join);
+    }
+  }
+}
@@ -0,0 +1,85 @@
+package com.chainbase.udf;
+
+import com.chainbase.evm.JsonRpcStubServer;
+import com.chainbase.evm.Web3jClient;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.apache.flink.metrics.Counter;
+import org.apache.flink.metrics.MetricGroup;
+import org.apache.flink.metrics.SimpleCounter;
+import org.apache.flink.metrics.groups.UnregisteredMetricsGroup;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.web3j.protocol.core.DefaultBlockParameterName;
+
+class RpcMetricsTest {
+
+  private static final String USDT = "0xdac17f958d2ee523a2206206994597c13d831ec7";
+
+  private JsonRpcStubServer stub;
+
+  private Web3jClient client;
+
+  @BeforeEach
+  void startNode() throws Exception {
+    stub = JsonRpcStubServer.start()
+        .fixture("eth_getCode", Arrays.asList(USDT, "latest"), "0x6080");
+    client = new Web3jClient(stub.getUrl()).withResultCache(0, null, 0);
+  }
+
+  @AfterEach
+  void stopNode() {
+    stub.close();
+  }
+
+  @Test
+  void reportsEveryCallOnceAcrossSubtasks() {
+    CountingMetricGroup first = new CountingMetricGroup();
+    CountingMetricGroup second = new CountingMetricGroup();
+    RpcMetrics firstMetrics = RpcMetrics.register(first);
+    RpcMetrics secondMetrics = RpcMetrics.register(second);
+    firstMetrics.track(client);
+    secondMetrics.track(client);
+
+    client.getContractCode(USDT, DefaultBlockParameterName.LATEST);
+    Assertions.assertEquals(1, first.getCount("calls") + second.getCount("calls"));
+
+    // The next subtask takes over reporting the client
+    firstMetrics.untrack(client);
+    client.getContractCode(USDT, DefaultBlockParameterName.LATEST);
+    Assertions.assertEquals(1, first.getCount("calls"));
+    Assertions.assertEquals(1, second.getCount("calls"));
+
+    secondMetrics.untrack(client);
+    client.getContractCode(USDT, DefaultBlockParameterName.LATEST);
+    Assertions.assertEquals(2, first.getCount("calls") + second.getCount("calls"));
+  }
+
+  private static class CountingMetricGroup extends UnregisteredMetricsGroup {
+
+    private final Map<String, Counter> counters = new ConcurrentHashMap<>();
+
+    @Override
+    public Counter counter(String name) {
+      return counter(name, new SimpleCounter());
+    }
+
+    @Override
+    public <C extends Counter> C counter(String name, C counter) {
+      counters.put(name, counter);
+      return counter;
+    }
+
+    @Override
+    public MetricGroup addGroup(String name) {
+      return this;
+    }
+
+    long getCount(String name) {
+      return counters.get(name).getCount();
+    }
+  }
+}
@@ -0,0 +1,74 @@
+package com.chainbase.evm;
+
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class RpcRateLimiterTest {
+
+  @Test
+  void unboundedUntilConfigured() {
+    RpcRateLimiter limiter = RpcRateLimiter.forEndpoint("http://unbounded.test");
+
+    for (int idx = 0; idx < 1_000; idx++) {
+      Assertions.assertEquals(0, limiter.reserve(100));
+    }
+    Assertions.assertSame(limiter, RpcRateLimiter.forEndpoint("http://unbounded.test"));
+  }
+
+  @Test
+  void delaysOverdrawnBatches() {
+    RpcRateLimiter limiter = RpcRateLimiter.forEndpoint("http://bounded.test").configure(100, 10);
+
+    // The bucket starts empty, a batch of 50 calls waits for about half a second
+    long delay = limiter.reserve(50);
+    Assertions.assertTrue(delay > TimeUnit.MILLISECONDS.toNanos(400), String.valueOf(delay));
+    Assertions.assertTrue(delay <= TimeUnit.MILLISECONDS.toNanos(500), String.valueOf(delay));
+    Assertions.assertTrue(limiter.reserve(1) > delay);
+  }
+
+  @Test
+  void halvesRateWhenLimited() {
+    RpcRateLimiter limiter = RpcRateLimiter.forEndpoint("http://aimd.test").configure(100, 10);
+
+    limiter.onRateLimited();
+    Assertions.assertEquals(50, limiter.getRate(), 1);
+    // At most one decrease per second
+    limiter.onRateLimited();
+    Assertions.assertEquals(50, limiter.getRate(), 1);
+  }
+
+  @Test
+  void discoversRateOfUnboundedEndpoint() {
+    RpcRateLimiter limiter = RpcRateLimiter.forEndpoint("http://discovered.test");
+    for (int idx = 0; idx < 40; idx++) {
+      limiter.reserve(10);
+    }
+
+    limiter.onRateLimited();
+    Assertions.assertEquals(200, limiter.getRate(), 1);
+    Assertions.assertTrue(limiter.reserve(10) > 0);
+  }
+
+  @Test
+  void backsOffExponentiallyWithJitter() {
+    for (int attempt = 1; attempt <= 10; attempt++) {
+      long backoff = 100L << Math.min(5, attempt - 1);
+      long delay = RpcRateLimiter.backoffMs(100, attempt);
+      Assertions.assertTrue(delay >= backoff / 2 && delay <= backoff, String.valueOf(delay));
+    }
+  }
+
+  @Test
+  void capsBackoffAndRetryTime() {
+    for (int attempt = 1; attempt <= 1_000; attempt++) {
+      Assertions.assertTrue(RpcRateLimiter.backoffMs(1_000, attempt)
+          <= RpcRateLimiter.MAX_BACKOFF_MS);
+    }
+
+    long startedAt = System.nanoTime();
+    Assertions.assertTrue(RpcRateLimiter.isWithinRetryBudget(startedAt, 1_000));
+    Assertions.assertFalse(RpcRateLimiter.isWithinRetryBudget(
+        startedAt - TimeUnit.MILLISECONDS.toNanos(RpcRateLimiter.RETRY_BUDGET_MS), 1_000));
+  }
+}
@@ -1,58 +1,101 @@
 package com.chainbase.udf;
-import java.io.IOException;
+
+import com.chainbase.evm.JsonRpcStubServer;
+import com.chainbase.utils.JSONUtils;
+import com.fasterxml.jackson.databind.JsonNode;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
 public class RpcRequestTest {
 
-    private final RpcRequest rpcRequest;
+    private static final String BLOCK_HASH =
+            "0x829df9bb801fc0494abf2f443423a49ffa32964554db71b098d332d87b70a48b";
+
+    private JsonRpcStubServer stub;
+
+    private RpcRequest rpcRequest;
+
+    @BeforeEach
+    public void open() throws Exception {
+        Map<String, Object> transaction = new HashMap<>();
+        transaction.put("blockHash", BLOCK_HASH);
+        transaction.put("transactionIndex", "0x0");
+        transaction.put("hash", "0x01");
+        Map<String, Object> block = new HashMap<>();
+        block.put("number", "0x807488");
+        block.put("transactions", Collections.emptyList());
+        Map<String, Object> latestBlock = new HashMap<>(block);
+        latestBlock.put("number", "0x11dbbfb");
 
-    public RpcRequestTest() throws Exception {
+        this.stub = JsonRpcStubServer.start()
+                .fixture("eth_blockNumber", Collections.emptyList(), "0x11dbbfb")
+                .fixture("eth_getTransactionByBlockHashAndIndex",
+                        Arrays.asList(BLOCK_HASH, "0x0"), transaction)
+                .fixture("eth_getBlockByNumber", Arrays.asList("8418440", false), block)
+                .fixture("eth_getBlockByNumber", Arrays.asList("0x11dbbfb", false), latestBlock)
+                .fixture("eth_getCode",
+                        Arrays.asList("0xdeaddeaddeaddeaddeaddeaddeaddeaddead0000", "latest"),
+                        "0x");
         this.rpcRequest = new RpcRequest();
         this.rpcRequest.open(null);
     }
 
+    @AfterEach
+    public void close() throws Exception {
+        rpcRequest.close();
+        stub.close();
+    }
+
     @Test
     public void testLatestBlockNumber_whenReturnString() {
-        Object result = rpcRequest.eval(
-                "https://rpc.ankr.com/eth",
-                "eth_blockNumber");
-        System.out.println(result);
+        Object result = rpcRequest.eval(stub.getUrl(), "eth_blockNumber");
+        Assertions.assertEquals("0x11dbbfb", result);
     }
 
     @Test
-    void getTransactionByBlockHashAndIndex_whenReturnJson() throws IOException {
-        Object result = rpcRequest.eval("https://rpc.ankr.com/eth",
-                "eth_getTransactionByBlockHashAndIndex",
-                "0x829df9bb801fc0494abf2f443423a49ffa32964554db71b098d332d87b70a48b", "0x0");
+    void getTransactionByBlockHashAndIndex_whenReturnJson() {
+        Object result = rpcRequest.eval(stub.getUrl(),
+                "eth_getTransactionByBlockHashAndIndex", BLOCK_HASH, "0x0");
 
-        System.out.println(result.toString());
+        JsonNode json = JSONUtils.toJSONObject(result.toString());
+        Assertions.assertEquals(BLOCK_HASH, json.get("blockHash").asText());
+        Assertions.assertEquals("0x01", json.get("hash").asText());
     }
 
     @Test
-    void getBlockByNumberWithLatest_whenReturnJson() throws IOException {
-        Object result = rpcRequest.eval("https://rpc.ankr.com/eth",
-                "eth_getBlockByNumber",
-                "8418440", false);
+    void getBlockByNumberWithLatest_whenReturnJson() {
+        Object result = rpcRequest.eval(stub.getUrl(), "eth_getBlockByNumber", "8418440", false);
 
-        System.out.println(result.toString());
+        JsonNode json = JSONUtils.toJSONObject(result.toString());
+        Assertions.assertEquals("0x807488", json.get("number").asText());
+        Assertions.assertEquals(0, json.get("transactions").size());
     }
 
     @Test
-    void getBlockByNumberWithBlockNumber_whenReturnJson() throws IOException {
-        Object result = rpcRequest.eval("https://rpc.ankr.com/eth",
-                "eth_getBlockByNumber",
-                "0x11dbbfb", false);
+    void getBlockByNumberWithBlockNumber_whenReturnJson() {
+        Object result = rpcRequest.eval(stub.getUrl(), "eth_getBlockByNumber", "0x11dbbfb", false);
 
-        System.out.println(result.toString());
+        Assertions.assertEquals("0x11dbbfb",
+                JSONUtils.toJSONObject(result.toString()).get("number").asText());
     }
 
     @Test
-    void getEthCode_whenReturnJson() throws IOException {
-        Object result = rpcRequest.eval("https://rpc.ankr.com/eth",
-                "eth_getCode",
+    void getEthCode_whenReturnJson() {
+        Object result = rpcRequest.eval(stub.getUrl(), "eth_getCode",
                 "0xdeaddeaddeaddeaddeaddeaddeaddeaddead0000", "latest");
 
-        System.out.println(result.toString());
+        Assertions.assertEquals("0x", result);
     }
 
-}
\ No newline at end of file
+    @Test
+    void returnsNullOnErrors() {
+        // Nothing answers eth_chainId
+        Assertions.assertNull(rpcRequest.eval(stub.getUrl(), "eth_chainId"));
+    }
+}
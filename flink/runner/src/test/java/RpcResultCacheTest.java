@@ -0,0 +1,160 @@
+package com.chainbase.evm;
+
+import java.io.File;
+import java.math.BigInteger;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.web3j.protocol.Web3j;
+import org.web3j.protocol.core.DefaultBlockParameter;
+import org.web3j.protocol.core.DefaultBlockParameterName;
+import org.web3j.protocol.core.Request;
+import org.web3j.protocol.core.Response;
+import org.web3j.protocol.core.methods.request.Transaction;
+import org.web3j.protocol.core.methods.response.EthCall;
+import org.web3j.protocol.core.methods.response.EthGetCode;
+import org.web3j.protocol.core.methods.response.EthGetStorageAt;
+import org.web3j.protocol.http.HttpService;
+
+class RpcResultCacheTest {
+
+  private static final String NODE = "http://127.0.0.1:1";
+
+  private static final String USDT = "0xdac17f958d2ee523a2206206994597c13d831ec7";
+
+  private static final DefaultBlockParameter BLOCK =
+      DefaultBlockParameter.valueOf(BigInteger.valueOf(18_000_000));
+
+  // Requests are only built, never sent
+  private final Web3j web3j = Web3j.build(new HttpService(NODE));
+
+  @TempDir
+  Path directory;
+
+  @Test
+  void cachesBlockPinnedReadsOnly() {
+    Assertions.assertTrue(RpcResultCache.isCacheable(web3j.ethGetCode(USDT, BLOCK)));
+    Assertions.assertTrue(RpcResultCache.isCacheable(web3j.ethCall(
+        Transaction.createEthCallTransaction(null, USDT, "0x18160ddd"), BLOCK)));
+    Assertions.assertFalse(RpcResultCache.isCacheable(
+        web3j.ethGetCode(USDT, DefaultBlockParameterName.LATEST)));
+    Assertions.assertFalse(RpcResultCache.isCacheable(web3j.ethCall(
+        Transaction.createEthCallTransaction(null, USDT, "0x18160ddd"),
+        DefaultBlockParameterName.PENDING)));
+    Assertions.assertFalse(RpcResultCache.isCacheable(web3j.ethBlockNumber()));
+  }
+
+  @Test
+  void cachesOnlyTheMethodsGivenABlock() {
+    HttpService service = new HttpService(NODE);
+    // The node reads these at latest, however the last param looks like a block
+    Assertions.assertFalse(RpcResultCache.isCacheable(new Request<>("eth_getCode",
+        Collections.singletonList(USDT), service, EthGetCode.class)));
+    Assertions.assertFalse(RpcResultCache.isCacheable(new Request<>("eth_getStorageAt",
+        Arrays.asList(USDT, "0x0"), service, EthGetStorageAt.class)));
+    Assertions.assertTrue(RpcResultCache.isCacheable(new Request<>("eth_getStorageAt",
+        Arrays.asList(USDT, "0x0", "0x112a880"), service, EthGetStorageAt.class)));
+  }
+
+  @Test
+  void keepsTheLargestBudgetOfItsOwners() {
+    String path = directory.toFile().getAbsolutePath();
+    RpcResultCache cache = new RpcResultCache(NODE, 1024).configure(1024 * 1024, path,
+        1024 * 1024);
+    cache.put(web3j.ethGetCode(USDT, BLOCK), code("0x6080"));
+
+    // Another UDF of the client asks for less, then more: the results and the disk are kept
+    cache.configure(0, null, 0);
+    Assertions.assertEquals("0x6080", cache.get(web3j.ethGetCode(USDT, BLOCK)).getCode());
+    cache.configure(2 * 1024 * 1024, null, 0);
+    Assertions.assertEquals("0x6080", cache.get(web3j.ethGetCode(USDT, BLOCK)).getCode());
+    Assertions.assertEquals(2, cache.getStats().getMemoryHitCount());
+    Assertions.assertTrue(cache.getStats().getDiskBytes() > 0);
+    cache.close();
+  }
+
+  @Test
+  void servesRepeatedReadsFromMemory() {
+    RpcResultCache cache = new RpcResultCache(NODE).configure(1024 * 1024, null, 0);
+    Request<?, EthGetCode> request = web3j.ethGetCode(USDT, BLOCK);
+    Assertions.assertNull(cache.get(request));
+
+    cache.put(request, code("0x6080"));
+    EthGetCode cached = cache.get(web3j.ethGetCode(USDT, BLOCK));
+    Assertions.assertEquals("0x6080", cached.getCode());
+
+    Request<?, EthGetCode> latest = web3j.ethGetCode(USDT, DefaultBlockParameterName.LATEST);
+    cache.put(latest, code("0x6080"));
+    Assertions.assertNull(cache.get(latest));
+    Assertions.assertNull(cache.get(web3j.ethGetCode(USDT,
+        DefaultBlockParameter.valueOf(BigInteger.valueOf(18_000_001)))));
+
+    RpcResultCache.Stats stats = cache.getStats();
+    Assertions.assertEquals(1, stats.getMemoryHitCount());
+    Assertions.assertEquals(2, stats.getMissCount());
+    Assertions.assertEquals(1d / 3, stats.getHitRate(), 1e-9);
+  }
+
+  @Test
+  void skipsFailedCalls() {
+    RpcResultCache cache = new RpcResultCache(NODE).configure(1024 * 1024, null, 0);
+    Request<?, EthCall> request = web3j.ethCall(
+        Transaction.createEthCallTransaction(null, USDT, "0x18160ddd"), BLOCK);
+    EthCall reverted = new EthCall();
+    reverted.setError(new Response.Error(3, "execution reverted"));
+
+    cache.put(request, reverted);
+    Assertions.assertNull(cache.get(request));
+  }
+
+  @Test
+  void keepsResultsOnDiskAcrossClients() {
+    String path = directory.toFile().getAbsolutePath();
+    RpcResultCache cache = new RpcResultCache(NODE).configure(1024 * 1024, path, 1024 * 1024);
+    cache.put(web3j.ethGetCode(USDT, BLOCK), code("0x6080"));
+    cache.close();
+
+    RpcResultCache rerun = new RpcResultCache(NODE).configure(1024 * 1024, path, 1024 * 1024);
+    Assertions.assertEquals("0x6080", rerun.get(web3j.ethGetCode(USDT, BLOCK)).getCode());
+    Assertions.assertEquals(1, rerun.getStats().getDiskHitCount());
+    Assertions.assertTrue(rerun.getStats().getDiskBytes() > 0);
+    Assertions.assertTrue(new File(path, "rpc-results.idx").exists());
+
+    // Another chain doesn't share the results
+    RpcResultCache otherChain = new RpcResultCache("http://127.0.0.1:2")
+        .configure(1024 * 1024, path, 1024 * 1024);
+    Assertions.assertNull(otherChain.get(web3j.ethGetCode(USDT, BLOCK)));
+    otherChain.close();
+    rerun.close();
+  }
+
+  @Test
+  void evictsTheOldestResultsFromDisk() {
+    String path = directory.toFile().getAbsolutePath();
+    RpcResultCache cache = new RpcResultCache(NODE).configure(64 * 1024, path, 1024 * 1024);
+    String bytecode = "0x" + new String(new char[2000]).replace('\0', 'f');
+    for (int block = 0; block < 2_000; block++) {
+      cache.put(web3j.ethGetCode(USDT, DefaultBlockParameter.valueOf(BigInteger.valueOf(block))),
+          code(bytecode));
+    }
+
+    // Past the bound the oldest results are evicted rather than the new ones refused
+    Assertions.assertTrue(cache.getStats().getDiskBytes() <= 1024 * 1024);
+    cache.close();
+    RpcResultCache rerun = new RpcResultCache(NODE).configure(64 * 1024, path, 1024 * 1024);
+    Assertions.assertNull(rerun.get(web3j.ethGetCode(USDT, DefaultBlockParameter.valueOf(
+        BigInteger.ZERO))));
+    Assertions.assertEquals(bytecode, rerun.get(web3j.ethGetCode(USDT,
+        DefaultBlockParameter.valueOf(BigInteger.valueOf(1_999)))).getCode());
+    rerun.close();
+  }
+
+  private static EthGetCode code(String code) {
+    EthGetCode response = new EthGetCode();
+    response.setResult(code);
+    return response;
+  }
+}
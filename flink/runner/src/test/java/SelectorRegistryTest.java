@@ -0,0 +1,75 @@
+package com.chainbase.evm.selector;
+
+import com.chainbase.evm.EvmUtil;
+import com.google.common.hash.HashCode;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class SelectorRegistryTest {
+
+  private static final int TRANSFER = 0xa9059cbb;
+  private static final int APPROVE = 0x095ea7b3;
+  private static final int SET_APPROVAL_FOR_ALL = 0xa22cb465;
+
+  @Test
+  void hashesSelectorsOnce() {
+    Assertions.assertEquals(TRANSFER, InterfaceDefinition.selector("transfer(address,uint256)"));
+    Assertions.assertEquals(SET_APPROVAL_FOR_ALL,
+        InterfaceDefinition.selector("setApprovalForAll(address,bool)"));
+  }
+
+  @Test
+  void matchesDefaultInterfaces() {
+    SelectorRegistry registry = SelectorRegistry.defaults();
+
+    long erc20 = registry.match(new int[]{0, APPROVE, TRANSFER});
+    Assertions.assertTrue(registry.isMatched(erc20, SelectorRegistry.ERC20));
+    Assertions.assertEquals(Arrays.asList(SelectorRegistry.ERC20), registry.getNames(erc20));
+
+    long erc721 = registry.match(new int[]{APPROVE, TRANSFER, SET_APPROVAL_FOR_ALL});
+    Assertions.assertFalse(registry.isMatched(erc721, SelectorRegistry.ERC20));
+    Assertions.assertTrue(registry.isMatched(erc721, SelectorRegistry.ERC721));
+  }
+
+  @Test
+  void acceptsExtraInterfaces() {
+    SelectorRegistry registry = SelectorRegistry.defaults().with(
+        InterfaceDefinition.builder("Ownable").requires("owner()", "transferOwnership(address)")
+            .build());
+
+    long matched = registry.match(new int[]{
+        InterfaceDefinition.selector("owner()"),
+        InterfaceDefinition.selector("transferOwnership(address)"), TRANSFER});
+    Assertions.assertEquals(Arrays.asList("Ownable"), registry.getNames(matched));
+    Assertions.assertThrows(IllegalArgumentException.class,
+        () -> registry.isMatched(matched, "ERC9999"));
+  }
+
+  @Test
+  void memoizesByCodeWithoutMetadata() {
+    SelectorRegistry registry = SelectorRegistry.defaults().with(
+        InterfaceDefinition.builder("Test").requires("transfer(address,uint256)").build());
+    String body = "0x6080604052";
+    // A CBOR map {"ipfs": ..., "solc": ...} followed by its length
+    HashCode first = EvmUtil.hashRuntimeCode(body + "a264697066735811116473"
+        + "6f6c6343000813" + "0012");
+    HashCode second = EvmUtil.hashRuntimeCode(body + "a264697066735822226473"
+        + "6f6c6343000813" + "0012");
+    Assertions.assertEquals(first, second);
+    Assertions.assertNotEquals(first, EvmUtil.hashRuntimeCode("0x6080604053"));
+
+    AtomicInteger disassembled = new AtomicInteger();
+    long matched = registry.match(first, () -> {
+      disassembled.incrementAndGet();
+      return new int[]{TRANSFER};
+    });
+    Assertions.assertEquals(matched, registry.match(second, () -> {
+      disassembled.incrementAndGet();
+      return new int[0];
+    }));
+    Assertions.assertTrue(registry.isMatched(matched, "Test"));
+    Assertions.assertEquals(1, disassembled.get());
+  }
+}
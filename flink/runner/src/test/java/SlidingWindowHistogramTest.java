@@ -0,0 +1,30 @@
+package com.chainbase.utils;
+
+import org.apache.flink.metrics.HistogramStatistics;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class SlidingWindowHistogramTest {
+
+  @Test
+  void describesTheValuesOfTheWindow() {
+    SlidingWindowHistogram histogram = new SlidingWindowHistogram(4);
+    Assertions.assertEquals(0, histogram.getStatistics().size());
+
+    for (long value : new long[]{100, 1, 4, 3, 2}) {
+      histogram.update(value);
+    }
+    Assertions.assertEquals(5, histogram.getCount());
+
+    // The first value has left the window
+    HistogramStatistics statistics = histogram.getStatistics();
+    Assertions.assertArrayEquals(new long[]{1, 2, 3, 4}, statistics.getValues());
+    Assertions.assertEquals(1, statistics.getMin());
+    Assertions.assertEquals(4, statistics.getMax());
+    Assertions.assertEquals(2.5, statistics.getMean(), 1e-9);
+    Assertions.assertEquals(Math.sqrt(5d / 3), statistics.getStdDev(), 1e-9);
+    Assertions.assertEquals(2.5, statistics.getQuantile(0.5), 1e-9);
+    Assertions.assertEquals(4, statistics.getQuantile(0.99), 1e-9);
+    Assertions.assertEquals(1, statistics.getQuantile(0.1), 1e-9);
+  }
+}
@@ -0,0 +1,44 @@
+package com.chainbase.evm.decoder;
+
+import com.chainbase.evm.EvmUtil;
+import com.esaulpaugh.headlong.abi.ABIObject;
+import com.esaulpaugh.headlong.abi.Address;
+import com.esaulpaugh.headlong.abi.Function;
+import com.esaulpaugh.headlong.abi.Tuple;
+import com.esaulpaugh.headlong.abi.TupleType;
+import java.math.BigInteger;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class TupleJsonWriterTest {
+
+  private static final String ABI = "{\"type\": \"function\", \"name\": \"foo\", \"inputs\": [{\"name\": \"orders\", \"type\": \"tuple[]\", \"components\": [{\"name\": \"kind\", \"type\": \"uint8\"}, {\"name\": \"makers\", \"type\": \"address[]\"}, {\"name\": \"memo\", \"type\": \"string\"}]}, {\"name\": \"\", \"type\": \"bytes\"}, {\"name\": \"bounds\", \"type\": \"int64[2]\"}, {\"name\": \"flag\", \"type\": \"bool\"}, {\"name\": \"amounts\", \"type\": \"uint256[]\"}, {\"name\": \"salt\", \"type\": \"bytes32\"}, {\"name\": \"tick\", \"type\": \"int24\"}], \"outputs\": []}";
+
+  @Test
+  void streamsTheSameJsonAsTheTree() throws Exception {
+    Function function = ABIObject.fromJson(ABI).asFunction();
+    Address address = Address.wrap("0xdAC17F958D2ee523a2206206994597C13D831ec7");
+    Tuple args = Tuple.of(
+        new Tuple[]{Tuple.of(7, new Address[]{address}, "sé\"q")},
+        new byte[]{1, 2, 3},
+        new long[]{-1L, Long.MAX_VALUE},
+        true,
+        new BigInteger[]{BigInteger.TEN.pow(30)},
+        new byte[32],
+        -42);
+    TupleType inputs = EvmUtil.reviseOnCopyTuple(function.getInputs(), false);
+    Tuple decoded = function.decodeCall(function.encodeCall(args).array());
+
+    Assertions.assertTrue(EvmUtil.hasDistinctElementNames(inputs));
+    Assertions.assertEquals(
+        EvmUtil.transformTupleValue2ObjectNode(inputs, decoded).toString(),
+        new TupleJsonWriter().write((gen) -> EvmUtil.writeTupleValue(gen, inputs, decoded)));
+  }
+
+  @Test
+  void detectsDuplicateNames() {
+    Function function = Function.parse("foo((uint8,address))");
+    Assertions.assertFalse(EvmUtil.hasDistinctElementNames(
+        EvmUtil.reviseOnCopyTuple(function.getInputs(), false)));
+  }
+}
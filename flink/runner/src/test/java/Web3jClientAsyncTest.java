@@ -0,0 +1,35 @@
+package com.chainbase.evm;
+
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.web3j.protocol.core.DefaultBlockParameterName;
+
+class Web3jClientAsyncTest {
+
+  // Nothing listens on the port, every attempt is refused
+  private static final String UNREACHABLE_NODE = "http://127.0.0.1:1";
+
+  private static final String USDT = "0xdac17f958d2ee523a2206206994597c13d831ec7";
+
+  @Test
+  void completesEmptyWhenIgnoringIOException() throws Exception {
+    Web3jClient client = new Web3jClient(UNREACHABLE_NODE, 3, 10, true);
+
+    Assertions.assertEquals(Optional.empty(),
+        client.getContractCodeAsync(USDT, DefaultBlockParameterName.LATEST)
+            .get(10, TimeUnit.SECONDS));
+  }
+
+  @Test
+  void completesExceptionallyAfterRetries() {
+    Web3jClient client = new Web3jClient(UNREACHABLE_NODE, 3, 10, false);
+
+    ExecutionException ex = Assertions.assertThrows(ExecutionException.class,
+        () -> client.getContractCodeAsync(USDT, DefaultBlockParameterName.LATEST)
+            .get(10, TimeUnit.SECONDS));
+    Assertions.assertEquals("Failed to send request to web3 node", ex.getCause().getMessage());
+  }
+}
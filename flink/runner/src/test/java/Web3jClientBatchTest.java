@@ -0,0 +1,139 @@
+package com.chainbase.evm;
+
+import com.chainbase.evm.Web3jClient.CallFunctionParameter;
+import com.chainbase.evm.Web3jClient.MultiCallParameter;
+import com.esaulpaugh.headlong.abi.Tuple;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.web3j.protocol.core.DefaultBlockParameter;
+
+class Web3jClientBatchTest {
+
+  private static final String DECIMALS = "0x313ce567";
+
+  private static final String BLOCK = "0x112a880";
+
+  private JsonRpcStubServer stub;
+
+  private Web3jClient client;
+
+  @BeforeEach
+  void startNode() throws Exception {
+    stub = JsonRpcStubServer.start();
+    for (int idx = 0; idx < 40; idx++) {
+      stub.callFixture(token(idx), DECIMALS, BLOCK, String.format("0x%064x", idx));
+    }
+    client = new Web3jClient(stub.getUrl())
+        .withResultCache(0, null, 0)
+        .withAdaptiveBatching(40, 40, 10_000, 1 << 20);
+  }
+
+  @AfterEach
+  void stopNode() {
+    stub.close();
+  }
+
+  @Test
+  void splitsBatchesRejectedAsTooLarge() {
+    stub.withMaxBatchSize(10);
+
+    assertDecimals(client.batchCallFunctionWithBlockNumber(calls(40)));
+    // 40 rejected, 2 x 20 rejected, then 4 x 10 answered
+    Assertions.assertEquals(7, stub.getHttpRequestCount());
+    Assertions.assertEquals(19, client.getBatchSizer().getMaxSize());
+    Assertions.assertEquals(10, client.getBatchSizer().getSize(), 3);
+
+    // One more rejection above the limit, then the calls are sent at the limit at once
+    assertDecimals(client.batchCallFunctionWithBlockNumber(calls(40)));
+    Assertions.assertEquals(10, client.getBatchSizer().getMaxSize());
+    int sent = stub.getHttpRequestCount();
+    assertDecimals(client.batchCallFunctionWithBlockNumber(calls(40)));
+    Assertions.assertEquals(4, stub.getHttpRequestCount() - sent);
+  }
+
+  @Test
+  void splitsAsyncBatchesRejectedAsTooLarge() {
+    stub.withMaxBatchSize(10);
+
+    List<Object> results = client.batchCallAsync(parameters(40),
+        DefaultBlockParameter.valueOf(BigInteger.valueOf(18_000_000))).join();
+    Assertions.assertEquals(40, results.size());
+    for (int idx = 0; idx < results.size(); idx++) {
+      Assertions.assertEquals(idx, ((Number) results.get(idx)).intValue());
+    }
+    // The rejected batches fail at once and are split the same way as the blocking ones
+    Assertions.assertEquals(7, stub.getHttpRequestCount());
+    Assertions.assertEquals(19, client.getBatchSizer().getMaxSize());
+  }
+
+  @Test
+  void cachedBatchesDoNotGrowTheBatchSize() {
+    Web3jClient cached = new Web3jClient(stub.getUrl())
+        .withResultCache(1 << 20, null, 0)
+        .withAdaptiveBatching(20, 100, 10_000, 1 << 20);
+    try {
+      assertDecimals(cached.batchCallFunctionWithBlockNumber(calls(40)));
+      int sent = stub.getHttpRequestCount();
+      int size = cached.getBatchSizer().getSize();
+
+      assertDecimals(cached.batchCallFunctionWithBlockNumber(calls(40)));
+      Assertions.assertEquals(sent, stub.getHttpRequestCount());
+      Assertions.assertEquals(size, cached.getBatchSizer().getSize());
+    } finally {
+      cached.close();
+    }
+  }
+
+  @Test
+  void retriesCallsTooLargeAloneWithoutCapping() {
+    stub.callErrorFixture(token(3), DECIMALS, BLOCK, -32000, "response size too large");
+
+    List<Optional<Tuple>> results = client.batchCallFunctionWithBlockNumber(calls(10));
+    Assertions.assertFalse(results.get(3).isPresent());
+    for (int idx = 0; idx < 10; idx++) {
+      if (idx != 3) {
+        Assertions.assertEquals(idx, ((Number) results.get(idx).get().get(0)).intValue());
+      }
+    }
+    // The failed call is sent again alone, where it's an error of its own
+    Assertions.assertEquals(11, stub.getCallCount());
+    Assertions.assertEquals(40, client.getBatchSizer().getMaxSize());
+    Assertions.assertEquals(9, client.getBatchSizer().getSize());
+  }
+
+  private static void assertDecimals(List<Optional<Tuple>> results) {
+    Assertions.assertEquals(40, results.size());
+    for (int idx = 0; idx < results.size(); idx++) {
+      Assertions.assertEquals(idx, ((Number) results.get(idx).get().get(0)).intValue());
+    }
+  }
+
+  private static List<CallFunctionParameter> calls(int count) {
+    List<CallFunctionParameter> calls = new ArrayList<>(count);
+    for (MultiCallParameter parameter : parameters(count)) {
+      calls.add(new CallFunctionParameter(parameter,
+          DefaultBlockParameter.valueOf(BigInteger.valueOf(18_000_000))));
+    }
+    return calls;
+  }
+
+  private static List<MultiCallParameter> parameters(int count) {
+    List<MultiCallParameter> parameters = new ArrayList<>(count);
+    for (int idx = 0; idx < count; idx++) {
+      parameters.add(new MultiCallParameter(token(idx), Collections.emptyList(), "decimals",
+          "decimals()", "(uint8)", null));
+    }
+    return parameters;
+  }
+
+  private static String token(int idx) {
+    return String.format("0x%040x", idx + 1);
+  }
+}
@@ -0,0 +1,59 @@
+package com.chainbase.evm;
+
+import okhttp3.OkHttpClient;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class Web3jClientRegistryTest {
+
+  private static final String NODE = "http://127.0.0.1:1";
+
+  @Test
+  void sharesClientUntilLastRelease() {
+    Web3jClient first = Web3jClientRegistry.acquire(NODE);
+    Web3jClient second = Web3jClientRegistry.acquire(NODE);
+    Assertions.assertSame(first, second);
+
+    Assertions.assertFalse(Web3jClientRegistry.release(first));
+    Assertions.assertSame(second, Web3jClientRegistry.acquire(NODE));
+    Assertions.assertFalse(Web3jClientRegistry.release(second));
+    Assertions.assertTrue(Web3jClientRegistry.release(second));
+
+    Web3jClient third = Web3jClientRegistry.acquire(NODE);
+    Assertions.assertNotSame(first, third);
+    Assertions.assertTrue(Web3jClientRegistry.release(third));
+    Assertions.assertThrows(IllegalArgumentException.class,
+        () -> Web3jClientRegistry.release(third));
+  }
+
+  @Test
+  void sharesHttpClientAcrossSettings() {
+    Web3jClient defaults = Web3jClientRegistry.acquire(NODE);
+    Web3jClient retried = Web3jClientRegistry.acquire(NODE, 1000, 1000, false);
+    Web3jClient other = Web3jClientRegistry.acquire("http://127.0.0.1:2");
+    try {
+      Assertions.assertNotSame(defaults, retried);
+      Assertions.assertSame(Web3jClientRegistry.getHttpClient(),
+          defaults.getEndpointPool().getHttpClient());
+      Assertions.assertSame(defaults.getEndpointPool().getHttpClient(),
+          retried.getEndpointPool().getHttpClient());
+      Assertions.assertSame(defaults.getEndpointPool().getHttpClient(),
+          other.getEndpointPool().getHttpClient());
+    } finally {
+      Web3jClientRegistry.release(defaults);
+      Web3jClientRegistry.release(retried);
+      Web3jClientRegistry.release(other);
+    }
+  }
+
+  @Test
+  void stopsTheThreadsWithTheLastClient() {
+    Web3jClient client = Web3jClientRegistry.acquire(NODE);
+    OkHttpClient httpClient = Web3jClientRegistry.getHttpClient();
+
+    Assertions.assertTrue(Web3jClientRegistry.release(client));
+    Assertions.assertTrue(httpClient.dispatcher().executorService().isShutdown());
+    Assertions.assertTrue(client.getEndpointPool().getScheduler().isShutdown());
+    Assertions.assertNull(Web3jClientRegistry.getHttpClient());
+  }
+}